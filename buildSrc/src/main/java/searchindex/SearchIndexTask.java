@@ -0,0 +1,369 @@
+package searchindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Generates the settings search index from the preference XML resources, so that the settings
+ * search doesn't need to inflate every preference screen at runtime.
+ *
+ * The output is a single Java class, PrebuiltSearchIndex, holding one node tree per preference
+ * screen reachable from the root screen. Resource references are emitted as R fields and
+ * preference controllers as constructor references, so no reflection is needed to read them.
+ */
+@SuppressWarnings("unused")
+public class SearchIndexTask extends DefaultTask {
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final String APP_NS = "http://schemas.android.com/apk/res-auto";
+
+    private static final String PACKAGE = "ch.deletescape.lawnchair.settings.ui.search";
+    private static final String CLASS_NAME = "PrebuiltSearchIndex";
+    private static final String CONTROLLER_PACKAGE = "ch.deletescape.lawnchair.settings.ui.controllers";
+    private static final String R_CLASS = "com.android.launcher3.R";
+
+    private List<File> mResDirs = new ArrayList<>();
+    private String mRootXml;
+    private File mOutputDir;
+
+    /**
+     * Resource directories, in decreasing priority (flavor resources first).
+     */
+    @InputFiles
+    public List<File> getResDirs() {
+        return mResDirs;
+    }
+
+    public void setResDirs(List<File> resDirs) {
+        mResDirs = resDirs;
+    }
+
+    @Input
+    public String getRootXml() {
+        return mRootXml;
+    }
+
+    public void setRootXml(String rootXml) {
+        mRootXml = rootXml;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return mOutputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        mOutputDir = outputDir;
+    }
+
+    @TaskAction
+    void exec() {
+        Map<String, Element> screens = new LinkedHashMap<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(mRootXml);
+        while (!pending.isEmpty()) {
+            String name = pending.poll();
+            if (screens.containsKey(name)) {
+                continue;
+            }
+            Element root = parse(findXml(name));
+            screens.put(name, root);
+            collectContent(root, pending);
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by ").append(getClass().getSimpleName())
+                .append(" from the preference XML resources, do not edit.\n");
+        out.append("package ").append(PACKAGE).append(";\n\n");
+        out.append("import ").append(R_CLASS).append(";\n\n");
+        out.append("public final class ").append(CLASS_NAME).append(" {\n\n");
+        out.append("    private ").append(CLASS_NAME).append("() { }\n\n");
+
+        out.append("    /**\n");
+        out.append("     * Returns the preferences of the screen defined by {@param xmlRes},\n");
+        out.append("     * or null if it is not part of the index.\n");
+        out.append("     */\n");
+        out.append("    public static SearchIndex.Node[] getScreen(int xmlRes) {\n");
+        out.append("        switch (xmlRes) {\n");
+        for (String name : screens.keySet()) {
+            out.append("            case R.xml.").append(name).append(":\n");
+            out.append("                return ").append(methodName(name)).append("();\n");
+        }
+        out.append("            default:\n");
+        out.append("                return null;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+
+        for (Map.Entry<String, Element> screen : screens.entrySet()) {
+            out.append("\n    private static SearchIndex.Node[] ")
+                    .append(methodName(screen.getKey())).append("() {\n");
+            out.append("        return ");
+            int[] elementIndex = {0};
+            writeChildren(out, screen.getKey(), screen.getValue(), elementIndex, 2);
+            out.append(";\n    }\n");
+        }
+        out.append("}\n");
+
+        File dir = new File(mOutputDir, PACKAGE.replace('.', File.separatorChar));
+        dir.mkdirs();
+        try (Writer writer = Files.newBufferedWriter(
+                new File(dir, CLASS_NAME + ".java").toPath(), StandardCharsets.UTF_8)) {
+            writer.write(out.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private File findXml(String name) {
+        for (File resDir : mResDirs) {
+            File file = new File(resDir, "xml/" + name + ".xml");
+            if (file.exists()) {
+                return file;
+            }
+        }
+        throw new GradleException("Preference screen not found: " + name);
+    }
+
+    private static Element parse(File file) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(file).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new GradleException("Failed to parse " + file, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void collectContent(Element element, Deque<String> pending) {
+        for (Element child : childElements(element)) {
+            String content = child.getAttributeNS(APP_NS, "content");
+            if (content.startsWith("@xml/")) {
+                pending.add(content.substring("@xml/".length()));
+            }
+            collectContent(child, pending);
+        }
+    }
+
+    /**
+     * Writes the children of {@param parent}. {@param elementIndex} tracks the position of each
+     * element in document order (the root being 0), which is used at runtime to find the
+     * attributes of an element again.
+     */
+    private static void writeChildren(StringBuilder out, String xmlName, Element parent,
+            int[] elementIndex, int indent) {
+        List<Element> children = childElements(parent);
+        if (children.isEmpty()) {
+            out.append("null");
+            return;
+        }
+        out.append("new SearchIndex.Node[] {\n");
+        for (Element child : children) {
+            elementIndex[0]++;
+            indent(out, indent + 1);
+            out.append("new SearchIndex.Node(");
+            out.append(classLiteral(child.getTagName())).append(", ");
+            out.append(stringLiteral(child.getAttributeNS(ANDROID_NS, "key"))).append(", ");
+            appendText(out, child.getAttributeNS(ANDROID_NS, "title"));
+            appendText(out, child.getAttributeNS(ANDROID_NS, "summary"));
+            out.append(resourceRef(child.getAttributeNS(ANDROID_NS, "icon"))).append(", ");
+            out.append(resourceRef(child.getAttributeNS(APP_NS, "content"))).append(", ");
+            out.append(controllerFactory(child.getAttributeNS(APP_NS, "controllerClass")))
+                    .append(", ");
+            out.append(!"false".equals(child.getAttributeNS(APP_NS, "indexable"))).append(", ");
+            out.append("true".equals(child.getAttributeNS(APP_NS, "hasPreview"))).append(", ");
+            appendDefaultValue(out, child.getAttributeNS(ANDROID_NS, "defaultValue"));
+            out.append("R.xml.").append(xmlName).append(", ");
+            out.append(elementIndex[0]).append(", ");
+            writeChildren(out, xmlName, child, elementIndex, indent + 1);
+            out.append("),\n");
+        }
+        indent(out, indent);
+        out.append("}");
+    }
+
+    private static List<Element> childElements(Element parent) {
+        List<Element> result = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                result.add((Element) nodes.item(i));
+            }
+        }
+        return result;
+    }
+
+    private static void indent(StringBuilder out, int level) {
+        for (int i = 0; i < level; i++) {
+            out.append("    ");
+        }
+    }
+
+    /**
+     * Unqualified tags are resolved by the preference inflater, but not by the runtime search
+     * index, so they are treated as plain preferences.
+     */
+    private static String classLiteral(String tag) {
+        return tag.contains(".") ? tag + ".class" : "null";
+    }
+
+    /**
+     * Writes a text attribute as a (literal, resource) pair.
+     */
+    private static void appendText(StringBuilder out, String value) {
+        if (value.startsWith("@")) {
+            out.append("null, ").append(resourceRef(value)).append(", ");
+        } else {
+            out.append(stringLiteral(unescapeText(value))).append(", 0, ");
+        }
+    }
+
+    /**
+     * Writes the default value as a (literal, resource) pair. References, like @bool/ values
+     * which differ per configuration, are resolved at runtime.
+     */
+    private static void appendDefaultValue(StringBuilder out, String value) {
+        if (value.startsWith("@")) {
+            out.append("false, ").append(resourceRef(value)).append(", ");
+        } else {
+            out.append(literalBoolean(value)).append(", 0, ");
+        }
+    }
+
+    /**
+     * Returns the value TypedArray.getBoolean() returns for a literal compiled by aapt.
+     */
+    private static boolean literalBoolean(String value) {
+        String trimmed = value.trim();
+        if (trimmed.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (trimmed.equalsIgnoreCase("false")) {
+            return false;
+        }
+        try {
+            return Integer.decode(trimmed) != 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Processes a string literal like aapt does: whitespace outside of double quotes is collapsed,
+     * the quotes are removed and backslash escapes are resolved.
+     */
+    private static String unescapeText(String value) {
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!quoted && Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (i + 4 < value.length()) {
+                            sb.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        }
+                        // Fall through for a truncated escape
+                    default: sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String resourceRef(String value) {
+        if (value.startsWith("@android:")) {
+            String[] parts = value.substring("@android:".length()).split("/");
+            return "android.R." + parts[0] + "." + parts[1];
+        }
+        if (value.startsWith("@") && value.contains("/")) {
+            String[] parts = value.substring(1).split("/");
+            return "R." + parts[0] + "." + parts[1].replace('.', '_');
+        }
+        return "0";
+    }
+
+    private static String controllerFactory(String controllerClass) {
+        if (controllerClass.isEmpty()) {
+            return "null";
+        }
+        String name = controllerClass.startsWith(".")
+                ? CONTROLLER_PACKAGE + controllerClass : controllerClass;
+        return name + "::new";
+    }
+
+    private static String stringLiteral(String value) {
+        if (value.isEmpty()) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String methodName(String xmlName) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : xmlName.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -31,6 +31,11 @@ open class LawnchairAppFilter(context: Context) : AppFilter() {
         hideList.add(ComponentName(context, LawnchairLauncher::class.java.name))
     }
 
+    /**
+     * Components which are never shown, regardless of the hidden apps set by the user.
+     */
+    val builtInHiddenApps: Set<ComponentName> get() = hideList
+
     override fun shouldShowApp(componentName: ComponentName?, user: UserHandle?): Boolean {
         return !hideList.contains(componentName) && super.shouldShowApp(componentName, user)
     }
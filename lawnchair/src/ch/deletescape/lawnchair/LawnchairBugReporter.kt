@@ -30,9 +30,11 @@ import ch.deletescape.lawnchair.bugreport.BugReportFileManager
 import ch.deletescape.lawnchair.util.extensions.e
 import com.android.launcher3.BuildConfig
 import com.android.launcher3.R
+import com.android.launcher3.util.PerfMetrics
 import java.io.ByteArrayOutputStream
 import java.io.File
 import java.io.PrintStream
+import java.io.PrintWriter
 import java.nio.charset.StandardCharsets
 import java.text.SimpleDateFormat
 import java.util.*
@@ -129,6 +131,11 @@ class LawnchairBugReporter(private val context: Context, private val crashHandle
             stream.println("version.sdk_int: ${Build.VERSION.SDK_INT}")
             stream.println()
             stream.println("error: $error")
+            stream.println()
+            PrintWriter(stream).apply {
+                PerfMetrics.getInstance().dump("", this)
+                flush()
+            }
             if (throwable != null) {
                 stream.println()
                 stream.println("--------- beginning of stacktrace")
@@ -67,6 +67,8 @@ class LawnchairIconLoader(private val context: Context, iconCache: TaskKeyLruCac
         }
 
         getAndUpdateActivityInfo(taskKey)?.let { activityInfo ->
+            // Apps in the launcher model already have a rendered icon, including icon packs
+            getCachedActivityIcon(activityInfo, userId)?.let { return it }
             Utilities.getIconForTask(context, userId, activityInfo.packageName)?.let { icon ->
                 getBadgedActivityIcon(icon, activityInfo, userId, desc)?.let {
                     return it
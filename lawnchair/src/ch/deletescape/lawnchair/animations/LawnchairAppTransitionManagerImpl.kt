@@ -271,6 +271,7 @@ class LawnchairAppTransitionManagerImpl(context: Context) : LauncherAppTransitio
         val targetMode = if (isExit) MODE_CLOSING else MODE_OPENING
 
         val matrix = Matrix()
+        val params = createSurfaceParams(targets.size)
 
         val surfaceApplier = SyncRtSurfaceTransactionApplier(
                 dragLayer)
@@ -310,7 +311,6 @@ class LawnchairAppTransitionManagerImpl(context: Context) : LauncherAppTransitio
             }
 
             override fun onUpdate(percent: Float) {
-                val params = arrayOfNulls<SyncRtSurfaceTransactionApplier.SurfaceParams>(targets.size)
                 for (i in (0 until targets.size).reversed()) {
                     val target = targets[i]
 
@@ -327,10 +327,10 @@ class LawnchairAppTransitionManagerImpl(context: Context) : LauncherAppTransitio
                         matrix.setTranslate(target.position.x.toFloat(), target.position.y.toFloat())
                     }
 
-                    params[i] = SyncRtSurfaceTransactionApplier.SurfaceParams(target.leash, alpha,
-                            matrix, targetCrop, RemoteAnimationProvider.getLayer(target, MODE_OPENING))
+                    params[i].set(target.leash, alpha, matrix, targetCrop,
+                            RemoteAnimationProvider.getLayer(target, MODE_OPENING))
                 }
-                surfaceApplier.scheduleApply(*params)
+                surfaceApplier.scheduleApply(params, params.size)
             }
         })
 
@@ -0,0 +1,99 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.backup
+
+import android.content.Context
+import android.net.Uri
+import android.os.ParcelFileDescriptor
+import android.util.Log
+import java.io.*
+import java.nio.charset.StandardCharsets
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+/**
+ * Random access reader for backup archives. Entries are looked up through the central directory
+ * of the zip file, so reading an entry never reads the bodies of the other entries.
+ */
+class BackupArchive private constructor(
+        private val zip: ZipFile, private val pfd: ParcelFileDescriptor?) : Closeable {
+
+    val entryNames: List<String> by lazy { zip.entries().toList().map { it.name } }
+
+    fun hasEntry(name: String) = zip.getEntry(name) != null
+
+    fun <T> readEntry(name: String, body: (InputStream) -> T): T? {
+        val entry = zip.getEntry(name) ?: return null
+        return zip.getInputStream(entry).use(body)
+    }
+
+    fun readText(name: String): String? {
+        return readEntry(name) { String(it.readBytes(), StandardCharsets.UTF_8) }
+    }
+
+    /**
+     * Copies the entry [name] to [target], returns false if there is no such entry.
+     */
+    fun extract(name: String, target: File): Boolean {
+        return readEntry(name) { input ->
+            FileOutputStream(target).use { input.copyTo(it, BUFFER_SIZE) }
+            true
+        } ?: false
+    }
+
+    override fun close() {
+        zip.close()
+        pfd?.close()
+    }
+
+    companion object {
+
+        private const val TAG = "BackupArchive"
+
+        const val BUFFER_SIZE = 8192
+
+        fun open(file: File) = BackupArchive(ZipFile(file), null)
+
+        /**
+         * Opens the archive behind [uri] for random access, or returns null if the provider
+         * doesn't hand out a seekable file, in which case the archive has to be streamed.
+         */
+        fun open(context: Context, uri: Uri): BackupArchive? {
+            val pfd = try {
+                context.contentResolver.openFileDescriptor(uri, "r")
+            } catch (e: FileNotFoundException) {
+                Log.e(TAG, "Unable to open $uri", e)
+                null
+            } ?: return null
+            return try {
+                BackupArchive(ZipFile(File("/proc/self/fd/${pfd.fd}")), pfd)
+            } catch (e: IOException) {
+                Log.d(TAG, "$uri is not seekable, falling back to streaming", e)
+                pfd.close()
+                null
+            }
+        }
+
+        fun putEntry(out: ZipOutputStream, name: String, input: InputStream) {
+            out.putNextEntry(ZipEntry(name))
+            input.copyTo(out, BUFFER_SIZE)
+            out.closeEntry()
+        }
+    }
+}
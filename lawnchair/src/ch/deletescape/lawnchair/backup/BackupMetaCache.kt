@@ -0,0 +1,104 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.backup
+
+import android.content.Context
+import android.net.Uri
+import ch.deletescape.lawnchair.useApplicationContext
+import ch.deletescape.lawnchair.util.AtomicJSONFile
+import ch.deletescape.lawnchair.util.SingletonHolder
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+
+/**
+ * Small summary of the metadata of known backups, so that listing backups doesn't need to open
+ * every archive. Entries are keyed by uri and only used while the size and modification time of
+ * the backup are unchanged.
+ */
+class BackupMetaCache(context: Context) {
+
+    private val summaryFile = AtomicJSONFile(File(context.cacheDir, SUMMARY_FILE_NAME),
+            "backup summary", ::serialize)
+
+    private val entries = HashMap<String, Entry>()
+    private var loaded = false
+
+    @Synchronized
+    fun get(uri: Uri, length: Long, lastModified: Long): LawnchairBackup.Meta? {
+        ensureLoaded()
+        val entry = entries[uri.toString()] ?: return null
+        if (entry.length != length || entry.lastModified != lastModified) return null
+        return try {
+            LawnchairBackup.Meta.fromString(entry.meta)
+        } catch (e: JSONException) {
+            null
+        }
+    }
+
+    @Synchronized
+    fun put(uri: Uri, length: Long, lastModified: Long, meta: LawnchairBackup.Meta) {
+        ensureLoaded()
+        entries[uri.toString()] = Entry(length, lastModified, meta.toString())
+        summaryFile.scheduleWrite()
+    }
+
+    @Synchronized
+    fun remove(uri: Uri) {
+        ensureLoaded()
+        if (entries.remove(uri.toString()) != null) {
+            summaryFile.scheduleWrite()
+        }
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        summaryFile.read { obj ->
+            obj.keys().forEach { uri ->
+                val entry = obj.getJSONObject(uri)
+                entries[uri] = Entry(entry.getLong(KEY_LENGTH), entry.getLong(KEY_LAST_MODIFIED),
+                        entry.getString(KEY_META))
+            }
+        }
+    }
+
+    @Synchronized
+    private fun serialize(): JSONObject {
+        val obj = JSONObject()
+        entries.forEach { (uri, entry) ->
+            obj.put(uri, JSONObject().apply {
+                put(KEY_LENGTH, entry.length)
+                put(KEY_LAST_MODIFIED, entry.lastModified)
+                put(KEY_META, entry.meta)
+            })
+        }
+        return obj
+    }
+
+    private class Entry(val length: Long, val lastModified: Long, val meta: String)
+
+    companion object : SingletonHolder<BackupMetaCache, Context>(useApplicationContext(::BackupMetaCache)) {
+
+        private const val SUMMARY_FILE_NAME = "backup_summary.json"
+
+        private const val KEY_LENGTH = "length"
+        private const val KEY_LAST_MODIFIED = "lastModified"
+        private const val KEY_META = "meta"
+    }
+}
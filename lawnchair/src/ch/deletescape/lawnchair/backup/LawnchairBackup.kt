@@ -26,6 +26,7 @@ import android.graphics.BitmapFactory
 import android.net.Uri
 import android.os.AsyncTask
 import android.os.Environment
+import android.system.Os
 import android.support.v4.content.FileProvider
 import android.util.Log
 import ch.deletescape.lawnchair.LawnchairLauncher
@@ -41,43 +42,111 @@ import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
 import java.util.zip.ZipOutputStream
 
-class LawnchairBackup(val context: Context, val uri: Uri) {
+class LawnchairBackup @JvmOverloads constructor(val context: Context, val uri: Uri, private val file: File? = null) {
 
     val meta by lazy { readMeta() }
 
     private fun readMeta(): Meta? {
-        var entry: ZipEntry?
+        val cache = BackupMetaCache.getInstance(context)
+        val state = readFileState()
+        if (state != null) {
+            cache.get(uri, state.first, state.second)?.let { return it }
+        }
+
         var meta: Meta? = null
-        readZip { zipIs ->
-            while (true) {
-                entry = zipIs.nextEntry
-                if (entry == null) break
-                if (entry!!.name != Meta.FILE_NAME) continue
-                meta = Meta.fromString(String(zipIs.readBytes(), StandardCharsets.UTF_8))
-                break
+        if (!withArchive { archive -> meta = archive.readText(Meta.FILE_NAME)?.let { Meta.fromString(it) } }) {
+            readZip { zipIs ->
+                while (true) {
+                    val entry = zipIs.nextEntry ?: break
+                    if (entry.name != Meta.FILE_NAME) continue
+                    meta = Meta.fromString(String(zipIs.readBytes(), StandardCharsets.UTF_8))
+                    break
+                }
             }
         }
+        if (state != null && meta != null) {
+            cache.put(uri, state.first, state.second, meta!!)
+        }
         return meta
     }
 
+    /**
+     * Returns the size and modification time of the backup, which are used to validate the
+     * cached metadata.
+     */
+    private fun readFileState(): Pair<Long, Long>? {
+        if (file != null) {
+            return if (file.exists()) Pair(file.length(), file.lastModified()) else null
+        }
+        return try {
+            context.contentResolver.openFileDescriptor(uri, "r")?.use { pfd ->
+                val stat = Os.fstat(pfd.fileDescriptor)
+                Pair(stat.st_size, stat.st_mtime)
+            }
+        } catch (t: Throwable) {
+            Log.e(TAG, "Unable to stat $uri", t)
+            null
+        }
+    }
+
     private fun readPreview(): Pair<Bitmap?, Bitmap?>? {
-        var entry: ZipEntry?
         var screenshot: Bitmap? = null
         var wallpaper: Bitmap? = null
-        readZip { zipIs ->
-            while (true) {
-                entry = zipIs.nextEntry
-                if (entry == null) break
-                if (entry!!.name == "screenshot.png") {
-                    screenshot = BitmapFactory.decodeStream(zipIs)
-                } else if (entry!!.name == WALLPAPER_FILE_NAME) {
-                    wallpaper = BitmapFactory.decodeStream(zipIs)
+        if (!withArchive { archive ->
+                    screenshot = decodePreview(archive, SCREENSHOT_FILE_NAME)
+                    wallpaper = decodePreview(archive, WALLPAPER_FILE_NAME)
+                }) {
+            readZip { zipIs ->
+                while (true) {
+                    val entry = zipIs.nextEntry ?: break
+                    if (entry.name == SCREENSHOT_FILE_NAME) {
+                        screenshot = BitmapFactory.decodeStream(zipIs)
+                    } else if (entry.name == WALLPAPER_FILE_NAME) {
+                        wallpaper = BitmapFactory.decodeStream(zipIs)
+                    }
                 }
             }
         }
         if (screenshot == wallpaper) return null // both are null
-        return Pair(Utilities.getScaledDownBitmap(screenshot, 1000, false),
-                Utilities.getScaledDownBitmap(wallpaper, 1000, false))
+        return Pair(Utilities.getScaledDownBitmap(screenshot, PREVIEW_SIZE, false),
+                Utilities.getScaledDownBitmap(wallpaper, PREVIEW_SIZE, false))
+    }
+
+    /**
+     * Decodes the image stored in [name] subsampled close to the preview size, so that large
+     * wallpapers are never decoded at full resolution.
+     */
+    private fun decodePreview(archive: BackupArchive, name: String): Bitmap? {
+        val opts = BitmapFactory.Options()
+        opts.inJustDecodeBounds = true
+        archive.readEntry(name) { BitmapFactory.decodeStream(it, null, opts) } ?: return null
+        opts.inJustDecodeBounds = false
+        opts.inSampleSize = 1
+        while (Math.max(opts.outWidth, opts.outHeight) / (opts.inSampleSize * 2) >= PREVIEW_SIZE) {
+            opts.inSampleSize *= 2
+        }
+        return archive.readEntry(name) { BitmapFactory.decodeStream(it, null, opts) }
+    }
+
+    /**
+     * Runs [body] with random access to the archive, returns false if the archive has to be
+     * streamed instead.
+     */
+    private inline fun withArchive(body: (BackupArchive) -> Unit): Boolean {
+        val archive = try {
+            if (file != null) BackupArchive.open(file) else BackupArchive.open(context, uri)
+        } catch (t: Throwable) {
+            Log.e(TAG, "Unable to open zip for $uri", t)
+            null
+        } ?: return false
+        try {
+            body(archive)
+        } catch (t: Throwable) {
+            Log.e(TAG, "Unable to read zip for $uri", t)
+        } finally {
+            archive.close()
+        }
+        return true
     }
 
     private inline fun readZip(body: (ZipInputStream) -> Unit) {
@@ -106,10 +175,40 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
             val dir = contextWrapper.cacheDir.parent
             val settingsFile = File(dir, "shared_prefs/" + LauncherFiles.SHARED_PREFERENCES_KEY + ".xml")
 
+            var success = false
+            if (withArchive { archive ->
+                        if (contents and INCLUDE_HOMESCREEN != 0 && archive.hasEntry(dbFile.name)) {
+                            context.deleteDatabase(dbFile.path)
+                            Log.d(TAG, "Restoring ${dbFile.name} to ${dbFile.absolutePath}")
+                            archive.extract(dbFile.name, dbFile)
+                        }
+                        if (contents and INCLUDE_SETTINGS != 0) {
+                            archive.entryNames.firstOrNull { it.endsWith("_preferences.xml") }?.let {
+                                Log.d(TAG, "Restoring $it to ${settingsFile.absolutePath}")
+                                archive.extract(it, settingsFile)
+                            }
+                        }
+                        if (contents and INCLUDE_WALLPAPER != 0) {
+                            archive.readEntry(WALLPAPER_FILE_NAME) {
+                                WallpaperManager.getInstance(context).setStream(it)
+                            }
+                        }
+                        success = true
+                    }) {
+                return success
+            }
+            return restoreFromStream(contents, dbFile, settingsFile)
+        } catch (t: Throwable) {
+            Log.e(TAG, "Failed to restore $uri", t)
+            return false
+        }
+    }
+
+    private fun restoreFromStream(contents: Int, dbFile: File, settingsFile: File): Boolean {
+        try {
             val pfd = context.contentResolver.openFileDescriptor(uri, "r")
             val inStream = FileInputStream(pfd.fileDescriptor)
             val zipIs = ZipInputStream(inStream)
-            val data = ByteArray(BUFFER)
             var entry: ZipEntry?
             var success = false
             try {
@@ -127,20 +226,13 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
                     } else if (entry.name == WALLPAPER_FILE_NAME) {
                         if (contents and INCLUDE_WALLPAPER == 0) continue
                         val wallpaperManager = WallpaperManager.getInstance(context)
-                        wallpaperManager.setBitmap(BitmapFactory.decodeStream(zipIs))
+                        wallpaperManager.setStream(zipIs)
                         continue
                     } else {
                         continue
                     }
-                    val out = FileOutputStream(file)
                     Log.d(TAG, "Restoring ${entry.name} to ${file.absolutePath}")
-                    var count: Int
-                    while (true) {
-                        count = zipIs.read(data, 0, BUFFER)
-                        if (count == -1) break
-                        out.write(data, 0, count)
-                    }
-                    out.close()
+                    FileOutputStream(file).use { zipIs.copyTo(it, BackupArchive.BUFFER_SIZE) }
                 }
                 success = true
             } catch (t: Throwable) {
@@ -158,6 +250,7 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
     }
 
     fun delete(): Boolean {
+        BackupMetaCache.getInstance(context).remove(uri)
         return context.contentResolver.delete(uri, null, null) != 0
     }
 
@@ -254,13 +347,14 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
         const val INCLUDE_WALLPAPER = 1 shl 2
         const val INCLUDE_SCREENSHOT = 1 shl 3
 
-        const val BUFFER = 2018
-
         const val EXTENSION = "shed"
         const val MIME_TYPE = "application/vnd.lawnchair.backup"
         val EXTRA_MIME_TYPES = arrayOf(MIME_TYPE, "application/x-zip", "application/octet-stream")
 
         const val WALLPAPER_FILE_NAME = "wallpaper.png"
+        const val SCREENSHOT_FILE_NAME = "screenshot.png"
+
+        private const val PREVIEW_SIZE = 1000
 
         val timestampFormat = SimpleDateFormat("dd-MM-yyyy HH:mm:ss", Locale.US)
 
@@ -276,8 +370,7 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
         fun listLocalBackups(context: Context): List<LawnchairBackup> {
             return getFolder().listFiles { file -> file.extension == EXTENSION }
                     ?.sortedByDescending { it.lastModified() }
-                    ?.map { FileProvider.getUriForFile(context, "${BuildConfig.APPLICATION_ID}.provider", it) }
-                    ?.map { LawnchairBackup(context, it) }
+                    ?.map { LawnchairBackup(context, FileProvider.getUriForFile(context, "${BuildConfig.APPLICATION_ID}.provider", it), it) }
                     ?: Collections.emptyList()
         }
 
@@ -311,7 +404,7 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
             val includeScreenshot: Boolean
 
             if (prefs.backupScreenshot) {
-                val screenshotFile = File(context.filesDir, "tmp/screenshot.png")
+                val screenshotFile = File(context.filesDir, "tmp/$SCREENSHOT_FILE_NAME")
                 if (screenshotFile.exists()) screenshotFile.delete()
                 LawnchairLauncher.takeScreenshotSync(context)
                 includeScreenshot = screenshotFile.exists()
@@ -325,34 +418,24 @@ class LawnchairBackup(val context: Context, val uri: Uri) {
             val pfd = context.contentResolver.openFileDescriptor(location, "w")
             val outStream = FileOutputStream(pfd.fileDescriptor)
             val out = ZipOutputStream(BufferedOutputStream(outStream))
-            val data = ByteArray(BUFFER)
             var exception: Exception? = null
             try {
-                val metaEntry = ZipEntry(Meta.FILE_NAME)
-                out.putNextEntry(metaEntry)
                 val actualContents = if (includeScreenshot) contents or INCLUDE_SCREENSHOT else contents
-                out.write(getMeta(name, actualContents).toString().toByteArray())
+                BackupArchive.putEntry(out, Meta.FILE_NAME,
+                        getMeta(name, actualContents).toString().byteInputStream())
                 if (contents and INCLUDE_WALLPAPER != 0) {
                     val wallpaperManager = WallpaperManager.getInstance(context)
                     val wallpaperDrawable = wallpaperManager.drawable
                     val wallpaperBitmap = Utilities.drawableToBitmap(wallpaperDrawable)
                     if (wallpaperBitmap != null) {
-                        val wallpaperEntry = ZipEntry(WALLPAPER_FILE_NAME)
-                        out.putNextEntry(wallpaperEntry)
+                        // Compressed straight into the archive, without an intermediate buffer
+                        out.putNextEntry(ZipEntry(WALLPAPER_FILE_NAME))
                         wallpaperBitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+                        out.closeEntry()
                     }
                 }
                 files.forEach { file ->
-                    val input = BufferedInputStream(FileInputStream(file), BUFFER)
-                    val entry = ZipEntry(file.name)
-                    out.putNextEntry(entry)
-                    var count: Int
-                    while (true) {
-                        count = input.read(data, 0, BUFFER)
-                        if (count == -1) break
-                        out.write(data, 0, count)
-                    }
-                    input.close()
+                    FileInputStream(file).use { BackupArchive.putEntry(out, file.name, it) }
                 }
             } catch (e: Exception) {
                 exception = e
@@ -20,7 +20,9 @@ package ch.deletescape.lawnchair.colors
 import android.content.Context
 import android.content.SharedPreferences
 import android.graphics.Color.*
+import android.support.annotation.VisibleForTesting
 import android.text.TextUtils
+import android.view.Choreographer
 import ch.deletescape.lawnchair.*
 import ch.deletescape.lawnchair.colors.resolvers.*
 import ch.deletescape.lawnchair.theme.ThemeOverride
@@ -28,32 +30,75 @@ import ch.deletescape.lawnchair.util.SingletonHolder
 import ch.deletescape.lawnchair.util.ThemedContextProvider
 import ch.deletescape.lawnchair.util.extensions.d
 import com.android.launcher3.Utilities
-import java.lang.reflect.Constructor
 
-class ColorEngine private constructor(val context: Context) : LawnchairPreferences.OnPreferenceChangeListener {
+/**
+ * Resolves the colors set in preferences and notifies listeners when they change.
+ *
+ * Changes are collected and dispatched once per frame: each changed key is resolved once and
+ * every listener of that key is notified once, however often the key changed during the frame.
+ */
+class ColorEngine @VisibleForTesting internal constructor(
+        val context: Context, private val registry: ColorResolverRegistry) {
+
+    private constructor(context: Context) : this(context, ColorResolverRegistry.DEFAULT)
 
     private val prefs by lazy { Utilities.getLawnchairPrefs(context) }
     private val colorListeners = mutableMapOf<String, MutableSet<OnColorChangeListener>>()
 
     private val resolverCache = mutableMapOf<String, ResolverCache>()
-    private val constructorCache = mutableMapOf<String, Constructor<*>>()
+
+    private val pendingChanges = LinkedHashSet<String>()
+    private var dispatchScheduled = false
+    private val dispatchCallback = Choreographer.FrameCallback { dispatchChanges() }
 
     private var _accentResolver = getResolverCache(Resolvers.ACCENT)
     val accentResolver get() = _accentResolver.value
     val accent get() = accentResolver.resolveColor()
     val accentForeground get() = accentResolver.computeForegroundColor()
 
-    override fun onValueChanged(key: String, prefs: LawnchairPreferences, force: Boolean) {
-        if (!force) {
-            onColorChanged(key, getResolver(key))
+    @Suppress("UNUSED_PARAMETER")
+    private fun onColorChanged(key: String, colorResolver: ColorResolver) {
+        onColorChanged(key)
+    }
+
+    private fun onColorChanged(key: String) {
+        synchronized(pendingChanges) {
+            pendingChanges.add(key)
+            if (dispatchScheduled) return
+            dispatchScheduled = true
         }
+        runOnMainThread { Choreographer.getInstance().postFrameCallback(dispatchCallback) }
     }
 
-    private fun onColorChanged(key: String, colorResolver: ColorResolver) {
-        synchronized(colorListeners) {
-            runOnMainThread {
-                colorListeners[key]?.forEach { it.onColorChange(ResolveInfo(key, colorResolver)) }
+    private fun dispatchChanges() {
+        // Keys changed by the listeners of other keys are dispatched in the same frame, but each
+        // key only once to avoid loops
+        val dispatched = HashSet<String>()
+        var key = nextPendingChange(dispatched)
+        while (key != null) {
+            dispatched.add(key)
+            val listeners = colorListeners[key]?.toList()
+            if (listeners != null && listeners.isNotEmpty()) {
+                val resolveInfo = ResolveInfo(key, getResolver(key))
+                listeners.forEach { it.onColorChange(resolveInfo) }
             }
+            key = nextPendingChange(dispatched)
+        }
+
+        val reschedule = synchronized(pendingChanges) {
+            dispatchScheduled = pendingChanges.isNotEmpty()
+            dispatchScheduled
+        }
+        if (reschedule) {
+            Choreographer.getInstance().postFrameCallback(dispatchCallback)
+        }
+    }
+
+    private fun nextPendingChange(skip: Set<String>): String? {
+        synchronized(pendingChanges) {
+            val key = pendingChanges.firstOrNull { it !in skip } ?: return null
+            pendingChanges.remove(key)
+            return key
         }
     }
 
@@ -64,7 +109,6 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
         for (key in keys) {
             if (colorListeners[key] == null) {
                 colorListeners[key] = createWeakSet()
-                prefs.addOnPreferenceChangeListener(this, key)
             }
             colorListeners[key]?.add(listener)
             listener.onColorChange(ResolveInfo(key, getResolver(key)))
@@ -77,7 +121,6 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
             colorListeners[key]?.remove(listener)
             if (colorListeners[key]?.isEmpty() == true) {
                 colorListeners.remove(key)
-                prefs.removeOnPreferenceChangeListener(key, this)
             }
         }
     }
@@ -94,13 +137,10 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
             val className = parts[0]
             val args = if (parts.size > 1) parts.subList(1, parts.size) else emptyList()
 
-            val constructor = constructorCache.getOrPut(className) {
-                Class.forName(className).getConstructor(ColorResolver.Config::class.java)
-            }
-            resolver = constructor.newInstance(ColorResolver.Config(key, this, ::onColorChanged, args)) as ColorResolver
+            resolver = registry.create(className,
+                    ColorResolver.Config(key, this, ::onColorChanged, args))
         } catch (e: IllegalStateException) {
-        } catch (e: ClassNotFoundException) {
-        } catch (e: InstantiationException) {
+        } catch (e: IllegalArgumentException) {
         }
         return resolver
     }
@@ -128,7 +168,7 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
         }
     }
 
-    companion object : SingletonHolder<ColorEngine, Context>(ensureOnMainThread(useApplicationContext(::ColorEngine))) {
+    companion object : SingletonHolder<ColorEngine, Context>(ensureOnMainThread(useApplicationContext { ColorEngine(it) })) {
         @JvmStatic
         override fun getInstance(arg: Context) = super.getInstance(arg)
 
@@ -204,7 +244,7 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
         }
     }
 
-    class ResolverCache(private val engine: ColorEngine, key: String)
+    class ResolverCache(private val engine: ColorEngine, private val key: String)
         : LawnchairPreferences.OnPreferenceChangeListener {
 
         private var currentValue: ColorResolver? = null
@@ -215,8 +255,17 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
                     field?.startListening()
                 }
             }
-
-        val value get() = currentValue!!
+        private var outdated = false
+
+        // Resolvers are only created again when they are used, so that a key which changes
+        // several times before the next dispatch is only resolved once
+        val value: ColorResolver get() {
+            if (outdated) {
+                outdated = false
+                currentValue = engine.createColorResolver(key, prefValue)
+            }
+            return currentValue!!
+        }
 
         private var prefValue by engine.context.lawnchairPrefs.StringPref(key, "")
 
@@ -225,9 +274,11 @@ class ColorEngine private constructor(val context: Context) : LawnchairPreferenc
         }
 
         override fun onValueChanged(key: String, prefs: LawnchairPreferences, force: Boolean) {
-            currentValue = engine.createColorResolver(key, prefValue)
-            if (!force) {
-                engine.onColorChanged(key, currentValue!!)
+            if (force) {
+                currentValue = engine.createColorResolver(key, prefValue)
+            } else {
+                outdated = true
+                engine.onColorChanged(key)
             }
         }
 
@@ -0,0 +1,78 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.colors
+
+import android.support.annotation.VisibleForTesting
+import ch.deletescape.lawnchair.colors.ColorEngine.ColorResolver
+import ch.deletescape.lawnchair.colors.resolvers.*
+
+typealias ColorResolverFactory = (ColorResolver.Config) -> ColorResolver
+
+/**
+ * Table of the color resolvers which can be stored in preferences, keyed by class name, so that
+ * resolvers are created without reflection.
+ */
+class ColorResolverRegistry private constructor(
+        private val factories: Map<String, ColorResolverFactory>) {
+
+    val classNames: Set<String> get() = factories.keys
+
+    /**
+     * Creates the resolver registered as [className], or returns null if there's none.
+     */
+    fun create(className: String, config: ColorResolver.Config): ColorResolver? {
+        return factories[className]?.invoke(config)
+    }
+
+    /**
+     * Returns a registry with the resolvers of this one, and [factory] registered as [className].
+     */
+    @VisibleForTesting
+    fun with(className: String, factory: ColorResolverFactory): ColorResolverRegistry {
+        return ColorResolverRegistry(factories + (className to factory))
+    }
+
+    companion object {
+
+        @JvmField
+        val DEFAULT = ColorResolverRegistry(HashMap<String, ColorResolverFactory>().apply {
+            register(::LawnchairAccentResolver)
+            register(::SystemAccentResolver)
+            register(::PixelAccentResolver)
+            register(::RGBColorResolver)
+            register(::ARGBColorResolver)
+            register(::WallpaperMainColorResolver)
+            register(::WallpaperSecondaryColorResolver)
+            register(::WallpaperTertiaryColorResolver)
+            register(::DrawerQsbAutoResolver)
+            register(::DrawerQsbLightResolver)
+            register(::DrawerQsbDarkResolver)
+            register(::ShelfBackgroundAutoResolver)
+            register(::SuperGAutoResolver)
+            register(::SuperGLightResolver)
+            register(::SuperGDarkResolver)
+            register(::DrawerLabelAutoResolver)
+            register(::WorkspaceLabelAutoResolver)
+        })
+
+        private inline fun <reified T : ColorResolver> MutableMap<String, ColorResolverFactory>.register(
+                noinline factory: (ColorResolver.Config) -> T) {
+            put(T::class.java.name, factory)
+        }
+    }
+}
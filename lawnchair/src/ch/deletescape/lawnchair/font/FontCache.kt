@@ -18,26 +18,30 @@
 package ch.deletescape.lawnchair.font
 
 import android.content.Context
+import android.content.pm.PackageManager
 import android.content.res.AssetManager
 import android.graphics.Typeface
 import android.net.Uri
 import android.support.annotation.Keep
 import android.support.v4.provider.FontRequest
 import android.support.v4.provider.FontsContractCompat
+import android.util.LruCache
 import ch.deletescape.lawnchair.ensureOnMainThread
 import ch.deletescape.lawnchair.font.googlefonts.GoogleFontsListing
-import ch.deletescape.lawnchair.uiWorkerHandler
+import ch.deletescape.lawnchair.runOnUiWorkerThread
 import ch.deletescape.lawnchair.useApplicationContext
 import ch.deletescape.lawnchair.util.SingletonHolder
 import com.android.launcher3.R
 import org.json.JSONArray
 import org.json.JSONObject
 import java.io.File
+import java.io.IOException
 import java.lang.Exception
 
 class FontCache(private val context: Context) {
 
-    private val fontLoaders = HashMap<Font, FontLoader>()
+    private val inFlightLoaders = HashMap<Font, FontLoader>()
+    private val fontLoaders = LruCache<Font, FontLoader>(MAX_CACHED_FONTS)
     private val weightNameMap: Map<String, String> = mapOf(
             Pair("100", R.string.font_weight_thin),
             Pair("200", R.string.font_weight_extra_light),
@@ -50,8 +54,27 @@ class FontCache(private val context: Context) {
             Pair("900", R.string.font_weight_extra_black)
     ).mapValues { context.getString(it.value) }
 
+    /**
+     * Returns a loader for [font]. Concurrent requests for the same font share a single loader,
+     * and loaded fonts are kept in a bounded cache.
+     */
     fun loadFont(font: Font): FontLoader {
-        return fontLoaders.getOrPut(font) { FontLoader(font) }
+        fontLoaders.get(font)?.let { return it }
+        inFlightLoaders[font]?.let { return it }
+
+        val loader = FontLoader(font, ::onFontLoaded)
+        if (loader.isLoaded) {
+            fontLoaders.put(font, loader)
+        } else {
+            inFlightLoaders[font] = loader
+        }
+        return loader
+    }
+
+    private fun onFontLoaded(loader: FontLoader) {
+        if (inFlightLoaders.remove(loader.font) != null) {
+            fontLoaders.put(loader.font, loader)
+        }
     }
 
     class Family(val displayName: String, val variants: Map<String, Font>) {
@@ -141,15 +164,26 @@ class FontCache(private val context: Context) {
         }
     }
 
-    class TTFFont(context: Context, private val file: File) :
-            TypefaceFont(createTypeface(file)) {
+    class TTFFont(context: Context, private val file: File) : Font() {
 
+        private val index = FontIndex.getInstance(context)
         private val actualName: String = Uri.decode(file.name)
-        override val isAvailable = typeface != null
-        override val fullDisplayName: String = if (typeface == null)
+        // Fonts which were never loaded are considered available while they load
+        override val isAvailable get() = index.isFontFileValid(file)
+        override val fullDisplayName: String = if (!isAvailable)
             context.getString(R.string.pref_fonts_missing_font) else actualName
+        override val displayName get() = fullDisplayName
+
+        override fun load(callback: LoadCallback) {
+            runOnUiWorkerThread {
+                callback.onFontLoaded(index.loadFontFile(file))
+            }
+        }
 
-        fun delete() = file.delete()
+        fun delete(): Boolean {
+            index.removeFontFile(file)
+            return file.delete()
+        }
 
         override fun saveToJson(obj: JSONObject) {
             super.saveToJson(obj)
@@ -231,12 +265,19 @@ class FontCache(private val context: Context) {
     }
 
     class AssetFont(
-            assets: AssetManager,
-            private val name: String) : TypefaceFont(Typeface.createFromAsset(assets, "$name.ttf")) {
+            private val assets: AssetManager,
+            private val name: String) : Font() {
 
         private val hashCode = "AssetFont|$name".hashCode()
 
         override val fullDisplayName = name
+        override val displayName get() = fullDisplayName
+
+        override fun load(callback: LoadCallback) {
+            runOnUiWorkerThread {
+                callback.onFontLoaded(Typeface.createFromAsset(assets, "$name.ttf"))
+            }
+        }
 
         override fun equals(other: Any?): Boolean {
             return other is AssetFont && name == other.name
@@ -253,7 +294,8 @@ class FontCache(private val context: Context) {
             private val variant: String = "regular",
             private val variants: Array<String> = emptyArray()) : Font() {
 
-        private val hashCode = "GoogleFont|$family|$variant".hashCode()
+        private val key = "GoogleFont|$family|$variant"
+        private val hashCode = key.hashCode()
 
         override val displayName = createVariantName()
         override val fullDisplayName = "$family $displayName"
@@ -269,22 +311,45 @@ class FontCache(private val context: Context) {
         }
 
         override fun load(callback: LoadCallback) {
+            // retrieve font in the background
+            runOnUiWorkerThread {
+                callback.onFontLoaded(loadTypeface())
+            }
+        }
+
+        private fun loadTypeface(): Typeface? {
+            val index = FontIndex.getInstance(context)
+            index.getCachedFont(key)?.let { file ->
+                TTFFont.createTypeface(file)?.let { return it }
+            }
+
             val request = FontRequest(
                     "com.google.android.gms.fonts", // ProviderAuthority
                     "com.google.android.gms",  // ProviderPackage
                     GoogleFontsListing.buildQuery(family, variant),  // Query
                     R.array.com_google_android_gms_fonts_certs)
-
-            // retrieve font in the background
-            FontsContractCompat.requestFont(context, request, object : FontsContractCompat.FontRequestCallback() {
-                override fun onTypefaceRetrieved(typeface: Typeface) {
-                    callback.onFontLoaded(typeface)
-                }
-
-                override fun onTypefaceRequestFailed(reason: Int) {
-                    callback.onFontLoaded(null)
+            val result = try {
+                FontsContractCompat.fetchFonts(context, null, request)
+            } catch (e: PackageManager.NameNotFoundException) {
+                return null
+            }
+            if (result.statusCode != FontsContractCompat.FontFamilyResult.STATUS_OK) return null
+            val info = result.fonts.firstOrNull {
+                it.resultCode == FontsContractCompat.Columns.RESULT_CODE_OK
+            } ?: return null
+
+            // Keep a local copy so that the next cold start doesn't need the provider
+            val file = try {
+                context.contentResolver.openInputStream(info.uri)?.use {
+                    index.putCachedFont(key, it)
                 }
-            }, uiWorkerHandler)
+            } catch (e: IOException) {
+                null
+            } catch (e: SecurityException) {
+                null
+            }
+            return file?.let { TTFFont.createTypeface(it) }
+                    ?: FontsContractCompat.buildTypeface(context, null, arrayOf(info))
         }
 
         override fun saveToJson(obj: JSONObject) {
@@ -355,6 +420,8 @@ class FontCache(private val context: Context) {
     companion object : SingletonHolder<FontCache, Context>(ensureOnMainThread(
             useApplicationContext(::FontCache))) {
 
+        private const val MAX_CACHED_FONTS = 16
+
         private const val KEY_CLASS_NAME = "className"
         private const val KEY_FAMILY_NAME = "family"
         private const val KEY_STYLE = "style"
@@ -0,0 +1,207 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.font
+
+import android.content.Context
+import android.graphics.Typeface
+import android.net.Uri
+import android.support.annotation.VisibleForTesting
+import android.util.Log
+import ch.deletescape.lawnchair.uiWorkerHandler
+import ch.deletescape.lawnchair.useApplicationContext
+import ch.deletescape.lawnchair.util.AtomicJSONFile
+import ch.deletescape.lawnchair.util.SingletonHolder
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Persistent index of previously resolved fonts. It remembers whether custom font files could
+ * be parsed, so that listing them doesn't require creating a typeface, and keeps local copies of
+ * downloaded fonts so that they can be loaded without going through the font provider again.
+ *
+ * The index is read on the ui worker thread as soon as it is created.
+ */
+class FontIndex @VisibleForTesting internal constructor(
+        private val context: Context, private val parseFont: (File) -> Typeface?) {
+
+    constructor(context: Context) : this(context, FontCache.TTFFont.Companion::createTypeface)
+
+    private val indexFile = AtomicJSONFile(File(context.filesDir, INDEX_FILE_NAME),
+            "font index", ::serialize)
+    private val cacheDir = File(context.cacheDir, CACHE_DIR_NAME)
+
+    private val fileStates = HashMap<String, FileState>()
+    private val cachedFonts = HashMap<String, String>()
+    private var loaded = false
+
+    // Names of the font files which couldn't be parsed, read without locking from the UI thread
+    @Volatile
+    private var invalidFiles = emptySet<String>()
+
+    init {
+        uiWorkerHandler.post { synchronized(this) { ensureLoaded() } }
+    }
+
+    /**
+     * Returns false if the font file couldn't be parsed when it was last loaded. Files are
+     * considered valid until the index is loaded. This neither reads the index nor accesses the
+     * file, so it can be called on the UI thread.
+     */
+    fun isFontFileValid(file: File) = file.name !in invalidFiles
+
+    /**
+     * Creates the typeface of the font file and remembers whether it could be parsed. Files
+     * which are known to be invalid and unchanged aren't parsed again. This should be called on
+     * a worker thread.
+     */
+    fun loadFontFile(file: File): Typeface? {
+        synchronized(this) {
+            ensureLoaded()
+            val state = fileStates[file.name]
+            if (state != null && !state.valid && state.matches(file)) return null
+        }
+
+        val typeface = if (file.exists()) parseFont(file) else null
+        synchronized(this) {
+            val state = fileStates[file.name]
+            val valid = typeface != null
+            if (state == null || !state.matches(file) || state.valid != valid) {
+                fileStates[file.name] = FileState(file.length(), file.lastModified(), valid)
+                updateInvalidFiles()
+                indexFile.scheduleWrite()
+            }
+        }
+        return typeface
+    }
+
+    fun removeFontFile(file: File) {
+        uiWorkerHandler.post {
+            synchronized(this) {
+                ensureLoaded()
+                if (fileStates.remove(file.name) != null) {
+                    updateInvalidFiles()
+                    indexFile.scheduleWrite()
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the local copy of the font stored for [key], or null if there is none.
+     */
+    @Synchronized
+    fun getCachedFont(key: String): File? {
+        ensureLoaded()
+        val name = cachedFonts[key] ?: return null
+        val file = File(cacheDir, name)
+        if (file.exists()) return file
+
+        cachedFonts.remove(key)
+        indexFile.scheduleWrite()
+        return null
+    }
+
+    /**
+     * Stores a local copy of the font read from [input] for [key].
+     */
+    fun putCachedFont(key: String, input: InputStream): File? {
+        val file = File(cacheDir, Uri.encode(key))
+        try {
+            cacheDir.mkdirs()
+            file.outputStream().use { input.copyTo(it) }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to cache font $key", e)
+            file.delete()
+            return null
+        }
+        synchronized(this) {
+            ensureLoaded()
+            cachedFonts[key] = file.name
+            indexFile.scheduleWrite()
+        }
+        return file
+    }
+
+    private fun ensureLoaded() {
+        if (loaded) return
+        loaded = true
+        indexFile.read { obj ->
+            obj.optJSONObject(KEY_FILES)?.let { files ->
+                files.keys().forEach { name ->
+                    val state = files.getJSONObject(name)
+                    fileStates[name] = FileState(state.getLong(KEY_LENGTH),
+                            state.getLong(KEY_LAST_MODIFIED), state.getBoolean(KEY_VALID))
+                }
+            }
+            obj.optJSONObject(KEY_CACHED)?.let { cached ->
+                cached.keys().forEach { key -> cachedFonts[key] = cached.getString(key) }
+            }
+        }
+
+        // Forget the files which changed since they were loaded
+        val fontsDir = FontCache.TTFFont.getFontsDir(context)
+        if (fileStates.entries.removeAll { (name, state) -> !state.matches(File(fontsDir, name)) }) {
+            indexFile.scheduleWrite()
+        }
+        updateInvalidFiles()
+    }
+
+    private fun updateInvalidFiles() {
+        invalidFiles = fileStates.filterValues { !it.valid }.keys.toSet()
+    }
+
+    @Synchronized
+    private fun serialize(): JSONObject {
+        val files = JSONObject()
+        fileStates.forEach { (name, state) ->
+            files.put(name, JSONObject().apply {
+                put(KEY_LENGTH, state.length)
+                put(KEY_LAST_MODIFIED, state.lastModified)
+                put(KEY_VALID, state.valid)
+            })
+        }
+        val cached = JSONObject()
+        cachedFonts.forEach { (key, name) -> cached.put(key, name) }
+        return JSONObject().apply {
+            put(KEY_FILES, files)
+            put(KEY_CACHED, cached)
+        }
+    }
+
+    private class FileState(val length: Long, val lastModified: Long, val valid: Boolean) {
+
+        fun matches(file: File) = file.length() == length && file.lastModified() == lastModified
+    }
+
+    companion object : SingletonHolder<FontIndex, Context>(
+            useApplicationContext { FontIndex(it) }) {
+
+        private const val TAG = "FontIndex"
+
+        private const val INDEX_FILE_NAME = "font_index.json"
+        private const val CACHE_DIR_NAME = "fonts"
+
+        private const val KEY_FILES = "files"
+        private const val KEY_CACHED = "cached"
+        private const val KEY_LENGTH = "length"
+        private const val KEY_LAST_MODIFIED = "lastModified"
+        private const val KEY_VALID = "valid"
+    }
+}
@@ -21,9 +21,12 @@ import android.graphics.Typeface
 import android.widget.TextView
 import ch.deletescape.lawnchair.runOnMainThread
 
-class FontLoader(font: FontCache.Font) : FontCache.Font.LoadCallback {
+class FontLoader @JvmOverloads constructor(
+        val font: FontCache.Font,
+        private val onLoaded: ((FontLoader) -> Unit)? = null) : FontCache.Font.LoadCallback {
 
     private var fontLoaded = false
+    val isLoaded get() = fontLoaded
     private var face: Typeface? = null
     private var textViews = HashMap<TextView, Typeface>()
     private var receivers = HashMap<FontReceiver, Typeface>()
@@ -40,6 +43,7 @@ class FontLoader(font: FontCache.Font) : FontCache.Font.LoadCallback {
             textViews.clear()
             receivers.entries.forEach { into(it.key, it.value) }
             receivers.clear()
+            onLoaded?.invoke(this)
         }
     }
 
@@ -0,0 +1,122 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.gestures
+
+import android.annotation.TargetApi
+import android.content.Context
+import android.graphics.Point
+import android.graphics.Rect
+import android.hardware.display.DisplayManager
+import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import android.view.Display
+import android.view.WindowManager
+import com.android.systemui.shared.system.WindowManagerWrapper
+
+/**
+ * Caches the display geometry read by [NavigationBarGestureConsumer] on every down event.
+ *
+ * The values are read again from [source] after the default display changes, which includes
+ * 180° rotations that don't change the configuration, or after the configuration changes, so
+ * that a down event doesn't need any binder call. Must be used on the main thread.
+ */
+class DisplayGeometryCache @JvmOverloads constructor(
+        private val context: Context,
+        private val source: DisplaySource = DefaultDisplaySource(context))
+    : DisplayManager.DisplayListener {
+
+    private val size = Point()
+    private val stableInsets = Rect()
+    private var valid = false
+
+    var rotation = 0
+        get() {
+            ensureValid()
+            return field
+        }
+        private set
+
+    private val displayManager get() =
+        context.getSystemService(Context.DISPLAY_SERVICE) as DisplayManager
+
+    fun startTracking() {
+        invalidate()
+        displayManager.registerDisplayListener(this, Handler(Looper.getMainLooper()))
+    }
+
+    fun stopTracking() {
+        displayManager.unregisterDisplayListener(this)
+    }
+
+    /**
+     * Called on configuration changes.
+     */
+    fun invalidate() {
+        valid = false
+    }
+
+    override fun onDisplayChanged(displayId: Int) {
+        if (displayId == Display.DEFAULT_DISPLAY) {
+            invalidate()
+        }
+    }
+
+    override fun onDisplayAdded(displayId: Int) { }
+
+    override fun onDisplayRemoved(displayId: Int) { }
+
+    fun getSize(out: Point) {
+        ensureValid()
+        out.set(size.x, size.y)
+    }
+
+    fun getStableInsets(out: Rect) {
+        ensureValid()
+        out.set(stableInsets)
+    }
+
+    private fun ensureValid() {
+        if (valid) return
+        source.getSize(size)
+        rotation = source.rotation
+        source.getStableInsets(stableInsets)
+        valid = true
+    }
+
+    interface DisplaySource {
+
+        val rotation: Int
+
+        fun getSize(out: Point)
+
+        fun getStableInsets(out: Rect)
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private class DefaultDisplaySource(context: Context) : DisplaySource {
+
+        private val display = context.getSystemService(WindowManager::class.java)!!.defaultDisplay
+
+        override val rotation get() = display.rotation
+
+        override fun getSize(out: Point) = display.getSize(out)
+
+        override fun getStableInsets(out: Rect) = WindowManagerWrapper.getInstance().getStableInsets(out)
+    }
+}
@@ -24,11 +24,8 @@ import android.util.Log
 import android.view.MotionEvent
 import ch.deletescape.lawnchair.LawnchairLauncher
 import ch.deletescape.lawnchair.gestures.gestures.*
-import ch.deletescape.lawnchair.gestures.handlers.*
 import ch.deletescape.lawnchair.lawnchairPrefs
 import com.android.launcher3.util.TouchController
-import org.json.JSONException
-import org.json.JSONObject
 
 class GestureController(val launcher: LawnchairLauncher) : TouchController {
 
@@ -97,28 +94,18 @@ class GestureController(val launcher: LawnchairLauncher) : TouchController {
     companion object {
 
         private const val TAG = "GestureController"
-        private val LEGACY_SLEEP_HANDLERS = listOf(
-                "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerDeviceAdmin",
-                "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerAccessibility",
-                "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerRoot")
 
         fun createGestureHandler(context: Context, jsonString: String?, fallback: GestureHandler): GestureHandler {
             if (!TextUtils.isEmpty(jsonString)) {
-                val config: JSONObject? = try {
-                    JSONObject(jsonString)
-                } catch (e: JSONException) {
-                    null
-                }
-                var className = config?.getString("class") ?: jsonString
-                if (className in LEGACY_SLEEP_HANDLERS) {
-                    className = SleepGestureHandler::class.java.name
-                }
-                val configValue = if (config?.has("config") == true) config.getJSONObject("config") else null
-                // Log.d(TAG, "creating handler $className with config ${configValue?.toString(2)}")
+                val spec = GestureHandlerRegistry.parse(jsonString!!)
+                // Log.d(TAG, "creating handler ${spec.className} with config ${spec.config?.toString(2)}")
                 try {
-                    val handler =  Class.forName(className).getConstructor(Context::class.java, JSONObject::class.java)
-                            .newInstance(context, configValue) as GestureHandler
-                    if(handler.isAvailable) return handler
+                    val handler = GestureHandlerRegistry.create(context, spec.className, spec.config)
+                    if (handler == null) {
+                        Log.e(TAG, "unknown gesture handler ${spec.className}")
+                    } else if (handler.isAvailable) {
+                        return handler
+                    }
                 } catch (t: Throwable) {
                     Log.e(TAG, "can't create gesture handler", t)
                 }
@@ -126,41 +113,16 @@ class GestureController(val launcher: LawnchairLauncher) : TouchController {
             return fallback
         }
 
-        fun getClassName(jsonString: String): String {
-            val config: JSONObject? = try {
-                JSONObject(jsonString)
-            } catch (e: JSONException) {
-                null
-            }
-            val className = config?.getString("class") ?: jsonString
-            return if (className in LEGACY_SLEEP_HANDLERS) {
-                SleepGestureHandler::class.java.name
-            } else {
-                className
-            }
-        }
-
-        fun getGestureHandlers(context: Context, isSwipeUp: Boolean, hasBlank: Boolean) = mutableListOf(
-                SwitchAppsGestureHandler(context, null),
-                // BlankGestureHandler(context, null), -> Added in apply block
-                SleepGestureHandler(context, null),
-                SleepGestureHandlerTimeout(context, null),
-                OpenWidgetsGestureHandler(context, null),
-                OpenSettingsGestureHandler(context, null),
-                OpenOverviewGestureHandler(context, null),
-                StartExternalSearchGestureHandler(context, null),
-                StartAppSearchGestureHandler(context, null),
-                NotificationsOpenGestureHandler(context, null),
-                OpenOverlayGestureHandler(context, null),
-                StartAssistantGestureHandler(context, null),
-                StartVoiceSearchGestureHandler(context, null),
-                StartAppGestureHandler(context, null),
-                OpenRecentsGestureHandler(context, null),
-                LaunchMostRecentTaskGestureHandler(context, null)
-        ).apply {
-            if (hasBlank) {
-                add(1, BlankGestureHandler(context, null))
-            }
-        }
+        fun getClassName(jsonString: String) = GestureHandlerRegistry.parse(jsonString).className
+
+        fun getGestureHandlers(context: Context, isSwipeUp: Boolean, hasBlank: Boolean) =
+                GestureHandlerRegistry.pickerClassNames
+                        .mapNotNull { GestureHandlerRegistry.create(context, it, null) }
+                        .toMutableList()
+                        .apply {
+                            if (hasBlank) {
+                                add(1, BlankGestureHandler(context, null))
+                            }
+                        }
     }
 }
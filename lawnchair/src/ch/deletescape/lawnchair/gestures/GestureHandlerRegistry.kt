@@ -0,0 +1,107 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.gestures
+
+import android.content.Context
+import android.util.LruCache
+import ch.deletescape.lawnchair.gestures.handlers.*
+import org.json.JSONException
+import org.json.JSONObject
+
+typealias GestureHandlerFactory = (Context, JSONObject?) -> GestureHandler
+
+/**
+ * Table of the gesture handlers which can be stored in preferences, keyed by class name.
+ *
+ * Handlers are created through their constructor references instead of reflection, and the
+ * stored values are only parsed once.
+ */
+object GestureHandlerRegistry {
+
+    private const val SPEC_CACHE_SIZE = 32
+
+    private val LEGACY_SLEEP_HANDLERS = listOf(
+            "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerDeviceAdmin",
+            "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerAccessibility",
+            "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerRoot")
+
+    // In the order they are listed by the handler picker
+    private val factories = LinkedHashMap<String, GestureHandlerFactory>().apply {
+        register(::SwitchAppsGestureHandler)
+        register(::BlankGestureHandler)
+        register(::SleepGestureHandler)
+        register(::SleepGestureHandlerTimeout)
+        register(::OpenWidgetsGestureHandler)
+        register(::OpenSettingsGestureHandler)
+        register(::OpenOverviewGestureHandler)
+        register(::StartExternalSearchGestureHandler)
+        register(::StartAppSearchGestureHandler)
+        register(::NotificationsOpenGestureHandler)
+        register(::OpenOverlayGestureHandler)
+        register(::StartAssistantGestureHandler)
+        register(::StartVoiceSearchGestureHandler)
+        register(::StartAppGestureHandler)
+        register(::OpenRecentsGestureHandler)
+        register(::LaunchMostRecentTaskGestureHandler)
+        register(::NotificationsCloseGestureHandler)
+    }
+
+    private val specCache = LruCache<String, HandlerSpec>(SPEC_CACHE_SIZE)
+
+    val classNames: Set<String> get() = factories.keys
+
+    val pickerClassNames = classNames.filter {
+        it != BlankGestureHandler::class.java.name && it != NotificationsCloseGestureHandler::class.java.name
+    }
+
+    private inline fun <reified T : GestureHandler> MutableMap<String, GestureHandlerFactory>.register(
+            noinline factory: (Context, JSONObject?) -> T) {
+        put(T::class.java.name, factory)
+    }
+
+    /**
+     * Creates the handler registered as [className], or returns null if there's none.
+     */
+    fun create(context: Context, className: String, config: JSONObject?): GestureHandler? {
+        return factories[resolveAlias(className)]?.invoke(context, config)
+    }
+
+    /**
+     * Parses a value created by [GestureHandler.toString] or a plain class name. The returned
+     * config is shared by all handlers created from the same value and must not be modified.
+     */
+    fun parse(jsonString: String): HandlerSpec {
+        specCache.get(jsonString)?.let { return it }
+        val json: JSONObject? = try {
+            JSONObject(jsonString)
+        } catch (e: JSONException) {
+            null
+        }
+        val className = json?.optString("class", null) ?: jsonString
+        val config = json?.optJSONObject("config")
+        return HandlerSpec(resolveAlias(className), config).also { specCache.put(jsonString, it) }
+    }
+
+    private fun resolveAlias(className: String) = if (className in LEGACY_SLEEP_HANDLERS) {
+        SleepGestureHandler::class.java.name
+    } else {
+        className
+    }
+
+    class HandlerSpec(val className: String, val config: JSONObject?)
+}
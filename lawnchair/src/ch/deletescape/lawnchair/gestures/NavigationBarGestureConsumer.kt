@@ -38,17 +38,17 @@ import com.android.launcher3.R
 import com.android.quickstep.OverviewInteractionState
 import com.android.quickstep.TouchConsumer
 import com.android.systemui.shared.system.NavigationBarCompat
-import com.android.systemui.shared.system.WindowManagerWrapper
 import org.json.JSONObject
 import kotlin.math.abs
 
 @TargetApi(Build.VERSION_CODES.P)
 class NavigationBarGestureConsumer(private val context: Context, target: TouchConsumer,
-                                   @NavigationBarCompat.HitTarget private val downTarget: Int) :
+                                   @NavigationBarCompat.HitTarget private val downTarget: Int,
+                                   private val displayGeometry: DisplayGeometryCache) :
         PassThroughTouchConsumer(target) {
 
-    private val launcher get() = LauncherAppState.getInstance(context).launcher as? LawnchairLauncher
-    private val controller get() = launcher?.gestureController
+    private val launcher = LauncherAppState.getInstance(context).launcher as? LawnchairLauncher
+    private val controller = launcher?.gestureController
     private var displayRotation = 0
     private val stableInsets = Rect()
     private val tmpPoint = Point()
@@ -92,10 +92,9 @@ class NavigationBarGestureConsumer(private val context: Context, target: TouchCo
                 downPos.set(ev.x, ev.y)
                 lastPos.set(downPos)
 
-                val display = context.getSystemService(WindowManager::class.java)!!.defaultDisplay
-                display.getSize(tmpPoint)
-                displayRotation = display.rotation
-                WindowManagerWrapper.getInstance().getStableInsets(stableInsets)
+                displayGeometry.getSize(tmpPoint)
+                displayRotation = displayGeometry.rotation
+                displayGeometry.getStableInsets(stableInsets)
 
                 navBarSize = if (isNavBarVertical) tmpPoint.y else tmpPoint.x
                 val downPosition = if (isNavBarVertical) ev.y else ev.x
@@ -115,8 +114,8 @@ class NavigationBarGestureConsumer(private val context: Context, target: TouchCo
                     if (abs(getVerticalDisplacement(ev)) > quickStepDragSlop) {
                         passedInitialSlop = true
 
-                        if (!inQuickScrub && gestureHandler != null) {
-                            gestureHandler?.onGestureTrigger(controller!!)
+                        if (!inQuickScrub && controller != null) {
+                            gestureHandler?.onGestureTrigger(controller)
                         }
                     } else if (swipeForBack && getHorizontalDisplacement(ev) > quickScrubDragSlop) {
                         passedInitialSlop = true
@@ -52,7 +52,7 @@ class SelectAppActivity : SettingsBaseActivity(), AppsAdapterWithShortcuts.Callb
     override fun onAppSelected(app: AppsAdapterWithShortcuts.AppItem) {
         setResult(Activity.RESULT_OK, Intent().apply {
             putExtra("type", "app")
-            putExtra("appName", app.info.label)
+            putExtra("appName", app.info.title)
             putExtra("target", app.key.toString())
         })
         finish()
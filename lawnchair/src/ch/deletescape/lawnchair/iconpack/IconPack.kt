@@ -134,6 +134,12 @@ abstract class IconPack(val context: Context, val packPackageName: String) {
 
         abstract fun drawableForDensity(density: Int): Drawable
 
+        /**
+         * Returns the icon for previews of [size] pixels. Entries which can decode their icon
+         * at a lower resolution should override this.
+         */
+        open fun drawableForSize(size: Int): Drawable = drawable
+
         abstract fun toCustomEntry(): IconPackManager.CustomIconEntry
     }
 }
@@ -25,6 +25,8 @@ import android.content.pm.PackageManager
 import android.content.res.Resources
 import android.content.res.XmlResourceParser
 import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
 import android.os.Looper
 import android.text.TextUtils
@@ -441,6 +443,25 @@ class IconPackImpl(context: Context, packPackageName: String) : IconPack(context
             }
         }
 
+        override fun drawableForSize(size: Int): Drawable {
+            if (!isAvailable) {
+                throw IllegalStateException("Trying to access an unavailable entry $debugName")
+            }
+            // Bitmap icons are subsampled while decoding, anything else is loaded as is
+            val opts = BitmapFactory.Options()
+            opts.inJustDecodeBounds = true
+            BitmapFactory.decodeResource(packResources, drawableId, opts)
+            if (opts.outWidth <= 0 || opts.outHeight <= 0) return drawable
+
+            opts.inJustDecodeBounds = false
+            opts.inSampleSize = 1
+            while (Math.min(opts.outWidth, opts.outHeight) / (opts.inSampleSize * 2) >= size) {
+                opts.inSampleSize *= 2
+            }
+            val bitmap = BitmapFactory.decodeResource(packResources, drawableId, opts) ?: return drawable
+            return BitmapDrawable(context.resources, bitmap)
+        }
+
         override fun toCustomEntry() = IconPackManager.CustomIconEntry(packPackageName, drawableName)
 
         private fun checkResourceExists(): Boolean {
@@ -40,6 +40,7 @@ import ch.deletescape.lawnchair.util.extensions.d
 import com.android.launcher3.*
 import com.android.launcher3.shortcuts.ShortcutInfoCompat
 import com.android.launcher3.util.ComponentKey
+import com.android.launcher3.util.PerfMetrics
 import java.util.*
 import kotlin.collections.HashMap
 
@@ -180,8 +181,13 @@ class IconPackManager(private val context: Context) {
     }
 
     fun onPacksUpdated() {
+        // Timed until the listeners updated, including the hop to the main thread
+        val start = PerfMetrics.now()
         context.lawnchairPrefs.reloadIcons()
-        runOnMainThread { listeners.forEach { it.invoke() } }
+        runOnMainThread {
+            listeners.forEach { it.invoke() }
+            PerfMetrics.getInstance().record("IconPackApply", PerfMetrics.now() - start)
+        }
     }
 
     data class CustomIconEntry(val packPackageName: String, val icon: String? = null, val arg: String? = null) {
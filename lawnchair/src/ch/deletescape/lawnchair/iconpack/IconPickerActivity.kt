@@ -20,7 +20,7 @@ package ch.deletescape.lawnchair.iconpack
 import android.app.Activity
 import android.content.Context
 import android.content.Intent
-import android.graphics.drawable.Drawable
+import android.graphics.drawable.BitmapDrawable
 import android.os.Bundle
 import android.os.Handler
 import android.os.Message
@@ -56,8 +56,20 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
     private val adapter = IconGridAdapter()
     private val layoutManager = GridLayoutManager(this, 1)
     private var canceled = false
-    private val collator = Collator.getInstance()
+    private val collator = Collator.getInstance().apply {
+        decomposition = Collator.CANONICAL_DECOMPOSITION
+        strength = Collator.TERTIARY
+    }
     private val showDebugInfo = lawnchairPrefs.showDebugInfo
+    private val thumbnailLoader by lazy {
+        IconThumbnailLoader(resources.getDimensionPixelSize(R.dimen.icon_preview_size))
+    }
+
+    // Only accessed on the icon pack ui thread
+    private val searchableItems = ArrayList<IconItem>()
+    private var searchIndex: IconSearchIndex<IconItem>? = null
+    // Only accessed on the main thread
+    private var prefetchRange: IntRange? = null
 
     private var dynamicPadding = 0
 
@@ -97,6 +109,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
             // make sure whatever running on ui worker has finished, then start parsing the pack
             runOnThread(iconPackUiHandler) {
                 iconPack.getAllIcons(::addEntries, { canceled })
+                if (!canceled) getSearchIndex()
                 // Wait for the ui to finish processing new data
                 val waiter = Semaphore(0)
                 runOnUiThread {
@@ -106,10 +119,6 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
                 waiter.release()
             }
         }
-        collator.apply {
-            decomposition = Collator.CANONICAL_DECOMPOSITION
-            strength = Collator.TERTIARY
-        }
     }
 
     override fun finish() {
@@ -125,6 +134,8 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
                 else -> null
             }
         }
+        newItems.filterIsInstanceTo(searchableItems)
+        searchIndex = null
         runOnUiThread {
             if (items.size == 1 && items[0] is LoadingItem) {
                 items.removeAt(0)
@@ -153,18 +164,29 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
 
     private fun processSearchQuery(query: String?) {
         val q = query?.trim()
-        val filtered = if (!TextUtils.isEmpty(q)) {
-            actualItems.filter { it is IconItem && collator.matches(q!!, it.entry.displayName) }.toMutableList()
+        val filtered: MutableList<AdapterItem>? = if (!TextUtils.isEmpty(q)) {
+            getSearchIndex().search(q!!).toMutableList<AdapterItem>()
         } else null
         runOnUiThread {
             val hashCode = items.hashCode()
             searchItems = filtered
             if (items.hashCode() != hashCode) {
+                prefetchRange = null
                 adapter.notifyDataSetChanged()
             }
         }
     }
 
+    /**
+     * Returns the search index of the icons loaded so far. It's built once the whole pack is
+     * loaded, and only rebuilt if a query comes in while the pack is still loading.
+     */
+    private fun getSearchIndex(): IconSearchIndex<IconItem> {
+        return searchIndex ?: IconSearchIndex(ArrayList(searchableItems), collator) {
+            it.entry.displayName
+        }.also { searchIndex = it }
+    }
+
     override fun onCreateOptionsMenu(menu: Menu): Boolean {
         menuInflater.inflate(R.menu.menu_icon_picker, menu)
         if (pickerComponent == null) {
@@ -217,6 +239,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
     override fun onDestroy() {
         super.onDestroy()
         canceled = true
+        thumbnailLoader.cancelAll()
     }
 
     override fun onLayoutChange(v: View?, left: Int, top: Int, right: Int, bottom: Int, oldLeft: Int, oldTop: Int, oldRight: Int, oldBottom: Int) {
@@ -225,6 +248,31 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
         iconGrid.adapter = adapter
         iconGrid.layoutManager = layoutManager
         iconGrid.isVerticalScrollBarEnabled = false
+        iconGrid.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                if (dy != 0) prefetchIcons(dy > 0)
+            }
+        })
+    }
+
+    /**
+     * Prefetches the icons of the rows about to be scrolled into view, unless they were already
+     * requested for the current scroll position.
+     */
+    private fun prefetchIcons(down: Boolean) {
+        val count = layoutManager.spanCount * PREFETCH_ROWS
+        val range = if (down) {
+            val last = layoutManager.findLastVisibleItemPosition()
+            if (last == RecyclerView.NO_POSITION) return
+            (last + 1)..Math.min(last + count, items.size - 1)
+        } else {
+            val first = layoutManager.findFirstVisibleItemPosition()
+            if (first == RecyclerView.NO_POSITION) return
+            Math.max(first - count, 0)..(first - 1)
+        }
+        if (range == prefetchRange) return
+        prefetchRange = range
+        thumbnailLoader.prefetch(range.mapNotNull { (items[it] as? IconItem)?.entry })
     }
 
     private fun calculateDynamicGrid(width: Int) {
@@ -285,15 +333,15 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
 
         fun isItem(position: Int) = getItemViewType(position) == itemType
 
-        inner class IconHolder(itemView: View) : RecyclerView.ViewHolder(itemView), View.OnClickListener, IconItem.Callback {
+        override fun onViewRecycled(holder: RecyclerView.ViewHolder) {
+            super.onViewRecycled(holder)
+            (holder as? IconHolder)?.cancelLoad()
+        }
+
+        inner class IconHolder(itemView: View) : RecyclerView.ViewHolder(itemView), View.OnClickListener {
 
-            private var iconLoader: IconItem? = null
-                set(value) {
-                    field?.callback = null
-                    field = value
-                    field?.callback = this
-                }
-            private var name = "Unknown"
+            private var request: IconThumbnailLoader.Request? = null
+            private var item: IconItem? = null
 
             init {
                 itemView.setOnClickListener(this)
@@ -303,6 +351,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
                 }
                 if (showDebugInfo) {
                     itemView.setOnLongClickListener {
+                        val name = item?.entry?.displayName ?: "Unknown"
                         Toast.makeText(applicationContext, name, Toast.LENGTH_LONG).show()
                         true
                     }
@@ -310,14 +359,19 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
             }
 
             fun bind(item: IconItem) {
-                (itemView as FadingImageView).image = null
-                iconLoader = item
-                iconLoader?.loadIcon()
+                cancelLoad()
+                this.item = item
+                val imageView = itemView as FadingImageView
+                imageView.image = null
+                request = thumbnailLoader.load(item.entry) { bitmap ->
+                    request = null
+                    imageView.image = bitmap?.let { BitmapDrawable(resources, it) }
+                }
             }
 
-            override fun onIconLoaded(drawable: Drawable, name: String) {
-                (itemView as FadingImageView).image = drawable
-                this.name = name
+            fun cancelLoad() {
+                request?.cancel()
+                request = null
             }
 
             override fun onClick(v: View) {
@@ -350,23 +404,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
 
     class CategoryItem(val title: String) : AdapterItem()
 
-    class IconItem(val entry: IconPack.Entry) : AdapterItem() {
-
-        var callback: Callback? = null
-
-        fun loadIcon() {
-            runOnUiWorkerThread {
-                val drawable = entry.drawable
-                val displayName = entry.displayName
-                runOnMainThread { callback?.onIconLoaded(drawable, displayName) }
-            }
-        }
-
-        interface Callback {
-
-            fun onIconLoaded(drawable: Drawable, name: String)
-        }
-    }
+    class IconItem(val entry: IconPack.Entry) : AdapterItem()
 
     class LoadingItem : AdapterItem()
 
@@ -374,6 +412,8 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
 
         private const val EXTRA_ICON_PACK = "pack"
 
+        private const val PREFETCH_ROWS = 3
+
         fun newIntent(context: Context, provider: IconPackManager.PackProvider): Intent {
             return Intent(context, IconPickerActivity::class.java).apply {
                 putExtra(EXTRA_ICON_PACK, provider)
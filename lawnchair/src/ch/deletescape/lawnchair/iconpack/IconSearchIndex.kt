@@ -0,0 +1,152 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.iconpack
+
+import java.text.CollationKey
+import java.text.Collator
+
+/**
+ * Finds the items whose name matches a query like [ch.deletescape.lawnchair.matches] does,
+ * without comparing the query against every name.
+ *
+ * Names are sorted by collation key, so the names starting with the query are a range found by
+ * binary search. Names containing the query further in are looked up in an index of their case
+ * folded substrings of up to three characters. Results keep the order of the items.
+ *
+ * Must only be used on the thread which created it, since collators aren't thread safe.
+ */
+class IconSearchIndex<T>(private val items: List<T>, private val collator: Collator,
+                         name: (T) -> String) {
+
+    private val names = Array(items.size) { name(items[it]) }
+    private val keys = Array<CollationKey>(items.size) { collator.getCollationKey(names[it]) }
+    private val sorted = items.indices.sortedWith(Comparator { a, b -> keys[a].compareTo(keys[b]) })
+            .toIntArray()
+    private val grams = HashMap<String, IntArray>()
+
+    init {
+        val postings = HashMap<String, ArrayList<Int>>()
+        names.forEachIndexed { index, name ->
+            val folded = fold(name)
+            for (length in 1..GRAM_LENGTH) {
+                for (i in 0..folded.length - length) {
+                    val list = postings.getOrPut(folded.substring(i, i + length)) { ArrayList() }
+                    if (list.lastOrNull() != index) {
+                        list.add(index)
+                    }
+                }
+            }
+        }
+        postings.forEach { (gram, list) -> grams[gram] = list.toIntArray() }
+    }
+
+    fun search(query: String): List<T> {
+        if (query.isEmpty()) return emptyList()
+        val queryKey = collator.getCollationKey(query)
+        val matches = ArrayList<Int>()
+
+        // Names equal to the query, or which the query is a prefix of
+        val start = lowerBound(queryKey)
+        val end = upperBound(collator.getCollationKey(query + MAX_UNICODE))
+        for (i in start until end) {
+            matches.add(sorted[i])
+        }
+
+        // Names containing the query, as long as they don't sort before it
+        findCandidates(fold(query)).forEach {
+            if (keys[it] > queryKey && names[it].contains(query, ignoreCase = true)) {
+                matches.add(it)
+            }
+        }
+        return matches.sorted().distinct().map { items[it] }
+    }
+
+    /**
+     * Returns the items whose case folded name contains [q], or a superset of them.
+     */
+    private fun findCandidates(q: String): IntArray {
+        if (q.length <= GRAM_LENGTH) return grams[q] ?: IntArray(0)
+        var result: IntArray? = null
+        for (i in 0..q.length - GRAM_LENGTH) {
+            val posting = grams[q.substring(i, i + GRAM_LENGTH)] ?: return IntArray(0)
+            result = if (result == null) posting else intersect(result, posting)
+            if (result.isEmpty()) break
+        }
+        return result!!
+    }
+
+    private fun intersect(a: IntArray, b: IntArray): IntArray {
+        val result = IntArray(Math.min(a.size, b.size))
+        var i = 0
+        var j = 0
+        var count = 0
+        while (i < a.size && j < b.size) {
+            when {
+                a[i] < b[j] -> i++
+                a[i] > b[j] -> j++
+                else -> {
+                    result[count++] = a[i]
+                    i++
+                    j++
+                }
+            }
+        }
+        return result.copyOf(count)
+    }
+
+    /**
+     * Returns the first position in [sorted] whose key isn't smaller than [key].
+     */
+    private fun lowerBound(key: CollationKey): Int {
+        var low = 0
+        var high = sorted.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (keys[sorted[mid]] < key) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    /**
+     * Returns the first position in [sorted] whose key is larger than [key].
+     */
+    private fun upperBound(key: CollationKey): Int {
+        var low = 0
+        var high = sorted.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (keys[sorted[mid]] <= key) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    companion object {
+
+        private const val GRAM_LENGTH = 3
+        private const val MAX_UNICODE = '\uFFFF'
+
+        /**
+         * Folds the case of every character, so that two strings which are equal ignoring case
+         * are equal once folded.
+         */
+        private fun fold(s: String): String {
+            val chars = CharArray(s.length) { Character.toLowerCase(Character.toUpperCase(s[it])) }
+            return String(chars)
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.iconpack
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.os.Handler
+import android.util.Log
+import android.util.LruCache
+import ch.deletescape.lawnchair.runOnMainThread
+import ch.deletescape.lawnchair.uiWorkerHandler
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Loads icon pack entries as thumbnails of a fixed size for the icon picker.
+ *
+ * Thumbnails are kept in a memory cache bounded in bytes. Every load returns a [Request] which
+ * can be cancelled, so that views scrolled out of the viewport don't keep decodes queued.
+ */
+class IconThumbnailLoader @JvmOverloads constructor(
+        private val size: Int,
+        private val handler: Handler = uiWorkerHandler,
+        maxCacheBytes: Int = defaultCacheBytes()) {
+
+    private val cache = object : LruCache<String, Bitmap>(maxCacheBytes) {
+        override fun sizeOf(key: String, value: Bitmap) = value.byteCount
+    }
+
+    private val pending = Collections.newSetFromMap(ConcurrentHashMap<Request, Boolean>())
+    private val prefetchRequests = ArrayList<Request>()
+
+    /**
+     * Number of loads which are queued but didn't start yet.
+     */
+    val queuedCount get() = pending.size
+
+    fun getCached(entry: IconPack.Entry): Bitmap? = cache.get(entry.identifierName)
+
+    /**
+     * Loads the thumbnail of [entry] and delivers it to [callback] on the main thread, unless
+     * the returned request is cancelled first. Returns null if the thumbnail was cached, in
+     * which case [callback] was called synchronously.
+     */
+    fun load(entry: IconPack.Entry, callback: (Bitmap?) -> Unit): Request? {
+        val cached = getCached(entry)
+        if (cached != null) {
+            callback(cached)
+            return null
+        }
+        return Request(entry, callback).also { it.post() }
+    }
+
+    /**
+     * Loads the thumbnails of [entries] into the cache, cancelling the previous prefetch.
+     * Must be called on the main thread.
+     */
+    fun prefetch(entries: List<IconPack.Entry>) {
+        prefetchRequests.forEach { it.cancel() }
+        prefetchRequests.clear()
+        entries.forEach {
+            if (getCached(it) == null) {
+                prefetchRequests.add(Request(it, null).also { request -> request.post() })
+            }
+        }
+    }
+
+    fun cancelAll() {
+        prefetchRequests.clear()
+        ArrayList(pending).forEach { it.cancel() }
+    }
+
+    private fun createThumbnail(entry: IconPack.Entry): Bitmap? {
+        return try {
+            val drawable = entry.drawableForSize(size)
+            val bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888)
+            drawable.setBounds(0, 0, size, size)
+            drawable.draw(Canvas(bitmap))
+            bitmap
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to load ${entry.identifierName}", e)
+            null
+        }
+    }
+
+    inner class Request(private val entry: IconPack.Entry,
+                        private val callback: ((Bitmap?) -> Unit)?) : Runnable {
+
+        @Volatile
+        private var cancelled = false
+        private var started = false
+
+        internal fun post() {
+            pending.add(this)
+            handler.post(this)
+        }
+
+        override fun run() {
+            synchronized(this) {
+                if (cancelled) return
+                started = true
+            }
+            pending.remove(this)
+            val bitmap = getCached(entry) ?: createThumbnail(entry)?.also {
+                cache.put(entry.identifierName, it)
+            }
+            if (callback != null) {
+                runOnMainThread {
+                    if (!cancelled) callback.invoke(bitmap)
+                }
+            }
+        }
+
+        fun cancel() {
+            synchronized(this) {
+                if (cancelled) return
+                cancelled = true
+                if (started) return
+            }
+            handler.removeCallbacks(this)
+            pending.remove(this)
+        }
+    }
+
+    companion object {
+
+        private const val TAG = "IconThumbnailLoader"
+
+        private fun defaultCacheBytes() = (Runtime.getRuntime().maxMemory() / 16).toInt()
+    }
+}
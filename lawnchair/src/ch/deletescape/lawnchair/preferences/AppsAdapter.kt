@@ -18,10 +18,10 @@
 package ch.deletescape.lawnchair.preferences
 
 import android.content.Context
-import android.content.pm.LauncherActivityInfo
 import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
 import android.os.Handler
+import android.support.v7.util.DiffUtil
 import android.support.v7.widget.RecyclerView
 import android.view.LayoutInflater
 import android.view.View
@@ -31,9 +31,9 @@ import android.widget.ImageView
 import android.widget.TextView
 import ch.deletescape.lawnchair.comparing
 import com.android.launcher3.*
-import com.android.launcher3.compat.LauncherAppsCompat
-import com.android.launcher3.compat.UserManagerCompat
+import com.android.launcher3.model.AllAppsSnapshot
 import com.android.launcher3.util.ComponentKey
+import java.util.*
 
 open class AppsAdapter(
         private val context: Context,
@@ -51,6 +51,10 @@ open class AppsAdapter(
 
     open val comparator = defaultComparator
 
+    // Apps as last posted to the ui thread, only accessed on the worker thread
+    private var workerApps: List<App>? = null
+    private val snapshotListener = AllAppsSnapshot.Listener { onSnapshotChanged(it) }
+
     fun postLoadApps() {
         Handler(LauncherModel.getWorkerLooper()).postAtFrontOfQueue(::loadAppsList)
     }
@@ -76,13 +80,52 @@ open class AppsAdapter(
         return if (isLoaded) TYPE_ITEM else TYPE_LOADING
     }
 
+    override fun onAttachedToRecyclerView(recyclerView: RecyclerView) {
+        super.onAttachedToRecyclerView(recyclerView)
+        LauncherAppState.getInstanceNoCreate()?.model?.addAllAppsSnapshotListener(snapshotListener)
+    }
+
+    override fun onDetachedFromRecyclerView(recyclerView: RecyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView)
+        LauncherAppState.getInstanceNoCreate()?.model?.removeAllAppsSnapshotListener(snapshotListener)
+    }
+
     protected open fun loadAppsList() {
-        apps.addAll(getAppsList(context)
+        val loaded = PickerAppsProvider.getApps(context, filter)
                 .map { App(context, it) }
-                .sortedWith(comparator))
+                .sortedWith(comparator)
+        workerApps = loaded
+        apps.addAll(loaded)
         handler.postAtFrontOfQueue(::onAppsListLoaded)
     }
 
+    private fun onSnapshotChanged(snapshot: AllAppsSnapshot) {
+        val current = workerApps ?: return
+        // Unchanged apps keep their instance across snapshots, and so their icon drawable
+        val previous = IdentityHashMap<AppInfo, App>()
+        val previousByKey = HashMap<ComponentKey, App>()
+        current.forEach {
+            previous[it.source] = it
+            previousByKey[it.key] = it
+        }
+        val updated = PickerAppsProvider.getApps(context, filter, snapshot)
+                .map { info ->
+                    previous[info]
+                            ?: previousByKey[info.toComponentKey()]?.takeIf { !snapshot.contains(it.key) }
+                            ?: App(context, info)
+                }
+                .sortedWith(comparator)
+        workerApps = updated
+        val diff = DiffUtil.calculateDiff(AppsDiffCallback(current, updated))
+        handler.post {
+            apps.clear()
+            apps.addAll(updated)
+            if (isLoaded) {
+                diff.dispatchUpdatesTo(this)
+            }
+        }
+    }
+
     protected open fun onAppsListLoaded() {
         isLoaded = true
         notifyDataSetChanged()
@@ -96,28 +139,27 @@ open class AppsAdapter(
         callback?.onAppSelected(apps[position])
     }
 
-    private fun getAppsList(context: Context): List<LauncherActivityInfo> {
-        val apps = ArrayList<LauncherActivityInfo>()
-        val profiles = UserManagerCompat.getInstance(context).userProfiles
-        val launcherAppsCompat = LauncherAppsCompat.getInstance(context)
-        profiles.forEach { apps += launcherAppsCompat.getActivityList(null, it) }
-        return if (filter != null) {
-            apps.filter { filter.shouldShowApp(it.componentName, it.user) }
-        } else {
-            apps
-        }
+    /**
+     * An app in the list, created from the shared [source] which must not be modified.
+     */
+    class App(context: Context, val source: AppInfo) {
+
+        val info = PickerAppsProvider.withHighResIcon(context, source)
+        val key: ComponentKey = info.toComponentKey()
+        val iconDrawable: Drawable by lazy { BitmapDrawable(context.resources, info.iconBitmap) }
     }
 
-    class App(context: Context, val info: LauncherActivityInfo) {
+    class AppsDiffCallback(private val old: List<App>, private val new: List<App>) : DiffUtil.Callback() {
 
-        val iconDrawable: Drawable
-        val key = ComponentKey(info.componentName, info.user)
+        override fun getOldListSize() = old.size
 
-        init {
-            val appInfo = AppInfo(context, info, info.user)
-            LauncherAppState.getInstance(context).iconCache.getTitleAndIcon(appInfo, false)
-            iconDrawable = BitmapDrawable(context.resources, appInfo.iconBitmap)
-        }
+        override fun getNewListSize() = new.size
+
+        override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int) =
+                old[oldItemPosition].key == new[newItemPosition].key
+
+        override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int) =
+                old[oldItemPosition] === new[newItemPosition]
     }
 
     inner class AppHolder(itemView: View) : RecyclerView.ViewHolder(itemView), View.OnClickListener {
@@ -133,7 +175,7 @@ open class AppsAdapter(
         fun bind(position: Int) {
             val app = apps[position]
 
-            label.text = app.info.label
+            label.text = app.info.title
             icon.setImageDrawable(app.iconDrawable)
 
             onBindApp(app, this)
@@ -152,6 +194,6 @@ open class AppsAdapter(
     }
 
     companion object {
-        val defaultComparator = comparing<App, String> { it.info.label.toString().toLowerCase() }
+        val defaultComparator = comparing<App, String> { it.info.title.toString().toLowerCase() }
     }
 }
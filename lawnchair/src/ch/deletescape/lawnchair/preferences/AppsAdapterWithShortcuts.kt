@@ -20,7 +20,6 @@ package ch.deletescape.lawnchair.preferences
 import android.animation.ObjectAnimator
 import android.animation.ValueAnimator
 import android.content.Context
-import android.content.pm.LauncherActivityInfo
 import android.content.res.ColorStateList
 import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
@@ -39,8 +38,6 @@ import ch.deletescape.lawnchair.colors.ColorEngine
 import ch.deletescape.lawnchair.iconpack.LawnchairIconProvider
 import ch.deletescape.lawnchair.isVisible
 import com.android.launcher3.*
-import com.android.launcher3.compat.LauncherAppsCompat
-import com.android.launcher3.compat.UserManagerCompat
 import com.android.launcher3.shortcuts.DeepShortcutManager
 import com.android.launcher3.shortcuts.ShortcutInfoCompat
 import com.android.launcher3.util.ComponentKey
@@ -102,8 +99,8 @@ open class AppsAdapterWithShortcuts(
     }
 
     protected open fun loadAppsList() {
-        val apps = getAppsList(context)
-                .sortedBy { it.label.toString().toLowerCase() }
+        val apps = PickerAppsProvider.getApps(context, filter)
+                .sortedBy { it.title.toString().toLowerCase() }
                 .map { AppItem(context, it) }
         handler.postAtFrontOfQueue { onAppsListLoaded(apps) }
     }
@@ -142,34 +139,17 @@ open class AppsAdapterWithShortcuts(
         }
     }
 
-    private fun getAppsList(context: Context): List<LauncherActivityInfo> {
-        val apps = ArrayList<LauncherActivityInfo>()
-        val profiles = UserManagerCompat.getInstance(context).userProfiles
-        val launcherAppsCompat = LauncherAppsCompat.getInstance(context)
-        profiles.forEach { apps += launcherAppsCompat.getActivityList(null, it) }
-        return if (filter != null) {
-            apps.filter { filter.shouldShowApp(it.componentName, it.user) }
-        } else {
-            apps
-        }
-    }
-
     interface Item
 
-    inner class AppItem(context: Context, val info: LauncherActivityInfo) : Item {
+    inner class AppItem(context: Context, val info: AppInfo) : Item {
 
-        val iconDrawable: Drawable
-        val key = ComponentKey(info.componentName, info.user)
+        val iconDrawable: Drawable = BitmapDrawable(context.resources,
+                PickerAppsProvider.withHighResIcon(context, info).iconBitmap)
+        val key: ComponentKey = info.toComponentKey()
         val shortcuts = loadShortcuts()
         val hasShortcuts get() = !shortcuts.isEmpty()
         var expanded = false
 
-        init {
-            val appInfo = AppInfo(context, info, info.user)
-            LauncherAppState.getInstance(context).iconCache.getTitleAndIcon(appInfo, false)
-            iconDrawable = BitmapDrawable(context.resources, appInfo.iconBitmap)
-        }
-
         private fun loadShortcuts(): List<ShortcutItem> {
             val shortcuts = shortcutManager.queryForComponent(key) as? List<ShortcutInfoCompat> ?: emptyList()
             return shortcuts.map { ShortcutItem(it) }
@@ -219,7 +199,7 @@ open class AppsAdapterWithShortcuts(
         }
 
         fun bind(app: AppItem) {
-            label.text = app.info.label
+            label.text = app.info.title
             icon.setImageDrawable(app.iconDrawable)
             caretContainer.isVisible = app.hasShortcuts
             caretPointingUp = app.expanded
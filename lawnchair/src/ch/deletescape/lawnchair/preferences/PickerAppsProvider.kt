@@ -0,0 +1,102 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.preferences
+
+import android.content.Context
+import android.content.pm.LauncherActivityInfo
+import ch.deletescape.lawnchair.LawnchairAppFilter
+import ch.deletescape.lawnchair.getLauncherActivityInfo
+import ch.deletescape.lawnchair.lawnchairPrefs
+import com.android.launcher3.AppFilter
+import com.android.launcher3.AppInfo
+import com.android.launcher3.LauncherAppState
+import com.android.launcher3.compat.LauncherAppsCompat
+import com.android.launcher3.compat.UserManagerCompat
+import com.android.launcher3.model.AllAppsSnapshot
+import com.android.launcher3.util.ComponentKey
+
+/**
+ * Provides the apps listed by the app pickers in settings.
+ *
+ * Apps are taken from the snapshot of the launcher model once it's loaded, so that activities,
+ * labels and icons don't have to be queried again. Hidden apps, including the ones the model's
+ * app filter always hides, aren't part of the model, so they are resolved one by one.
+ */
+object PickerAppsProvider {
+
+    @JvmStatic
+    fun getSnapshot(): AllAppsSnapshot? = LauncherAppState.getInstanceNoCreate()?.model?.allAppsSnapshot
+
+    /**
+     * Returns the apps accepted by [filter], in no particular order. Apps from the snapshot are
+     * shared and must not be modified. Must be called on a background thread.
+     */
+    @JvmStatic
+    fun getApps(context: Context, filter: AppFilter?, snapshot: AllAppsSnapshot? = getSnapshot()): List<AppInfo> {
+        if (snapshot == null) return queryApps(context, filter)
+
+        val apps = ArrayList<AppInfo>(snapshot.size())
+        snapshot.apps.filterTo(apps) { filter.accepts(it.toComponentKey()) }
+        (context.lawnchairPrefs.hiddenAppSet.map { ComponentKey(context, it) }
+                + getBuiltInHiddenApps(context))
+                .distinct()
+                .filter { !snapshot.contains(it) && filter.accepts(it) }
+                .mapNotNullTo(apps) { key ->
+                    key.getLauncherActivityInfo(context)?.let { createAppInfo(context, it, key) }
+                }
+        return apps
+    }
+
+    /**
+     * Returns a copy of [info] with the full resolution icon if the model only has a low
+     * resolution one.
+     */
+    @JvmStatic
+    fun withHighResIcon(context: Context, info: AppInfo): AppInfo {
+        if (!info.usingLowResIcon) return info
+        return AppInfo(info).also {
+            LauncherAppState.getInstance(context).iconCache.getTitleAndIcon(it, false)
+        }
+    }
+
+    private fun getBuiltInHiddenApps(context: Context): List<ComponentKey> {
+        val components = LawnchairAppFilter(context).builtInHiddenApps
+        return UserManagerCompat.getInstance(context).userProfiles.flatMap { user ->
+            components.map { ComponentKey(it, user) }
+        }
+    }
+
+    private fun queryApps(context: Context, filter: AppFilter?): List<AppInfo> {
+        val launcherAppsCompat = LauncherAppsCompat.getInstance(context)
+        return UserManagerCompat.getInstance(context).userProfiles.flatMap { user ->
+            launcherAppsCompat.getActivityList(null, user)
+                    .filter { filter?.shouldShowApp(it.componentName, user) != false }
+                    .map { createAppInfo(context, it, ComponentKey(it.componentName, user)) }
+        }
+    }
+
+    private fun createAppInfo(context: Context, info: LauncherActivityInfo,
+                              key: ComponentKey): AppInfo {
+        return AppInfo(context, info, key.user).also {
+            LauncherAppState.getInstance(context).iconCache.getTitleAndIcon(it, false)
+        }
+    }
+
+    private fun AppFilter?.accepts(key: ComponentKey) =
+            this?.shouldShowApp(key.componentName, key.user) != false
+}
@@ -22,6 +22,7 @@ import android.content.res.TypedArray
 
 import android.support.v7.preference.PreferenceGroup
 import android.util.AttributeSet
+import android.util.TypedValue
 import android.util.Xml
 import android.view.View
 import ch.deletescape.lawnchair.settings.ui.PreferenceController
@@ -32,7 +33,14 @@ import com.android.launcher3.R
 import com.android.launcher3.Utilities
 import org.xmlpull.v1.XmlPullParser
 
-class SearchIndex(private val context: Context) {
+/**
+ * Index of all searchable preferences. By default it is built from [PrebuiltSearchIndex], which is
+ * generated from the preference XML resources at build time, and only falls back to parsing the
+ * XML resources for screens which are missing from it.
+ */
+class SearchIndex @JvmOverloads constructor(
+        private val context: Context,
+        private val usePrebuilt: Boolean = true) {
 
     companion object {
         private const val TAG = "SearchIndex"
@@ -46,6 +54,97 @@ class SearchIndex(private val context: Context) {
     }
 
     private fun indexScreen(resourceId: Int, parent: SettingsScreen?) {
+        val nodes = if (usePrebuilt) PrebuiltSearchIndex.getScreen(resourceId) else null
+        if (nodes != null) {
+            indexNodes(nodes, parent)
+        } else {
+            indexXmlScreen(resourceId, parent)
+        }
+    }
+
+    private fun indexNodes(nodes: Array<Node>, parent: SettingsScreen?) {
+        for (node in nodes) {
+            val cls = node.cls
+            when {
+                cls != null && SubPreference::class.java.isAssignableFrom(cls) -> {
+                    val controller = node.createController(context)
+                    if (controller?.isVisible != false) {
+                        val title = controller?.title ?: node.getTitle(context)
+                        var canIndex = node.indexable
+                        if (SwitchSubPreference::class.java.isAssignableFrom(cls)) {
+                            val key = node.key
+                            val summary = controller?.summary ?: node.getSummary(context)
+                            if (parent != null && key != null) {
+                                if (addedKeys.add(key)) {
+                                    entries.add(SettingsEntry(node.iconRes, key, title!!, summary, parent))
+                                }
+                            }
+                            canIndex = Utilities.getPrefs(context).getBoolean(key, node.getDefaultValue(context))
+                        }
+                        if (canIndex) {
+                            indexScreen(node.contentRes, SettingsScreen(title!!, title, findScreen(parent),
+                                    node.contentRes, node.hasPreview))
+                        }
+                    }
+                }
+                cls != null && PreferenceGroup::class.java.isAssignableFrom(cls) -> {
+                    val controller = node.createController(context)
+                    if (controller?.isVisible != false && node.indexable) {
+                        val title = controller?.title ?: node.getTitle(context)
+                        val children = node.children
+                        if (children != null && parent != null) {
+                            indexNodes(children, SettingsCategory(parent.title, title,
+                                    parent, parent.contentRes, parent.hasPreview))
+                        } else if (children != null) {
+                            indexNodes(children, null)
+                        }
+                    }
+                }
+                else -> {
+                    val controller = node.createController(context)
+                    if (controller?.isVisible != false && node.indexable) {
+                        val key = node.key
+                        val title = controller?.title ?: node.getTitle(context)
+                        val summary = controller?.summary ?: node.getSummary(context)
+                        if (parent != null && key != null && title != null) {
+                            if (addedKeys.add(key)) {
+                                entries.add(SettingsEntry(node.iconRes, key, title, summary, parent) {
+                                    loadSlice(node)
+                                })
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the slice of a prebuilt node, finding its attributes in the XML resource. This is
+     * only done when the entry is displayed.
+     */
+    private fun loadSlice(node: Node): Slice? {
+        val provider = getSliceProvider(node.cls) ?: return null
+        val parser = context.resources.getXml(node.xmlRes)
+        try {
+            var elementIndex = -1
+            while (true) {
+                when (parser.next()) {
+                    XmlPullParser.END_DOCUMENT -> return null
+                    XmlPullParser.START_TAG -> if (++elementIndex == node.elementIndex) {
+                        return provider.getSlice(context, Xml.asAttributeSet(parser))
+                    }
+                }
+            }
+        } catch (t: Throwable) {
+            d("Couldn't load slice", t)
+            return null
+        } finally {
+            parser.close()
+        }
+    }
+
+    private fun indexXmlScreen(resourceId: Int, parent: SettingsScreen?) {
         val resources = context.resources
         val parser = resources.getXml(resourceId)
         parser.require(XmlPullParser.START_DOCUMENT, null, null)
@@ -116,7 +215,8 @@ class SearchIndex(private val context: Context) {
                         val summary = controller?.summary ?: ta.getString(R.styleable.IndexablePreference_android_summary)
                         if (parent != null && key != null && title != null) {
                             if (addedKeys.add(key)) {
-                                entries.add(SettingsEntry(iconRes, key, title, summary, parent, getSlice(cls, attrs)))
+                                val slice = getSlice(cls, attrs)
+                                entries.add(SettingsEntry(iconRes, key, title, summary, parent) { slice })
                             }
                         }
                     }
@@ -130,17 +230,19 @@ class SearchIndex(private val context: Context) {
     }
 
     private fun getSlice(cls: Class<*>?, attrs: AttributeSet): Slice? {
+        return getSliceProvider(cls)?.getSlice(context, attrs)
+    }
+
+    private fun getSliceProvider(cls: Class<*>?): SliceProvider? {
         if (cls == null) return null
-        val provider: SliceProvider
-        try {
+        return try {
             val providerField = cls.getDeclaredField("sliceProvider")
             providerField.isAccessible = true
-            provider = providerField.get(null) as? SliceProvider ?: return null
+            providerField.get(null) as? SliceProvider
         } catch (t: Throwable) {
             d("Couldn't get slice provider", t)
-            return null
+            null
         }
-        return provider.getSlice(context, attrs)
     }
 
     private fun createController(ta: TypedArray): PreferenceController? {
@@ -192,10 +294,12 @@ class SearchIndex(private val context: Context) {
             val title: String,
             val summary: String?,
             val parent: SettingsScreen?,
-            private val slice: Slice? = null) {
+            sliceLoader: (() -> Slice?)? = null) {
 
         val breadcrumbs get() = parent?.breadcrumbs ?: ""
 
+        private val slice by lazy { sliceLoader?.invoke() }
+
         fun getId(): Long {
             var id = title.hashCode().toLong() shl 32
             id += breadcrumbs.hashCode()
@@ -209,6 +313,61 @@ class SearchIndex(private val context: Context) {
         }
     }
 
+    /**
+     * A preference of a prebuilt screen, see [PrebuiltSearchIndex].
+     */
+    class Node(
+            val cls: Class<*>?,
+            val key: String?,
+            private val title: String?,
+            private val titleRes: Int,
+            private val summary: String?,
+            private val summaryRes: Int,
+            val iconRes: Int,
+            val contentRes: Int,
+            private val controllerFactory: ControllerFactory?,
+            val indexable: Boolean,
+            val hasPreview: Boolean,
+            private val defaultValue: Boolean,
+            private val defaultValueRes: Int,
+            val xmlRes: Int,
+            val elementIndex: Int,
+            val children: Array<Node>?) {
+
+        fun getTitle(context: Context) = if (titleRes != 0) context.getString(titleRes) else title
+
+        fun getSummary(context: Context) = if (summaryRes != 0) context.getString(summaryRes) else summary
+
+        /**
+         * Returns the default value like [TypedArray.getBoolean] does for the inflated preference,
+         * resolving references for the current configuration.
+         */
+        fun getDefaultValue(context: Context): Boolean {
+            if (defaultValueRes == 0) return defaultValue
+            val value = TypedValue()
+            context.resources.getValue(defaultValueRes, value, true)
+            return when {
+                value.type >= TypedValue.TYPE_FIRST_INT && value.type <= TypedValue.TYPE_LAST_INT ->
+                    value.data != 0
+                value.type == TypedValue.TYPE_STRING ->
+                    value.string.toString().let { it == "1" || it.equals("true", true) }
+                else -> false
+            }
+        }
+
+        fun createController(context: Context): PreferenceController? {
+            return try {
+                controllerFactory?.create(context)
+            } catch (t: Throwable) {
+                null
+            }
+        }
+    }
+
+    interface ControllerFactory {
+        fun create(context: Context): PreferenceController
+    }
+
     interface SliceProvider {
         fun getSlice(context: Context, attrs: AttributeSet): Slice?
 
@@ -0,0 +1,105 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.settings.ui.search
+
+/**
+ * Substring search over a fixed list of items using a trigram index.
+ *
+ * Queries of three or more characters only check the items containing all of the query's
+ * trigrams, and a query extending the previous one only checks the previous matches. Results
+ * are ranked by where the query matches: title prefix first, then word prefix, then anywhere.
+ */
+class SearchQueryIndex<T>(private val items: List<T>, text: (T) -> String) {
+
+    private val texts = Array(items.size) { text(items[it]).toLowerCase() }
+    private val trigrams = HashMap<String, IntArray>()
+
+    private var lastQuery = ""
+    private var lastMatches = IntArray(0)
+
+    init {
+        val postings = HashMap<String, ArrayList<Int>>()
+        texts.forEachIndexed { index, text ->
+            for (i in 0..text.length - 3) {
+                val list = postings.getOrPut(text.substring(i, i + 3)) { ArrayList() }
+                if (list.lastOrNull() != index) {
+                    list.add(index)
+                }
+            }
+        }
+        postings.forEach { (trigram, list) -> trigrams[trigram] = list.toIntArray() }
+    }
+
+    fun search(query: String): List<T> {
+        val q = query.toLowerCase()
+        if (q.isEmpty()) {
+            lastQuery = ""
+            return emptyList()
+        }
+
+        val candidates = when {
+            lastQuery.isNotEmpty() && q.contains(lastQuery) -> lastMatches
+            q.length >= 3 -> findCandidates(q)
+            else -> IntArray(items.size) { it }
+        }
+        val matches = candidates.filter { texts[it].contains(q) }.toIntArray()
+        lastQuery = q
+        lastMatches = matches
+
+        return matches.sortedWith(compareBy({ rank(texts[it], q) }, { it })).map { items[it] }
+    }
+
+    private fun findCandidates(q: String): IntArray {
+        var result: IntArray? = null
+        for (i in 0..q.length - 3) {
+            val posting = trigrams[q.substring(i, i + 3)] ?: return IntArray(0)
+            result = if (result == null) posting else intersect(result, posting)
+            if (result.isEmpty()) break
+        }
+        return result!!
+    }
+
+    private fun intersect(a: IntArray, b: IntArray): IntArray {
+        val result = IntArray(Math.min(a.size, b.size))
+        var i = 0
+        var j = 0
+        var count = 0
+        while (i < a.size && j < b.size) {
+            when {
+                a[i] < b[j] -> i++
+                a[i] > b[j] -> j++
+                else -> {
+                    result[count++] = a[i]
+                    i++
+                    j++
+                }
+            }
+        }
+        return result.copyOf(count)
+    }
+
+    private fun rank(text: String, q: String): Int {
+        if (text.startsWith(q)) return 0
+        var index = text.indexOf(q)
+        while (index > 0) {
+            if (!text[index - 1].isLetterOrDigit()) return 1
+            index = text.indexOf(q, index + 1)
+        }
+        return 2
+    }
+}
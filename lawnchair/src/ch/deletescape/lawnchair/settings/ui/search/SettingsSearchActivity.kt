@@ -42,6 +42,7 @@ import com.android.launcher3.BuildConfig
 class SettingsSearchActivity : SettingsBaseActivity(), SearchView.OnQueryTextListener {
 
     private val searchIndex by lazy { SearchIndex(this) }
+    private val queryIndex by lazy { SearchQueryIndex(searchIndex.entries) { it.title } }
     private val searchAdapter by lazy { SearchAdapter(this) }
     private var currentQuery = ""
 
@@ -120,7 +121,7 @@ class SettingsSearchActivity : SettingsBaseActivity(), SearchView.OnQueryTextLis
         val matches = if (query.isEmpty())
             emptyList()
         else
-            searchIndex.entries.filter { it.title.toLowerCase().contains(query.toLowerCase()) }
+            queryIndex.search(query)
         val showNoResults = matches.isEmpty() && !query.isEmpty()
         no_results_layout.animate().alpha(if (showNoResults) 1f else 0f).start()
         searchAdapter.postSearchResults(matches)
@@ -111,6 +111,7 @@ class LawnchairSmartspaceController(val context: Context) {
     }
 
     private fun updateData(weather: WeatherData?, card: CardData?) {
+        if (weather == weatherData && card == cardData) return
         weatherData = weather
         cardData = card
         notifyListeners()
@@ -270,15 +271,20 @@ class LawnchairSmartspaceController(val context: Context) {
         }
 
         fun updateData(weather: WeatherData?, card: CardData?) {
+            if (weather == currentWeather && card == currentCard) return
             currentWeather = weather
             currentCard = card
-            weatherUpdateListener?.invoke(weather)
-            cardUpdateListener?.invoke(this, card)
+            dispatchData()
+        }
+
+        private fun dispatchData() {
+            weatherUpdateListener?.invoke(currentWeather)
+            cardUpdateListener?.invoke(this, currentCard)
         }
 
         open fun forceUpdate() {
             if (currentWeather != null || currentCard != null) {
-                updateData(currentWeather, currentCard)
+                dispatchData()
             }
         }
 
@@ -488,6 +494,13 @@ class LawnchairSmartspaceController(val context: Context) {
                 // ignored
             }
         }
+
+        override fun equals(other: Any?): Boolean {
+            return other != null && other.javaClass == javaClass
+                   && (other as PendingIntentClickListener).pendingIntent == pendingIntent
+        }
+
+        override fun hashCode() = pendingIntent?.hashCode() ?: 0
     }
 
     class NotificationClickListener(sbn: StatusBarNotification)
@@ -502,6 +515,13 @@ class LawnchairSmartspaceController(val context: Context) {
                 Launcher.getLauncher(v.context).popupDataProvider.cancelNotification(key)
             }
         }
+
+        override fun equals(other: Any?): Boolean {
+            return super.equals(other) && (other as NotificationClickListener).key == key
+                   && other.autoCancel == autoCancel
+        }
+
+        override fun hashCode() = 31 * super.hashCode() + key.hashCode()
     }
 
     data class Line @JvmOverloads constructor(
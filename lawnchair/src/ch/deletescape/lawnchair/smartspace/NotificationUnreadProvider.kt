@@ -17,9 +17,12 @@
 
 package ch.deletescape.lawnchair.smartspace
 
+import android.graphics.Bitmap
+import android.service.notification.StatusBarNotification
 import android.support.annotation.Keep
 import android.support.v4.app.NotificationCompat.PRIORITY_DEFAULT
 import android.text.TextUtils
+import android.util.LruCache
 import ch.deletescape.lawnchair.*
 import ch.deletescape.lawnchair.smartspace.LawnchairSmartspaceController.CardData
 import ch.deletescape.lawnchair.smartspace.LawnchairSmartspaceController.Line
@@ -28,12 +31,14 @@ import com.android.launcher3.notification.NotificationInfo
 import com.android.launcher3.util.PackageUserKey
 
 @Keep
-class NotificationUnreadProvider(controller: LawnchairSmartspaceController) :
+class NotificationUnreadProvider @JvmOverloads constructor(
+        controller: LawnchairSmartspaceController,
+        private val manager: NotificationSource = NotificationsManager.instance) :
         LawnchairSmartspaceController.NotificationBasedDataProvider(controller),
         NotificationsManager.OnChangeListener {
 
-    private val manager = NotificationsManager.instance
     private var flowerpotLoaded = false
+    @Volatile
     private var zenModeEnabled = false
         set(value) {
             if (field != value) {
@@ -52,12 +57,25 @@ class NotificationUnreadProvider(controller: LawnchairSmartspaceController) :
         zenModeListener.startListening()
     }
 
-    override fun onNotificationsChanged() {
+    // Small icons keyed by package and resource, so that unchanged cards compare equal
+    private val iconCache = LruCache<String, Bitmap>(ICON_CACHE_SIZE)
+    private val zenModeIcon by lazy { context.getDrawable(R.drawable.ic_zen_mode)!!.toBitmap() }
+
+    private val updateCard = Runnable {
+        val card = getEventCard()
         runOnMainThread {
-            updateData(null, getEventCard())
+            if (listening) {
+                updateData(null, card)
+            }
         }
     }
 
+    override fun onNotificationsChanged() {
+        // Coalesce bursts of changes, only the latest notifications are relevant
+        uiWorkerHandler.removeCallbacks(updateCard)
+        uiWorkerHandler.post(updateCard)
+    }
+
     private fun getEventCard(): CardData? {
         if (!flowerpotLoaded) return null
 
@@ -71,7 +89,7 @@ class NotificationUnreadProvider(controller: LawnchairSmartspaceController) :
 
         if (zenModeEnabled) {
             return CardData(
-                    context.getDrawable(R.drawable.ic_zen_mode)!!.toBitmap(),
+                    zenModeIcon,
                     listOf(Line(context.getString(R.string.zen_mode_enabled))))
         }
 
@@ -93,10 +111,22 @@ class NotificationUnreadProvider(controller: LawnchairSmartspaceController) :
             lines.add(appLine)
         }
         return CardData(
-                sbn.loadSmallIcon(context)?.toBitmap(), lines,
+                getSmallIcon(sbn), lines,
                 LawnchairSmartspaceController.NotificationClickListener(sbn))
     }
 
+    private fun getSmallIcon(sbn: StatusBarNotification): Bitmap? {
+        val res = sbn.notification.icon
+        if (res == 0) {
+            // Not a resource, can't tell whether it changed
+            return sbn.loadSmallIcon(context)?.toBitmap()
+        }
+        val key = "${sbn.packageName}/$res"
+        return iconCache.get(key) ?: sbn.loadSmallIcon(context)?.toBitmap()?.also {
+            iconCache.put(key, it)
+        }
+    }
+
     private fun splitTitle(title: String): Array<String> {
         val delimiters = arrayOf(": ", " - ", " • ")
         for (del in delimiters) {
@@ -111,5 +141,11 @@ class NotificationUnreadProvider(controller: LawnchairSmartspaceController) :
         super.stopListening()
         manager.removeListener(this)
         zenModeListener.stopListening()
+        uiWorkerHandler.removeCallbacks(updateCard)
+    }
+
+    companion object {
+
+        private const val ICON_CACHE_SIZE = 8
     }
 }
@@ -31,27 +31,44 @@ import java.util.*
 import java.util.concurrent.Callable
 import java.util.concurrent.ExecutionException
 
-class NotificationsManager private constructor(): NotificationListener.NotificationsChangedListener {
+/**
+ * Source of the active notifications, with listeners called on the main thread.
+ */
+interface NotificationSource {
+
+    /**
+     * Latest list of notifications, which can be read from any thread.
+     */
+    val notifications: List<StatusBarNotification>
+
+    fun addListener(listener: NotificationsManager.OnChangeListener)
+
+    fun removeListener(listener: NotificationsManager.OnChangeListener)
+}
+
+class NotificationsManager private constructor(): NotificationListener.NotificationsChangedListener,
+        NotificationSource {
 
     private val bgNotificationsMap = mutableMapOf<String, StatusBarNotification>()
     private val listeners  = mutableListOf<OnChangeListener>()
     private var refreshPending = false
 
-    var notifications = emptyList<StatusBarNotification>()
+    @Volatile
+    override var notifications = emptyList<StatusBarNotification>()
         private set
 
     init {
         LauncherNotifications.getInstance().addListener(this)
     }
 
-    fun addListener(listener: OnChangeListener) {
+    override fun addListener(listener: OnChangeListener) {
         listeners.add(listener)
         runOnUiWorkerThread {
             if (refreshPending) doFullRefresh()
         }
     }
 
-    fun removeListener(listener: OnChangeListener) {
+    override fun removeListener(listener: OnChangeListener) {
         listeners.remove(listener)
     }
 
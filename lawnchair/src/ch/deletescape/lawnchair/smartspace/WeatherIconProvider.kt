@@ -21,11 +21,15 @@ import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.util.Log
+import android.util.LruCache
 import com.android.launcher3.R
-import java.util.*
 
 class WeatherIconProvider(private val context: Context) {
 
+    /**
+     * Returns the icon for the condition [iconID]. Icons are decoded once and then shared, so the
+     * returned bitmap must not be modified.
+     */
     fun getIcon(iconID: String?): Bitmap {
         var resID = iconID
         if (!ID_MAP.containsKey(resID)) {
@@ -33,10 +37,20 @@ class WeatherIconProvider(private val context: Context) {
             resID = CONDITION_UNKNOWN
         }
 
-        return BitmapFactory.decodeResource(context.resources, ID_MAP[resID]!!)
+        val res = ID_MAP[resID]!!
+        return synchronized(iconCache) {
+            iconCache.get(res) ?: BitmapFactory.decodeResource(context.resources, res).also {
+                iconCache.put(res, it)
+            }
+        }
     }
 
     companion object {
+        private const val ICON_CACHE_SIZE = 4
+
+        // Keyed by drawable resource, the current weather rarely changes between updates
+        private val iconCache = LruCache<Int, Bitmap>(ICON_CACHE_SIZE)
+
         const val CONDITION_UNKNOWN = "-1"
         const val CONDITION_CLEAR = "01"
         const val CONDITION_FEW_CLOUDS = "02"
@@ -0,0 +1,86 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.deletescape.lawnchair.util
+
+import android.util.AtomicFile
+import android.util.Log
+import ch.deletescape.lawnchair.uiWorkerHandler
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+
+/**
+ * A small JSON object which is stored in a file and always rewritten as a whole. Writes are
+ * batched on the ui worker thread, and a failed write keeps the previous contents.
+ *
+ * @param description what the file contains, used in log messages
+ * @param serialize creates the object to write, called on the ui worker thread
+ */
+class AtomicJSONFile(file: File, private val description: String,
+                     private val serialize: () -> JSONObject) {
+
+    private val atomicFile = AtomicFile(file)
+    private val writeRunnable = Runnable { write(serialize()) }
+
+    /**
+     * Reads the stored object and passes it to [parse], unless the file doesn't exist yet.
+     * Errors while reading or parsing are logged and keep whatever [parse] read so far.
+     */
+    fun read(parse: (JSONObject) -> Unit) {
+        if (!atomicFile.baseFile.exists()) return
+
+        try {
+            parse(JSONObject(String(atomicFile.readFully())))
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read $description", e)
+        } catch (e: JSONException) {
+            Log.e(TAG, "Failed to parse $description", e)
+        }
+    }
+
+    /**
+     * Writes the file on the ui worker thread. Calls which happen before it was written are
+     * merged into a single write.
+     */
+    fun scheduleWrite() {
+        uiWorkerHandler.removeCallbacks(writeRunnable)
+        uiWorkerHandler.post(writeRunnable)
+    }
+
+    private fun write(obj: JSONObject) {
+        val stream = try {
+            atomicFile.startWrite()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to write $description", e)
+            return
+        }
+        try {
+            stream.write(obj.toString().toByteArray())
+            atomicFile.finishWrite(stream)
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to write $description", e)
+            atomicFile.failWrite(stream)
+        }
+    }
+
+    companion object {
+
+        private const val TAG = "AtomicJSONFile"
+    }
+}
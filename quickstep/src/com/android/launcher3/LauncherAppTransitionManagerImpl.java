@@ -610,6 +610,7 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
 
         Rect crop = new Rect();
         Matrix matrix = new Matrix();
+        SurfaceParams[] params = createSurfaceParams(targets.length);
 
         RemoteAnimationTargetSet openingTargets = new RemoteAnimationTargetSet(targets,
                 MODE_OPENING);
@@ -660,7 +661,6 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
                 crop.right = windowWidth;
                 crop.bottom = (int) (crop.top + cropHeight);
 
-                SurfaceParams[] params = new SurfaceParams[targets.length];
                 for (int i = targets.length - 1; i >= 0; i--) {
                     RemoteAnimationTargetCompat target = targets[i];
 
@@ -677,7 +677,7 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
                         targetCrop = target.sourceContainerBounds;
                     }
 
-                    params[i] = new SurfaceParams(target.leash, alpha, matrix, targetCrop,
+                    params[i].set(target.leash, alpha, matrix, targetCrop,
                             RemoteAnimationProvider.getLayer(target, MODE_OPENING));
                 }
                 surfaceApplier.scheduleApply(params);
@@ -770,6 +770,7 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
         SyncRtSurfaceTransactionApplier surfaceApplier =
                 new SyncRtSurfaceTransactionApplier(mDragLayer);
         Matrix matrix = new Matrix();
+        SurfaceParams[] params = createSurfaceParams(targets.length);
         ValueAnimator closingAnimator = ValueAnimator.ofFloat(0, 1);
         int duration = CLOSING_TRANSITION_DURATION_MS;
         closingAnimator.setDuration(duration);
@@ -779,7 +780,6 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
 
             @Override
             public void onUpdate(float percent) {
-                SurfaceParams[] params = new SurfaceParams[targets.length];
                 for (int i = targets.length - 1; i >= 0; i--) {
                     RemoteAnimationTargetCompat target = targets[i];
                     float alpha;
@@ -791,7 +791,7 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
                         matrix.setTranslate(target.position.x, target.position.y);
                         alpha = 1f;
                     }
-                    params[i] = new SurfaceParams(target.leash, alpha, matrix,
+                    params[i].set(target.leash, alpha, matrix,
                             target.sourceContainerBounds,
                             RemoteAnimationProvider.getLayer(target, MODE_CLOSING));
                 }
@@ -802,6 +802,18 @@ public class LauncherAppTransitionManagerImpl extends LauncherAppTransitionManag
         return closingAnimator;
     }
 
+    /**
+     * Returns surface params for {@param count} targets, to be updated by every animation frame
+     * instead of allocating new ones.
+     */
+    protected static SurfaceParams[] createSurfaceParams(int count) {
+        SurfaceParams[] params = new SurfaceParams[count];
+        for (int i = 0; i < count; i++) {
+            params[i] = new SurfaceParams();
+        }
+        return params;
+    }
+
     /**
      * Creates an animator that modifies Launcher as a result from {@link #getWallpaperOpenRunner}.
      */
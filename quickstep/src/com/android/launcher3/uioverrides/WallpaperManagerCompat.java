@@ -50,8 +50,11 @@ import android.util.Pair;
 
 import com.android.launcher3.Utilities;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.zip.CRC32;
 
 public class WallpaperManagerCompat {
 
@@ -70,7 +73,8 @@ public class WallpaperManagerCompat {
 
     private static final String TAG = "WMCompatVL";
 
-    private static final String VERSION_PREFIX = "1,";
+    // Stored as "2,<wallpaper id>,<content hash>[,<hints>,<primary color>]"
+    private static final String VERSION_PREFIX = "2,";
     private static final String KEY_COLORS = "wallpaper_parsed_colors";
     private static final String ACTION_EXTRACTION_COMPLETE =
             "com.android.launcher3.uioverrides.dynamicui.WallpaperManagerCompatVL.EXTRACTION_COMPLETE";
@@ -174,18 +178,18 @@ public class WallpaperManagerCompat {
     /**
      * Parses the stored value and returns the wallpaper id and wallpaper colors.
      */
-    private static Pair<Integer, WallpaperColorsCompat> parseValue(String value) {
+    static Pair<Integer, WallpaperColorsCompat> parseValue(String value) {
         String[] parts = value.split(",");
         Integer wallpaperId = Integer.parseInt(parts[1]);
-        if (parts.length == 2) {
+        if (parts.length <= 3) {
             // There is no wallpaper color info present, eg when live wallpaper has no preview.
             return Pair.create(wallpaperId, null);
         }
 
-        int hints = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
-        int primary = parts.length > 3 ? Integer.parseInt(parts[3]) : 0;
-        int secondary = parts.length > 4 ? Integer.parseInt(parts[4]) : 0;
-        int tertiary = parts.length > 5 ? Integer.parseInt(parts[5]) : 0;
+        int hints = parts.length > 3 ? Integer.parseInt(parts[3]) : 0;
+        int primary = parts.length > 4 ? Integer.parseInt(parts[4]) : 0;
+        int secondary = parts.length > 5 ? Integer.parseInt(parts[5]) : 0;
+        int tertiary = parts.length > 6 ? Integer.parseInt(parts[6]) : 0;
 
         return Pair.create(wallpaperId, new WallpaperColorsCompat(primary, secondary, tertiary,
                 hints));
@@ -205,6 +209,8 @@ public class WallpaperManagerCompat {
         // to avoid bright images with some dark spots.
         private static final float DARK_PIXEL_LUMINANCE = 0.45f;
         private static final float MAX_DARK_AREA = 0.05f;
+        // The dark hints are computed from a downsampled grid of at most this many pixels
+        private static final int MAX_HINT_AREA = 56 * 56;
 
         private HandlerThread mWorkerThread;
         private Handler mWorkerHandler;
@@ -236,32 +242,184 @@ public class WallpaperManagerCompat {
         }
 
         /**
-         * Extracts the wallpaper colors and sends the result back through the receiver.
+         * Extracts the wallpaper colors and sends the result back through the receiver, unless
+         * the stored value is already up to date.
          */
         @Override
         public void run() {
-            int wallpaperId = getWallpaperId(this);
+            String storedValue = getDevicePrefs(this).getString(KEY_COLORS, "");
+            String value = extractColors(new SystemWallpaperSource(this), storedValue);
+            if (value.equals(storedValue)) {
+                return;
+            }
+
+            // Send the result
+            sendBroadcast(new Intent(ACTION_EXTRACTION_COMPLETE)
+                    .setPackage(getPackageName())
+                    .putExtra(KEY_COLORS, value));
+        }
+
+        /**
+         * Returns the value to store for the colors of the wallpaper in {@param source}. The
+         * colors of {@param storedValue} are reused if they were extracted from the same content,
+         * as the system assigns a new id even when the same image is set again.
+         */
+        static String extractColors(WallpaperSource source, String storedValue) {
+            long contentHash = source.getContentHash();
+            String value = VERSION_PREFIX + source.getWallpaperId() + "," + contentHash;
+            if (contentHash != 0 && storedValue.startsWith(VERSION_PREFIX)) {
+                String[] parts = storedValue.split(",", 4);
+                if (parts.length > 2 && parts[2].equals(Long.toString(contentHash))) {
+                    return parts.length > 3 ? value + "," + parts[3] : value;
+                }
+            }
+
+            Bitmap bitmap = source.loadBitmap(MAX_WALLPAPER_EXTRACTION_AREA);
+            if (bitmap != null) {
+                int hints = calculateDarkHints(bitmap);
+                int color = findDominantColorByHue(bitmap, MAX_WALLPAPER_EXTRACTION_AREA);
+                value += "," + hints + "," + color;
+            }
+            return value;
+        }
+
+        /**
+         * Checks if image is bright and clean enough to support light text.
+         *
+         * @param source What to read.
+         * @return Whether image supports dark text or not.
+         */
+        static int calculateDarkHints(Bitmap source) {
+            if (source == null) {
+                return 0;
+            }
+            int area = source.getWidth() * source.getHeight();
+            int step = (int) Math.ceil(Math.sqrt(area / (double) MAX_HINT_AREA));
+            return calculateDarkHints(source, Math.max(step, 1));
+        }
+
+        /**
+         * Computes the hints from every {@param step}th pixel of every {@param step}th row.
+         */
+        static int calculateDarkHints(Bitmap source, int step) {
+            int width = source.getWidth();
+            int height = source.getHeight();
+            int[] row = new int[width];
+            double totalLuminance = 0;
+            int pixelCount = 0;
+            int darkPixels = 0;
+            float[] tmpHsl = new float[3];
+            for (int y = 0; y < height; y += step) {
+                source.getPixels(row, 0 /* offset */, width, 0 /* x */, y, width, 1);
+                for (int x = 0; x < width; x += step) {
+                    ColorUtils.colorToHSL(row[x], tmpHsl);
+                    final float luminance = tmpHsl[2];
+                    final int alpha = Color.alpha(row[x]);
+                    // Make sure we don't have a dark pixel mass that will
+                    // make text illegible.
+                    if (luminance < DARK_PIXEL_LUMINANCE && alpha != 0) {
+                        darkPixels++;
+                    }
+                    totalLuminance += luminance;
+                    pixelCount++;
+                }
+            }
+            int hints = 0;
+            final int maxDarkPixels = (int) (pixelCount * MAX_DARK_AREA);
+            double meanLuminance = totalLuminance / pixelCount;
+            if (meanLuminance > BRIGHT_IMAGE_MEAN_LUMINANCE && darkPixels < maxDarkPixels) {
+                hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT;
+            }
+            if (meanLuminance < DARK_THEME_MEAN_LUMINANCE) {
+                hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_THEME;
+            }
+            return hints;
+        }
+    }
+
+    /**
+     * The wallpaper colors are extracted from.
+     */
+    interface WallpaperSource {
+
+        int getWallpaperId();
+
+        /**
+         * Returns a hash of the wallpaper content, or 0 if it can't be computed without loading
+         * the wallpaper.
+         */
+        long getContentHash();
+
+        /**
+         * Loads the wallpaper, scaled to about {@param maxArea} pixels.
+         */
+        @Nullable
+        Bitmap loadBitmap(int maxArea);
+    }
+
+    /**
+     * The current system wallpaper.
+     */
+    static class SystemWallpaperSource implements WallpaperSource {
+
+        private final Context mContext;
+        private final WallpaperManager mWallpaperManager;
+
+        SystemWallpaperSource(Context context) {
+            mContext = context;
+            mWallpaperManager = WallpaperManager.getInstance(context);
+        }
 
+        @Override
+        public int getWallpaperId() {
+            return WallpaperManagerCompat.getWallpaperId(mContext);
+        }
+
+        @Override
+        public long getContentHash() {
+            WallpaperInfo info = mWallpaperManager.getWallpaperInfo();
+            if (info != null) {
+                // Live wallpapers are identified by their component
+                return info.getComponent().flattenToString().hashCode();
+            }
+            if (!Utilities.ATLEAST_NOUGAT) {
+                return 0;
+            }
+            try (ParcelFileDescriptor fd = mWallpaperManager.getWallpaperFile(FLAG_SYSTEM);
+                 InputStream in = new FileInputStream(fd.getFileDescriptor())) {
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+                return crc.getValue();
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to hash the wallpaper file", e);
+                return 0;
+            }
+        }
+
+        @Override
+        public Bitmap loadBitmap(int maxArea) {
             Bitmap bitmap = null;
             Drawable drawable = null;
 
-            WallpaperManager wm = WallpaperManager.getInstance(this);
-            WallpaperInfo info = wm.getWallpaperInfo();
+            WallpaperInfo info = mWallpaperManager.getWallpaperInfo();
             if (info != null) {
                 // For live wallpaper, extract colors from thumbnail
-                drawable = info.loadThumbnail(getPackageManager());
+                drawable = info.loadThumbnail(mContext.getPackageManager());
             } else {
                 if (Utilities.ATLEAST_NOUGAT) {
-                    try (ParcelFileDescriptor fd = wm.getWallpaperFile(FLAG_SYSTEM)) {
+                    try (ParcelFileDescriptor fd = mWallpaperManager.getWallpaperFile(FLAG_SYSTEM)) {
                         BitmapRegionDecoder decoder = BitmapRegionDecoder
                                 .newInstance(fd.getFileDescriptor(), false);
 
                         int requestedArea = decoder.getWidth() * decoder.getHeight();
                         BitmapFactory.Options options = new BitmapFactory.Options();
 
-                        if (requestedArea > MAX_WALLPAPER_EXTRACTION_AREA) {
-                            double areaRatio =
-                                    (double) requestedArea / MAX_WALLPAPER_EXTRACTION_AREA;
+                        if (requestedArea > maxArea) {
+                            double areaRatio = (double) requestedArea / maxArea;
                             double nearestPowOf2 =
                                     Math.floor(Math.log(areaRatio) / (2 * Math.log(2)));
                             options.inSampleSize = (int) Math.pow(2, nearestPowOf2);
@@ -274,7 +432,7 @@ public class WallpaperManagerCompat {
                     }
                 }
                 if (bitmap == null) {
-                    drawable = wm.getDrawable();
+                    drawable = mWallpaperManager.getDrawable();
                 }
             }
 
@@ -284,8 +442,8 @@ public class WallpaperManagerCompat {
                 final int requestedArea = drawable.getIntrinsicWidth() *
                         drawable.getIntrinsicHeight();
                 double scale = 1;
-                if (requestedArea > MAX_WALLPAPER_EXTRACTION_AREA) {
-                    scale = Math.sqrt(MAX_WALLPAPER_EXTRACTION_AREA / (double) requestedArea);
+                if (requestedArea > maxArea) {
+                    scale = Math.sqrt(maxArea / (double) requestedArea);
                 }
                 bitmap = Bitmap.createBitmap((int) (drawable.getIntrinsicWidth() * scale),
                         (int) (drawable.getIntrinsicHeight() * scale), Bitmap.Config.ARGB_8888);
@@ -293,60 +451,7 @@ public class WallpaperManagerCompat {
                 drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
                 drawable.draw(bmpCanvas);
             }
-
-            String value = VERSION_PREFIX + wallpaperId;
-
-            if (bitmap != null) {
-                int hints = calculateDarkHints(bitmap);
-                int color = findDominantColorByHue(bitmap, MAX_WALLPAPER_EXTRACTION_AREA);
-                value += "," + hints + "," + color;
-            }
-
-            // Send the result
-            sendBroadcast(new Intent(ACTION_EXTRACTION_COMPLETE)
-                    .setPackage(getPackageName())
-                    .putExtra(KEY_COLORS, value));
-        }
-
-        /**
-         * Checks if image is bright and clean enough to support light text.
-         *
-         * @param source What to read.
-         * @return Whether image supports dark text or not.
-         */
-        private static int calculateDarkHints(Bitmap source) {
-            if (source == null) {
-                return 0;
-            }
-            int[] pixels = new int[source.getWidth() * source.getHeight()];
-            double totalLuminance = 0;
-            final int maxDarkPixels = (int) (pixels.length * MAX_DARK_AREA);
-            int darkPixels = 0;
-            source.getPixels(pixels, 0 /* offset */, source.getWidth(), 0 /* x */, 0 /* y */,
-                    source.getWidth(), source.getHeight());
-            // This bitmap was already resized to fit the maximum allowed area.
-            // Let's just loop through the pixels, no sweat!
-            float[] tmpHsl = new float[3];
-            for (int i = 0; i < pixels.length; i++) {
-                ColorUtils.colorToHSL(pixels[i], tmpHsl);
-                final float luminance = tmpHsl[2];
-                final int alpha = Color.alpha(pixels[i]);
-                // Make sure we don't have a dark pixel mass that will
-                // make text illegible.
-                if (luminance < DARK_PIXEL_LUMINANCE && alpha != 0) {
-                    darkPixels++;
-                }
-                totalLuminance += luminance;
-            }
-            int hints = 0;
-            double meanLuminance = totalLuminance / pixels.length;
-            if (meanLuminance > BRIGHT_IMAGE_MEAN_LUMINANCE && darkPixels < maxDarkPixels) {
-                hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT;
-            }
-            if (meanLuminance < DARK_THEME_MEAN_LUMINANCE) {
-                hints |= WallpaperColorsCompat.HINT_SUPPORTS_DARK_THEME;
-            }
-            return hints;
+            return bitmap;
         }
     }
 
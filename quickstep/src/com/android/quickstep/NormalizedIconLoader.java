@@ -28,6 +28,8 @@ import android.util.LruCache;
 import android.util.SparseArray;
 
 import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.IconCache;
+import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.graphics.BitmapInfo;
 import com.android.launcher3.graphics.DrawableFactory;
 import com.android.launcher3.graphics.LauncherIcons;
@@ -82,9 +84,29 @@ public class NormalizedIconLoader extends IconLoader {
                 Build.VERSION_CODES.O, isInstantApp);
     }
 
+    /**
+     * Returns the icon the launcher already holds for the task's component, sharing its bitmap,
+     * or null if the component isn't loaded in the launcher model.
+     */
+    protected Drawable getCachedActivityIcon(ActivityInfo activityInfo, int userId) {
+        LauncherAppState app = LauncherAppState.getInstanceNoCreate();
+        if (app == null) {
+            return null;
+        }
+        IconCache iconCache = app.getIconCache();
+        BitmapInfo bitmapInfo = iconCache.getCachedIcon(
+                new ComponentName(activityInfo.packageName, activityInfo.name),
+                UserHandle.of(userId));
+        return bitmapInfo != null ? mDrawableFactory.newIcon(bitmapInfo, activityInfo) : null;
+    }
+
     @Override
     protected Drawable getBadgedActivityIcon(ActivityInfo activityInfo, int userId,
             TaskDescription desc) {
+        Drawable cachedIcon = getCachedActivityIcon(activityInfo, userId);
+        if (cachedIcon != null) {
+            return cachedIcon;
+        }
         BitmapInfo bitmapInfo = getBitmapInfo(
                 activityInfo.loadUnbadgedIcon(mContext.getPackageManager()),
                 userId,
@@ -149,12 +149,15 @@ public class RecentsModel extends TaskStackChangeListener {
             return requestId;
         }
 
+        // Tasks which haven't changed since the last plan was loaded are reused
+        final RecentsTaskLoadPlan previousPlan = mLastLoadPlan;
         BackgroundExecutor.get().submit(() -> {
             // Preload the plan
             RecentsTaskLoadPlan loadPlan = new RecentsTaskLoadPlan(mContext);
             PreloadOptions opts = new PreloadOptions();
             opts.loadTitles = mAccessibilityManager.isEnabled();
-            loadPlan.preloadPlan(opts, mRecentsTaskLoader, taskId, UserHandle.myUserId());
+            loadPlan.preloadPlan(opts, mRecentsTaskLoader, taskId, UserHandle.myUserId(),
+                    previousPlan);
             // Set the load plan on UI thread
             mMainThreadExecutor.execute(() -> {
                 mLastLoadPlan = loadPlan;
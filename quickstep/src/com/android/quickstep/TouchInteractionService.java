@@ -28,6 +28,7 @@ import android.annotation.TargetApi;
 import android.app.ActivityManager.RunningTaskInfo;
 import android.app.Service;
 import android.content.Intent;
+import android.content.res.Configuration;
 import android.graphics.PointF;
 import android.os.Build;
 import android.os.Handler;
@@ -41,6 +42,7 @@ import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 
+import ch.deletescape.lawnchair.gestures.DisplayGeometryCache;
 import ch.deletescape.lawnchair.gestures.NavigationBarGestureConsumer;
 import com.android.launcher3.BaseDraggingActivity;
 import com.android.launcher3.MainThreadExecutor;
@@ -173,6 +175,7 @@ public class TouchInteractionService extends Service {
     private OverviewInteractionState mOverviewInteractionState;
     private OverviewCallbacks mOverviewCallbacks;
     private TaskOverlayFactory mTaskOverlayFactory;
+    private DisplayGeometryCache mDisplayGeometry;
 
     private Choreographer mMainThreadChoreographer;
     private Choreographer mBackgroundThreadChoreographer;
@@ -193,6 +196,8 @@ public class TouchInteractionService extends Service {
         mOverviewInteractionState = OverviewInteractionState.getInstance(this);
         mOverviewCallbacks = OverviewCallbacks.get(this);
         mTaskOverlayFactory = TaskOverlayFactory.get(this);
+        mDisplayGeometry = new DisplayGeometryCache(this);
+        mDisplayGeometry.startTracking();
 
         sConnected = true;
 
@@ -204,10 +209,19 @@ public class TouchInteractionService extends Service {
     @Override
     public void onDestroy() {
         mOverviewCommandHelper.onDestroy();
+        mDisplayGeometry.stopTracking();
         sConnected = false;
         super.onDestroy();
     }
 
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        if (mDisplayGeometry != null) {
+            mDisplayGeometry.invalidate();
+        }
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         Log.d(TAG, "Touch service connected");
@@ -231,7 +245,7 @@ public class TouchInteractionService extends Service {
     private TouchConsumer getCurrentTouchConsumer(
             @HitTarget int downHitTarget, boolean forceToLauncher, VelocityTracker tracker) {
         TouchConsumer consumer = getCurrentTouchConsumerImpl(downHitTarget, forceToLauncher, tracker);
-        return new NavigationBarGestureConsumer(this, consumer, downHitTarget);
+        return new NavigationBarGestureConsumer(this, consumer, downHitTarget, mDisplayGeometry);
     }
 
     private TouchConsumer getCurrentTouchConsumerImpl(
@@ -90,7 +90,6 @@ import com.android.systemui.shared.system.WindowManagerWrapper;
 
 import com.google.android.apps.nexuslauncher.NexusLauncherActivity;
 import java.util.StringJoiner;
-import java.util.function.BiFunction;
 
 @TargetApi(Build.VERSION_CODES.O)
 public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
@@ -974,8 +973,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
         mGestureEndCallback = gestureEndCallback;
     }
 
-    private void setTargetAlphaProvider(
-            BiFunction<RemoteAnimationTargetCompat, Float, Float> provider) {
+    private void setTargetAlphaProvider(ClipAnimationHelper.TaskAlphaCallback provider) {
         mClipAnimationHelper.setTaskAlphaCallback(provider);
         updateFinalShift();
     }
@@ -51,9 +51,6 @@ import com.android.systemui.shared.system.SyncRtSurfaceTransactionApplier.Surfac
 import com.android.systemui.shared.system.TransactionCompat;
 import com.android.systemui.shared.system.WindowManagerWrapper;
 
-import java.util.function.BiConsumer;
-import java.util.function.BiFunction;
-
 /**
  * Utility class to handle window clip animation
  */
@@ -85,6 +82,11 @@ public class ClipAnimationHelper {
     private final RectFEvaluator mRectFEvaluator = new RectFEvaluator();
     private final Matrix mTmpMatrix = new Matrix();
     private final RectF mTmpRectF = new RectF();
+    private final RectF mScaledTargetRect = new RectF();
+
+    // Reused for every frame, sized for the targets of the current animation
+    private SurfaceParams[] mSurfaceParams = new SurfaceParams[0];
+    private TransactionCompat mTransaction;
 
     private float mTargetScale = 1f;
     private float mOffsetScale = 1f;
@@ -97,8 +99,7 @@ public class ClipAnimationHelper {
     // Wether or not applyTransform has been called yet since prepareAnimation()
     private boolean mIsFirstFrame = true;
 
-    private BiFunction<RemoteAnimationTargetCompat, Float, Float> mTaskAlphaCallback =
-            (t, a1) -> a1;
+    private TaskAlphaCallback mTaskAlphaCallback = (t, a1) -> a1;
 
     private void updateSourceStack(RemoteAnimationTargetCompat target) {
         mSourceInsets.set(target.contentInsets);
@@ -128,7 +129,8 @@ public class ClipAnimationHelper {
         // launcher insets may differ, so the aspect ratio of the target rect can differ
         // from the source rect. The difference between the target rect (scaled to the
         // source rect) is the amount to clip on each edge.
-        RectF scaledTargetRect = new RectF(mTargetRect);
+        RectF scaledTargetRect = mScaledTargetRect;
+        scaledTargetRect.set(mTargetRect);
         Utilities.scaleRectFAboutCenter(scaledTargetRect,
                 mSourceRect.width() / mTargetRect.width());
         scaledTargetRect.offsetTo(mSourceRect.left, mSourceRect.top);
@@ -166,7 +168,7 @@ public class ClipAnimationHelper {
         mClipRect.bottom = (int)
                 (mSourceStackBounds.height() - (mSourceWindowClipInsets.bottom * progress));
 
-        SurfaceParams[] params = new SurfaceParams[targetSet.unfilteredApps.length];
+        SurfaceParams[] params = getSurfaceParams(targetSet.unfilteredApps.length);
         for (int i = 0; i < targetSet.unfilteredApps.length; i++) {
             RemoteAnimationTargetCompat app = targetSet.unfilteredApps[i];
             mTmpMatrix.setTranslate(app.position.x, app.position.y);
@@ -184,24 +186,41 @@ public class ClipAnimationHelper {
                     alpha = 1 - progress;
                 }
 
-                alpha = mTaskAlphaCallback.apply(app, alpha);
+                alpha = mTaskAlphaCallback.getAlpha(app, alpha);
             }
 
-            params[i] = new SurfaceParams(app.leash, alpha, mTmpMatrix, crop,
+            params[i].set(app.leash, alpha, mTmpMatrix, crop,
                     RemoteAnimationProvider.getLayer(app, mBoostModeTargetLayers));
         }
-        applyParams(syncTransactionApplier, params);
+        applyParams(syncTransactionApplier, params, targetSet.unfilteredApps.length);
         return currentRect;
     }
 
+    /**
+     * Returns the params to update for a frame, which are only reallocated when the number of
+     * targets changes.
+     */
+    private SurfaceParams[] getSurfaceParams(int count) {
+        if (mSurfaceParams.length != count) {
+            mSurfaceParams = new SurfaceParams[count];
+            for (int i = 0; i < count; i++) {
+                mSurfaceParams[i] = new SurfaceParams();
+            }
+        }
+        return mSurfaceParams;
+    }
+
     private void applyParams(@Nullable SyncRtSurfaceTransactionApplier syncTransactionApplier,
-            SurfaceParams[] params) {
+            SurfaceParams[] params, int count) {
         if (syncTransactionApplier != null) {
-            syncTransactionApplier.scheduleApply(params);
+            syncTransactionApplier.scheduleApply(params, count);
         } else {
-            TransactionCompat t = new TransactionCompat();
-            for (SurfaceParams param : params) {
-                SyncRtSurfaceTransactionApplier.applyParams(t, param);
+            if (mTransaction == null) {
+                mTransaction = new TransactionCompat();
+            }
+            TransactionCompat t = mTransaction;
+            for (int i = 0; i < count; i++) {
+                SyncRtSurfaceTransactionApplier.applyParams(t, params[i]);
             }
             try {
                 t.setEarlyWakeup();
@@ -212,8 +231,7 @@ public class ClipAnimationHelper {
         }
     }
 
-    public void setTaskAlphaCallback(
-            BiFunction<RemoteAnimationTargetCompat, Float, Float> callback) {
+    public void setTaskAlphaCallback(TaskAlphaCallback callback) {
         mTaskAlphaCallback = callback;
     }
 
@@ -326,4 +344,11 @@ public class ClipAnimationHelper {
     public RectF getSourceRect() {
         return mSourceRect;
     }
+
+    /**
+     * Callback to override the alpha of the animating tasks, without boxing it every frame.
+     */
+    public interface TaskAlphaCallback {
+        float getAlpha(RemoteAnimationTargetCompat target, float expectedAlpha);
+    }
 }
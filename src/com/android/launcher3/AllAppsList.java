@@ -28,12 +28,17 @@ import android.util.Log;
 
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.PackageInstallerCompat;
+import com.android.launcher3.model.AllAppsSnapshot;
 import com.android.launcher3.util.FlagOp;
 import com.android.launcher3.util.ItemInfoMatcher;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -57,6 +62,18 @@ public class AllAppsList {
 
     private AppFilter mAppFilter;
 
+    /** The latest published snapshot, or null until the apps have been loaded. */
+    private volatile AllAppsSnapshot mSnapshot;
+    private int mSnapshotVersion;
+    private boolean mSnapshotDirty;
+    /** Apps modified in place since the last snapshot, which need to be copied again. */
+    private final Set<AppInfo> mChangedSinceSnapshot =
+            Collections.newSetFromMap(new IdentityHashMap<AppInfo, Boolean>());
+    /** Maps the apps in {@link #data} to their copy in the last snapshot. */
+    private IdentityHashMap<AppInfo, AppInfo> mSnapshotCopies = new IdentityHashMap<>();
+    private final CopyOnWriteArrayList<AllAppsSnapshot.Listener> mSnapshotListeners =
+            new CopyOnWriteArrayList<>();
+
     /**
      * Boring constructor.
      */
@@ -82,6 +99,7 @@ public class AllAppsList {
 
         data.add(info);
         added.add(info);
+        markChanged(info);
     }
 
     public void addPromiseApp(Context context,
@@ -105,6 +123,7 @@ public class AllAppsList {
 
     public void clear() {
         data.clear();
+        mSnapshotDirty = true;
         // TODO: do we clear these too?
         added.clear();
         removed.clear();
@@ -142,6 +161,7 @@ public class AllAppsList {
             if (info.user.equals(user) && packageName.equals(info.componentName.getPackageName())) {
                 removed.add(info);
                 data.remove(i);
+                mSnapshotDirty = true;
             }
         }
     }
@@ -156,6 +176,7 @@ public class AllAppsList {
             if (matcher.matches(info, info.componentName)) {
                 info.runtimeStatusFlags = op.apply(info.runtimeStatusFlags);
                 modified.add(info);
+                markChanged(info);
             }
         }
     }
@@ -166,6 +187,7 @@ public class AllAppsList {
             if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
                 mIconCache.updateTitleAndIcon(info);
                 outUpdates.add(info);
+                markChanged(info);
             }
         }
     }
@@ -188,6 +210,7 @@ public class AllAppsList {
                         Log.w(TAG, "Shortcut will be removed due to app component name change.");
                         removed.add(applicationInfo);
                         data.remove(i);
+                        mSnapshotDirty = true;
                     }
                 }
             }
@@ -201,6 +224,7 @@ public class AllAppsList {
                 } else {
                     mIconCache.getTitleAndIcon(applicationInfo, info, true /* useLowResIcon */);
                     modified.add(applicationInfo);
+                    markChanged(applicationInfo);
                 }
             }
         } else {
@@ -212,6 +236,7 @@ public class AllAppsList {
                     removed.add(applicationInfo);
                     mIconCache.remove(applicationInfo.componentName, user);
                     data.remove(i);
+                    mSnapshotDirty = true;
                 }
             }
         }
@@ -233,10 +258,65 @@ public class AllAppsList {
             if (user.equals(applicationInfo.user) && !mAppFilter.shouldShowApp(applicationInfo.componentName, applicationInfo.user)) {
                 removed.add(applicationInfo);
                 data.remove(i);
+                mSnapshotDirty = true;
             }
         }
     }
 
+    private void markChanged(AppInfo info) {
+        mChangedSinceSnapshot.add(info);
+        mSnapshotDirty = true;
+    }
+
+    /**
+     * Returns the latest snapshot of the installed apps, or null if the apps haven't been loaded
+     * yet. Can be called from any thread.
+     */
+    public @Nullable AllAppsSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Publishes a new snapshot if the apps changed since the last one, and notifies the
+     * listeners. Apps which didn't change share their copy with the previous snapshot.
+     * Must be called on the worker thread, once a set of changes is complete.
+     */
+    public void publishSnapshot() {
+        if (!mSnapshotDirty && mSnapshot != null) {
+            return;
+        }
+        final ArrayList<AppInfo> apps = new ArrayList<>(data.size());
+        final IdentityHashMap<AppInfo, AppInfo> copies = new IdentityHashMap<>(data.size());
+        for (AppInfo info : data) {
+            if (info instanceof PromiseAppInfo) {
+                continue;
+            }
+            AppInfo copy = mChangedSinceSnapshot.contains(info) ? null : mSnapshotCopies.get(info);
+            if (copy == null) {
+                copy = new AppInfo(info);
+            }
+            copies.put(info, copy);
+            apps.add(copy);
+        }
+        mSnapshotCopies = copies;
+        mChangedSinceSnapshot.clear();
+        mSnapshotDirty = false;
+
+        AllAppsSnapshot snapshot = new AllAppsSnapshot(++mSnapshotVersion, apps);
+        mSnapshot = snapshot;
+        for (AllAppsSnapshot.Listener listener : mSnapshotListeners) {
+            listener.onAllAppsSnapshotChanged(snapshot);
+        }
+    }
+
+    public void addSnapshotListener(AllAppsSnapshot.Listener listener) {
+        mSnapshotListeners.add(listener);
+    }
+
+    public void removeSnapshotListener(AllAppsSnapshot.Listener listener) {
+        mSnapshotListeners.remove(listener);
+    }
+
     /**
      * Returns whether <em>apps</em> contains <em>component</em>.
      */
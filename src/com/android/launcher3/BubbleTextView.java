@@ -297,7 +297,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
 
     private void applyIconAndLabel(ItemInfoWithIcon info) {
         FastBitmapDrawable iconDrawable = DrawableFactory.get(getContext()).newIcon(info);
-        mBadgeColor = IconPalette.getMutedColor(getContext(), info.iconColor, 0.54f);
+        mBadgeColor = getBadgeColor(info);
 
         setIcon(iconDrawable);
         if (!isTextHidden())
@@ -311,18 +311,24 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
 
     public void applyIcon(ItemInfoWithIcon info) {
         FastBitmapDrawable iconDrawable = DrawableFactory.get(getContext()).newIcon(info);
-        mBadgeColor = IconPalette.getMutedColor(getContext(), info.iconColor, 0.54f);
+        mBadgeColor = getBadgeColor(info);
 
         setIcon(iconDrawable);
     }
 
     public void applyIcon(BitmapInfo info) {
         FastBitmapDrawable iconDrawable = new FastBitmapDrawable(info);
-        mBadgeColor = IconPalette.getMutedColor(getContext(), info.color, 0.54f);
+        info.ensureDerivedColors();
+        mBadgeColor = info.badgeColor;
 
         setIcon(iconDrawable);
     }
 
+    private static int getBadgeColor(ItemInfoWithIcon info) {
+        return info.hasDerivedColors()
+                ? info.badgeColor : IconPalette.getBadgeColor(info.iconColor);
+    }
+
     private void applySwipeUpAction(ShortcutInfo info) {
         GestureHandler handler = GestureController.Companion.createGestureHandler(
                 getContext(), info.swipeUpAction, new BlankGestureHandler(getContext(), null));
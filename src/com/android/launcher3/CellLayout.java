@@ -63,6 +63,7 @@ import com.android.launcher3.util.GridOccupancy;
 import com.android.launcher3.util.ParcelableSparseArray;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
+import com.android.launcher3.util.VacantAreaFinder;
 import com.android.launcher3.widget.LauncherAppWidgetHostView;
 
 import java.lang.annotation.Retention;
@@ -72,7 +73,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Stack;
 
 public class CellLayout extends ViewGroup {
     public static final int WORKSPACE_ACCESSIBILITY_DRAG = 2;
@@ -103,6 +103,7 @@ public class CellLayout extends ViewGroup {
 
     private GridOccupancy mOccupied;
     private GridOccupancy mTmpOccupied;
+    private VacantAreaFinder mVacantAreaFinder;
 
     private OnTouchListener mInterceptTouchListener;
     private final StylusEventHelper mStylusEventHelper;
@@ -221,6 +222,7 @@ public class CellLayout extends ViewGroup {
         mCountY = grid.inv.numRows;
         mOccupied =  new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mVacantAreaFinder = new VacantAreaFinder(mOccupied);
 
         mPreviousReorderDirection[0] = INVALID_DIRECTION;
         mPreviousReorderDirection[1] = INVALID_DIRECTION;
@@ -375,7 +377,7 @@ public class CellLayout extends ViewGroup {
         mCountY = y;
         mOccupied = new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
-        mTempRectStack.clear();
+        mVacantAreaFinder = new VacantAreaFinder(mOccupied);
         mShortcutsAndWidgets.setCellDimensions(mCellWidth, mCellHeight, mCountX, mCountY);
         requestLayout();
     }
@@ -1063,21 +1065,6 @@ public class CellLayout extends ViewGroup {
                 result, resultSpan);
     }
 
-    private final Stack<Rect> mTempRectStack = new Stack<>();
-    private void lazyInitTempRectStack() {
-        if (mTempRectStack.isEmpty()) {
-            for (int i = 0; i < mCountX * mCountY; i++) {
-                mTempRectStack.push(new Rect());
-            }
-        }
-    }
-
-    private void recycleTempRects(Stack<Rect> used) {
-        while (!used.isEmpty()) {
-            mTempRectStack.push(used.pop());
-        }
-    }
-
     /**
      * Find a vacant area that will fit the given bounds nearest the requested
      * cell location. Uses Euclidean distance to score multiple vacant areas.
@@ -1096,120 +1083,10 @@ public class CellLayout extends ViewGroup {
      */
     private int[] findNearestArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
             int spanY, boolean ignoreOccupied, int[] result, int[] resultSpan) {
-        lazyInitTempRectStack();
-
-        // For items with a spanX / spanY > 1, the passed in point (pixelX, pixelY) corresponds
-        // to the center of the item, but we are searching based on the top-left cell, so
-        // we translate the point over to correspond to the top-left.
-        pixelX -= mCellWidth * (spanX - 1) / 2f;
-        pixelY -= mCellHeight * (spanY - 1) / 2f;
-
-        // Keep track of best-scoring drop area
-        final int[] bestXY = result != null ? result : new int[2];
-        double bestDistance = Double.MAX_VALUE;
-        final Rect bestRect = new Rect(-1, -1, -1, -1);
-        final Stack<Rect> validRegions = new Stack<>();
-
-        final int countX = mCountX;
-        final int countY = mCountY;
-
-        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
-                spanX < minSpanX || spanY < minSpanY) {
-            return bestXY;
-        }
-
-        for (int y = 0; y < countY - (minSpanY - 1); y++) {
-            inner:
-            for (int x = 0; x < countX - (minSpanX - 1); x++) {
-                int ySize = -1;
-                int xSize = -1;
-                if (ignoreOccupied) {
-                    // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (mOccupied.cells[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
-                    }
-                    xSize = minSpanX;
-                    ySize = minSpanY;
-
-                    // We know that the item will fit at _some_ acceptable size, now let's see
-                    // how big we can make it. We'll alternate between incrementing x and y spans
-                    // until we hit a limit.
-                    boolean incX = true;
-                    boolean hitMaxX = xSize >= spanX;
-                    boolean hitMaxY = ySize >= spanY;
-                    while (!(hitMaxX && hitMaxY)) {
-                        if (incX && !hitMaxX) {
-                            for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX -1 || mOccupied.cells[x + xSize][y + j]) {
-                                    // We can't move out horizontally
-                                    hitMaxX = true;
-                                }
-                            }
-                            if (!hitMaxX) {
-                                xSize++;
-                            }
-                        } else if (!hitMaxY) {
-                            for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || mOccupied.cells[x + i][y + ySize]) {
-                                    // We can't move out vertically
-                                    hitMaxY = true;
-                                }
-                            }
-                            if (!hitMaxY) {
-                                ySize++;
-                            }
-                        }
-                        hitMaxX |= xSize >= spanX;
-                        hitMaxY |= ySize >= spanY;
-                        incX = !incX;
-                    }
-                    incX = true;
-                    hitMaxX = xSize >= spanX;
-                    hitMaxY = ySize >= spanY;
-                }
-                final int[] cellXY = mTmpPoint;
-                cellToCenterPoint(x, y, cellXY);
-
-                // We verify that the current rect is not a sub-rect of any of our previous
-                // candidates. In this case, the current rect is disqualified in favour of the
-                // containing rect.
-                Rect currentRect = mTempRectStack.pop();
-                currentRect.set(x, y, x + xSize, y + ySize);
-                boolean contained = false;
-                for (Rect r : validRegions) {
-                    if (r.contains(currentRect)) {
-                        contained = true;
-                        break;
-                    }
-                }
-                validRegions.push(currentRect);
-                double distance = Math.hypot(cellXY[0] - pixelX,  cellXY[1] - pixelY);
-
-                if ((distance <= bestDistance && !contained) ||
-                        currentRect.contains(bestRect)) {
-                    bestDistance = distance;
-                    bestXY[0] = x;
-                    bestXY[1] = y;
-                    if (resultSpan != null) {
-                        resultSpan[0] = xSize;
-                        resultSpan[1] = ySize;
-                    }
-                    bestRect.set(currentRect);
-                }
-            }
-        }
-
-        // Return -1, -1 if no suitable location found
-        if (bestDistance == Double.MAX_VALUE) {
-            bestXY[0] = -1;
-            bestXY[1] = -1;
-        }
-        recycleTempRects(validRegions);
-        return bestXY;
+        mVacantAreaFinder.setCellGeometry(getPaddingLeft(), getPaddingTop(), mCellWidth,
+                mCellHeight);
+        return mVacantAreaFinder.findNearestArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY,
+                ignoreOccupied, result, resultSpan);
     }
 
     /**
@@ -2474,6 +2351,7 @@ public class CellLayout extends ViewGroup {
      */
     void onDragEnter() {
         mDragging = true;
+        mVacantAreaFinder.invalidate();
     }
 
     /**
@@ -16,8 +16,11 @@
 
 package com.android.launcher3;
 
+import android.support.annotation.Nullable;
 import android.view.View;
 
+import ch.deletescape.lawnchair.LawnchairUtilsKt;
+import com.android.launcher3.popup.PopupDataProvider;
 import com.android.launcher3.util.Thunk;
 
 public class CheckLongPressHelper {
@@ -29,6 +32,8 @@ public class CheckLongPressHelper {
     @Thunk boolean mHasPerformedLongPress;
     private int mLongPressTimeout = DEFAULT_LONG_PRESS_TIMEOUT;
     private CheckForLongPress mPendingCheckForLongPress;
+    // Whether the shortcuts of the view are being prefetched for a popup which isn't shown yet
+    private boolean mPrefetchPending;
 
     class CheckForLongPress implements Runnable {
         public void run() {
@@ -43,6 +48,7 @@ public class CheckLongPressHelper {
                 if (handled) {
                     mView.setPressed(false);
                     mHasPerformedLongPress = true;
+                    mPrefetchPending = false;
                 }
             }
         }
@@ -71,9 +77,24 @@ public class CheckLongPressHelper {
             mPendingCheckForLongPress = new CheckForLongPress();
         }
         mView.postDelayed(mPendingCheckForLongPress, mLongPressTimeout);
+
+        // Prepare the popup while waiting for the long press
+        PopupDataProvider popupDataProvider = getPopupDataProvider();
+        if (popupDataProvider != null) {
+            popupDataProvider.prefetchShortcuts((ItemInfo) mView.getTag());
+            mPrefetchPending = true;
+        }
     }
 
     public void cancelLongPress() {
+        if (mPrefetchPending && !mHasPerformedLongPress) {
+            // The touch was a tap or a drag, the popup won't be shown
+            PopupDataProvider popupDataProvider = getPopupDataProvider();
+            if (popupDataProvider != null) {
+                popupDataProvider.cancelShortcutPrefetch((ItemInfo) mView.getTag());
+            }
+        }
+        mPrefetchPending = false;
         mHasPerformedLongPress = false;
         if (mPendingCheckForLongPress != null) {
             mView.removeCallbacks(mPendingCheckForLongPress);
@@ -84,4 +105,16 @@ public class CheckLongPressHelper {
     public boolean hasPerformedLongPress() {
         return mHasPerformedLongPress;
     }
+
+    /**
+     * Returns the provider of the popup shown when long pressing the view, if it shows one.
+     */
+    @Nullable
+    private PopupDataProvider getPopupDataProvider() {
+        if (!(mView instanceof BubbleTextView) || !(mView.getTag() instanceof ItemInfo)) {
+            return null;
+        }
+        Launcher launcher = LawnchairUtilsKt.getLauncherOrNull(mView.getContext());
+        return launcher == null ? null : launcher.getPopupDataProvider();
+    }
 }
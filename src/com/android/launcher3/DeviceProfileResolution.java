@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+
+/**
+ * The values {@link InvariantDeviceProfile} resolves from the predefined device profiles for a
+ * display size, before any preference or partner overrides are applied.
+ *
+ * The resolution only depends on the display size and the installed apk, so it is persisted in
+ * the device prefs to avoid parsing and interpolating the device profiles on every start.
+ */
+class DeviceProfileResolution {
+
+    private static final String TAG = "DeviceProfileResolution";
+
+    final String key;
+
+    final String name;
+    final int numRows;
+    final int numColumns;
+    final int numFolderRows;
+    final int numFolderColumns;
+    final int numHotseatIcons;
+    final int defaultLayoutId;
+    final int demoModeLayoutId;
+
+    final float iconSize;
+    final float landscapeIconSize;
+    final float iconTextSize;
+
+    DeviceProfileResolution(String key, InvariantDeviceProfile closest,
+            InvariantDeviceProfile interpolated) {
+        this(key, closest.name, closest.numRows, closest.numColumns, closest.numFolderRows,
+                closest.numFolderColumns, closest.numHotseatIcons, closest.defaultLayoutId,
+                closest.demoModeLayoutId, interpolated.iconSize, interpolated.landscapeIconSize,
+                interpolated.iconTextSize);
+    }
+
+    private DeviceProfileResolution(String key, String name, int numRows, int numColumns,
+            int numFolderRows, int numFolderColumns, int numHotseatIcons, int defaultLayoutId,
+            int demoModeLayoutId, float iconSize, float landscapeIconSize, float iconTextSize) {
+        this.key = key;
+        this.name = name;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.numFolderRows = numFolderRows;
+        this.numFolderColumns = numFolderColumns;
+        this.numHotseatIcons = numHotseatIcons;
+        this.defaultLayoutId = defaultLayoutId;
+        this.demoModeLayoutId = demoModeLayoutId;
+        this.iconSize = iconSize;
+        this.landscapeIconSize = landscapeIconSize;
+        this.iconTextSize = iconTextSize;
+    }
+
+    /**
+     * Returns the key a resolution for the given display size is stored with. Layout ids are
+     * only stable for a single build of the apk, so the key includes the apk path and the time
+     * it was installed.
+     */
+    static String getKey(Context context, float minWidthDps, float minHeightDps) {
+        String sourceDir = context.getApplicationInfo().sourceDir;
+        return getUpdateTime(context, sourceDir) + ":" + sourceDir
+                + ":" + minWidthDps + "x" + minHeightDps;
+    }
+
+    private static long getUpdateTime(Context context, String sourceDir) {
+        try {
+            return context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return new File(sourceDir).lastModified();
+        }
+    }
+
+    String serialize() {
+        try {
+            return new JSONObject()
+                    .put("key", key)
+                    .put("name", name)
+                    .put("numRows", numRows)
+                    .put("numColumns", numColumns)
+                    .put("numFolderRows", numFolderRows)
+                    .put("numFolderColumns", numFolderColumns)
+                    .put("numHotseatIcons", numHotseatIcons)
+                    .put("defaultLayoutId", defaultLayoutId)
+                    .put("demoModeLayoutId", demoModeLayoutId)
+                    .put("iconSize", iconSize)
+                    .put("landscapeIconSize", landscapeIconSize)
+                    .put("iconTextSize", iconTextSize)
+                    .toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the resolution stored in {@param value}, or null if there is none or it was
+     * stored with a different key.
+     */
+    @Nullable
+    static DeviceProfileResolution parse(String key, @Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(value);
+            if (!key.equals(json.getString("key"))) {
+                return null;
+            }
+            return new DeviceProfileResolution(key,
+                    json.optString("name", null),
+                    json.getInt("numRows"),
+                    json.getInt("numColumns"),
+                    json.getInt("numFolderRows"),
+                    json.getInt("numFolderColumns"),
+                    json.getInt("numHotseatIcons"),
+                    json.getInt("defaultLayoutId"),
+                    json.getInt("demoModeLayoutId"),
+                    (float) json.getDouble("iconSize"),
+                    (float) json.getDouble("landscapeIconSize"),
+                    (float) json.getDouble("iconTextSize"));
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid stored device profile", e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DeviceProfileResolution)) {
+            return false;
+        }
+        DeviceProfileResolution other = (DeviceProfileResolution) o;
+        return key.equals(other.key)
+                && (name == null ? other.name == null : name.equals(other.name))
+                && numRows == other.numRows
+                && numColumns == other.numColumns
+                && numFolderRows == other.numFolderRows
+                && numFolderColumns == other.numFolderColumns
+                && numHotseatIcons == other.numHotseatIcons
+                && defaultLayoutId == other.defaultLayoutId
+                && demoModeLayoutId == other.demoModeLayoutId
+                && Float.compare(iconSize, other.iconSize) == 0
+                && Float.compare(landscapeIconSize, other.landscapeIconSize) == 0
+                && Float.compare(iconTextSize, other.iconTextSize) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return serialize();
+    }
+}
@@ -240,9 +240,11 @@ public class IconCache {
             PackageInfo info = mPackageManager.getPackageInfo(packageName,
                     PackageManager.GET_UNINSTALLED_PACKAGES);
             long userSerial = mUserManager.getSerialNumberForUser(user);
+            SQLiteCacheHelper.Batch batch = mIconDb.newBatch();
             for (LauncherActivityInfo app : mLauncherApps.getActivityList(packageName, user)) {
-                addIconToDBAndMemCache(app, info, userSerial, false /*replace existing*/);
+                addIconToDBAndMemCache(app, info, userSerial, false /*replace existing*/, batch);
             }
+            batch.commit();
         } catch (NameNotFoundException e) {
             Log.d(TAG, "Package not found", e);
         }
@@ -384,6 +386,16 @@ public class IconCache {
      */
     @Thunk synchronized void addIconToDBAndMemCache(LauncherActivityInfo app,
             PackageInfo info, long userSerial, boolean replaceExisting) {
+        addIconToDBAndMemCache(app, info, userSerial, replaceExisting, null);
+    }
+
+    /**
+     * Same as {@link #addIconToDBAndMemCache(LauncherActivityInfo, PackageInfo, long, boolean)}
+     * but defers the DB write to {@param batch} when it is not null.
+     */
+    @Thunk synchronized void addIconToDBAndMemCache(LauncherActivityInfo app,
+            PackageInfo info, long userSerial, boolean replaceExisting,
+            SQLiteCacheHelper.Batch batch) {
         final ComponentKey key = new ComponentKey(app.getComponentName(), app.getUser());
         CacheEntry entry = null;
         if (!replaceExisting) {
@@ -405,9 +417,9 @@ public class IconCache {
         mCache.put(key, entry);
 
         Bitmap lowResIcon = generateLowResIcon(entry.icon);
-        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.color,
+        ContentValues values = newContentValues(entry, lowResIcon,
                 entry.title.toString(), app.getApplicationInfo().packageName);
-        addIconToDB(values, app.getComponentName(), info, userSerial);
+        addIconToDB(values, app.getComponentName(), info, userSerial, batch);
     }
 
     /**
@@ -416,11 +428,20 @@ public class IconCache {
      */
     private void addIconToDB(ContentValues values, ComponentName key,
             PackageInfo info, long userSerial) {
+        addIconToDB(values, key, info, userSerial, null);
+    }
+
+    private void addIconToDB(ContentValues values, ComponentName key,
+            PackageInfo info, long userSerial, SQLiteCacheHelper.Batch batch) {
         values.put(IconDB.COLUMN_COMPONENT, key.flattenToString());
         values.put(IconDB.COLUMN_USER, userSerial);
         values.put(IconDB.COLUMN_LAST_UPDATED, info.lastUpdateTime);
         values.put(IconDB.COLUMN_VERSION, info.versionCode);
-        mIconDb.insertOrReplace(values);
+        if (batch != null) {
+            batch.insertOrReplace(values);
+        } else {
+            mIconDb.insertOrReplace(values);
+        }
     }
 
     /**
@@ -535,6 +556,22 @@ public class IconCache {
         return mDefaultIcons.get(user);
     }
 
+    /**
+     * Returns the high resolution icon held in memory for {@param componentName}, or null if it
+     * isn't loaded. Unlike the other lookups this never loads or creates an entry, so it can be
+     * called from any thread. The returned info shares the cached bitmap.
+     */
+    public synchronized BitmapInfo getCachedIcon(ComponentName componentName, UserHandle user) {
+        CacheEntry entry = mCache.get(new ComponentKey(componentName, user));
+        if (entry == null || entry.icon == null || entry.isLowResIcon
+                || isDefaultIcon(entry.icon, user)) {
+            return null;
+        }
+        BitmapInfo info = new BitmapInfo();
+        entry.applyTo(info);
+        return info;
+    }
+
     public boolean isDefaultIcon(Bitmap icon, UserHandle user) {
         return getDefaultIcon(user).icon == icon;
     }
@@ -679,12 +716,15 @@ public class IconCache {
                     entry.title = appInfo.loadLabel(mPackageManager);
                     entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
                     entry.icon = useLowResIcon ? lowResIcon : iconInfo.icon;
+                    iconInfo.ensureDerivedColors();
                     entry.color = iconInfo.color;
+                    entry.setDerivedColors(iconInfo.badgeColor, iconInfo.preloadColor,
+                            iconInfo.contrastColor);
                     entry.isLowResIcon = useLowResIcon;
 
                     // Add the icon in the DB here, since these do not get written during
                     // package updates.
-                    ContentValues values = newContentValues(iconInfo.icon, lowResIcon, entry.color,
+                    ContentValues values = newContentValues(iconInfo, lowResIcon,
                             entry.title.toString(), packageName);
                     addIconToDB(values, cacheKey.componentName, info,
                             mUserManager.getSerialNumberForUser(user));
@@ -708,7 +748,9 @@ public class IconCache {
         try {
             c = mIconDb.query(
                 new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON,
-                        IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL},
+                        IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL,
+                        IconDB.COLUMN_BADGE_COLOR, IconDB.COLUMN_PRELOAD_COLOR,
+                        IconDB.COLUMN_CONTRAST_COLOR},
                 IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{cacheKey.componentName.flattenToString(),
                         Long.toString(mUserManager.getSerialNumberForUser(cacheKey.user))});
@@ -716,6 +758,7 @@ public class IconCache {
                 entry.icon = loadIconNoResize(c, 0, lowRes ? mLowResOptions : mHighResOptions);
                 // Set the alpha to be 255, so that we never have a wrong color
                 entry.color = ColorUtils.setAlphaComponent(c.getInt(1), 255);
+                entry.setDerivedColors(c.getInt(3), c.getInt(4), c.getInt(5));
                 entry.isLowResIcon = lowRes;
                 entry.title = c.getString(2);
                 if (entry.title == null) {
@@ -764,7 +807,7 @@ public class IconCache {
     /**
      * A runnable that updates invalid icons and adds missing icons in the DB for the provided
      * LauncherActivityInfo list. Items are updated/added one at a time, so that the
-     * worker thread doesn't get blocked.
+     * worker thread doesn't get blocked, but are written to the DB in batches.
      */
     @Thunk class SerializedIconUpdateTask implements Runnable {
         private final long mUserSerial;
@@ -772,6 +815,7 @@ public class IconCache {
         private final Stack<LauncherActivityInfo> mAppsToAdd;
         private final Stack<LauncherActivityInfo> mAppsToUpdate;
         private final HashSet<String> mUpdatedPackages = new HashSet<>();
+        private final SQLiteCacheHelper.Batch mBatch = mIconDb.newBatch();
 
         @Thunk SerializedIconUpdateTask(long userSerial, HashMap<String, PackageInfo> pkgInfoMap,
                 Stack<LauncherActivityInfo> appsToAdd,
@@ -788,10 +832,11 @@ public class IconCache {
                 LauncherActivityInfo app = mAppsToUpdate.pop();
                 String pkg = app.getComponentName().getPackageName();
                 PackageInfo info = mPkgInfoMap.get(pkg);
-                addIconToDBAndMemCache(app, info, mUserSerial, true /*replace existing*/);
+                addIconToDBAndMemCache(app, info, mUserSerial, true /*replace existing*/, mBatch);
                 mUpdatedPackages.add(pkg);
 
                 if (mAppsToUpdate.isEmpty() && !mUpdatedPackages.isEmpty()) {
+                    mBatch.commit();
                     // No more app to update. Notify model.
                     LauncherAppState.getInstance(mContext).getModel().onPackageIconsUpdated(
                             mUpdatedPackages, mUserManager.getUserForSerialNumber(mUserSerial));
@@ -805,11 +850,14 @@ public class IconCache {
                 // We do not check the mPkgInfoMap when generating the mAppsToAdd. Although every
                 // app should have package info, this is not guaranteed by the api
                 if (info != null) {
-                    addIconToDBAndMemCache(app, info, mUserSerial, false /*replace existing*/);
+                    addIconToDBAndMemCache(app, info, mUserSerial, false /*replace existing*/,
+                            mBatch);
                 }
 
                 if (!mAppsToAdd.isEmpty()) {
                     scheduleNext();
+                } else {
+                    mBatch.commit();
                 }
             }
         }
@@ -821,7 +869,7 @@ public class IconCache {
 
     private static final class IconDB extends SQLiteCacheHelper {
 
-        private final static int RELEASE_VERSION = 28;
+        private final static int RELEASE_VERSION = 29;
 
         private final static String TABLE_NAME = "icons";
         private final static String COLUMN_ROWID = "rowid";
@@ -834,6 +882,9 @@ public class IconCache {
         private final static String COLUMN_ICON_COLOR = "icon_color";
         private final static String COLUMN_LABEL = "label";
         private final static String COLUMN_SYSTEM_STATE = "system_state";
+        private final static String COLUMN_BADGE_COLOR = "badge_color";
+        private final static String COLUMN_PRELOAD_COLOR = "preload_color";
+        private final static String COLUMN_CONTRAST_COLOR = "contrast_color";
 
         public IconDB(Context context, int iconPixelSize) {
             super(context, LauncherFiles.APP_ICONS_DB,
@@ -853,17 +904,25 @@ public class IconCache {
                     COLUMN_ICON_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
                     COLUMN_LABEL + " TEXT, " +
                     COLUMN_SYSTEM_STATE + " TEXT, " +
+                    COLUMN_BADGE_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_PRELOAD_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_CONTRAST_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
                     "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") " +
                     ");");
         }
     }
 
-    private ContentValues newContentValues(Bitmap icon, Bitmap lowResIcon, int iconColor,
+    private ContentValues newContentValues(BitmapInfo iconInfo, Bitmap lowResIcon,
             String label, String packageName) {
+        // Derived colors are stored with the icon, so that binding doesn't need to compute them
+        iconInfo.ensureDerivedColors();
         ContentValues values = new ContentValues();
-        values.put(IconDB.COLUMN_ICON, Utilities.flattenBitmap(icon));
+        values.put(IconDB.COLUMN_ICON, Utilities.flattenBitmap(iconInfo.icon));
         values.put(IconDB.COLUMN_ICON_LOW_RES, Utilities.flattenBitmap(lowResIcon));
-        values.put(IconDB.COLUMN_ICON_COLOR, iconColor);
+        values.put(IconDB.COLUMN_ICON_COLOR, iconInfo.color);
+        values.put(IconDB.COLUMN_BADGE_COLOR, iconInfo.badgeColor);
+        values.put(IconDB.COLUMN_PRELOAD_COLOR, iconInfo.preloadColor);
+        values.put(IconDB.COLUMN_CONTRAST_COLOR, iconInfo.contrastColor);
 
         values.put(IconDB.COLUMN_LABEL, label);
         values.put(IconDB.COLUMN_SYSTEM_STATE, mIconProvider.getIconSystemState(packageName));
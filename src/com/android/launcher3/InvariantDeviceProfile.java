@@ -20,6 +20,7 @@ import static java.lang.Math.max;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
@@ -58,6 +59,12 @@ public class InvariantDeviceProfile {
     // used to offset float not being able to express extremely small weights in extreme cases.
     private static float WEIGHT_EFFICIENT = 100000f;
 
+    static final String KEY_RESOLUTION = "device_profile_resolution";
+
+    // The last resolution used in this process, so that configuration changes don't need to
+    // read it from the prefs again.
+    private static DeviceProfileResolution sResolution;
+
     // Profile-defining invariant properties
     String name;
     float minWidthDps;
@@ -159,12 +166,7 @@ public class InvariantDeviceProfile {
         minWidthDps = Utilities.dpiFromPx(Math.min(smallestSize.x, smallestSize.y), dm);
         minHeightDps = Utilities.dpiFromPx(Math.min(largestSize.x, largestSize.y), dm);
 
-        ArrayList<InvariantDeviceProfile> closestProfiles = findClosestDeviceProfiles(
-                minWidthDps, minHeightDps, getPredefinedDeviceProfiles(context));
-        InvariantDeviceProfile interpolatedDeviceProfileOut =
-                invDistWeightedInterpolate(minWidthDps,  minHeightDps, closestProfiles);
-
-        InvariantDeviceProfile closestProfile = closestProfiles.get(0);
+        DeviceProfileResolution closestProfile = resolve(context, minWidthDps, minHeightDps);
         numRows = closestProfile.numRows;
         numRowsOriginal = numRows;
         numColumns = closestProfile.numColumns;
@@ -181,19 +183,19 @@ public class InvariantDeviceProfile {
         numFolderColumns = closestProfile.numFolderColumns;
         numFolderColumnsOriginal = numFolderColumns;
 
-        iconSize = interpolatedDeviceProfileOut.iconSize;
-        iconSizeOriginal = interpolatedDeviceProfileOut.iconSize;
-        landscapeIconSize = interpolatedDeviceProfileOut.landscapeIconSize;
-        landscapeIconSizeOriginal = interpolatedDeviceProfileOut.landscapeIconSize;
-        hotseatIconSize = interpolatedDeviceProfileOut.iconSize;
-        hotseatIconSizeOriginal = interpolatedDeviceProfileOut.iconSize;
-        landscapeHotseatIconSize = interpolatedDeviceProfileOut.landscapeIconSize;
-        landscapeHotseatIconSizeOriginal = interpolatedDeviceProfileOut.landscapeIconSize;
-        allAppsIconSize = interpolatedDeviceProfileOut.iconSize;
-        allAppsIconSizeOriginal = interpolatedDeviceProfileOut.iconSize;
-        landscapeAllAppsIconSize = interpolatedDeviceProfileOut.landscapeIconSize;
-        landscapeAllAppsIconSizeOriginal = interpolatedDeviceProfileOut.landscapeIconSize;
-        iconTextSize = interpolatedDeviceProfileOut.iconTextSize;
+        iconSize = closestProfile.iconSize;
+        iconSizeOriginal = closestProfile.iconSize;
+        landscapeIconSize = closestProfile.landscapeIconSize;
+        landscapeIconSizeOriginal = closestProfile.landscapeIconSize;
+        hotseatIconSize = closestProfile.iconSize;
+        hotseatIconSizeOriginal = closestProfile.iconSize;
+        landscapeHotseatIconSize = closestProfile.landscapeIconSize;
+        landscapeHotseatIconSizeOriginal = closestProfile.landscapeIconSize;
+        allAppsIconSize = closestProfile.iconSize;
+        allAppsIconSizeOriginal = closestProfile.iconSize;
+        landscapeAllAppsIconSize = closestProfile.landscapeIconSize;
+        landscapeAllAppsIconSizeOriginal = closestProfile.landscapeIconSize;
+        iconTextSize = closestProfile.iconTextSize;
 
         new IconScale(Utilities.getLawnchairPrefs(context), "iconSize", this);
         new IconScale(Utilities.getLawnchairPrefs(context), "allAppsIconSize", this);
@@ -230,6 +232,60 @@ public class InvariantDeviceProfile {
         }
     }
 
+    /**
+     * Returns the values of the closest predefined device profile and the interpolated icon
+     * sizes for the display size, reusing the last resolution if it was made for the same
+     * display size and apk.
+     */
+    // Package private visibility for testing.
+    DeviceProfileResolution resolve(Context context, float minWidthDps, float minHeightDps) {
+        String key = DeviceProfileResolution.getKey(context, minWidthDps, minHeightDps);
+        synchronized (InvariantDeviceProfile.class) {
+            if (sResolution != null && sResolution.key.equals(key)) {
+                return sResolution;
+            }
+        }
+
+        SharedPreferences prefs = Utilities.getDevicePrefs(context);
+        DeviceProfileResolution resolution =
+                DeviceProfileResolution.parse(key, prefs.getString(KEY_RESOLUTION, null));
+        if (resolution == null) {
+            resolution = computeResolution(context, key, minWidthDps, minHeightDps);
+            prefs.edit().putString(KEY_RESOLUTION, resolution.serialize()).apply();
+        }
+        synchronized (InvariantDeviceProfile.class) {
+            sResolution = resolution;
+        }
+        return resolution;
+    }
+
+    // Package private visibility for testing.
+    DeviceProfileResolution computeResolution(Context context, String key,
+            float minWidthDps, float minHeightDps) {
+        ArrayList<InvariantDeviceProfile> closestProfiles = findClosestDeviceProfiles(
+                minWidthDps, minHeightDps, getPredefinedDeviceProfiles(context));
+        InvariantDeviceProfile interpolatedDeviceProfileOut =
+                invDistWeightedInterpolate(minWidthDps,  minHeightDps, closestProfiles);
+        return new DeviceProfileResolution(key, closestProfiles.get(0),
+                interpolatedDeviceProfileOut);
+    }
+
+    @VisibleForTesting
+    static void clearResolution(Context context) {
+        clearMemoizedResolution();
+        Utilities.getDevicePrefs(context).edit().remove(KEY_RESOLUTION).apply();
+    }
+
+    /**
+     * Forgets the resolution used in this process, as after a process restart.
+     */
+    @VisibleForTesting
+    static void clearMemoizedResolution() {
+        synchronized (InvariantDeviceProfile.class) {
+            sResolution = null;
+        }
+    }
+
     ArrayList<InvariantDeviceProfile> getPredefinedDeviceProfiles(Context context) {
         ArrayList<InvariantDeviceProfile> profiles = new ArrayList<>();
         try (XmlResourceParser parser = context.getResources().getXml(R.xml.device_profiles)) {
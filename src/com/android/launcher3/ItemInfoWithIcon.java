@@ -33,6 +33,19 @@ public abstract class ItemInfoWithIcon extends ItemInfo {
      */
     public int iconColor;
 
+    /**
+     * Colors derived from {@link #iconColor} when the icon was cached, 0 if unknown.
+     * @see com.android.launcher3.graphics.BitmapInfo#ensureDerivedColors()
+     */
+    public int badgeColor;
+    public int contrastColor;
+
+    /**
+     * Preload progress color derived from {@link #iconColor}, or transparent if the theme accent
+     * color should be used.
+     */
+    public int preloadColor;
+
     /**
      * Indicates whether we're using a low res icon
      */
@@ -113,10 +126,21 @@ public abstract class ItemInfoWithIcon extends ItemInfo {
         super(info);
         iconBitmap = info.iconBitmap;
         iconColor = info.iconColor;
+        badgeColor = info.badgeColor;
+        contrastColor = info.contrastColor;
+        preloadColor = info.preloadColor;
         usingLowResIcon = info.usingLowResIcon;
         runtimeStatusFlags = info.runtimeStatusFlags;
     }
 
+    /**
+     * Returns whether the colors derived from {@link #iconColor} are known.
+     */
+    public boolean hasDerivedColors() {
+        // The badge color is never transparent once derived, as it has a white scrim
+        return badgeColor != 0;
+    }
+
     @Override
     public boolean isDisabled() {
         return (runtimeStatusFlags & FLAG_DISABLED_MASK) != 0;
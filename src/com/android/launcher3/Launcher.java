@@ -115,6 +115,7 @@ import com.android.launcher3.util.MultiValueAlpha.AlphaProperty;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.PendingRequestArgs;
+import com.android.launcher3.util.PerfMetrics;
 import com.android.launcher3.util.SystemUiController;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
@@ -2385,6 +2386,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
         writer.println(" mPendingActivityResult=" + mPendingActivityResult);
         writer.println(" mRotationHelper: " + mRotationHelper);
         dumpMisc(writer);
+        PerfMetrics.getInstance().dump(prefix, writer);
 
         try {
             FileLog.flushAll(writer);
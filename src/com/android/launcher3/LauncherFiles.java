@@ -22,6 +22,12 @@ public class LauncherFiles {
     public static final String DEVICE_PREFERENCES_KEY = "com.android.launcher3.device.prefs";
     // Google Reflection client preferences
     public static final String REFLECTION_PREFERENCES_KEY = "reflection.private.properties";
+    // Shortcuts parsed from app manifests, see ManifestShortcutCache
+    public static final String MANIFEST_SHORTCUTS_PREFERENCES_KEY =
+            "com.android.launcher3.manifest_shortcuts.prefs";
+    // Labels of the widgets of each package, see WidgetCatalog
+    public static final String WIDGET_CATALOG_PREFERENCES_KEY =
+            "com.android.launcher3.widget_catalog.prefs";
 
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
     public static final String APP_ICONS_DB = "app_icons.db";
@@ -33,5 +39,7 @@ public class LauncherFiles {
             MANAGED_USER_PREFERENCES_KEY + XML,
             DEVICE_PREFERENCES_KEY + XML,
             REFLECTION_PREFERENCES_KEY + XML,
+            MANIFEST_SHORTCUTS_PREFERENCES_KEY + XML,
+            WIDGET_CATALOG_PREFERENCES_KEY + XML,
             APP_ICONS_DB));
 }
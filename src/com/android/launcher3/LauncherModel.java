@@ -42,6 +42,7 @@ import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.folder.FolderAddAppItem;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.model.AddWorkspaceItemsTask;
+import com.android.launcher3.model.AllAppsSnapshot;
 import com.android.launcher3.model.BaseModelUpdateTask;
 import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.CacheDataUpdatedTask;
@@ -718,6 +719,26 @@ public class LauncherModel extends BroadcastReceiver
         return mCallbacks != null ? mCallbacks.get() : null;
     }
 
+    /**
+     * Returns a read-only snapshot of all the apps, which can be used from any thread, or null
+     * if the apps haven't been loaded yet.
+     */
+    public @Nullable AllAppsSnapshot getAllAppsSnapshot() {
+        return mBgAllAppsList.getSnapshot();
+    }
+
+    /**
+     * Adds a listener called on the worker thread whenever a new snapshot of the apps is
+     * published.
+     */
+    public void addAllAppsSnapshotListener(AllAppsSnapshot.Listener listener) {
+        mBgAllAppsList.addSnapshotListener(listener);
+    }
+
+    public void removeAllAppsSnapshotListener(AllAppsSnapshot.Listener listener) {
+        mBgAllAppsList.removeSnapshotListener(listener);
+    }
+
     /**
      * @return the looper for the worker thread which can be used to start background tasks.
      */
@@ -57,6 +57,7 @@ import com.android.launcher3.LauncherSettings.WorkspaceScreens;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.model.AppLaunchTarget;
 import com.android.launcher3.model.DbDowngradeHelper;
 import com.android.launcher3.provider.LauncherDbUtils;
 import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
@@ -86,7 +87,7 @@ public class LauncherProvider extends ContentProvider {
     /**
      * Represents the schema of the database. Changes in scheme need not be backwards compatible.
      */
-    public static final int SCHEMA_VERSION = 31;
+    public static final int SCHEMA_VERSION = 32;
 
     public static final String AUTHORITY = FeatureFlags.AUTHORITY;
 
@@ -185,6 +186,7 @@ public class LauncherProvider extends ContentProvider {
             throw new RuntimeException("Error: attempting to add item without specifying an id");
         }
         helper.checkId(table, values);
+        addTargetColumns(table, values);
         return db.insert(table, nullColumnHack, values);
     }
 
@@ -347,6 +349,7 @@ public class LauncherProvider extends ContentProvider {
         SqlArguments args = new SqlArguments(uri, selection, selectionArgs);
 
         addModifiedTime(values);
+        addTargetColumns(args.table, values);
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int count = db.update(args.table, values, args.where, args.args);
         if (count > 0) notifyListeners();
@@ -452,6 +455,15 @@ public class LauncherProvider extends ContentProvider {
         values.put(LauncherSettings.ChangeLogColumns.MODIFIED, System.currentTimeMillis());
     }
 
+    /**
+     * Keeps the pre-parsed target of favorites in sync with their intent.
+     */
+    @Thunk static void addTargetColumns(String table, ContentValues values) {
+        if (Favorites.TABLE_NAME.equalsIgnoreCase(table)) {
+            AppLaunchTarget.addTargetColumns(values);
+        }
+    }
+
     private void clearFlagEmptyDbCreated() {
         Utilities.getPrefs(getContext()).edit().remove(EMPTY_DATABASE_CREATED).commit();
     }
@@ -783,6 +795,10 @@ public class LauncherProvider extends ContentProvider {
                     db.execSQL("ALTER TABLE " + Favorites.TABLE_NAME + " ADD COLUMN " + Favorites.CUSTOM_ICON_ENTRY + " TEXT;");
                 case 30:
                     db.execSQL("ALTER TABLE " + Favorites.TABLE_NAME + " ADD COLUMN " + Favorites.SWIPE_UP_ACTION + " TEXT;");
+                case 31:
+                    if (!addAppTargetColumns(db)) {
+                        break;
+                    }
                     return;
             }
 
@@ -967,6 +983,40 @@ public class LauncherProvider extends ContentProvider {
             return addIntegerColumn(db, Favorites.PROFILE_ID, getDefaultUserSerial());
         }
 
+        /**
+         * Adds the {@link Favorites#TARGET_PACKAGE} and {@link Favorites#TARGET_CLASS} columns
+         * and fills them for the existing app shortcuts.
+         */
+        @Thunk boolean addAppTargetColumns(SQLiteDatabase db) {
+            try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+                db.execSQL("ALTER TABLE favorites ADD COLUMN " + Favorites.TARGET_PACKAGE + " TEXT;");
+                db.execSQL("ALTER TABLE favorites ADD COLUMN " + Favorites.TARGET_CLASS + " TEXT;");
+
+                try (Cursor c = db.query(Favorites.TABLE_NAME,
+                        new String[] { Favorites._ID, Favorites.INTENT },
+                        "intent IS NOT NULL", null, null, null, null);
+                     SQLiteStatement updateStmt = db.compileStatement("UPDATE favorites SET "
+                             + Favorites.TARGET_PACKAGE + "=?, " + Favorites.TARGET_CLASS
+                             + "=? WHERE _id=?")) {
+                    while (c.moveToNext()) {
+                        ComponentName cn = AppLaunchTarget.parse(c.getString(1));
+                        if (cn == null) {
+                            continue;
+                        }
+                        updateStmt.bindString(1, cn.getPackageName());
+                        updateStmt.bindString(2, cn.getClassName());
+                        updateStmt.bindLong(3, c.getLong(0));
+                        updateStmt.executeUpdateDelete();
+                    }
+                }
+                t.commit();
+            } catch (SQLException ex) {
+                Log.e(TAG, ex.getMessage(), ex);
+                return false;
+            }
+            return true;
+        }
+
         private boolean addIntegerColumn(SQLiteDatabase db, String columnName, long defaultValue) {
             try (SQLiteTransaction t = new SQLiteTransaction(db)) {
                 db.execSQL("ALTER TABLE favorites ADD COLUMN "
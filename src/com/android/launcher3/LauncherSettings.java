@@ -267,6 +267,20 @@ public class LauncherSettings {
 
         public static final String SWIPE_UP_ACTION = "swipeUpAction";
 
+        /**
+         * The package of the activity launched by the intent, set only when the intent is the
+         * launch intent of an app. The user of the target is {@link #PROFILE_ID}.
+         * <P>Type: TEXT</P>
+         */
+        public static final String TARGET_PACKAGE = "targetPackage";
+
+        /**
+         * The class of the activity launched by the intent, set along with
+         * {@link #TARGET_PACKAGE}.
+         * <P>Type: TEXT</P>
+         */
+        public static final String TARGET_CLASS = "targetClass";
+
         public static void addTableToDb(SQLiteDatabase db, long myProfileId, boolean optional) {
             String ifNotExists = optional ? " IF NOT EXISTS " : "";
             db.execSQL("CREATE TABLE " + ifNotExists + TABLE_NAME + " (" +
@@ -293,7 +307,9 @@ public class LauncherSettings {
                     "restored INTEGER NOT NULL DEFAULT 0," +
                     "profileId INTEGER DEFAULT " + myProfileId + "," +
                     "rank INTEGER NOT NULL DEFAULT 0," +
-                    "options INTEGER NOT NULL DEFAULT 0" +
+                    "options INTEGER NOT NULL DEFAULT 0," +
+                    "targetPackage TEXT," +
+                    "targetClass TEXT" +
                     ");");
         }
     }
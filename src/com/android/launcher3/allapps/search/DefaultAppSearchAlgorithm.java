@@ -33,6 +33,7 @@ import com.android.launcher3.Utilities;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.PerfMetrics;
 
 import java.text.Collator;
 import java.util.ArrayList;
@@ -68,8 +69,10 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
     @Override
     public void doSearch(final String query,
             final AllAppsSearchBarController.Callbacks callback) {
+        long start = PerfMetrics.now();
         final ArrayList<ComponentKey> result = getTitleMatchResult(query);
         final List<String> suggestions = getSuggestions(query);
+        PerfMetrics.getInstance().record("AppSearch", PerfMetrics.now() - start);
         mResultHandler.post(new Runnable() {
             @Override
             public void run() {
@@ -112,6 +112,7 @@ public class FolderIcon extends FrameLayout implements FolderListener, OnResumeC
     private PreviewItemManager mPreviewItemManager;
     private PreviewItemDrawingParams mTmpParams = new PreviewItemDrawingParams(0, 0, 0, 0);
     private List<BubbleTextView> mCurrentPreviewItems = new ArrayList<>();
+    private final FolderIconPreviewCache mPreviewCache = new FolderIconPreviewCache();
 
     boolean mAnimating = false;
     private Rect mTempBounds = new Rect();
@@ -497,10 +498,12 @@ public class FolderIcon extends FrameLayout implements FolderListener, OnResumeC
     public void setFolderBackground(PreviewBackground bg) {
         mBackground = bg;
         mBackground.setInvalidateDelegate(this);
+        invalidatePreviewCache();
     }
 
     public void setBackgroundVisible(boolean visible) {
         mBackgroundIsVisible = visible;
+        invalidatePreviewCache();
         invalidate();
     }
 
@@ -512,24 +515,64 @@ public class FolderIcon extends FrameLayout implements FolderListener, OnResumeC
         return mPreviewItemManager;
     }
 
+    /**
+     * Marks the cached drawing of the preview as outdated. Must be called whenever the preview
+     * items, their drawables or the layout of the preview change.
+     */
+    void invalidatePreviewCache() {
+        mPreviewCache.invalidate();
+    }
+
+    FolderIconPreviewCache getPreviewCache() {
+        return mPreviewCache;
+    }
+
+    /**
+     * Returns whether the preview is static and can be drawn from the cache. Drag and drop,
+     * open and close, and preview item animations are always drawn live.
+     */
+    private boolean canUsePreviewCache() {
+        return !mAnimating && !mBackground.drawingDelegated() && !mBackground.isAnimating()
+                && !mPreviewItemManager.isAnimating() && !mFolder.isOpen();
+    }
+
     @Override
     protected void dispatchDraw(Canvas canvas) {
         super.dispatchDraw(canvas);
 
         if (mBackgroundIsVisible) {
             mPreviewItemManager.recomputePreviewDrawingParams();
-
-            if (!mBackground.drawingDelegated() && !isCustomIcon) {
-                mBackground.drawBackground(canvas);
-            }
         } else if (!isCustomIcon || mInfo.container == Favorites.CONTAINER_HOTSEAT) return;
 
         if (isCustomIcon) {
             return;
         }
 
-        if (mFolder == null) return;
-        if (mFolder.getItemCount() == 0 && !mAnimating) return;
+        if (mFolder != null && canUsePreviewCache()) {
+            mPreviewCache.draw(canvas, this, mBackground.getDrawingState());
+        } else {
+            mPreviewCache.invalidate();
+            drawPreview(canvas);
+        }
+
+        if (hasPreviewItems()) {
+            drawBadge(canvas);
+        }
+    }
+
+    private boolean hasPreviewItems() {
+        return mFolder != null && (mFolder.getItemCount() > 0 || mAnimating);
+    }
+
+    /**
+     * Draws the background, preview items and stroke of the icon, without the badge.
+     */
+    void drawPreview(Canvas canvas) {
+        if (!mBackground.drawingDelegated()) {
+            mBackground.drawBackground(canvas);
+        }
+
+        if (!hasPreviewItems()) return;
 
         final int saveCount = canvas.save();
         canvas.clipPath(mBackground.getClipPath());
@@ -541,8 +584,20 @@ public class FolderIcon extends FrameLayout implements FolderListener, OnResumeC
         if (!mBackground.drawingDelegated()) {
             mBackground.drawBackgroundStroke(canvas);
         }
+    }
 
-        drawBadge(canvas);
+    @Override
+    public void invalidateDrawable(@NonNull Drawable drawable) {
+        if (mPreviewItemManager.verifyDrawable(drawable)) {
+            invalidatePreviewCache();
+        }
+        super.invalidateDrawable(drawable);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPreviewCache.release();
     }
 
     public void drawBadge(Canvas canvas) {
@@ -654,6 +709,7 @@ public class FolderIcon extends FrameLayout implements FolderListener, OnResumeC
     }
 
     private void updatePreviewItems(boolean animate) {
+        invalidatePreviewCache();
         mPreviewItemManager.updatePreviewItems(animate);
         mCurrentPreviewItems.clear();
         mCurrentPreviewItems.addAll(getPreviewItems());
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.folder;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * Holds a bitmap of the background, preview items and stroke of a {@link FolderIcon}, so that
+ * they aren't redrawn on every frame while the icon doesn't change, e.g. when the workspace
+ * scrolls. The badge is not part of the cached drawing.
+ */
+class FolderIconPreviewCache {
+
+    private final Canvas mCanvas = new Canvas();
+    private Bitmap mBitmap;
+
+    private boolean mValid;
+    private int mState;
+    private int mRenderCount;
+
+    /**
+     * Marks the cached drawing as outdated, it is redrawn the next time it is used.
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * Returns the number of times the cached drawing was redrawn.
+     */
+    int getRenderCount() {
+        return mRenderCount;
+    }
+
+    /**
+     * Draws the preview of {@param icon} from the cache, redrawing it first if it was
+     * invalidated, the icon was resized or {@param state} changed.
+     */
+    void draw(Canvas canvas, FolderIcon icon, int state) {
+        int width = icon.getWidth();
+        int height = icon.getHeight();
+        if (width <= 0 || height <= 0) {
+            icon.drawPreview(canvas);
+            return;
+        }
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCanvas.setBitmap(mBitmap);
+            mValid = false;
+        }
+        if (!mValid || mState != state) {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+            icon.drawPreview(mCanvas);
+            mValid = true;
+            mState = state;
+            mRenderCount++;
+        }
+        canvas.drawBitmap(mBitmap, 0, 0, null);
+    }
+
+    /**
+     * Releases the bitmap, e.g. when the icon is detached from the window.
+     */
+    void release() {
+        mCanvas.setBitmap(null);
+        mBitmap = null;
+        mValid = false;
+    }
+}
@@ -421,6 +421,33 @@ public class PreviewBackground {
         animateScale(1f, 1f, onStart, onEnd);
     }
 
+    /**
+     * Returns whether any of the scale, opacity or stroke animations is running.
+     */
+    boolean isAnimating() {
+        return isStarted(mScaleAnimator) || isStarted(mAlphaAnimator)
+                || isStarted(mStrokeAlphaAnimator) || isStarted(mShadowAnimator);
+    }
+
+    private static boolean isStarted(Animator animator) {
+        return animator != null && animator.isStarted();
+    }
+
+    /**
+     * Returns a hash of the values used by {@link #drawBackground} and
+     * {@link #drawBackgroundStroke}, used to verify that a cached drawing is still valid.
+     */
+    int getDrawingState() {
+        int result = getBgColor();
+        result = 31 * result + mStrokeAlpha;
+        result = 31 * result + Float.floatToIntBits(mStrokeWidth);
+        result = 31 * result + getOffsetX();
+        result = 31 * result + getOffsetY();
+        result = 31 * result + getScaledRadius();
+        result = 31 * result + System.identityHashCode(IconShape.getShape());
+        return result;
+    }
+
     public int getBackgroundAlpha() {
         return (int) Math.min(MAX_BG_OPACITY, BG_OPACITY * mColorMultiplier);
     }
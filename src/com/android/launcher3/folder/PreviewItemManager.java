@@ -108,6 +108,7 @@ public class PreviewItemManager {
             mIcon.mBackground.setup(mIcon.mLauncher, mIcon, mTotalWidth, mIcon.getPaddingTop());
             mIcon.mPreviewLayoutRule.init(mIcon.mBackground.previewSize, mIntrinsicIconSize,
                     Utilities.isRtl(mIcon.getResources()));
+            mIcon.invalidatePreviewCache();
 
             updatePreviewItems(false);
         }
@@ -164,9 +165,26 @@ public class PreviewItemManager {
     }
 
     public void onParamsChanged() {
+        mIcon.invalidatePreviewCache();
         mIcon.invalidate();
     }
 
+    /**
+     * Returns whether any of the preview items is animating, or the items of the current page
+     * are sliding out after the folder was closed.
+     */
+    boolean isAnimating() {
+        if (mShouldSlideInFirstPage) {
+            return true;
+        }
+        for (int i = 0; i < mFirstPageParams.size(); i++) {
+            if (mFirstPageParams.get(i).anim != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void drawPreviewItem(Canvas canvas, PreviewItemDrawingParams params) {
         canvas.save();
         canvas.translate(params.transX, params.transY);
@@ -194,10 +212,12 @@ public class PreviewItemManager {
                 mFirstPageParams.get(index) : null;
         if (params != null) {
             params.hidden = hidden;
+            mIcon.invalidatePreviewCache();
         }
     }
 
     void buildParamsForPage(int page, ArrayList<PreviewItemDrawingParams> params, boolean animate) {
+        mIcon.invalidatePreviewCache();
         List<BubbleTextView> items = mIcon.getPreviewItemsOnPage(page);
         int prevNumItems = params.size();
 
@@ -263,6 +283,8 @@ public class PreviewItemManager {
                 @Override
                 public void onAnimationEnd(Animator animation) {
                     mCurrentPageParams.clear();
+                    mShouldSlideInFirstPage = false;
+                    onParamsChanged();
                 }
             });
             slideAnimator.setStartDelay(SLIDE_IN_FIRST_PAGE_ANIMATION_DURATION_DELAY);
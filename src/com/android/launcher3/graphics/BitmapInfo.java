@@ -24,14 +24,53 @@ public class BitmapInfo {
     public Bitmap icon;
     public int color;
 
+    /**
+     * Colors derived from {@link #color}, see {@link #ensureDerivedColors()}.
+     */
+    public int badgeColor;
+    public int preloadColor;
+    public int contrastColor;
+    private int mDerivedFrom;
+    private boolean mHasDerivedColors;
+
+    /**
+     * Computes the colors derived from {@link #color}, unless they are already known for it.
+     */
+    public void ensureDerivedColors() {
+        if (mHasDerivedColors && mDerivedFrom == color) {
+            return;
+        }
+        setDerivedColors(IconPalette.getBadgeColor(color),
+                IconPalette.getPreloadProgressColor(color),
+                IconPalette.getIconContrastColor(color));
+    }
+
+    /**
+     * Sets the colors derived from {@link #color}, for example when read from the icon cache.
+     */
+    public void setDerivedColors(int badgeColor, int preloadColor, int contrastColor) {
+        this.badgeColor = badgeColor;
+        this.preloadColor = preloadColor;
+        this.contrastColor = contrastColor;
+        mDerivedFrom = color;
+        mHasDerivedColors = true;
+    }
+
     public void applyTo(ItemInfoWithIcon info) {
+        ensureDerivedColors();
         info.iconBitmap = icon;
         info.iconColor = color;
+        info.badgeColor = badgeColor;
+        info.preloadColor = preloadColor;
+        info.contrastColor = contrastColor;
     }
 
     public void applyTo(BitmapInfo info) {
         info.icon = icon;
         info.color = color;
+        if (mHasDerivedColors && mDerivedFrom == color) {
+            info.setDerivedColors(badgeColor, preloadColor, contrastColor);
+        }
     }
 
     public static BitmapInfo fromBitmap(Bitmap bitmap) {
@@ -38,22 +38,52 @@ public class IconPalette {
     private static final float MIN_PRELOAD_COLOR_SATURATION = 0.2f;
     private static final float MIN_PRELOAD_COLOR_LIGHTNESS = 0.6f;
 
+    /**
+     * Alpha of the white scrim drawn over the icon color for notification dots.
+     */
+    public static final float BADGE_SCRIM_ALPHA = 0.54f;
+
+    /**
+     * The default popup background, against which {@link #getIconContrastColor} is resolved.
+     */
+    public static final int DEFAULT_POPUP_BACKGROUND = Color.WHITE;
+
     /**
      * Returns a color suitable for the progress bar color of preload icon.
      */
     public static int getPreloadProgressColor(Context context, int dominantColor) {
-        int result = dominantColor;
+        int result = getPreloadProgressColor(dominantColor);
+        return result != Color.TRANSPARENT ? result : Themes.getColorAccent(context);
+    }
 
+    /**
+     * Returns a color suitable for the progress bar color of preload icon, or
+     * {@link Color#TRANSPARENT} if the theme accent color should be used instead.
+     */
+    public static int getPreloadProgressColor(int dominantColor) {
         // Make sure that the dominant color has enough saturation to be visible properly.
         float[] hsv = new float[3];
-        Color.colorToHSV(result, hsv);
+        Color.colorToHSV(dominantColor, hsv);
         if (hsv[1] < MIN_PRELOAD_COLOR_SATURATION) {
-            result = Themes.getColorAccent(context);
-        } else {
-            hsv[2] = Math.max(MIN_PRELOAD_COLOR_LIGHTNESS, hsv[2]);
-            result = Color.HSVToColor(hsv);
+            return Color.TRANSPARENT;
         }
-        return result;
+        hsv[2] = Math.max(MIN_PRELOAD_COLOR_LIGHTNESS, hsv[2]);
+        return Color.HSVToColor(hsv);
+    }
+
+    /**
+     * Returns the notification dot color for an icon.
+     */
+    public static int getBadgeColor(int dominantColor) {
+        return getMutedColor(dominantColor, BADGE_SCRIM_ALPHA);
+    }
+
+    /**
+     * Returns the color used for the notification header of an icon, when shown over
+     * {@link #DEFAULT_POPUP_BACKGROUND}.
+     */
+    public static int getIconContrastColor(int dominantColor) {
+        return ensureTextContrast(dominantColor, DEFAULT_POPUP_BACKGROUND);
     }
 
     /**
@@ -148,6 +178,10 @@ public class IconPalette {
     }
 
     public static int getMutedColor(Context context, int color, float scrimAlpha) {
+        return getMutedColor(color, scrimAlpha);
+    }
+
+    public static int getMutedColor(int color, float scrimAlpha) {
         int scrim = ColorUtils.setAlphaComponent(Color.WHITE, (int) (255 * scrimAlpha));
         return ColorUtils.compositeColors(scrim, color);
     }
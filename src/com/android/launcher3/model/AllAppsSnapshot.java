@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import com.android.launcher3.AllAppsList;
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.util.ComponentKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Read-only copy of the installed apps in {@link AllAppsList}, which can be used from any
+ * thread.
+ *
+ * The apps in a snapshot must not be modified. Apps which didn't change between two versions
+ * are the same instances in both snapshots, so consumers can find what changed by identity.
+ */
+public final class AllAppsSnapshot {
+
+    public final int version;
+
+    private final List<AppInfo> mApps;
+    private final HashMap<ComponentKey, AppInfo> mAppsByKey;
+
+    public AllAppsSnapshot(int version, ArrayList<AppInfo> apps) {
+        this.version = version;
+        mApps = Collections.unmodifiableList(apps);
+        mAppsByKey = new HashMap<>(apps.size());
+        for (AppInfo info : apps) {
+            mAppsByKey.put(info.toComponentKey(), info);
+        }
+    }
+
+    public List<AppInfo> getApps() {
+        return mApps;
+    }
+
+    public AppInfo get(ComponentKey key) {
+        return mAppsByKey.get(key);
+    }
+
+    public boolean contains(ComponentKey key) {
+        return mAppsByKey.containsKey(key);
+    }
+
+    public int size() {
+        return mApps.size();
+    }
+
+    /**
+     * Listener for new snapshots, called on the worker thread after each change to the apps.
+     */
+    public interface Listener {
+
+        void onAllAppsSnapshotChanged(AllAppsSnapshot snapshot);
+    }
+}
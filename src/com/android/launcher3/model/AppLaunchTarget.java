@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.LauncherSettings.Favorites;
+
+/**
+ * Maps the intents of plain app shortcuts, as created by {@link AppInfo#makeLaunchIntent}, to the
+ * {@link Favorites#TARGET_PACKAGE} and {@link Favorites#TARGET_CLASS} columns, so that the loader
+ * can recreate them without parsing the stored intent.
+ */
+public class AppLaunchTarget {
+
+    // The launch intent uri of any component is URI_PREFIX + component + URI_SUFFIX
+    private static final String URI_PREFIX;
+    private static final String URI_SUFFIX;
+
+    static {
+        String marker = "launcher.target/.Marker";
+        String uri = AppInfo.makeLaunchIntent(ComponentName.unflattenFromString(marker)).toUri(0);
+        int index = uri.lastIndexOf(marker);
+        URI_PREFIX = uri.substring(0, index);
+        URI_SUFFIX = uri.substring(index + marker.length());
+    }
+
+    /**
+     * Returns the stored form of the launch intent of {@param cn}. This is the same as
+     * {@code AppInfo.makeLaunchIntent(cn).toUri(0)}.
+     */
+    public static String toUri(ComponentName cn) {
+        return URI_PREFIX + Uri.encode(cn.flattenToShortString(), "/") + URI_SUFFIX;
+    }
+
+    /**
+     * Returns the component launched by {@param uri} if it's the launch intent of an app, or null
+     * for any other intent. This doesn't parse the intent.
+     */
+    @Nullable
+    public static ComponentName parse(@Nullable String uri) {
+        if (uri == null || !uri.startsWith(URI_PREFIX) || !uri.endsWith(URI_SUFFIX)
+                || uri.length() <= URI_PREFIX.length() + URI_SUFFIX.length()) {
+            return null;
+        }
+        ComponentName cn = ComponentName.unflattenFromString(Uri.decode(
+                uri.substring(URI_PREFIX.length(), uri.length() - URI_SUFFIX.length())));
+        return cn != null && uri.equals(toUri(cn)) ? cn : null;
+    }
+
+    /**
+     * Returns the intent stored as {@param uri}, if {@param targetPackage} and
+     * {@param targetClass} are the target columns stored with it, or null if the intent needs to
+     * be parsed.
+     */
+    @Nullable
+    public static Intent getIntent(String uri, @Nullable String targetPackage,
+            @Nullable String targetClass) {
+        if (targetPackage == null || targetClass == null) {
+            return null;
+        }
+        ComponentName cn = new ComponentName(targetPackage, targetClass);
+        // Guard against rows whose intent was changed without updating the target
+        return uri.equals(toUri(cn)) ? AppInfo.makeLaunchIntent(cn) : null;
+    }
+
+    /**
+     * Sets the target columns of {@param values} if it changes the intent of an item.
+     */
+    public static void addTargetColumns(ContentValues values) {
+        if (!values.containsKey(Favorites.INTENT)) {
+            return;
+        }
+        ComponentName cn = parse(values.getAsString(Favorites.INTENT));
+        if (cn != null) {
+            values.put(Favorites.TARGET_PACKAGE, cn.getPackageName());
+            values.put(Favorites.TARGET_CLASS, cn.getClassName());
+        } else {
+            values.putNull(Favorites.TARGET_PACKAGE);
+            values.putNull(Favorites.TARGET_CLASS);
+        }
+    }
+}
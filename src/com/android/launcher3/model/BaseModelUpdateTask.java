@@ -66,6 +66,7 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
             return;
         }
         execute(mApp, mDataModel, mAllAppsList);
+        mAllAppsList.publishSnapshot();
     }
 
     /**
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import ch.deletescape.lawnchair.adaptive.IconShapeManager;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.BitmapInfo;
+import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.util.LongArrayMap;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the icons rendered from the icon blobs stored with workspace items across loads, so that
+ * reloading the workspace decodes and renders them only when they changed. Icons which aren't
+ * cached are rendered in parallel while the loader goes on with the next items.
+ */
+class IconBlobCache {
+
+    private static final String TAG = "IconBlobCache";
+
+    static final int TYPE_ICON = 0;
+    static final int TYPE_CUSTOM_ICON = 1;
+
+    /**
+     * Renders the icon stored in a blob, on any thread.
+     */
+    interface IconRenderer {
+
+        @Nullable
+        BitmapInfo render(byte[] data);
+    }
+
+    /**
+     * Receives an icon rendered in the background, on the loader thread.
+     */
+    interface IconCallback {
+
+        void onIconLoaded(@Nullable BitmapInfo icon);
+    }
+
+    private static IconBlobCache sInstance;
+    private static final Object sInstanceLock = new Object();
+
+    static IconBlobCache getInstance(Context context) {
+        synchronized (sInstanceLock) {
+            if (sInstance == null) {
+                sInstance = new IconBlobCache(new LauncherIconRenderer(
+                        context.getApplicationContext()), Utilities.THREAD_POOL_EXECUTOR);
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Returns the configuration the icons are rendered for.
+     */
+    static String getIconConfig(Context context, InvariantDeviceProfile idp) {
+        IconShapeManager shapeManager = IconShapeManager.getInstanceNoCreate();
+        return getIconConfig(idp.iconBitmapSize,
+                context.getResources().getDisplayMetrics().densityDpi,
+                shapeManager == null ? "" : shapeManager.getIconShape().toString());
+    }
+
+    @VisibleForTesting
+    static String getIconConfig(int iconBitmapSize, int densityDpi, String iconShape) {
+        return iconBitmapSize + "," + densityDpi + "," + iconShape;
+    }
+
+    private final IconRenderer mRenderer;
+    private final Executor mExecutor;
+
+    // Keyed by row id and icon type
+    private final LongArrayMap<Entry> mEntries = new LongArrayMap<>();
+    private final ArrayList<PendingIcon> mPending = new ArrayList<>();
+    private String mConfig;
+    private int mLoadId;
+
+    @VisibleForTesting
+    IconBlobCache(IconRenderer renderer, Executor executor) {
+        mRenderer = renderer;
+        mExecutor = executor;
+    }
+
+    /**
+     * Starts a workspace load for icons rendered with {@param config}. Cached icons rendered with
+     * a different configuration are dropped.
+     */
+    synchronized void startLoad(String config) {
+        if (!config.equals(mConfig)) {
+            mEntries.clear();
+            mConfig = config;
+        }
+        mPending.clear();
+        mLoadId++;
+    }
+
+    /**
+     * Returns the icon of the row {@param id} stored as {@param data} if it's already rendered.
+     */
+    @Nullable
+    synchronized BitmapInfo getCachedIcon(long id, int type, byte[] data) {
+        Entry entry = mEntries.get(getKey(id, type));
+        if (entry == null || !entry.matches(data)) {
+            return null;
+        }
+        entry.loadId = mLoadId;
+        return entry.icon;
+    }
+
+    /**
+     * Returns the icon of the row {@param id} stored as {@param data}, rendering it on the
+     * calling thread unless it's already rendered.
+     */
+    @Nullable
+    BitmapInfo getIcon(long id, int type, byte[] data) {
+        BitmapInfo icon = getCachedIcon(id, type, data);
+        if (icon == null) {
+            icon = mRenderer.render(data);
+            put(id, type, data, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Renders the icon of the row {@param id} stored as {@param data} in the background. The
+     * icon is delivered to {@param callback} by {@link #finishLoad()}.
+     */
+    synchronized void loadIcon(long id, int type, final byte[] data, IconCallback callback) {
+        FutureTask<BitmapInfo> task = new FutureTask<>(() -> mRenderer.render(data));
+        mPending.add(new PendingIcon(id, type, data, task, callback));
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Waits for the icons rendered in the background and delivers them, and drops the icons of
+     * rows which weren't loaded.
+     */
+    void finishLoad() {
+        ArrayList<PendingIcon> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        for (PendingIcon icon : pending) {
+            BitmapInfo result;
+            try {
+                result = icon.task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(TAG, "Failed to render icon for " + icon.id, e);
+                result = null;
+            }
+            put(icon.id, icon.type, icon.data, result);
+            icon.callback.onIconLoaded(result);
+        }
+
+        synchronized (this) {
+            for (int i = mEntries.size() - 1; i >= 0; i--) {
+                if (mEntries.valueAt(i).loadId != mLoadId) {
+                    mEntries.removeAt(i);
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    private synchronized void put(long id, int type, byte[] data, @Nullable BitmapInfo icon) {
+        if (icon == null) {
+            // Failed blobs are tried again on the next load
+            mEntries.remove(getKey(id, type));
+        } else {
+            mEntries.put(getKey(id, type), new Entry(data, icon, mLoadId));
+        }
+    }
+
+    private static long getKey(long id, int type) {
+        return (id << 1) | type;
+    }
+
+    private static long getHash(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static class Entry {
+
+        final int length;
+        final long hash;
+        final BitmapInfo icon;
+        int loadId;
+
+        Entry(byte[] data, BitmapInfo icon, int loadId) {
+            this.length = data.length;
+            this.hash = getHash(data);
+            this.icon = icon;
+            this.loadId = loadId;
+        }
+
+        boolean matches(byte[] data) {
+            return length == data.length && hash == getHash(data);
+        }
+    }
+
+    private static class PendingIcon {
+
+        final long id;
+        final int type;
+        final byte[] data;
+        final FutureTask<BitmapInfo> task;
+        final IconCallback callback;
+
+        PendingIcon(long id, int type, byte[] data, FutureTask<BitmapInfo> task,
+                IconCallback callback) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+            this.task = task;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Decodes blobs and renders them with {@link LauncherIcons}.
+     */
+    static class LauncherIconRenderer implements IconRenderer {
+
+        private final Context mContext;
+
+        LauncherIconRenderer(Context context) {
+            mContext = context;
+        }
+
+        @Nullable
+        @Override
+        public BitmapInfo render(byte[] data) {
+            try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
+                BitmapInfo icon = li.createIconBitmap(
+                        BitmapFactory.decodeByteArray(data, 0, data.length));
+                icon.ensureDerivedColors();
+                return icon;
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to render icon", e);
+                return null;
+            }
+        }
+    }
+}
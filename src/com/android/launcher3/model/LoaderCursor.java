@@ -25,9 +25,9 @@ import android.content.pm.LauncherActivityInfo;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.UserHandle;
 import android.provider.BaseColumns;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LongSparseArray;
@@ -69,6 +69,7 @@ public class LoaderCursor extends CursorWrapper {
     private final UserManagerCompat mUserManager;
     private final IconCache mIconCache;
     private final InvariantDeviceProfile mIDP;
+    private final IconBlobCache mIconBlobCache;
 
     private final ArrayList<Long> itemsToRemove = new ArrayList<>();
     private final ArrayList<Long> restoredRows = new ArrayList<>();
@@ -89,6 +90,8 @@ public class LoaderCursor extends CursorWrapper {
     private final int profileIdIndex;
     private final int restoredIndex;
     private final int intentIndex;
+    private final int targetPackageIndex;
+    private final int targetClassIndex;
 
     // Properties loaded per iteration
     public long serialNumber;
@@ -106,6 +109,8 @@ public class LoaderCursor extends CursorWrapper {
         mIconCache = app.getIconCache();
         mIDP = app.getInvariantDeviceProfile();
         mUserManager = UserManagerCompat.getInstance(mContext);
+        mIconBlobCache = IconBlobCache.getInstance(mContext);
+        mIconBlobCache.startLoad(IconBlobCache.getIconConfig(mContext, mIDP));
 
         // Init column indices
         iconIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.ICON);
@@ -123,6 +128,8 @@ public class LoaderCursor extends CursorWrapper {
         profileIdIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.PROFILE_ID);
         restoredIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.RESTORED);
         intentIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.INTENT);
+        targetPackageIndex = getColumnIndex(LauncherSettings.Favorites.TARGET_PACKAGE);
+        targetClassIndex = getColumnIndex(LauncherSettings.Favorites.TARGET_CLASS);
 
         prefs = Utilities.getLawnchairPrefs(mContext);
     }
@@ -144,25 +151,37 @@ public class LoaderCursor extends CursorWrapper {
 
     public Intent parseIntent() {
         String intentDescription = getString(intentIndex);
+        if (TextUtils.isEmpty(intentDescription)) {
+            return null;
+        }
+        if (targetPackageIndex != -1 && targetClassIndex != -1) {
+            // App shortcuts store their target, which is much faster than parsing the intent
+            Intent intent = AppLaunchTarget.getIntent(intentDescription,
+                    getString(targetPackageIndex), getString(targetClassIndex));
+            if (intent != null) {
+                return intent;
+            }
+        }
         try {
-            return TextUtils.isEmpty(intentDescription) ?
-                    null : Intent.parseUri(intentDescription, 0);
+            return parseUri(intentDescription);
         } catch (URISyntaxException e) {
             Log.e(TAG, "Error parsing Intent");
             return null;
         }
     }
 
+    @VisibleForTesting
+    Intent parseUri(String uri) throws URISyntaxException {
+        return Intent.parseUri(uri, 0);
+    }
+
     public ShortcutInfo loadSimpleShortcut() {
         final ShortcutInfo info = new ShortcutInfo();
         // Non-app shortcuts are only supported for current user.
         info.user = user;
         info.itemType = itemType;
         info.title = getTitle();
-        // the fallback icon
-        if (!loadIcon(info)) {
-            mIconCache.getDefaultIcon(info.user).applyTo(info);
-        }
+        loadIconInBackground(info);
 
         // TODO: If there's an explicit component and we can't install that, delete it.
 
@@ -173,6 +192,50 @@ public class LoaderCursor extends CursorWrapper {
      * Loads the icon from the cursor and updates the {@param info} if the icon is an app resource.
      */
     protected boolean loadIcon(ShortcutInfo info) {
+        if (loadIconResource(info)) {
+            return true;
+        }
+
+        // Failed to load from resource, try loading from DB.
+        byte[] data = getBlob(iconIndex);
+        BitmapInfo icon = data == null
+                ? null : mIconBlobCache.getIcon(id, IconBlobCache.TYPE_ICON, data);
+        if (icon == null) {
+            Log.e(TAG, "Failed to load icon for info " + info);
+            return false;
+        }
+        icon.applyTo(info);
+        return true;
+    }
+
+    /**
+     * Loads the icon like {@link #loadIcon}, except that the icon stored in the DB is rendered in
+     * the background unless it's cached, and set by {@link #finishLoadingIcons()}. The fallback
+     * icon is used until then.
+     */
+    private void loadIconInBackground(final ShortcutInfo info) {
+        if (loadIconResource(info)) {
+            return;
+        }
+
+        byte[] data = getBlob(iconIndex);
+        BitmapInfo icon = data == null
+                ? null : mIconBlobCache.getCachedIcon(id, IconBlobCache.TYPE_ICON, data);
+        if (icon != null) {
+            icon.applyTo(info);
+            return;
+        }
+        mIconCache.getDefaultIcon(info.user).applyTo(info);
+        if (data != null) {
+            mIconBlobCache.loadIcon(id, IconBlobCache.TYPE_ICON, data, result -> {
+                if (result != null) {
+                    result.applyTo(info);
+                }
+            });
+        }
+    }
+
+    private boolean loadIconResource(ShortcutInfo info) {
         if (itemType == LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT) {
             String packageName = getString(iconPackageIndex);
             String resourceName = getString(iconResourceIndex);
@@ -189,31 +252,37 @@ public class LoaderCursor extends CursorWrapper {
                 }
             }
         }
-
-        // Failed to load from resource, try loading from DB.
-        byte[] data = getBlob(iconIndex);
-        try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
-            li.createIconBitmap(BitmapFactory.decodeByteArray(data, 0, data.length)).applyTo(info);
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to load icon for info " + info, e);
-            return false;
-        }
+        return false;
     }
 
-    public Bitmap loadCustomIcon(ShortcutInfo info) {
+    /**
+     * Returns the custom icon of {@param info} if it's cached. Otherwise returns null, and the
+     * icon is rendered in the background and set by {@link #finishLoadingIcons()}.
+     */
+    public Bitmap loadCustomIcon(final ShortcutInfo info) {
         byte[] data = getBlob(customIconIndex);
-        try {
-            if (data != null) {
-                return LauncherIcons.obtain(mContext).createIconBitmap(
-                        BitmapFactory.decodeByteArray(data, 0, data.length)).icon;
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to load custom icon for info " + info, e);
+        if (data == null) {
             return null;
         }
+        BitmapInfo icon = mIconBlobCache.getCachedIcon(id, IconBlobCache.TYPE_CUSTOM_ICON, data);
+        if (icon != null) {
+            return icon.icon;
+        }
+        mIconBlobCache.loadIcon(id, IconBlobCache.TYPE_CUSTOM_ICON, data, result -> {
+            if (result != null) {
+                info.customIcon = result.icon;
+            } else {
+                Log.e(TAG, "Failed to load custom icon for info " + info);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Waits for the icons rendered in the background and sets them on their items.
+     */
+    public void finishLoadingIcons() {
+        mIconBlobCache.finishLoad();
     }
 
     /**
@@ -290,7 +359,7 @@ public class LoaderCursor extends CursorWrapper {
 
         mIconCache.getTitleAndIcon(info, lai, useLowResIcon);
         if (mIconCache.isDefaultIcon(info.iconBitmap, user)) {
-            loadIcon(info);
+            loadIconInBackground(info);
         }
 
         if (lai != null) {
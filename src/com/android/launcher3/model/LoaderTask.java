@@ -731,6 +731,9 @@ public class LoaderTask implements Runnable {
                 Utilities.closeSilently(c);
             }
 
+            // Set the icons which were rendered in the background
+            c.finishLoadingIcons();
+
             // Break early if we've stopped loading
             if (mStopped) {
                 mBgDataModel.clear();
@@ -871,6 +874,7 @@ public class LoaderTask implements Runnable {
         }
 
         mBgAllAppsList.added = new ArrayList<>();
+        mBgAllAppsList.publishSnapshot();
     }
 
     private void loadDeepShortcuts() {
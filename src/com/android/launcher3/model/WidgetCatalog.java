@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherAppWidgetProviderInfo;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.util.PackageUserKey;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The widgets of each package, kept by {@link WidgetsModel} across updates so that the items of
+ * a package are only created again once its version or its widgets change. The labels of the
+ * widgets are also stored on disk per package version, so that they don't need to be loaded
+ * from the resources of each package after a restart.
+ */
+class WidgetCatalog {
+
+    private static final String TAG = "WidgetCatalog";
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_CONFIG = "config";
+    private static final String KEY_LABELS = "labels";
+
+    /**
+     * Creates the widget items and provides the versions they depend on.
+     */
+    interface Source {
+
+        /**
+         * Returns the version of {@param packageName}, or null if its widgets can't be cached.
+         */
+        @Nullable
+        String getPackageVersion(String packageName);
+
+        /**
+         * Returns the device configuration which the widget items depend on, like the locale of
+         * the labels and the workspace grid.
+         */
+        String getConfig();
+
+        /**
+         * Creates the item of {@param info}, loading its label if {@param label} is null.
+         */
+        WidgetItem createWidgetItem(AppWidgetProviderInfo info, @Nullable String label);
+    }
+
+    private final Source mSource;
+    private final SharedPreferences mPrefs;
+
+    private final HashMap<PackageUserKey, PackageWidgets> mPackages = new HashMap<>();
+    private String mConfig;
+
+    WidgetCatalog(Source source, SharedPreferences prefs) {
+        mSource = source;
+        mPrefs = prefs;
+    }
+
+    /**
+     * Returns the items of {@param providers}, which are all the widgets of
+     * {@param packageUser}, or of all packages if it's null.
+     */
+    synchronized ArrayList<WidgetItem> update(List<AppWidgetProviderInfo> providers,
+            @Nullable PackageUserKey packageUser) {
+        String config = mSource.getConfig();
+        if (!config.equals(mConfig)) {
+            mPackages.clear();
+            mConfig = config;
+        }
+
+        LinkedHashMap<PackageUserKey, List<AppWidgetProviderInfo>> packageProviders =
+                new LinkedHashMap<>();
+        for (AppWidgetProviderInfo info : providers) {
+            PackageUserKey key =
+                    new PackageUserKey(info.provider.getPackageName(), info.getProfile());
+            List<AppWidgetProviderInfo> list = packageProviders.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                packageProviders.put(key, list);
+            }
+            list.add(info);
+        }
+
+        ArrayList<WidgetItem> result = new ArrayList<>();
+        SharedPreferences.Editor editor = null;
+        HashMap<String, String> versions = new HashMap<>();
+        for (Map.Entry<PackageUserKey, List<AppWidgetProviderInfo>> entry
+                : packageProviders.entrySet()) {
+            String packageName = entry.getKey().mPackageName;
+            String version = versions.get(packageName);
+            if (version == null && !versions.containsKey(packageName)) {
+                version = mSource.getPackageVersion(packageName);
+                versions.put(packageName, version);
+            }
+
+            PackageWidgets widgets = mPackages.get(entry.getKey());
+            if (widgets == null || version == null || !widgets.matches(version, entry.getValue())) {
+                widgets = loadPackage(packageName, version, entry.getValue());
+                if (version == null) {
+                    mPackages.remove(entry.getKey());
+                } else {
+                    mPackages.put(entry.getKey(), widgets);
+                    if (widgets.labelsLoaded) {
+                        if (editor == null) {
+                            editor = mPrefs.edit();
+                        }
+                        editor.putString(packageName, widgets.serializeLabels(config));
+                    }
+                }
+            }
+            result.addAll(widgets.items);
+        }
+
+        // Drop the packages which no longer have widgets
+        if (packageUser == null) {
+            mPackages.keySet().retainAll(packageProviders.keySet());
+            for (String packageName : mPrefs.getAll().keySet()) {
+                if (!versions.containsKey(packageName)) {
+                    if (editor == null) {
+                        editor = mPrefs.edit();
+                    }
+                    editor.remove(packageName);
+                }
+            }
+        } else if (!packageProviders.containsKey(packageUser)) {
+            mPackages.remove(packageUser);
+            if (mSource.getPackageVersion(packageUser.mPackageName) == null) {
+                // Uninstalled
+                if (editor == null) {
+                    editor = mPrefs.edit();
+                }
+                editor.remove(packageUser.mPackageName);
+            }
+        }
+
+        if (editor != null) {
+            editor.apply();
+        }
+        return result;
+    }
+
+    private PackageWidgets loadPackage(String packageName, @Nullable String version,
+            List<AppWidgetProviderInfo> providers) {
+        Map<String, String> storedLabels = version == null
+                ? null : readLabels(mPrefs.getString(packageName, null), version, mConfig);
+        // Keep the labels of the widgets of other users
+        HashMap<String, String> labels = storedLabels == null
+                ? new HashMap<>() : new HashMap<>(storedLabels);
+        ArrayList<WidgetItem> items = new ArrayList<>(providers.size());
+        boolean labelsLoaded = false;
+        for (AppWidgetProviderInfo info : providers) {
+            String className = info.provider.getClassName();
+            String label = storedLabels == null ? null : storedLabels.get(className);
+            if (label == null) {
+                labelsLoaded = true;
+            }
+            WidgetItem item = mSource.createWidgetItem(info, label);
+            items.add(item);
+            labels.put(className, item.label);
+        }
+        return new PackageWidgets(version, items, labels, labelsLoaded);
+    }
+
+    /**
+     * Returns the labels stored as {@param value}, or null if they were stored for a different
+     * version or configuration.
+     */
+    @Nullable
+    private static Map<String, String> readLabels(@Nullable String value, String version,
+            String config) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(value);
+            if (!version.equals(json.getString(KEY_VERSION))
+                    || !config.equals(json.getString(KEY_CONFIG))) {
+                return null;
+            }
+            HashMap<String, String> labels = new HashMap<>();
+            JSONObject labelsJson = json.getJSONObject(KEY_LABELS);
+            for (Iterator<String> keys = labelsJson.keys(); keys.hasNext(); ) {
+                String className = keys.next();
+                labels.put(className, labelsJson.getString(className));
+            }
+            return labels;
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid stored widget labels", e);
+            return null;
+        }
+    }
+
+    /**
+     * The widgets of a package, for a single version of the package.
+     */
+    private static class PackageWidgets {
+
+        final String version;
+        final ArrayList<WidgetItem> items;
+        final HashMap<String, String> labels;
+        // Whether some labels were loaded from the package rather than read from disk
+        final boolean labelsLoaded;
+
+        PackageWidgets(String version, ArrayList<WidgetItem> items,
+                HashMap<String, String> labels, boolean labelsLoaded) {
+            this.version = version;
+            this.items = items;
+            this.labels = labels;
+            this.labelsLoaded = labelsLoaded;
+        }
+
+        boolean matches(String version, List<AppWidgetProviderInfo> providers) {
+            if (!version.equals(this.version) || providers.size() != items.size()) {
+                return false;
+            }
+            HashSet<ComponentName> components = new HashSet<>(items.size());
+            for (WidgetItem item : items) {
+                components.add(item.componentName);
+            }
+            for (AppWidgetProviderInfo info : providers) {
+                if (!components.contains(info.provider)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String serializeLabels(String config) {
+            try {
+                return new JSONObject()
+                        .put(KEY_VERSION, version)
+                        .put(KEY_CONFIG, config)
+                        .put(KEY_LABELS, new JSONObject(labels))
+                        .toString();
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates the items of the widgets installed on the device.
+     */
+    static class LauncherSource implements Source {
+
+        private final Context mContext;
+        private final PackageManager mPm;
+        private final InvariantDeviceProfile mIdp;
+
+        LauncherSource(LauncherAppState app) {
+            mContext = app.getContext();
+            mPm = mContext.getPackageManager();
+            mIdp = app.getInvariantDeviceProfile();
+        }
+
+        @Nullable
+        @Override
+        public String getPackageVersion(String packageName) {
+            try {
+                PackageInfo info = mPm.getPackageInfo(packageName, 0);
+                return info.versionCode + ":" + info.lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getConfig() {
+            String locale = Utilities.ATLEAST_NOUGAT
+                    ? mContext.getResources().getConfiguration().getLocales().toLanguageTags()
+                    : Locale.getDefault().toString();
+            return locale + "," + Build.VERSION.SDK_INT + "," + mIdp.numColumns + "x"
+                    + mIdp.numRows + "," + mIdp.portraitProfile.widthPx + "x"
+                    + mIdp.portraitProfile.heightPx;
+        }
+
+        @Override
+        public WidgetItem createWidgetItem(AppWidgetProviderInfo info, @Nullable String label) {
+            LauncherAppWidgetProviderInfo launcherInfo =
+                    LauncherAppWidgetProviderInfo.fromProviderInfo(mContext, info);
+            return label == null
+                    ? new WidgetItem(launcherInfo, mPm, mIdp)
+                    : new WidgetItem(launcherInfo, label, mIdp);
+        }
+    }
+}
@@ -31,9 +31,17 @@ public class WidgetItem extends ComponentKey implements Comparable<WidgetItem> {
 
     public WidgetItem(LauncherAppWidgetProviderInfo info, PackageManager pm,
             InvariantDeviceProfile idp) {
+        this(info, Utilities.trim(info.getLabel(pm)), idp);
+    }
+
+    /**
+     * Creates an item for a widget whose label is already known.
+     */
+    public WidgetItem(LauncherAppWidgetProviderInfo info, String label,
+            InvariantDeviceProfile idp) {
         super(info.provider, info.getProfile());
 
-        label = Utilities.trim(info.getLabel(pm));
+        this.label = label;
         widgetInfo = info;
         activityInfo = null;
 
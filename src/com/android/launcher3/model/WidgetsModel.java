@@ -3,9 +3,7 @@ package com.android.launcher3.model;
 
 import static android.appwidget.AppWidgetProviderInfo.WIDGET_FEATURE_HIDE_FROM_PICKER;
 
-import android.appwidget.AppWidgetProviderInfo;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.os.Process;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
@@ -15,7 +13,7 @@ import com.android.launcher3.AppFilter;
 import com.android.launcher3.IconCache;
 import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherAppState;
-import com.android.launcher3.LauncherAppWidgetProviderInfo;
+import com.android.launcher3.LauncherFiles;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.compat.AlphabeticIndexCompat;
 import com.android.launcher3.compat.AppWidgetManagerCompat;
@@ -48,6 +46,7 @@ public class WidgetsModel {
     private final MultiHashMap<PackageItemInfo, WidgetItem> mWidgetsList = new MultiHashMap<>();
 
     private AppFilter mAppFilter;
+    private WidgetCatalog mCatalog;
 
     /**
      * Returns a list of {@link WidgetListRowEntry}. All {@link WidgetItem} in a single row
@@ -81,15 +80,16 @@ public class WidgetsModel {
         Context context = app.getContext();
         final ArrayList<WidgetItem> widgetsAndShortcuts = new ArrayList<>();
         try {
-            PackageManager pm = context.getPackageManager();
-            InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
+            if (mCatalog == null) {
+                mCatalog = new WidgetCatalog(new WidgetCatalog.LauncherSource(app),
+                        context.getSharedPreferences(LauncherFiles.WIDGET_CATALOG_PREFERENCES_KEY,
+                                Context.MODE_PRIVATE));
+            }
 
-            // Widgets
+            // Widgets, only the ones of changed packages are created again
             AppWidgetManagerCompat widgetManager = AppWidgetManagerCompat.getInstance(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
-                widgetsAndShortcuts.add(new WidgetItem(LauncherAppWidgetProviderInfo
-                        .fromProviderInfo(context, widgetInfo), pm, idp));
-            }
+            widgetsAndShortcuts.addAll(
+                    mCatalog.update(widgetManager.getAllProviders(packageUser), packageUser));
 
             // Shortcuts
             for (ShortcutConfigActivityInfo info : LauncherAppsCompat.getInstance(context)
@@ -25,6 +25,7 @@ import android.view.View;
 import android.view.ViewGroup.MarginLayoutParams;
 import android.widget.TextView;
 
+import com.android.launcher3.ItemInfoWithIcon;
 import com.android.launcher3.R;
 import com.android.launcher3.graphics.IconPalette;
 import com.android.launcher3.popup.PopupContainerWithArrow;
@@ -114,13 +115,16 @@ public class NotificationItemView {
         }
     }
 
-    public void updateHeader(int notificationCount, int iconColor) {
+    public void updateHeader(int notificationCount, ItemInfoWithIcon info) {
         mHeaderCount.setText(notificationCount <= 1 ? "" : String.valueOf(notificationCount));
+        int iconColor = info.iconColor;
         if (Color.alpha(iconColor) > 0) {
             if (mNotificationHeaderTextColor == Notification.COLOR_DEFAULT) {
-                mNotificationHeaderTextColor =
-                        IconPalette.resolveContrastColor(mContext, iconColor,
-                                Themes.getAttrColor(mContext, R.attr.popupColorPrimary));
+                int background = Themes.getAttrColor(mContext, R.attr.popupColorPrimary);
+                mNotificationHeaderTextColor = info.hasDerivedColors()
+                        && background == IconPalette.DEFAULT_POPUP_BACKGROUND
+                        ? info.contrastColor
+                        : IconPalette.resolveContrastColor(mContext, iconColor, background);
             }
             mHeaderText.setTextColor(mNotificationHeaderTextColor);
             mHeaderCount.setTextColor(mNotificationHeaderTextColor);
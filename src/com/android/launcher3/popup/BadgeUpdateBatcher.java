@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.popup;
+
+import android.view.Choreographer;
+
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the package/users whose badges changed as notifications are posted and removed, so
+ * that a burst of notifications refreshes the badges once on the next frame rather than once per
+ * notification. Should only be used on the UI thread.
+ */
+class BadgeUpdateBatcher {
+
+    /**
+     * Refreshes the badges of the package/users which changed since the last frame.
+     */
+    interface BadgeUpdater {
+
+        /**
+         * @param trimNotifications whether notifications were removed, so the ones shown by an
+         *                          open popup should be trimmed.
+         */
+        void updateBadges(Set<PackageUserKey> updatedBadges, boolean trimNotifications);
+    }
+
+    /**
+     * Runs a callback once, before the next frame.
+     */
+    interface FrameScheduler {
+
+        void postFrameCallback(Runnable callback);
+    }
+
+    static final FrameScheduler CHOREOGRAPHER = callback ->
+            Choreographer.getInstance().postFrameCallback(frameTimeNanos -> callback.run());
+
+    private final BadgeUpdater mUpdater;
+    private final FrameScheduler mScheduler;
+    private final Runnable mFlushCallback = this::flush;
+
+    private HashSet<PackageUserKey> mPendingBadges = new HashSet<>();
+    private boolean mTrimPending;
+    private boolean mScheduled;
+
+    BadgeUpdateBatcher(BadgeUpdater updater, FrameScheduler scheduler) {
+        mUpdater = updater;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Refreshes the badge of {@param packageUserKey} on the next frame.
+     */
+    void add(PackageUserKey packageUserKey, boolean trimNotifications) {
+        mPendingBadges.add(packageUserKey);
+        mTrimPending |= trimNotifications;
+        scheduleFlush();
+    }
+
+    /**
+     * Refreshes the badges of {@param packageUserKeys} on the next frame.
+     */
+    void addAll(Collection<PackageUserKey> packageUserKeys, boolean trimNotifications) {
+        if (packageUserKeys.isEmpty()) {
+            return;
+        }
+        mPendingBadges.addAll(packageUserKeys);
+        mTrimPending |= trimNotifications;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!mScheduled) {
+            mScheduled = true;
+            mScheduler.postFrameCallback(mFlushCallback);
+        }
+    }
+
+    private void flush() {
+        mScheduled = false;
+        if (mPendingBadges.isEmpty()) {
+            return;
+        }
+        HashSet<PackageUserKey> updatedBadges = mPendingBadges;
+        boolean trimNotifications = mTrimPending;
+        mPendingBadges = new HashSet<>();
+        mTrimPending = false;
+        mUpdater.updateBadges(updatedBadges, trimNotifications);
+    }
+}
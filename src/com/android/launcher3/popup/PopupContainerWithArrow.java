@@ -468,7 +468,7 @@ public class PopupContainerWithArrow extends ArrowPopup implements DragSource,
         BadgeInfo badgeInfo = mLauncher.getBadgeInfoForItem(itemInfo);
         if (mNotificationItemView != null && badgeInfo != null) {
             mNotificationItemView.updateHeader(
-                    badgeInfo.getNotificationCount(), itemInfo.iconColor);
+                    badgeInfo.getNotificationCount(), itemInfo);
         }
     }
 
@@ -21,11 +21,13 @@ import android.content.Context;
 import android.content.pm.LauncherApps;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import ch.deletescape.lawnchair.popup.LawnchairShortcut;
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
+import com.android.launcher3.LauncherModel;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.badge.BadgeInfo;
@@ -46,6 +48,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import ninja.sesame.lib.bridge.v1.SesameFrontend;
 import ninja.sesame.lib.bridge.v1.SesameShortcut;
 
@@ -69,8 +72,20 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     /** Maps packages to their Widgets */
     private ArrayList<WidgetListRowEntry> mAllWidgets = new ArrayList<>();
 
+    private final ShortcutPrefetcher mShortcutPrefetcher;
+    private final BadgeUpdateBatcher mBadgeUpdateBatcher;
+
     public PopupDataProvider(Launcher launcher) {
+        this(launcher, BadgeUpdateBatcher.CHOREOGRAPHER);
+    }
+
+    @VisibleForTesting
+    PopupDataProvider(Launcher launcher, BadgeUpdateBatcher.FrameScheduler badgeScheduler) {
         mLauncher = launcher;
+        mBadgeUpdateBatcher = new BadgeUpdateBatcher(this::updateBadges, badgeScheduler);
+        mShortcutPrefetcher = new ShortcutPrefetcher(
+                new ShortcutPrefetcher.DeepShortcutSource(launcher),
+                LauncherModel.getWorkerLooper());
         mSystemShortcuts = new SystemShortcut[] {
                 new SystemShortcut.AppInfo(),
                 new SystemShortcut.Widgets(),
@@ -101,7 +116,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             }
         }
         if (badgeShouldBeRefreshed) {
-            mLauncher.updateIconBadges(Utilities.singletonHashSet(postedPackageUserKey));
+            mBadgeUpdateBatcher.add(postedPackageUserKey, false /* trimNotifications */);
         }
     }
 
@@ -113,17 +128,15 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             if (oldBadgeInfo.getNotificationKeys().size() == 0) {
                 mPackageUserToBadgeInfos.remove(removedPackageUserKey);
             }
-            mLauncher.updateIconBadges(Utilities.singletonHashSet(removedPackageUserKey));
-            trimNotifications(mPackageUserToBadgeInfos);
+            mBadgeUpdateBatcher.add(removedPackageUserKey, true /* trimNotifications */);
         }
     }
 
     @Override
     public void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications) {
         if (activeNotifications == null) return;
-        // This will contain the PackageUserKeys which have updated badges.
-        HashMap<PackageUserKey, BadgeInfo> updatedBadges = new HashMap<>(mPackageUserToBadgeInfos);
-        mPackageUserToBadgeInfos.clear();
+        Map<PackageUserKey, BadgeInfo> prevBadges = mPackageUserToBadgeInfos;
+        mPackageUserToBadgeInfos = new HashMap<>();
         for (StatusBarNotification notification : activeNotifications) {
             PackageUserKey packageUserKey = PackageUserKey.fromNotification(notification);
             BadgeInfo badgeInfo = mPackageUserToBadgeInfos.get(packageUserKey);
@@ -135,23 +148,24 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
                     .fromNotification(notification));
         }
 
-        // Add and remove from updatedBadges so it contains the PackageUserKeys of updated badges.
-        for (PackageUserKey packageUserKey : mPackageUserToBadgeInfos.keySet()) {
-            BadgeInfo prevBadge = updatedBadges.get(packageUserKey);
-            BadgeInfo newBadge = mPackageUserToBadgeInfos.get(packageUserKey);
-            if (prevBadge == null) {
-                updatedBadges.put(packageUserKey, newBadge);
-            } else {
-                if (!prevBadge.shouldBeInvalidated(newBadge)) {
-                    updatedBadges.remove(packageUserKey);
-                }
+        // Remove the badges which are still there from prevBadges, so it only contains the
+        // PackageUserKeys which no longer have notifications.
+        ArrayList<PackageUserKey> updatedBadges = new ArrayList<>();
+        for (Map.Entry<PackageUserKey, BadgeInfo> entry : mPackageUserToBadgeInfos.entrySet()) {
+            BadgeInfo prevBadge = prevBadges.remove(entry.getKey());
+            if (prevBadge == null || prevBadge.shouldBeInvalidated(entry.getValue())) {
+                updatedBadges.add(entry.getKey());
             }
         }
+        updatedBadges.addAll(prevBadges.keySet());
+        mBadgeUpdateBatcher.addAll(updatedBadges, true /* trimNotifications */);
+    }
 
-        if (!updatedBadges.isEmpty()) {
-            mLauncher.updateIconBadges(updatedBadges.keySet());
+    private void updateBadges(Set<PackageUserKey> updatedBadges, boolean trimNotifications) {
+        mLauncher.updateIconBadges(updatedBadges);
+        if (trimNotifications) {
+            trimNotifications(mPackageUserToBadgeInfos);
         }
-        trimNotifications(updatedBadges);
     }
 
     private void trimNotifications(Map<PackageUserKey, BadgeInfo> updatedBadges) {
@@ -163,6 +177,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
 
     public void setDeepShortcutMap(MultiHashMap<ComponentKey, String> deepShortcutMapCopy) {
         mDeepShortcutMap = deepShortcutMapCopy;
+        mShortcutPrefetcher.clear();
         if (LOGD) Log.d(TAG, "bindDeepShortcutMap: " + mDeepShortcutMap);
     }
 
@@ -189,6 +204,29 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         return ids;
     }
 
+    /**
+     * Starts loading the shortcuts shown in the popup of {@param info}, as it might get long
+     * pressed.
+     */
+    public void prefetchShortcuts(ItemInfo info) {
+        // The backported shortcuts aren't shown in popups
+        if (!Utilities.ATLEAST_NOUGAT_MR1 || !DeepShortcutManager.supportsShortcuts(info)) {
+            return;
+        }
+        List<String> ids = getShortcutIdsForItem(info);
+        if (!ids.isEmpty()) {
+            mShortcutPrefetcher.prefetch(info, ids);
+        }
+    }
+
+    public void cancelShortcutPrefetch(ItemInfo info) {
+        mShortcutPrefetcher.cancel(info);
+    }
+
+    public ShortcutPrefetcher getShortcutPrefetcher() {
+        return mShortcutPrefetcher;
+    }
+
     public BadgeInfo getBadgeInfoForItem(ItemInfo info) {
         if (!DeepShortcutManager.supportsShortcuts(info)) {
             return null;
@@ -28,10 +28,9 @@ import android.text.TextUtils;
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.ShortcutInfo;
-import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationKeyData;
-import com.android.launcher3.shortcuts.DeepShortcutManager;
+import com.android.launcher3.popup.ShortcutPrefetcher.PrefetchedShortcuts;
 import com.android.launcher3.shortcuts.DeepShortcutView;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.PackageUserKey;
@@ -143,23 +142,22 @@ public class PopupPopulator {
             }
 
             List<ShortcutInfoCompat> shortcuts = Collections.emptyList();
-            if (activity != null) {
-                shortcuts = DeepShortcutManager.getInstance(launcher)
-                        .queryForShortcutsContainer(activity, shortcutIds, user);
-            } else if (intent != null && !TextUtils.isEmpty(intent.getPackage())) {
-                shortcuts = DeepShortcutManager.getInstance(launcher)
-                        .queryForShortcutsContainer(intent.getPackage(), shortcutIds, user);
+            PrefetchedShortcuts prefetched = null;
+            String packageName = activity != null ? activity.getPackageName()
+                    : intent != null ? intent.getPackage() : null;
+            if (!TextUtils.isEmpty(packageName)) {
+                // Usually already loaded since the long-press started
+                prefetched = launcher.getPopupDataProvider().getShortcutPrefetcher()
+                        .load(activity, packageName, shortcutIds, user);
+                shortcuts = prefetched.getShortcuts();
             }
             String shortcutIdToDeDupe = notificationKeys.isEmpty() ? null
                     : notificationKeys.get(0).shortcutId;
             shortcuts = PopupPopulator.sortAndFilterShortcuts(shortcuts, shortcutIdToDeDupe);
             for (int i = 0; i < shortcuts.size() && i < shortcutViews.size(); i++) {
                 final ShortcutInfoCompat shortcut = shortcuts.get(i);
-                final ShortcutInfo si = new ShortcutInfo(shortcut, launcher);
                 // Use unbadged icon for the menu.
-                LauncherIcons li = LauncherIcons.obtain(launcher);
-                li.createShortcutIcon(shortcut, false /* badged */).applyTo(si);
-                li.recycle();
+                final ShortcutInfo si = prefetched.createShortcutInfo(shortcut, launcher);
                 si.rank = i;
 
                 final DeepShortcutView view = shortcutViews.get(i);
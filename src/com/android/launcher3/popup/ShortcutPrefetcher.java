@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.popup;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.graphics.BitmapInfo;
+import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.shortcuts.DeepShortcutManager;
+import com.android.launcher3.shortcuts.ShortcutInfoCompat;
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Loads the deep shortcuts of an app and renders their icons as soon as a long-press on its icon
+ * starts, so that the popup can show them as soon as it opens. Loaded shortcuts are kept for a
+ * short time per package, so that reopening a popup doesn't load them again, and are dropped
+ * once that time elapses.
+ */
+public class ShortcutPrefetcher {
+
+    // How long loaded shortcuts are reused for
+    private static final long CACHE_TIMEOUT_MS = 5000;
+
+    /**
+     * Source of the shortcuts shown in popups, called on the worker thread.
+     */
+    public interface ShortcutSource {
+
+        List<ShortcutInfoCompat> queryForShortcutsContainer(@Nullable ComponentName activity,
+                String packageName, List<String> ids, UserHandle user);
+
+        BitmapInfo createShortcutIcon(ShortcutInfoCompat shortcut);
+    }
+
+    private final ShortcutSource mSource;
+    private final Handler mWorkerHandler;
+    private final long mCacheTimeout;
+    private final HashMap<PackageUserKey, PrefetchedShortcuts> mCache = new HashMap<>();
+
+    public ShortcutPrefetcher(ShortcutSource source, Looper workerLooper) {
+        this(source, workerLooper, CACHE_TIMEOUT_MS);
+    }
+
+    @VisibleForTesting
+    ShortcutPrefetcher(ShortcutSource source, Looper workerLooper, long cacheTimeout) {
+        mSource = source;
+        mWorkerHandler = new Handler(workerLooper);
+        mCacheTimeout = cacheTimeout;
+    }
+
+    /**
+     * Starts loading the shortcuts {@param ids} of {@param info} on the worker thread, unless
+     * they're already loaded.
+     */
+    public synchronized void prefetch(ItemInfo info, List<String> ids) {
+        String packageName = getPackageName(info);
+        if (packageName == null) {
+            return;
+        }
+        PrefetchedShortcuts shortcuts =
+                getOrCreate(info.getTargetComponent(), packageName, ids, info.user);
+        if (!shortcuts.mPosted) {
+            shortcuts.mPosted = true;
+            mWorkerHandler.post(shortcuts);
+        }
+    }
+
+    /**
+     * Cancels loading the shortcuts of {@param info}, eg. when the touch turned out to be a tap.
+     * Shortcuts which are already loaded are kept.
+     */
+    public synchronized void cancel(ItemInfo info) {
+        String packageName = getPackageName(info);
+        if (packageName == null) {
+            return;
+        }
+        PackageUserKey key = new PackageUserKey(packageName, info.user);
+        PrefetchedShortcuts shortcuts = mCache.get(key);
+        if (shortcuts != null && !shortcuts.isLoaded()) {
+            release(shortcuts);
+            mCache.remove(key);
+        }
+    }
+
+    /**
+     * Returns the shortcuts to show in a popup, loading them unless they were prefetched. This
+     * should be called on the worker thread.
+     */
+    public PrefetchedShortcuts load(@Nullable ComponentName activity, String packageName,
+            List<String> ids, UserHandle user) {
+        PrefetchedShortcuts shortcuts;
+        synchronized (this) {
+            shortcuts = getOrCreate(activity, packageName, ids, user);
+        }
+        shortcuts.run();
+        if (!shortcuts.isLoaded()) {
+            // Cancelled while loading, load them without caching
+            shortcuts = new PrefetchedShortcuts(activity, packageName, ids, user);
+            shortcuts.run();
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Drops all loaded shortcuts, eg. when the shortcuts of apps changed.
+     */
+    public synchronized void clear() {
+        for (PrefetchedShortcuts shortcuts : mCache.values()) {
+            release(shortcuts);
+        }
+        mCache.clear();
+    }
+
+    @VisibleForTesting
+    synchronized int getCachedCount() {
+        return mCache.size();
+    }
+
+    private PrefetchedShortcuts getOrCreate(@Nullable ComponentName activity, String packageName,
+            List<String> ids, UserHandle user) {
+        PackageUserKey key = new PackageUserKey(packageName, user);
+        PrefetchedShortcuts shortcuts = mCache.get(key);
+        if (shortcuts == null || !shortcuts.matches(activity, ids)
+                || shortcuts.isExpired(SystemClock.uptimeMillis())) {
+            if (shortcuts != null) {
+                release(shortcuts);
+            }
+            shortcuts = new PrefetchedShortcuts(activity, packageName, ids, user);
+            mCache.put(key, shortcuts);
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Drops {@param shortcuts} from the cache once they're expired, unless they were replaced.
+     */
+    private synchronized void scheduleExpiry(PrefetchedShortcuts shortcuts) {
+        if (mCache.get(shortcuts.getKey()) == shortcuts) {
+            mWorkerHandler.postDelayed(shortcuts.mExpire, mCacheTimeout);
+        }
+    }
+
+    private void release(PrefetchedShortcuts shortcuts) {
+        shortcuts.cancel();
+        mWorkerHandler.removeCallbacks(shortcuts);
+        mWorkerHandler.removeCallbacks(shortcuts.mExpire);
+    }
+
+    @Nullable
+    private static String getPackageName(ItemInfo info) {
+        ComponentName activity = info.getTargetComponent();
+        if (activity != null) {
+            return activity.getPackageName();
+        }
+        Intent intent = info.getIntent();
+        return intent == null || TextUtils.isEmpty(intent.getPackage())
+                ? null : intent.getPackage();
+    }
+
+    /**
+     * The shortcuts of an app with the icons of the ones shown in its popup.
+     */
+    public class PrefetchedShortcuts implements Runnable {
+
+        private final ComponentName mActivity;
+        private final String mPackageName;
+        private final List<String> mIds;
+        private final UserHandle mUser;
+
+        private final HashMap<String, BitmapInfo> mIcons = new HashMap<>();
+        // Set once loaded, read without locking so that the main thread never waits for a load
+        private volatile List<ShortcutInfoCompat> mShortcuts;
+        private volatile long mLoadTime;
+
+        // Guarded by the ShortcutPrefetcher
+        private boolean mPosted;
+        private volatile boolean mCancelled;
+
+        private final Runnable mExpire = () -> {
+            synchronized (ShortcutPrefetcher.this) {
+                if (mCache.get(getKey()) == this) {
+                    mCache.remove(getKey());
+                }
+            }
+        };
+
+        PrefetchedShortcuts(@Nullable ComponentName activity, String packageName,
+                List<String> ids, UserHandle user) {
+            mActivity = activity;
+            mPackageName = packageName;
+            mIds = new ArrayList<>(ids);
+            mUser = user;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (mShortcuts != null || mCancelled) {
+                return;
+            }
+            List<ShortcutInfoCompat> shortcuts =
+                    mSource.queryForShortcutsContainer(mActivity, mPackageName, mIds, mUser);
+            // Render the icons of the shortcuts the popup shows without notifications
+            for (ShortcutInfoCompat shortcut : PopupPopulator.sortAndFilterShortcuts(
+                    new ArrayList<>(shortcuts), null)) {
+                if (mCancelled) {
+                    return;
+                }
+                mIcons.put(shortcut.getId(), mSource.createShortcutIcon(shortcut));
+            }
+            mLoadTime = SystemClock.uptimeMillis();
+            mShortcuts = shortcuts;
+            scheduleExpiry(this);
+        }
+
+        /**
+         * Returns a copy of the loaded shortcuts.
+         */
+        public List<ShortcutInfoCompat> getShortcuts() {
+            List<ShortcutInfoCompat> shortcuts = mShortcuts;
+            return shortcuts == null ? new ArrayList<>() : new ArrayList<>(shortcuts);
+        }
+
+        /**
+         * Creates the item shown for {@param shortcut}, with its unbadged icon.
+         */
+        public ShortcutInfo createShortcutInfo(ShortcutInfoCompat shortcut, Context context) {
+            BitmapInfo icon;
+            synchronized (this) {
+                icon = mIcons.get(shortcut.getId());
+                if (icon == null) {
+                    icon = mSource.createShortcutIcon(shortcut);
+                    mIcons.put(shortcut.getId(), icon);
+                }
+            }
+            ShortcutInfo si = new ShortcutInfo(shortcut, context);
+            icon.applyTo(si);
+            return si;
+        }
+
+        PackageUserKey getKey() {
+            return new PackageUserKey(mPackageName, mUser);
+        }
+
+        boolean isLoaded() {
+            return mShortcuts != null;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        boolean matches(@Nullable ComponentName activity, List<String> ids) {
+            return !mCancelled && Objects.equals(mActivity, activity) && mIds.equals(ids);
+        }
+
+        boolean isExpired(long now) {
+            return isLoaded() && now - mLoadTime > mCacheTimeout;
+        }
+    }
+
+    /**
+     * Loads shortcuts from the {@link DeepShortcutManager}.
+     */
+    static class DeepShortcutSource implements ShortcutSource {
+
+        private final Context mContext;
+
+        DeepShortcutSource(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public List<ShortcutInfoCompat> queryForShortcutsContainer(
+                @Nullable ComponentName activity, String packageName, List<String> ids,
+                UserHandle user) {
+            DeepShortcutManager manager = DeepShortcutManager.getInstance(mContext);
+            return activity != null
+                    ? manager.queryForShortcutsContainer(activity, ids, user)
+                    : manager.queryForShortcutsContainer(packageName, ids, user);
+        }
+
+        @Override
+        public BitmapInfo createShortcutIcon(ShortcutInfoCompat shortcut) {
+            LauncherIcons li = LauncherIcons.obtain(mContext);
+            BitmapInfo icon = li.createShortcutIcon(shortcut, false /* badged */);
+            li.recycle();
+            return icon;
+        }
+    }
+}
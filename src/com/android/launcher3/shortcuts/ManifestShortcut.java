@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.shortcuts;
+
+import android.content.res.Resources;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A shortcut as declared in the shortcuts xml of an app. Only resource ids are kept, so that
+ * the definition stays valid across locale and configuration changes and can be stored.
+ */
+class ManifestShortcut {
+
+    final String id;
+    final boolean enabled;
+    final int iconResId;
+    final int shortLabelResId;
+    final int longLabelResId;
+    final int disabledMessageResId;
+
+    // The last intent declared for the shortcut
+    @Nullable final String action;
+    @Nullable final String targetPackage;
+    @Nullable final String targetClass;
+    @Nullable final String data;
+    final Map<String, String> extras;
+
+    ManifestShortcut(String id, boolean enabled, int iconResId, int shortLabelResId,
+            int longLabelResId, int disabledMessageResId, String action, String targetPackage,
+            String targetClass, String data, Map<String, String> extras) {
+        this.id = id;
+        this.enabled = enabled;
+        this.iconResId = iconResId;
+        this.shortLabelResId = shortLabelResId;
+        this.longLabelResId = longLabelResId;
+        this.disabledMessageResId = disabledMessageResId;
+        this.action = action;
+        this.targetPackage = targetPackage;
+        this.targetClass = targetClass;
+        this.data = data;
+        this.extras = extras;
+    }
+
+    /**
+     * Parses the shortcut at the current "shortcut" tag of {@param parser}, and moves the parser
+     * to its end tag.
+     */
+    static ManifestShortcut parse(XmlPullParser parser, Resources resources, String packageName)
+            throws XmlPullParserException, IOException {
+        String id = getAttribute(parser, "shortcutId");
+        String enabled = getAttribute(parser, "enabled");
+        String icon = getAttribute(parser, "icon");
+        int iconResId = 0;
+        if (icon != null) {
+            int resId = resources.getIdentifier(icon, null, packageName);
+            iconResId = resId == 0 ? Integer.parseInt(icon.substring(1)) : resId;
+        }
+        int shortLabelResId = getResId(parser, "shortcutShortLabel");
+        int longLabelResId = getResId(parser, "shortcutLongLabel");
+        int disabledMessageResId = getResId(parser, "shortcutDisabledMessage");
+
+        String action = null;
+        String targetPackage = null;
+        String targetClass = null;
+        String data = null;
+        LinkedHashMap<String, String> extras = new LinkedHashMap<>();
+        int startDepth = parser.getDepth();
+        do {
+            if (parser.nextToken() == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if ("intent".equals(name)) {
+                    action = getAttribute(parser, "action");
+                    targetPackage = getAttribute(parser, "targetPackage");
+                    targetClass = getAttribute(parser, "targetClass");
+                    data = getAttribute(parser, "data");
+                    extras.clear();
+                } else if ("extra".equals(name)) {
+                    String extraName = getAttribute(parser, "name");
+                    String extraValue = getAttribute(parser, "value");
+                    if (extraName != null && extraValue != null) {
+                        extras.put(extraName, extraValue);
+                    }
+                }
+            }
+        } while (parser.getDepth() > startDepth);
+
+        return new ManifestShortcut(id, enabled == null || enabled.toLowerCase().equals("true"),
+                iconResId, shortLabelResId, longLabelResId, disabledMessageResId,
+                action, targetPackage, targetClass, data, extras);
+    }
+
+    /**
+     * Returns the value of the last attribute called {@param name}, or null if there's none.
+     */
+    @Nullable
+    static String getAttribute(XmlPullParser parser, String name) {
+        String value = null;
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            if (name.equals(parser.getAttributeName(i))) {
+                value = parser.getAttributeValue(i);
+            }
+        }
+        return value;
+    }
+
+    private static int getResId(XmlPullParser parser, String name) {
+        String value = getAttribute(parser, name);
+        return value == null ? 0 : Integer.parseInt(value.substring(1));
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject extrasJson = new JSONObject();
+        for (Map.Entry<String, String> extra : extras.entrySet()) {
+            extrasJson.put(extra.getKey(), extra.getValue());
+        }
+        return new JSONObject()
+                .put("id", id)
+                .put("enabled", enabled)
+                .put("icon", iconResId)
+                .put("shortLabel", shortLabelResId)
+                .put("longLabel", longLabelResId)
+                .put("disabledMessage", disabledMessageResId)
+                .put("action", action)
+                .put("targetPackage", targetPackage)
+                .put("targetClass", targetClass)
+                .put("data", data)
+                .put("extras", extrasJson);
+    }
+
+    static ManifestShortcut fromJson(JSONObject json) throws JSONException {
+        LinkedHashMap<String, String> extras = new LinkedHashMap<>();
+        JSONObject extrasJson = json.getJSONObject("extras");
+        for (Iterator<String> keys = extrasJson.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            extras.put(key, extrasJson.getString(key));
+        }
+        return new ManifestShortcut(
+                json.optString("id", null),
+                json.getBoolean("enabled"),
+                json.getInt("icon"),
+                json.getInt("shortLabel"),
+                json.getInt("longLabel"),
+                json.getInt("disabledMessage"),
+                json.optString("action", null),
+                json.optString("targetPackage", null),
+                json.optString("targetClass", null),
+                json.optString("data", null),
+                extras);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.shortcuts;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.android.launcher3.LauncherFiles;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the shortcuts declared in app manifests for {@link DeepShortcutManagerBackport}, in
+ * memory and on disk, keyed by package. The manifest of a package is only parsed again once its
+ * version or update time changes.
+ */
+class ManifestShortcutCache {
+
+    private static final String TAG = "ManifestShortcutCache";
+
+    private static final String META_DATA_SHORTCUTS = "android.app.shortcuts";
+
+    private static ManifestShortcutCache sInstance;
+    private static final Object sInstanceLock = new Object();
+
+    static ManifestShortcutCache getInstance(Context context) {
+        synchronized (sInstanceLock) {
+            if (sInstance == null) {
+                context = context.getApplicationContext();
+                sInstance = new ManifestShortcutCache(context, context.getSharedPreferences(
+                        LauncherFiles.MANIFEST_SHORTCUTS_PREFERENCES_KEY, Context.MODE_PRIVATE));
+            }
+            return sInstance;
+        }
+    }
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    private final HashMap<String, PackageShortcuts> mCache = new HashMap<>();
+
+    @VisibleForTesting
+    ManifestShortcutCache(Context context, SharedPreferences prefs) {
+        mContext = context;
+        mPrefs = prefs;
+    }
+
+    /**
+     * Returns the shortcuts declared for {@param activity}.
+     */
+    synchronized List<ManifestShortcut> getShortcuts(ComponentName activity) {
+        String packageName = activity.getPackageName();
+        String version;
+        try {
+            PackageInfo info = mContext.getPackageManager().getPackageInfo(packageName, 0);
+            version = info.versionCode + ":" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            remove(packageName);
+            return Collections.emptyList();
+        }
+
+        PackageShortcuts shortcuts = mCache.get(packageName);
+        if (shortcuts == null || !shortcuts.version.equals(version)) {
+            shortcuts = PackageShortcuts.parse(version, mPrefs.getString(packageName, null));
+            if (shortcuts == null) {
+                Map<String, List<ManifestShortcut>> activities = loadPackage(packageName);
+                if (activities == null) {
+                    return Collections.emptyList();
+                }
+                shortcuts = new PackageShortcuts(version, activities);
+                mPrefs.edit().putString(packageName, shortcuts.serialize()).apply();
+            }
+            mCache.put(packageName, shortcuts);
+        }
+        List<ManifestShortcut> result = shortcuts.activities.get(activity.getClassName());
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    /**
+     * Removes the shortcuts of {@param packageName}, eg. when it's uninstalled.
+     */
+    synchronized void remove(String packageName) {
+        if (mCache.remove(packageName) != null || mPrefs.contains(packageName)) {
+            mPrefs.edit().remove(packageName).apply();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void clearMemoryCache() {
+        mCache.clear();
+    }
+
+    /**
+     * Parses the shortcuts of each activity of {@param packageName}, or returns null if the
+     * package can't be read.
+     */
+    @VisibleForTesting
+    @Nullable
+    Map<String, List<ManifestShortcut>> loadPackage(String packageName) {
+        HashMap<String, List<ManifestShortcut>> activities = new HashMap<>();
+        try {
+            Resources resources = mContext.getPackageManager()
+                    .getResourcesForApplication(packageName);
+            Map<String, String> shortcutResources;
+            XmlResourceParser manifest = resources.getAssets()
+                    .openXmlResourceParser("AndroidManifest.xml");
+            try {
+                shortcutResources = parseManifest(manifest);
+            } finally {
+                manifest.close();
+            }
+
+            // Activities usually share a single shortcuts xml
+            HashMap<String, List<ManifestShortcut>> parsedResources = new HashMap<>();
+            for (Map.Entry<String, String> entry : shortcutResources.entrySet()) {
+                String resource = entry.getValue();
+                List<ManifestShortcut> shortcuts = parsedResources.get(resource);
+                if (shortcuts == null) {
+                    int resId = resources.getIdentifier(resource, null, packageName);
+                    XmlResourceParser parser = resources.getXml(resId == 0
+                            ? Integer.parseInt(resource.substring(1))
+                            : resId);
+                    try {
+                        shortcuts = parseShortcuts(parser, resources, packageName);
+                    } finally {
+                        parser.close();
+                    }
+                    parsedResources.put(resource, shortcuts);
+                }
+                activities.put(entry.getKey(), shortcuts);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to parse the shortcuts of " + packageName, e);
+            return null;
+        }
+        return activities;
+    }
+
+    /**
+     * Returns the shortcuts resource declared for each activity of the manifest.
+     */
+    static Map<String, String> parseManifest(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        HashMap<String, String> resources = new HashMap<>();
+        String currActivity = null;
+        int eventType;
+        while ((eventType = parser.nextToken()) != XmlPullParser.END_DOCUMENT) {
+            if (eventType != XmlPullParser.START_TAG) {
+                continue;
+            }
+            String name = parser.getName();
+            if ("activity".equals(name) || "activity-alias".equals(name)) {
+                String activityName = ManifestShortcut.getAttribute(parser, "name");
+                if (activityName != null) {
+                    currActivity = activityName;
+                }
+            } else if ("meta-data".equals(name) && currActivity != null) {
+                String resource = ManifestShortcut.getAttribute(parser, "resource");
+                if (META_DATA_SHORTCUTS.equals(ManifestShortcut.getAttribute(parser, "name"))
+                        && resource != null) {
+                    resources.put(currActivity, resource);
+                }
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Returns the shortcuts declared in a shortcuts xml, skipping the ones which can't be parsed.
+     */
+    static List<ManifestShortcut> parseShortcuts(XmlPullParser parser, Resources resources,
+            String packageName) throws XmlPullParserException, IOException {
+        List<ManifestShortcut> shortcuts = new ArrayList<>();
+        int eventType;
+        while ((eventType = parser.nextToken()) != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG && "shortcut".equals(parser.getName())) {
+                try {
+                    ManifestShortcut shortcut = ManifestShortcut.parse(parser, resources,
+                            packageName);
+                    if (shortcut.id != null) {
+                        shortcuts.add(shortcut);
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Invalid shortcut in " + packageName, e);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * The shortcuts of each activity of a package, for a single version of the package.
+     */
+    private static class PackageShortcuts {
+
+        final String version;
+        final Map<String, List<ManifestShortcut>> activities;
+
+        PackageShortcuts(String version, Map<String, List<ManifestShortcut>> activities) {
+            this.version = version;
+            this.activities = activities;
+        }
+
+        String serialize() {
+            try {
+                JSONObject activitiesJson = new JSONObject();
+                for (Map.Entry<String, List<ManifestShortcut>> entry : activities.entrySet()) {
+                    JSONArray shortcuts = new JSONArray();
+                    for (ManifestShortcut shortcut : entry.getValue()) {
+                        shortcuts.put(shortcut.toJson());
+                    }
+                    activitiesJson.put(entry.getKey(), shortcuts);
+                }
+                return new JSONObject()
+                        .put("version", version)
+                        .put("activities", activitiesJson)
+                        .toString();
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Returns the shortcuts stored in {@param value}, or null if there are none or they were
+         * stored for a different version.
+         */
+        @Nullable
+        static PackageShortcuts parse(String version, @Nullable String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                JSONObject json = new JSONObject(value);
+                if (!version.equals(json.getString("version"))) {
+                    return null;
+                }
+                HashMap<String, List<ManifestShortcut>> activities = new HashMap<>();
+                JSONObject activitiesJson = json.getJSONObject("activities");
+                for (Iterator<String> keys = activitiesJson.keys(); keys.hasNext(); ) {
+                    String activity = keys.next();
+                    JSONArray shortcutsJson = activitiesJson.getJSONArray(activity);
+                    List<ManifestShortcut> shortcuts = new ArrayList<>(shortcutsJson.length());
+                    for (int i = 0; i < shortcutsJson.length(); i++) {
+                        shortcuts.add(ManifestShortcut.fromJson(shortcutsJson.getJSONObject(i)));
+                    }
+                    activities.put(activity, shortcuts);
+                }
+                return new PackageShortcuts(version, activities);
+            } catch (JSONException e) {
+                Log.w(TAG, "Invalid stored shortcuts", e);
+                return null;
+            }
+        }
+    }
+}
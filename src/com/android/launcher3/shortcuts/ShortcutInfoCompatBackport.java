@@ -21,7 +21,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
-import android.content.res.XmlResourceParser;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Process;
@@ -29,11 +28,6 @@ import android.os.UserHandle;
 
 import com.android.launcher3.R;
 
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 public class ShortcutInfoCompatBackport extends ShortcutInfoCompat {
@@ -61,75 +55,36 @@ public class ShortcutInfoCompatBackport extends ShortcutInfoCompat {
 
     private final Intent mIntent;
 
-    public ShortcutInfoCompatBackport(Context context, Resources resources, String packageName, ComponentName activity, XmlResourceParser parseXml) throws XmlPullParserException, IOException {
+    ShortcutInfoCompatBackport(Context context, Resources resources, String packageName,
+            ComponentName activity, ManifestShortcut shortcut) {
         super(null);
         mContext = context;
         mPackageName = packageName;
         mActivity = activity;
 
-        HashMap<String, String> xmlData = new HashMap<>();
-        for (int i = 0; i < parseXml.getAttributeCount(); i++) {
-            xmlData.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
-        }
-
-        mId = xmlData.get("shortcutId");
-
-        mEnabled = !xmlData.containsKey("enabled") || xmlData.get("enabled").toLowerCase().equals("true");
+        mId = shortcut.id;
+        mEnabled = shortcut.enabled;
+        mIcon = shortcut.iconResId;
 
-        if (xmlData.containsKey("icon")) {
-            String icon = xmlData.get("icon");
-            int resId = resources.getIdentifier(icon, null, packageName);
-            mIcon = resId == 0
-                    ? Integer.parseInt(icon.substring(1))
-                    : resId;
-        } else {
-            mIcon = 0;
-        }
-
-        mShortLabel = xmlData.containsKey("shortcutShortLabel") ?
-                resources.getString(Integer.valueOf(xmlData.get("shortcutShortLabel").substring(1))) :
+        mShortLabel = shortcut.shortLabelResId != 0 ?
+                resources.getString(shortcut.shortLabelResId) :
                 "";
 
-        mLongLabel = xmlData.containsKey("shortcutLongLabel") ?
-                resources.getString(Integer.valueOf(xmlData.get("shortcutLongLabel").substring(1))) :
+        mLongLabel = shortcut.longLabelResId != 0 ?
+                resources.getString(shortcut.longLabelResId) :
                 mShortLabel;
 
-        mDisabledMessage = xmlData.containsKey("shortcutDisabledMessage") ?
-                resources.getString(Integer.valueOf(xmlData.get("shortcutDisabledMessage").substring(1))) :
+        mDisabledMessage = shortcut.disabledMessageResId != 0 ?
+                resources.getString(shortcut.disabledMessageResId) :
                 "";
 
-        HashMap<String, String> xmlDataIntent = new HashMap<>();
-        HashMap<String, String> xmlDataExtras = new HashMap<>();
-        HashMap<String, String> extras = new HashMap<>();
-        int startDepth = parseXml.getDepth();
-        do {
-            if (parseXml.nextToken() == XmlPullParser.START_TAG) {
-                String xmlName = parseXml.getName();
-                if (xmlName.equals("intent")) {
-                    xmlDataIntent.clear();
-                    extras.clear();
-                    for (int i = 0; i < parseXml.getAttributeCount(); i++) {
-                        xmlDataIntent.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
-                    }
-                } else if (xmlName.equals("extra")) {
-                    xmlDataExtras.clear();
-                    for (int i = 0; i < parseXml.getAttributeCount(); i++) {
-                        xmlDataExtras.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
-                    }
-                    if (xmlDataExtras.containsKey("name") && xmlDataExtras.containsKey("value")) {
-                        extras.put(xmlDataExtras.get("name"), xmlDataExtras.get("value"));
-                    }
-                }
-            }
-        } while (parseXml.getDepth() > startDepth);
-
-        String action = xmlDataIntent.containsKey("action") ?
-                xmlDataIntent.get("action") :
+        String action = shortcut.action != null ?
+                shortcut.action :
                 Intent.ACTION_MAIN;
 
-        boolean useTargetPackage = xmlDataIntent.containsKey("targetPackage");
+        boolean useTargetPackage = shortcut.targetPackage != null;
         String targetPackage = useTargetPackage ?
-                xmlDataIntent.get("targetPackage") :
+                shortcut.targetPackage :
                 mPackageName;
 
         mIntent = new Intent(action)
@@ -137,18 +92,18 @@ public class ShortcutInfoCompatBackport extends ShortcutInfoCompat {
                 .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_TASK_ON_HOME)
                 .putExtra(EXTRA_SHORTCUT_ID, mId);
 
-        if (xmlDataIntent.containsKey("targetClass")) {
-            mIntent.setComponent(new ComponentName(targetPackage, xmlDataIntent.get("targetClass")));
+        if (shortcut.targetClass != null) {
+            mIntent.setComponent(new ComponentName(targetPackage, shortcut.targetClass));
         }
 
-        if (xmlDataIntent.containsKey("data")) {
-            mIntent.setData(Uri.parse(xmlDataIntent.get("data")));
+        if (shortcut.data != null) {
+            mIntent.setData(Uri.parse(shortcut.data));
         }
 
-        for (Map.Entry<String, String> entry : extras.entrySet()) {
+        for (Map.Entry<String, String> entry : shortcut.extras.entrySet()) {
             mIntent.putExtra(entry.getKey(), entry.getValue());
         }
-        
+
         mIntent.putExtra(USE_PACKAGE, useTargetPackage);
     }
 
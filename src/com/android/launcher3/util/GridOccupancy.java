@@ -14,12 +14,30 @@ public class GridOccupancy {
 
     public final boolean[][] cells;
 
+    private int mModCount;
+
     public GridOccupancy(int countX, int countY) {
         mCountX = countX;
         mCountY = countY;
         cells = new boolean[countX][countY];
     }
 
+    public int getCountX() {
+        return mCountX;
+    }
+
+    public int getCountY() {
+        return mCountY;
+    }
+
+    /**
+     * Returns a counter which changes whenever the occupancy is changed through this class.
+     * Writes made directly to {@link #cells} are not tracked.
+     */
+    public int getModCount() {
+        return mModCount;
+    }
+
     /**
      * Find the first vacant cell, if there is one.
      *
@@ -88,6 +106,7 @@ public class GridOccupancy {
                 dest.cells[i][j] = cells[i][j];
             }
         }
+        dest.mModCount++;
     }
 
     public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
@@ -108,6 +127,7 @@ public class GridOccupancy {
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
+        mModCount++;
         for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
             for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
                 cells[x][y] = value;
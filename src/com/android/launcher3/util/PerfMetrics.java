@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Always-on, low overhead timing metrics fed by {@link TraceHelper}.
+ *
+ * Each section gets a histogram of its total duration (begin to end) and one histogram per
+ * partition. The number of tracked metrics is bounded, metrics beyond the capacity are only
+ * counted as dropped. Once a metric is registered, recording into it does not allocate.
+ */
+public final class PerfMetrics {
+
+    private static final int MAX_METRICS = 64;
+    private static final int MAX_PARTITIONS_PER_SECTION = 12;
+    private static final int MAX_COUNTERS = 16;
+
+    private static final PerfMetrics sInstance = new PerfMetrics();
+
+    public static PerfMetrics getInstance() {
+        return sInstance;
+    }
+
+    private final Object mLock = new Object();
+
+    // Metric tables, entries are only appended under mLock and published through mMetricCount
+    private final String[] mSections = new String[MAX_METRICS];
+    private final String[] mPartitions = new String[MAX_METRICS];
+    private final Histogram[] mHistograms = new Histogram[MAX_METRICS];
+    private final int[] mPartitionCounts = new int[MAX_METRICS];
+    private volatile int mMetricCount;
+
+    // Running section state, indexed by the metric index of the section total
+    private final AtomicLongArray mSectionStarts = new AtomicLongArray(MAX_METRICS);
+    private final AtomicLongArray mSectionLastPartition = new AtomicLongArray(MAX_METRICS);
+
+    private final String[] mCounterNames = new String[MAX_COUNTERS];
+    private final AtomicLongArray mCounters = new AtomicLongArray(MAX_COUNTERS);
+    private volatile int mCounterCount;
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    PerfMetrics() { }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    public void beginSection(String section) {
+        int index = getOrCreateMetric(section, null);
+        if (index >= 0) {
+            long now = now();
+            mSectionStarts.set(index, now);
+            mSectionLastPartition.set(index, now);
+        }
+    }
+
+    public void partitionSection(String section, String partition) {
+        int index = findMetric(section, null);
+        if (index < 0 || mSectionStarts.get(index) == 0) {
+            return;
+        }
+        long now = now();
+        long last = mSectionLastPartition.getAndSet(index, now);
+        int partitionIndex = getOrCreateMetric(section, partition);
+        if (partitionIndex >= 0) {
+            mHistograms[partitionIndex].record(toMicros(now - last));
+        }
+    }
+
+    public void endSection(String section) {
+        int index = findMetric(section, null);
+        if (index < 0) {
+            return;
+        }
+        long start = mSectionStarts.getAndSet(index, 0);
+        if (start != 0) {
+            mHistograms[index].record(toMicros(now() - start));
+        }
+    }
+
+    /**
+     * Records a duration directly, for events which are not bracketed by a section.
+     */
+    public void record(String section, long durationNanos) {
+        int index = getOrCreateMetric(section, null);
+        if (index >= 0) {
+            mHistograms[index].record(toMicros(durationNanos));
+        }
+    }
+
+    public void increment(String counter) {
+        int count = mCounterCount;
+        for (int i = 0; i < count; i++) {
+            if (mCounterNames[i].equals(counter)) {
+                mCounters.incrementAndGet(i);
+                return;
+            }
+        }
+        synchronized (mLock) {
+            count = mCounterCount;
+            for (int i = 0; i < count; i++) {
+                if (mCounterNames[i].equals(counter)) {
+                    mCounters.incrementAndGet(i);
+                    return;
+                }
+            }
+            if (count >= MAX_COUNTERS) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            mCounterNames[count] = counter;
+            mCounters.incrementAndGet(count);
+            mCounterCount = count + 1;
+        }
+    }
+
+    /**
+     * Returns the histogram for the provided section total (partition is null) or partition.
+     */
+    public Histogram getHistogram(String section, String partition) {
+        int index = findMetric(section, partition);
+        return index < 0 ? null : mHistograms[index];
+    }
+
+    public long getCounter(String counter) {
+        int count = mCounterCount;
+        for (int i = 0; i < count; i++) {
+            if (mCounterNames[i].equals(counter)) {
+                return mCounters.get(i);
+            }
+        }
+        return 0;
+    }
+
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Clears all recorded values, registered metrics are kept.
+     */
+    public void reset() {
+        int count = mMetricCount;
+        for (int i = 0; i < count; i++) {
+            mHistograms[i].reset();
+            mSectionStarts.set(i, 0);
+        }
+        for (int i = 0; i < MAX_COUNTERS; i++) {
+            mCounters.set(i, 0);
+        }
+        mDropped.set(0);
+    }
+
+    /**
+     * Writes a compact text dump, one line per metric:
+     * {@code <section>[/<partition>] n=<count> mean=<ms> p50=<ms> p90=<ms> p99=<ms> max=<ms>}
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "PerfMetrics:");
+        int count = mMetricCount;
+        for (int i = 0; i < count; i++) {
+            Histogram h = mHistograms[i];
+            if (h.getCount() == 0) {
+                continue;
+            }
+            String name = mPartitions[i] == null
+                    ? mSections[i] : mSections[i] + "/" + mPartitions[i];
+            writer.println(String.format(Locale.US,
+                    "%s  %s n=%d mean=%s p50=%s p90=%s p99=%s max=%s",
+                    prefix, name, h.getCount(), formatMillis(h.getMean()),
+                    formatMillis(h.getPercentile(50)), formatMillis(h.getPercentile(90)),
+                    formatMillis(h.getPercentile(99)), formatMillis(h.getMax())));
+        }
+        int counters = mCounterCount;
+        for (int i = 0; i < counters; i++) {
+            writer.println(prefix + "  " + mCounterNames[i] + " count=" + mCounters.get(i));
+        }
+        long dropped = mDropped.get();
+        if (dropped > 0) {
+            writer.println(prefix + "  dropped=" + dropped);
+        }
+    }
+
+    private int findMetric(String section, String partition) {
+        int count = mMetricCount;
+        for (int i = 0; i < count; i++) {
+            if (matches(i, section, partition)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int getOrCreateMetric(String section, String partition) {
+        int index = findMetric(section, partition);
+        if (index >= 0) {
+            return index;
+        }
+        synchronized (mLock) {
+            int count = mMetricCount;
+            int sectionIndex = -1;
+            for (int i = 0; i < count; i++) {
+                if (matches(i, section, partition)) {
+                    return i;
+                }
+                if (partition != null && matches(i, section, null)) {
+                    sectionIndex = i;
+                }
+            }
+            if (count >= MAX_METRICS || (sectionIndex >= 0
+                    && mPartitionCounts[sectionIndex] >= MAX_PARTITIONS_PER_SECTION)) {
+                mDropped.incrementAndGet();
+                return -1;
+            }
+            if (sectionIndex >= 0) {
+                mPartitionCounts[sectionIndex]++;
+            }
+            mSections[count] = section;
+            mPartitions[count] = partition;
+            mHistograms[count] = new Histogram();
+            mMetricCount = count + 1;
+            return count;
+        }
+    }
+
+    private boolean matches(int index, String section, String partition) {
+        String p = mPartitions[index];
+        return mSections[index].equals(section)
+                && (p == null ? partition == null : p.equals(partition));
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format(Locale.US, "%.1fms", micros / 1000f);
+    }
+}
@@ -12,6 +12,9 @@ import android.util.Log;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An extension of {@link SQLiteOpenHelper} with utility methods for a single table cache DB.
  * Any exception during write operations are ignored, and any version change causes a DB reset.
@@ -19,6 +22,12 @@ import com.android.launcher3.config.FeatureFlags;
 public abstract class SQLiteCacheHelper {
     private static final String TAG = "SQLiteCacheHelper";
 
+    /**
+     * Maximum number of rows written in a single transaction by {@link #insertOrReplace(List)}.
+     * Keeps the write lock short enough for readers on other threads.
+     */
+    public static final int MAX_BATCH_SIZE = 64;
+
     private static final boolean NO_ICON_CACHE = FeatureFlags.IS_DOGFOOD_BUILD &&
             Utilities.isPropertyEnabled(LogConfig.MEMORY_ONLY_ICON_CACHE);
 
@@ -70,6 +79,56 @@ public abstract class SQLiteCacheHelper {
         }
     }
 
+    /**
+     * Inserts all the provided rows, grouping them into transactions of at most
+     * {@link #MAX_BATCH_SIZE} rows. A failure only discards the rows of the failing transaction.
+     * @see #insertOrReplace(ContentValues)
+     */
+    public void insertOrReplace(List<ContentValues> valuesList) {
+        int count = valuesList.size();
+        for (int start = 0; start < count && !mIgnoreWrites; start += MAX_BATCH_SIZE) {
+            insertOrReplaceLocked(valuesList, start, Math.min(start + MAX_BATCH_SIZE, count));
+        }
+    }
+
+    private void insertOrReplaceLocked(List<ContentValues> valuesList, int start, int end) {
+        SQLiteDatabase db;
+        try {
+            db = mOpenHelper.getWritableDatabase();
+            db.beginTransaction();
+        } catch (SQLiteFullException e) {
+            onDiskFull(e);
+            return;
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Ignoring sqlite exception", e);
+            return;
+        }
+        try {
+            for (int i = start; i < end; i++) {
+                db.insertWithOnConflict(
+                        mTableName, null, valuesList.get(i), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLiteFullException e) {
+            onDiskFull(e);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Ignoring sqlite exception", e);
+        } finally {
+            try {
+                db.endTransaction();
+            } catch (SQLiteException e) {
+                Log.d(TAG, "Ignoring sqlite exception", e);
+            }
+        }
+    }
+
+    /**
+     * Returns a new {@link Batch} which buffers rows and writes them in a single transaction.
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
     private void onDiskFull(SQLiteFullException e) {
         Log.e(TAG, "Disk full, all write operations will be ignored", e);
         mIgnoreWrites = true;
@@ -89,6 +148,37 @@ public abstract class SQLiteCacheHelper {
 
     protected abstract void onCreateTable(SQLiteDatabase db);
 
+    /**
+     * Buffer of pending rows which is flushed to the DB once it reaches {@link #MAX_BATCH_SIZE}
+     * or when {@link #commit()} is called. Not thread safe.
+     */
+    public class Batch {
+
+        private final ArrayList<ContentValues> mPending = new ArrayList<>(MAX_BATCH_SIZE);
+
+        private Batch() { }
+
+        public void insertOrReplace(ContentValues values) {
+            mPending.add(values);
+            if (mPending.size() >= MAX_BATCH_SIZE) {
+                commit();
+            }
+        }
+
+        /**
+         * Writes all the pending rows to the DB.
+         */
+        public void commit() {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            if (!mIgnoreWrites) {
+                SQLiteCacheHelper.this.insertOrReplace(mPending);
+            }
+            mPending.clear();
+        }
+    }
+
     /**
      * A private inner class to prevent direct DB access.
      */
@@ -96,6 +186,9 @@ public abstract class SQLiteCacheHelper {
 
         public MySQLiteOpenHelper(Context context, String name, int version) {
             super(context, name, version);
+            // Cache writes happen on the worker thread while the UI reads, use WAL so that they
+            // don't block each other and each commit avoids rewriting the journal.
+            setWriteAheadLoggingEnabled(true);
         }
 
         @Override
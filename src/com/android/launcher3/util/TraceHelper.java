@@ -28,6 +28,7 @@ import com.android.launcher3.config.FeatureFlags;
 
 /**
  * A wrapper around {@link Trace} to allow easier proguarding for production builds.
+ * Section timings are always recorded in {@link PerfMetrics}, logging is limited to dogfood builds.
  *
  * To enable any tracing log, execute the following command:
  * $ adb shell setprop log.tag.TAGNAME VERBOSE
@@ -40,6 +41,7 @@ public class TraceHelper {
     private static final ArrayMap<String, MutableLong> sUpTimes = ENABLED ? new ArrayMap<>() : null;
 
     public static void beginSection(String sectionName) {
+        PerfMetrics.getInstance().beginSection(sectionName);
         if (ENABLED) {
             MutableLong time = sUpTimes.get(sectionName);
             if (time == null) {
@@ -56,6 +58,7 @@ public class TraceHelper {
     }
 
     public static void partitionSection(String sectionName, String partition) {
+        PerfMetrics.getInstance().partitionSection(sectionName, partition);
         if (ENABLED) {
             MutableLong time = sUpTimes.get(sectionName);
             if (time != null && time.value >= 0) {
@@ -73,12 +76,11 @@ public class TraceHelper {
     }
 
     public static void endSection(String sectionName) {
-        if (ENABLED) {
-            endSection(sectionName, "End");
-        }
+        endSection(sectionName, "End");
     }
 
     public static void endSection(String sectionName, String msg) {
+        PerfMetrics.getInstance().endSection(sectionName);
         if (ENABLED) {
             MutableLong time = sUpTimes.get(sectionName);
             if (time != null && time.value >= 0) {
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.graphics.Rect;
+
+/**
+ * Finds the area of a {@link GridOccupancy} nearest to a pixel location, for drag and drop.
+ *
+ * A summed-area table of the occupancy is kept, so that any span can be checked for vacancy
+ * in constant time. The table is only rebuilt when the occupancy changes, and all the scratch
+ * state is preallocated, so that searching doesn't allocate during a drag.
+ */
+public class VacantAreaFinder {
+
+    private final GridOccupancy mOccupancy;
+    private final int mCountX;
+    private final int mCountY;
+
+    /**
+     * Number of occupied cells in the rectangle (0, 0) - (x, y) (exclusive), stored at
+     * x * (mCountY + 1) + y.
+     */
+    private final int[] mSums;
+    private int mSummaryModCount;
+    private boolean mSummaryValid;
+
+    private final Rect[] mRegions;
+    private final Rect mBestRect = new Rect();
+    private final int[] mCellXY = new int[2];
+
+    private int mLeft;
+    private int mTop;
+    private int mCellWidth;
+    private int mCellHeight;
+
+    public VacantAreaFinder(GridOccupancy occupancy) {
+        mOccupancy = occupancy;
+        mCountX = occupancy.getCountX();
+        mCountY = occupancy.getCountY();
+        mSums = new int[(mCountX + 1) * (mCountY + 1)];
+        mRegions = new Rect[mCountX * mCountY];
+        for (int i = 0; i < mRegions.length; i++) {
+            mRegions[i] = new Rect();
+        }
+    }
+
+    /**
+     * Sets the pixel geometry of the cells: the position of the first cell and the cell size.
+     */
+    public void setCellGeometry(int left, int top, int cellWidth, int cellHeight) {
+        mLeft = left;
+        mTop = top;
+        mCellWidth = cellWidth;
+        mCellHeight = cellHeight;
+    }
+
+    /**
+     * Forces the summary to be rebuilt on the next search, for changes made directly to
+     * {@link GridOccupancy#cells}.
+     */
+    public void invalidate() {
+        mSummaryValid = false;
+    }
+
+    private void ensureSummary() {
+        if (mSummaryValid && mSummaryModCount == mOccupancy.getModCount()) {
+            return;
+        }
+        final boolean[][] cells = mOccupancy.cells;
+        final int stride = mCountY + 1;
+        for (int x = 0; x < mCountX; x++) {
+            int columnSum = 0;
+            for (int y = 0; y < mCountY; y++) {
+                if (cells[x][y]) {
+                    columnSum++;
+                }
+                mSums[(x + 1) * stride + y + 1] = mSums[x * stride + y + 1] + columnSum;
+            }
+        }
+        mSummaryModCount = mOccupancy.getModCount();
+        mSummaryValid = true;
+    }
+
+    /**
+     * Returns whether the given span is within the grid and has no occupied cell.
+     */
+    public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
+        if (x < 0 || y < 0 || x + spanX > mCountX || y + spanY > mCountY) {
+            return false;
+        }
+        ensureSummary();
+        return countOccupied(x, y, spanX, spanY) == 0;
+    }
+
+    private int countOccupied(int x, int y, int spanX, int spanY) {
+        final int stride = mCountY + 1;
+        final int x2 = x + spanX;
+        final int y2 = y + spanY;
+        return mSums[x2 * stride + y2] - mSums[x * stride + y2]
+                - mSums[x2 * stride + y] + mSums[x * stride + y];
+    }
+
+    /**
+     * Find a vacant area that will fit the given bounds nearest the requested
+     * cell location. Uses Euclidean distance to score multiple vacant areas.
+     *
+     * @param pixelX The X location at which you want to search for a vacant area.
+     * @param pixelY The Y location at which you want to search for a vacant area.
+     * @param minSpanX The minimum horizontal span required
+     * @param minSpanY The minimum vertical span required
+     * @param spanX Horizontal span of the object.
+     * @param spanY Vertical span of the object.
+     * @param ignoreOccupied If true, the result can be an occupied cell
+     * @param result Array in which to place the result, or null (in which case a new array will
+     *        be allocated)
+     * @return The X, Y cell of a vacant area that can contain this object,
+     *         nearest the requested location.
+     */
+    public int[] findNearestArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+            int spanY, boolean ignoreOccupied, int[] result, int[] resultSpan) {
+        ensureSummary();
+
+        // For items with a spanX / spanY > 1, the passed in point (pixelX, pixelY) corresponds
+        // to the center of the item, but we are searching based on the top-left cell, so
+        // we translate the point over to correspond to the top-left.
+        pixelX -= mCellWidth * (spanX - 1) / 2f;
+        pixelY -= mCellHeight * (spanY - 1) / 2f;
+
+        // Keep track of best-scoring drop area
+        final int[] bestXY = result != null ? result : new int[2];
+        double bestDistance = Double.MAX_VALUE;
+        final Rect bestRect = mBestRect;
+        bestRect.set(-1, -1, -1, -1);
+        int regionCount = 0;
+
+        final int countX = mCountX;
+        final int countY = mCountY;
+
+        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
+                spanX < minSpanX || spanY < minSpanY) {
+            return bestXY;
+        }
+
+        for (int y = 0; y < countY - (minSpanY - 1); y++) {
+            for (int x = 0; x < countX - (minSpanX - 1); x++) {
+                int ySize = -1;
+                int xSize = -1;
+                if (ignoreOccupied) {
+                    // First, let's see if this thing fits anywhere
+                    if (countOccupied(x, y, minSpanX, minSpanY) != 0) {
+                        continue;
+                    }
+                    xSize = minSpanX;
+                    ySize = minSpanY;
+
+                    // We know that the item will fit at _some_ acceptable size, now let's see
+                    // how big we can make it. We'll alternate between incrementing x and y spans
+                    // until we hit a limit.
+                    boolean incX = true;
+                    boolean hitMaxX = xSize >= spanX;
+                    boolean hitMaxY = ySize >= spanY;
+                    while (!(hitMaxX && hitMaxY)) {
+                        if (incX && !hitMaxX) {
+                            if (x + xSize > countX - 1
+                                    || countOccupied(x + xSize, y, 1, ySize) != 0) {
+                                // We can't move out horizontally
+                                hitMaxX = true;
+                            } else {
+                                xSize++;
+                            }
+                        } else if (!hitMaxY) {
+                            if (y + ySize > countY - 1
+                                    || countOccupied(x, y + ySize, xSize, 1) != 0) {
+                                // We can't move out vertically
+                                hitMaxY = true;
+                            } else {
+                                ySize++;
+                            }
+                        }
+                        hitMaxX |= xSize >= spanX;
+                        hitMaxY |= ySize >= spanY;
+                        incX = !incX;
+                    }
+                }
+                final int[] cellXY = mCellXY;
+                cellXY[0] = mLeft + x * mCellWidth + mCellWidth / 2;
+                cellXY[1] = mTop + y * mCellHeight + mCellHeight / 2;
+
+                // We verify that the current rect is not a sub-rect of any of our previous
+                // candidates. In this case, the current rect is disqualified in favour of the
+                // containing rect.
+                Rect currentRect = mRegions[regionCount];
+                currentRect.set(x, y, x + xSize, y + ySize);
+                boolean contained = false;
+                for (int i = 0; i < regionCount; i++) {
+                    if (mRegions[i].contains(currentRect)) {
+                        contained = true;
+                        break;
+                    }
+                }
+                regionCount++;
+                double distance = Math.hypot(cellXY[0] - pixelX,  cellXY[1] - pixelY);
+
+                if ((distance <= bestDistance && !contained) ||
+                        currentRect.contains(bestRect)) {
+                    bestDistance = distance;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                    if (resultSpan != null) {
+                        resultSpan[0] = xSize;
+                        resultSpan[1] = ySize;
+                    }
+                    bestRect.set(currentRect);
+                }
+            }
+        }
+
+        // Return -1, -1 if no suitable location found
+        if (bestDistance == Double.MAX_VALUE) {
+            bestXY[0] = -1;
+            bestXY[1] = -1;
+        }
+        return bestXY;
+    }
+}
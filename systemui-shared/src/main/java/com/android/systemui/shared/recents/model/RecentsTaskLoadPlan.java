@@ -25,7 +25,9 @@ import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 
 import com.android.systemui.shared.recents.model.Task.TaskKey;
@@ -34,6 +36,7 @@ import com.android.systemui.shared.system.ActivityManagerWrapper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 
 /**
@@ -62,17 +65,34 @@ public class RecentsTaskLoadPlan {
         public int numVisibleTaskThumbnails = 0;
     }
 
+    /** The source of the raw recent tasks. */
+    public interface RecentTasksSource {
+        List<ActivityManager.RecentTaskInfo> getRecentTasks(int numTasks, int userId);
+    }
+
+    private static final RecentTasksSource SYSTEM_SOURCE =
+            (numTasks, userId) -> ActivityManagerWrapper.getInstance().getRecentTasks(numTasks,
+                    userId);
+
     private final Context mContext;
     private final KeyguardManager mKeyguardManager;
+    private final RecentTasksSource mSource;
 
     private List<ActivityManager.RecentTaskInfo> mRawTasks;
     private TaskStack mStack;
+    private boolean mLoadedTitles;
+    private int mLoadedTaskCount;
 
     private final SparseBooleanArray mTmpLockedUsers = new SparseBooleanArray();
 
     public RecentsTaskLoadPlan(Context context) {
+        this(context, SYSTEM_SOURCE);
+    }
+
+    public RecentsTaskLoadPlan(Context context, RecentTasksSource source) {
         mContext = context;
         mKeyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
+        mSource = source;
     }
 
     /**
@@ -88,10 +108,28 @@ public class RecentsTaskLoadPlan {
      */
     public void preloadPlan(PreloadOptions opts, RecentsTaskLoader loader, int runningTaskId,
             int currentUserId) {
+        preloadPlan(opts, loader, runningTaskId, currentUserId, null);
+    }
+
+    /**
+     * Preloads the list of recent tasks like {@link #preloadPlan(PreloadOptions,
+     * RecentsTaskLoader, int, int)}, reusing the tasks of {@param previousPlan} which haven't
+     * changed since it was loaded. Tasks are matched by id, last active time and task
+     * description, so only tasks which were added, moved or described differently are loaded
+     * again.
+     *
+     * Note: The previous plan is only read, so it is safe to keep using it until this call
+     * returns.
+     */
+    public void preloadPlan(PreloadOptions opts, RecentsTaskLoader loader, int runningTaskId,
+            int currentUserId, RecentsTaskLoadPlan previousPlan) {
         Resources res = mContext.getResources();
         ArrayList<Task> allTasks = new ArrayList<>();
+        SparseArray<Task> previousTasks = getReusableTasks(previousPlan, opts);
+        mLoadedTitles = opts.loadTitles;
+        mLoadedTaskCount = 0;
         if (mRawTasks == null) {
-            mRawTasks = ActivityManagerWrapper.getInstance().getRecentTasks(
+            mRawTasks = mSource.getRecentTasks(
                     ActivityManager.getMaxRecentTasksStatic(), currentUserId);
 
             // Since the raw tasks are given in most-recent to least-recent order, we need to reverse it
@@ -116,11 +154,32 @@ public class RecentsTaskLoadPlan {
             boolean isStackTask = !isFreeformTask;
             boolean isLaunchTarget = taskKey.id == runningTaskId;
 
+            // The activity info is cached per component, and checked for reused tasks as well to
+            // drop the tasks of removed packages
             ActivityInfo info = loader.getAndUpdateActivityInfo(taskKey);
             if (info == null) {
                 continue;
             }
 
+            // TODO: Refactor to not do this every preload
+            if (mTmpLockedUsers.indexOfKey(t.userId) < 0) {
+                mTmpLockedUsers.put(t.userId, mKeyguardManager.isDeviceLocked(t.userId));
+            }
+            boolean isLocked = mTmpLockedUsers.get(t.userId);
+
+            // Reuse the task if nothing it was loaded with has changed
+            Task previousTask = previousTasks != null ? previousTasks.get(taskKey.id) : null;
+            if (previousTask != null
+                    && previousTask.key.lastActiveTime == taskKey.lastActiveTime
+                    && previousTask.key.windowingMode == taskKey.windowingMode
+                    && previousTask.key.userId == taskKey.userId
+                    && previousTask.isLaunchTarget == isLaunchTarget
+                    && previousTask.isLocked == isLocked
+                    && isSameDescription(previousTask.taskDescription, t.taskDescription)) {
+                allTasks.add(previousTask);
+                continue;
+            }
+
             // Load the title, icon, and color
             String title = opts.loadTitles
                     ? loader.getAndUpdateActivityTitle(taskKey, t.taskDescription)
@@ -138,12 +197,6 @@ public class RecentsTaskLoadPlan {
             boolean isSystemApp = (info != null) &&
                     ((info.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0);
 
-            // TODO: Refactor to not do this every preload
-            if (mTmpLockedUsers.indexOfKey(t.userId) < 0) {
-                mTmpLockedUsers.put(t.userId, mKeyguardManager.isDeviceLocked(t.userId));
-            }
-            boolean isLocked = mTmpLockedUsers.get(t.userId);
-
             // Add the task to the stack
             Task task = new Task(taskKey, icon,
                     thumbnail, title, titleDescription, activityColor, backgroundColor,
@@ -151,6 +204,7 @@ public class RecentsTaskLoadPlan {
                     t.taskDescription, t.resizeMode, t.topActivity, isLocked);
 
             allTasks.add(task);
+            mLoadedTaskCount++;
         }
 
         // Initialize the stacks
@@ -158,6 +212,51 @@ public class RecentsTaskLoadPlan {
         mStack.setTasks(allTasks, false /* notifyStackChanges */);
     }
 
+    /**
+     * Returns whether a task loaded with {@param previous} can be reused for {@param current}.
+     * Running tasks can change their label, colors and icon without becoming active again.
+     */
+    private static boolean isSameDescription(ActivityManager.TaskDescription previous,
+            ActivityManager.TaskDescription current) {
+        if (previous == current) {
+            return true;
+        }
+        if (previous == null || current == null) {
+            return false;
+        }
+        return Objects.equals(previous.getLabel(), current.getLabel())
+                && previous.getPrimaryColor() == current.getPrimaryColor()
+                && previous.getBackgroundColor() == current.getBackgroundColor()
+                && previous.getIconResource() == current.getIconResource()
+                && Objects.equals(previous.getIconFilename(), current.getIconFilename())
+                && isSameIcon(previous.getInMemoryIcon(), current.getInMemoryIcon());
+    }
+
+    private static boolean isSameIcon(Bitmap previous, Bitmap current) {
+        if (previous == current) {
+            return true;
+        }
+        return previous != null && current != null && previous.sameAs(current);
+    }
+
+    /**
+     * Returns the tasks of {@param plan} by id, or null if they can't be reused with {@param opts}.
+     */
+    private static SparseArray<Task> getReusableTasks(RecentsTaskLoadPlan plan,
+            PreloadOptions opts) {
+        if (plan == null || plan.mStack == null || plan.mLoadedTitles != opts.loadTitles) {
+            return null;
+        }
+        ArrayList<Task> tasks = plan.mStack.getTasks();
+        int taskCount = tasks.size();
+        SparseArray<Task> tasksById = new SparseArray<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            Task task = tasks.get(i);
+            tasksById.put(task.key.id, task);
+        }
+        return tasksById;
+    }
+
     /**
      * Called to apply the actual loading based on the specified conditions.
      *
@@ -203,6 +302,14 @@ public class RecentsTaskLoadPlan {
         return mStack;
     }
 
+    /**
+     * Returns the number of tasks which were loaded by the last preload, rather than reused from
+     * the previous plan.
+     */
+    public int getLoadedTaskCount() {
+        return mLoadedTaskCount;
+    }
+
     /** Returns whether there are any tasks in any stacks. */
     public boolean hasTasks() {
         if (mStack != null) {
@@ -61,6 +61,26 @@ public class RemoteAnimationTargetCompat {
         activityType = app.windowConfiguration.getActivityType();
     }
 
+    /**
+     * Creates a target which isn't backed by a system animation target, for example to test the
+     * animations without a remote transition.
+     */
+    public RemoteAnimationTargetCompat(int taskId, int mode, SurfaceControlCompat leash,
+            Point position, Rect sourceContainerBounds, Rect contentInsets, int activityType,
+            boolean isNotInRecents) {
+        this.taskId = taskId;
+        this.mode = mode;
+        this.leash = leash;
+        this.isTranslucent = false;
+        this.clipRect = new Rect(sourceContainerBounds);
+        this.position = position;
+        this.sourceContainerBounds = sourceContainerBounds;
+        this.prefixOrderIndex = 0;
+        this.isNotInRecents = isNotInRecents;
+        this.contentInsets = contentInsets;
+        this.activityType = activityType;
+    }
+
     public static RemoteAnimationTargetCompat[] wrap(RemoteAnimationTarget[] apps) {
         final RemoteAnimationTargetCompat[] appsCompat =
                 new RemoteAnimationTargetCompat[apps.length];
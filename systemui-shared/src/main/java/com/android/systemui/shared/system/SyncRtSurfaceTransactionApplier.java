@@ -25,6 +25,8 @@ import android.view.View;
 import android.view.ViewRootImpl;
 import android.view.ThreadedRenderer.FrameDrawingCallback;
 
+import java.util.ArrayList;
+
 /**
  * Helper class to apply surface transactions in sync with RenderThread.
  */
@@ -34,6 +36,11 @@ public class SyncRtSurfaceTransactionApplier {
     private final ViewRootImpl mTargetViewRootImpl;
     private final float[] mTmpFloat9 = new float[9];
 
+    // Frames are reused across updates, so that scheduling an update doesn't allocate
+    private final ArrayList<PendingFrame> mFramePool = new ArrayList<>();
+    private PendingFrame mPendingFrame;
+    private int mAllocatedFrameCount;
+
     /**
      * @param targetView The view in the surface that acts as synchronization anchor.
      */
@@ -45,34 +52,44 @@ public class SyncRtSurfaceTransactionApplier {
     /**
      * Schedules applying surface parameters on the next frame.
      *
-     * @param params The surface parameters to apply. DO NOT MODIFY the list after passing into
-     *               this method to avoid synchronization issues.
+     * @param params The surface parameters to apply. They are copied, so the caller may reuse
+     *               them for the next frame.
      */
     public void scheduleApply(SurfaceParams... params) {
+        scheduleApply(params, params.length);
+    }
+
+    /**
+     * Schedules applying the first {@param count} surface parameters on the next frame.
+     */
+    public void scheduleApply(SurfaceParams[] params, int count) {
         if (mTargetViewRootImpl == null) {
             return;
         }
-        mTargetViewRootImpl.registerRtFrameCallback(new FrameDrawingCallback() {
-            public void onFrameDraw(long frame) {
-                if (mTargetSurface == null || !mTargetSurface.isValid()) {
-                    return;
-                }
-                Transaction t = new Transaction();
-                for (int i = params.length - 1; i >= 0; i--) {
-                    SurfaceParams surfaceParams = params[i];
-                    SurfaceControl surface = surfaceParams.surface;
-                    t.deferTransactionUntilSurface(surface, mTargetSurface, frame);
-                    applyParams(t, surfaceParams, mTmpFloat9);
-                }
-                t.setEarlyWakeup();
-                t.apply();
+        PendingFrame frame;
+        synchronized (mFramePool) {
+            // Updates which weren't drawn yet are replaced, as only the latest one is applied
+            frame = mPendingFrame;
+            if (frame == null) {
+                int poolSize = mFramePool.size();
+                frame = poolSize > 0 ? mFramePool.remove(poolSize - 1) : new PendingFrame();
+                mPendingFrame = frame;
             }
-        });
+            frame.set(params, count);
+        }
+        mTargetViewRootImpl.registerRtFrameCallback(frame);
 
         // Make sure a frame gets scheduled.
         mTargetViewRootImpl.getView().invalidate();
     }
 
+    /**
+     * Returns the number of frames allocated for the pending updates so far.
+     */
+    public int getAllocatedFrameCount() {
+        return mAllocatedFrameCount;
+    }
+
     public static void applyParams(TransactionCompat t, SurfaceParams params) {
         applyParams(t.mTransaction, params, t.mTmpValues);
     }
@@ -85,6 +102,59 @@ public class SyncRtSurfaceTransactionApplier {
         t.show(params.surface);
     }
 
+    /**
+     * The surface parameters of a scheduled update, applied from the RenderThread.
+     */
+    private class PendingFrame implements FrameDrawingCallback {
+
+        private final Transaction mTransaction = new Transaction();
+        private SurfaceParams[] mParams = new SurfaceParams[0];
+        private int mCount;
+
+        PendingFrame() {
+            mAllocatedFrameCount++;
+        }
+
+        void set(SurfaceParams[] params, int count) {
+            if (mParams.length < count) {
+                SurfaceParams[] newParams = new SurfaceParams[count];
+                System.arraycopy(mParams, 0, newParams, 0, mParams.length);
+                for (int i = mParams.length; i < count; i++) {
+                    newParams[i] = new SurfaceParams();
+                }
+                mParams = newParams;
+            }
+            for (int i = 0; i < count; i++) {
+                mParams[i].set(params[i]);
+            }
+            mCount = count;
+        }
+
+        @Override
+        public void onFrameDraw(long frame) {
+            synchronized (mFramePool) {
+                if (mPendingFrame != this) {
+                    // Already applied through an earlier registration
+                    return;
+                }
+                mPendingFrame = null;
+            }
+            if (mTargetSurface != null && mTargetSurface.isValid()) {
+                for (int i = mCount - 1; i >= 0; i--) {
+                    SurfaceParams surfaceParams = mParams[i];
+                    SurfaceControl surface = surfaceParams.surface;
+                    mTransaction.deferTransactionUntilSurface(surface, mTargetSurface, frame);
+                    applyParams(mTransaction, surfaceParams, mTmpFloat9);
+                }
+                mTransaction.setEarlyWakeup();
+                mTransaction.apply();
+            }
+            synchronized (mFramePool) {
+                mFramePool.add(this);
+            }
+        }
+    }
+
     public static class SurfaceParams {
 
         /**
@@ -98,17 +168,41 @@ public class SyncRtSurfaceTransactionApplier {
          */
         public SurfaceParams(SurfaceControlCompat surface, float alpha, Matrix matrix,
                 Rect windowCrop, int layer) {
+            set(surface, alpha, matrix, windowCrop, layer);
+        }
+
+        /**
+         * Constructs empty surface parameters, to be updated through {@link #set} for every
+         * frame.
+         */
+        public SurfaceParams() {
+        }
+
+        /**
+         * Updates the parameters, copying {@param matrix} and {@param windowCrop}.
+         */
+        public SurfaceParams set(SurfaceControlCompat surface, float alpha, Matrix matrix,
+                Rect windowCrop, int layer) {
             this.surface = surface.mSurfaceControl;
             this.alpha = alpha;
-            this.matrix = new Matrix(matrix);
-            this.windowCrop = new Rect(windowCrop);
+            this.matrix.set(matrix);
+            this.windowCrop.set(windowCrop);
             this.layer = layer;
+            return this;
+        }
+
+        void set(SurfaceParams other) {
+            surface = other.surface;
+            alpha = other.alpha;
+            matrix.set(other.matrix);
+            windowCrop.set(other.windowCrop);
+            layer = other.layer;
         }
 
-        final SurfaceControl surface;
-        final float alpha;
-        final Matrix matrix;
-        final Rect windowCrop;
-        final int layer;
+        SurfaceControl surface;
+        float alpha;
+        final Matrix matrix = new Matrix();
+        final Rect windowCrop = new Rect();
+        int layer;
     }
 }
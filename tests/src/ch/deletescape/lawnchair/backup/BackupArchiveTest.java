@@ -0,0 +1,259 @@
+package ch.deletescape.lawnchair.backup;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.LauncherFiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BackupArchive} and the metadata lookup and restore of {@link LawnchairBackup},
+ * using generated archives.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class BackupArchiveTest {
+
+    private static final String DB_NAME = "launcher.db";
+    private static final String PREFS_NAME = "com.android.launcher3.prefs_preferences.xml";
+
+    private Context mContext;
+    private File mArchive;
+    private File mTarget;
+    private File mRestoreDir;
+
+    private byte[] mDb;
+    private byte[] mPrefs;
+    private LawnchairBackup.Meta mMeta;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mArchive = new File(mContext.getCacheDir(), "BackupArchiveTest.shed");
+        mTarget = new File(mContext.getCacheDir(), "BackupArchiveTest.out");
+        mRestoreDir = new File(mContext.getCacheDir(), "BackupArchiveTest.restore");
+
+        Random random = new Random(42);
+        mDb = new byte[3 * 1024 * 1024 + 17];
+        random.nextBytes(mDb);
+        mPrefs = new byte[12 * 1024];
+        random.nextBytes(mPrefs);
+        mMeta = new LawnchairBackup.Meta("Test backup", LawnchairBackup.INCLUDE_HOMESCREEN
+                | LawnchairBackup.INCLUDE_SETTINGS,
+                LawnchairBackup.Companion.getTimestampFormat().format(new Date()));
+    }
+
+    @After
+    public void tearDown() {
+        mArchive.delete();
+        mTarget.delete();
+        deleteRecursively(mRestoreDir);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        writeArchive(true);
+
+        try (BackupArchive archive = BackupArchive.Companion.open(mArchive)) {
+            assertEquals(Arrays.asList(LawnchairBackup.Meta.FILE_NAME, DB_NAME, PREFS_NAME),
+                    archive.getEntryNames());
+            assertEquals(mMeta.toString(), archive.readText(LawnchairBackup.Meta.FILE_NAME));
+
+            assertTrue(archive.extract(DB_NAME, mTarget));
+            assertArrayEquals(mDb, readTarget());
+            assertTrue(archive.extract(PREFS_NAME, mTarget));
+            assertArrayEquals(mPrefs, readTarget());
+
+            assertFalse(archive.hasEntry(LawnchairBackup.WALLPAPER_FILE_NAME));
+            assertFalse(archive.extract(LawnchairBackup.WALLPAPER_FILE_NAME, mTarget));
+        }
+    }
+
+    @Test
+    public void testRestoreRoundTrip() throws IOException {
+        writeArchive(true);
+        File dbFile = new File(mRestoreDir, DB_NAME);
+        File settingsFile = new File(mRestoreDir,
+                "shared_prefs/" + LauncherFiles.SHARED_PREFERENCES_KEY + ".xml");
+        assertTrue(settingsFile.getParentFile().mkdirs());
+
+        RestoreContext context = new RestoreContext(mContext, mRestoreDir);
+        LawnchairBackup backup = new LawnchairBackup(context, Uri.fromFile(mArchive), mArchive);
+        assertTrue(backup.restore(LawnchairBackup.INCLUDE_HOMESCREEN
+                | LawnchairBackup.INCLUDE_SETTINGS));
+        assertArrayEquals(mDb, readFile(dbFile));
+        assertArrayEquals(mPrefs, readFile(settingsFile));
+
+        // Only the requested contents are restored
+        dbFile.delete();
+        settingsFile.delete();
+        assertTrue(backup.restore(LawnchairBackup.INCLUDE_SETTINGS));
+        assertFalse(dbFile.exists());
+        assertArrayEquals(mPrefs, readFile(settingsFile));
+
+        // Failing to resolve the target files fails the restore instead of throwing
+        context.mFailing = true;
+        assertFalse(backup.restore(LawnchairBackup.INCLUDE_HOMESCREEN));
+    }
+
+    @Test
+    public void testMetaLookupOnlyReadsOwnEntry() throws IOException {
+        // The metadata is written last, behind the large entries
+        writeArchive(false);
+        corruptEntryBody(0);
+
+        // A sequential pass has to go through the corrupted entry
+        try (ZipInputStream zipIs = new ZipInputStream(new FileInputStream(mArchive))) {
+            zipIs.getNextEntry();
+            byte[] buffer = new byte[8192];
+            while (zipIs.read(buffer) != -1) { }
+            fail("Corrupted entry was read without error");
+        } catch (IOException expected) { }
+
+        try (BackupArchive archive = BackupArchive.Companion.open(mArchive)) {
+            assertEquals(mMeta.toString(), archive.readText(LawnchairBackup.Meta.FILE_NAME));
+        }
+
+        LawnchairBackup backup = new LawnchairBackup(mContext, Uri.fromFile(mArchive), mArchive);
+        assertNotNull(backup.getMeta());
+        assertEquals(mMeta.toString(), backup.getMeta().toString());
+    }
+
+    @Test
+    public void testMetaCacheValidation() {
+        BackupMetaCache cache = new BackupMetaCache(mContext);
+        Uri uri = Uri.fromFile(mArchive);
+        cache.put(uri, 100, 200, mMeta);
+
+        assertEquals(mMeta.toString(), cache.get(uri, 100, 200).toString());
+        assertNull(cache.get(uri, 101, 200));
+        assertNull(cache.get(uri, 100, 201));
+
+        cache.remove(uri);
+        assertNull(cache.get(uri, 100, 200));
+    }
+
+    private void writeArchive(boolean metaFirst) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mArchive))) {
+            if (metaFirst) {
+                putMeta(out);
+            }
+            BackupArchive.Companion.putEntry(out, DB_NAME, new ByteArrayInputStream(mDb));
+            BackupArchive.Companion.putEntry(out, PREFS_NAME, new ByteArrayInputStream(mPrefs));
+            if (!metaFirst) {
+                putMeta(out);
+            }
+        }
+    }
+
+    private void putMeta(ZipOutputStream out) throws IOException {
+        BackupArchive.Companion.putEntry(out, LawnchairBackup.Meta.FILE_NAME,
+                new ByteArrayInputStream(mMeta.toString().getBytes("UTF-8")));
+    }
+
+    private byte[] readTarget() throws IOException {
+        return readFile(mTarget);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] result = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (offset < result.length
+                    && (read = in.read(result, offset, result.length - offset)) != -1) {
+                offset += read;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Overwrites the middle of the body of the entry whose local header starts at
+     * {@param headerOffset}.
+     */
+    private void corruptEntryBody(long headerOffset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mArchive, "rw")) {
+            file.seek(headerOffset + 26);
+            int nameLength = Short.reverseBytes(file.readShort()) & 0xffff;
+            int extraLength = Short.reverseBytes(file.readShort()) & 0xffff;
+            long bodyStart = headerOffset + 30 + nameLength + extraLength;
+
+            byte[] garbage = new byte[4096];
+            Arrays.fill(garbage, (byte) 0xff);
+            file.seek(bodyStart + 1024);
+            file.write(garbage);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Redirects the launcher database and the cache dir, and so the settings, to {@param dir}.
+     */
+    private static class RestoreContext extends ContextWrapper {
+
+        private final File mDir;
+        boolean mFailing;
+
+        RestoreContext(Context base, File dir) {
+            super(base);
+            mDir = dir;
+        }
+
+        @Override
+        public File getDatabasePath(String name) {
+            if (mFailing) {
+                throw new IllegalStateException("Unable to resolve " + name);
+            }
+            return new File(mDir, name);
+        }
+
+        @Override
+        public boolean deleteDatabase(String name) {
+            return new File(name).delete();
+        }
+
+        @Override
+        public File getCacheDir() {
+            return new File(mDir, "cache");
+        }
+    }
+}
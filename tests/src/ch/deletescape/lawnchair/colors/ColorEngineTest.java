@@ -0,0 +1,186 @@
+package ch.deletescape.lawnchair.colors;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.deletescape.lawnchair.colors.ColorEngine.ColorResolver;
+import ch.deletescape.lawnchair.colors.ColorEngine.ResolveInfo;
+import ch.deletescape.lawnchair.LawnchairPreferences;
+import com.android.launcher3.Utilities;
+
+import static com.android.launcher3.util.MainThreadUtils.runOnMainSync;
+import static com.android.launcher3.util.MainThreadUtils.waitForFrame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the batched change dispatch of {@link ColorEngine}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ColorEngineTest {
+
+    private static final String[] KEYS = {
+            "pref_testColorResolver1", "pref_testColorResolver2", "pref_testColorResolver3"};
+
+    private static final AtomicInteger sConstructions = new AtomicInteger();
+
+    private Context mContext;
+    private ColorResolverRegistry mRegistry;
+    private LawnchairPreferences mPrefs;
+    private ColorEngine mEngine;
+    private CountingListener mListener;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        // The test resolver is only known to the engine of the test
+        mRegistry = ColorResolverRegistry.DEFAULT.with(CountingResolver.class.getName(),
+                config -> {
+                    sConstructions.incrementAndGet();
+                    return new CountingResolver(config);
+                });
+        runOnMainSync(() -> {
+            mPrefs = Utilities.getLawnchairPrefs(mContext);
+            mEngine = new ColorEngine(mContext.getApplicationContext(), mRegistry);
+            for (String key : KEYS) {
+                setPref(key, 0);
+            }
+            mListener = new CountingListener();
+            mEngine.addColorChangeListeners(mListener, KEYS);
+        });
+        waitForFrame();
+        mListener.calls.clear();
+        sConstructions.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        runOnMainSync(() -> {
+            mEngine.removeColorChangeListeners(mListener, KEYS);
+            for (String key : KEYS) {
+                mPrefs.getSharedPrefs().edit().remove(key).commit();
+            }
+        });
+    }
+
+    @Test
+    public void testThemeSwitchNotifiesOncePerFrame() {
+        runOnMainSync(() -> {
+            // A theme switch notifies every theme aware resolver, often several times
+            for (int i = 0; i < 5; i++) {
+                for (String key : KEYS) {
+                    mEngine.getResolver(key).onThemeChanged();
+                }
+            }
+            // Nothing is dispatched synchronously
+            assertEquals(0, mListener.total());
+        });
+        waitForFrame();
+
+        for (String key : KEYS) {
+            assertEquals(key, 1, mListener.count(key));
+        }
+        assertEquals(0, sConstructions.get());
+    }
+
+    @Test
+    public void testPrefChangesResolvedOncePerKey() {
+        runOnMainSync(() -> {
+            for (int i = 1; i <= 5; i++) {
+                for (String key : KEYS) {
+                    setPref(key, i);
+                }
+            }
+            assertEquals(0, sConstructions.get());
+        });
+        waitForFrame();
+
+        assertEquals(KEYS.length, sConstructions.get());
+        for (String key : KEYS) {
+            assertEquals(key, 1, mListener.count(key));
+            assertEquals(key, 5, mListener.lastColors.get(key).intValue());
+        }
+    }
+
+    @Test
+    public void testResolversCreatedFromRegistry() {
+        ColorEngine engine = mEngine;
+        for (String className : mRegistry.getClassNames()) {
+            String value = className + "|255|255|255|255";
+            runOnMainSync(() -> {
+                ColorResolver resolver = engine.createColorResolverNullable("test", value);
+                assertEquals(className, resolver.getClass().getName());
+            });
+        }
+        runOnMainSync(() -> {
+            ColorResolver fallback = engine.createColorResolver(KEYS[0], "com.example.Unknown");
+            assertSame(fallback.getClass(),
+                    engine.createColorResolver(KEYS[0], "").getClass());
+        });
+    }
+
+    private void setPref(String key, int value) {
+        mPrefs.getSharedPrefs().edit()
+                .putString(key, CountingResolver.class.getName() + "|" + value)
+                .commit();
+    }
+
+    private static class CountingListener implements ColorEngine.OnColorChangeListener {
+
+        final Map<String, Integer> calls = new HashMap<>();
+        final Map<String, Integer> lastColors = new HashMap<>();
+
+        @Override
+        public void onColorChange(@NonNull ResolveInfo resolveInfo) {
+            Integer count = calls.get(resolveInfo.getKey());
+            calls.put(resolveInfo.getKey(), count == null ? 1 : count + 1);
+            lastColors.put(resolveInfo.getKey(), resolveInfo.getColor());
+        }
+
+        int count(String key) {
+            Integer count = calls.get(key);
+            return count == null ? 0 : count;
+        }
+
+        int total() {
+            int total = 0;
+            for (int count : calls.values()) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    public static class CountingResolver extends ColorResolver {
+
+        public CountingResolver(@NonNull Config config) {
+            super(config);
+        }
+
+        @Override
+        public int resolveColor() {
+            return getArgs().isEmpty() ? Color.BLACK : Integer.parseInt(getArgs().get(0));
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Counting";
+        }
+    }
+}
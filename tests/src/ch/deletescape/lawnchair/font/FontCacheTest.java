@@ -0,0 +1,220 @@
+package ch.deletescape.lawnchair.font;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FontCache} using local font files only.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class FontCacheTest {
+
+    private static final String SYSTEM_FONT = "/system/fonts/Roboto-Regular.ttf";
+    private static final String FONT_NAME = "FontCacheTest.ttf";
+    private static final long LOAD_TIMEOUT_MS = 5000;
+
+    private Context mContext;
+    private FontCache mFontCache;
+    private File mFontFile;
+
+    @Before
+    public void setup() throws IOException {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mFontFile = FontCache.TTFFont.Companion.getFile(mContext, FONT_NAME);
+        copy(new File(SYSTEM_FONT), mFontFile);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> mFontCache = new FontCache(mContext));
+    }
+
+    @After
+    public void tearDown() {
+        mFontFile.delete();
+    }
+
+    @Test
+    public void testRequestsAreShared() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            FontLoader first = mFontCache.loadFont(new FontCache.TTFFont(mContext, mFontFile));
+            FontLoader second = mFontCache.loadFont(new FontCache.TTFFont(mContext, mFontFile));
+            // Loading happens on the worker thread and is delivered on the main thread
+            assertFalse(first.isLoaded());
+            assertSame(first, second);
+        });
+    }
+
+    @Test
+    public void testFallbackUntilLoaded() throws Exception {
+        RecordingReceiver receiver = new RecordingReceiver(2);
+        FontLoader[] loader = new FontLoader[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            loader[0] = mFontCache.loadFont(new FontCache.TTFFont(mContext, mFontFile));
+            loader[0].into(receiver, Typeface.MONOSPACE);
+            assertEquals(1, receiver.typefaces.size());
+            assertSame(Typeface.MONOSPACE, receiver.typefaces.get(0));
+        });
+
+        assertTrue(receiver.latch.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNotSame(Typeface.MONOSPACE, receiver.typefaces.get(1));
+
+        // Loaded fonts are served from the cache
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            FontLoader cached = mFontCache.loadFont(new FontCache.TTFFont(mContext, mFontFile));
+            assertSame(loader[0], cached);
+            assertTrue(cached.isLoaded());
+
+            RecordingReceiver cachedReceiver = new RecordingReceiver(1);
+            cached.into(cachedReceiver, Typeface.MONOSPACE);
+            assertEquals(1, cachedReceiver.typefaces.size());
+            assertSame(receiver.typefaces.get(1), cachedReceiver.typefaces.get(0));
+        });
+    }
+
+    @Test
+    public void testMissingFontKeepsFallback() throws Exception {
+        File missing = FontCache.TTFFont.Companion.getFile(mContext, "FontCacheTest-missing.ttf");
+        missing.delete();
+
+        RecordingReceiver receiver = new RecordingReceiver(2);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            FontCache.TTFFont font = new FontCache.TTFFont(mContext, missing);
+            mFontCache.loadFont(font).into(receiver, Typeface.MONOSPACE);
+        });
+
+        assertTrue(receiver.latch.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertSame(Typeface.MONOSPACE, receiver.typefaces.get(1));
+        assertFalse(new FontCache.TTFFont(mContext, missing).isAvailable());
+    }
+
+    @Test
+    public void testUnknownFontAvailableUntilLoaded() throws Exception {
+        // A file the index has never seen, which can't be parsed
+        File invalid = FontCache.TTFFont.Companion.getFile(mContext,
+                "FontCacheTest-" + System.nanoTime() + ".ttf");
+        try {
+            try (OutputStream out = new FileOutputStream(invalid)) {
+                out.write(new byte[] { 1, 2, 3, 4 });
+            }
+
+            RecordingReceiver receiver = new RecordingReceiver(2);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+                // Creating the font doesn't parse the file, so it's considered loading
+                FontCache.TTFFont font = new FontCache.TTFFont(mContext, invalid);
+                assertTrue(font.isAvailable());
+                assertEquals(invalid.getName(), font.getFullDisplayName());
+                mFontCache.loadFont(font).into(receiver, Typeface.MONOSPACE);
+            });
+
+            assertTrue(receiver.latch.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertSame(Typeface.MONOSPACE, receiver.typefaces.get(1));
+            assertFalse(new FontCache.TTFFont(mContext, invalid).isAvailable());
+        } finally {
+            invalid.delete();
+        }
+    }
+
+    @Test
+    public void testIndexRemembersValidity() throws Exception {
+        File file = FontCache.TTFFont.Companion.getFile(mContext,
+                "FontCacheTest-" + System.nanoTime() + ".ttf");
+        try {
+            copy(new File(SYSTEM_FONT), file);
+            List<Thread> parseThreads = new ArrayList<>();
+            FontIndex index = new FontIndex(mContext, f -> {
+                parseThreads.add(Thread.currentThread());
+                return FontCache.TTFFont.Companion.createTypeface(f);
+            });
+
+            // Cold lookups don't parse the file on the calling thread
+            assertTrue(index.isFontFileValid(file));
+            assertTrue(parseThreads.isEmpty());
+
+            HandlerThread worker = new HandlerThread("FontCacheTest");
+            worker.start();
+            try {
+                Typeface[] loaded = new Typeface[1];
+                CountDownLatch latch = new CountDownLatch(1);
+                new Handler(worker.getLooper()).post(() -> {
+                    loaded[0] = index.loadFontFile(file);
+                    latch.countDown();
+                });
+                assertTrue(latch.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                assertNotNull(loaded[0]);
+                assertEquals(1, parseThreads.size());
+                assertSame(worker, parseThreads.get(0));
+            } finally {
+                worker.quitSafely();
+            }
+
+            // The result is remembered without parsing again
+            assertTrue(index.isFontFileValid(file));
+            assertEquals(1, parseThreads.size());
+
+            File missing = FontCache.TTFFont.Companion.getFile(mContext,
+                    "FontCacheTest-missing.ttf");
+            missing.delete();
+            assertNull(index.loadFontFile(missing));
+            assertFalse(index.isFontFileValid(missing));
+            assertNull(index.loadFontFile(missing));
+            assertEquals(1, parseThreads.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static class RecordingReceiver implements FontLoader.FontReceiver {
+
+        final List<Typeface> typefaces = new ArrayList<>();
+        final CountDownLatch latch;
+
+        RecordingReceiver(int expectedCalls) {
+            latch = new CountDownLatch(expectedCalls);
+        }
+
+        @Override
+        public void setTypeface(Typeface typeface) {
+            typefaces.add(typeface);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ch.deletescape.lawnchair.gestures;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.Display;
+import android.view.Surface;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link DisplayGeometryCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class DisplayGeometryCacheTest {
+
+    private FakeDisplaySource mSource;
+    private DisplayGeometryCache mCache;
+
+    @Before
+    public void setup() {
+        mSource = new FakeDisplaySource();
+        runOnMainSync(() -> mCache =
+                new DisplayGeometryCache(InstrumentationRegistry.getTargetContext(), mSource));
+    }
+
+    @Test
+    public void testInvalidatedOnRotation() {
+        Point size = new Point();
+        Rect insets = new Rect();
+        mCache.getSize(size);
+        mCache.getStableInsets(insets);
+        assertEquals(Surface.ROTATION_0, mCache.getRotation());
+        assertEquals(1080, size.x);
+        assertEquals(126, insets.bottom);
+
+        // Rotate to seascape, which doesn't change the configuration
+        mSource.rotate(Surface.ROTATION_270);
+        assertEquals(Surface.ROTATION_0, mCache.getRotation());
+
+        // Changes of other displays are ignored
+        runOnMainSync(() -> mCache.onDisplayChanged(Display.DEFAULT_DISPLAY + 1));
+        assertEquals(Surface.ROTATION_0, mCache.getRotation());
+
+        runOnMainSync(() -> mCache.onDisplayChanged(Display.DEFAULT_DISPLAY));
+        mCache.getSize(size);
+        mCache.getStableInsets(insets);
+        assertEquals(Surface.ROTATION_270, mCache.getRotation());
+        assertEquals(2160, size.x);
+        assertEquals(126, insets.left);
+        assertEquals(0, insets.bottom);
+    }
+
+    @Test
+    public void testDownEventsOnlyReadCache() {
+        int events = 10000;
+        Point size = new Point();
+        Rect insets = new Rect();
+        for (int i = 0; i < events; i++) {
+            // Same reads as NavigationBarGestureConsumer on ACTION_DOWN
+            mCache.getSize(size);
+            mCache.getRotation();
+            mCache.getStableInsets(insets);
+        }
+        assertEquals(1, mSource.reads);
+
+        mCache.invalidate();
+        mCache.getSize(size);
+        mCache.getStableInsets(insets);
+        assertEquals(2, mSource.reads);
+    }
+
+    private static void runOnMainSync(Runnable r) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(r);
+    }
+
+    private static class FakeDisplaySource implements DisplayGeometryCache.DisplaySource {
+
+        int reads;
+        private int mRotation = Surface.ROTATION_0;
+
+        void rotate(int rotation) {
+            mRotation = rotation;
+        }
+
+        @Override
+        public int getRotation() {
+            return mRotation;
+        }
+
+        @Override
+        public void getSize(Point out) {
+            reads++;
+            boolean portrait = mRotation == Surface.ROTATION_0 || mRotation == Surface.ROTATION_180;
+            out.set(portrait ? 1080 : 2160, portrait ? 2160 : 1080);
+        }
+
+        @Override
+        public void getStableInsets(Rect out) {
+            out.set(0, 63, 0, 0);
+            if (mRotation == Surface.ROTATION_90) {
+                out.right = 126;
+            } else if (mRotation == Surface.ROTATION_270) {
+                out.left = 126;
+            } else {
+                out.bottom = 126;
+            }
+        }
+    }
+}
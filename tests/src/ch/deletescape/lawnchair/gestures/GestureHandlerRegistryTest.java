@@ -0,0 +1,109 @@
+package ch.deletescape.lawnchair.gestures;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.util.ComponentKey;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandler;
+import ch.deletescape.lawnchair.gestures.handlers.StartAppGestureHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link GestureHandlerRegistry}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class GestureHandlerRegistryTest {
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void testAllHandlersRoundTrip() throws Exception {
+        GestureHandlerRegistry registry = GestureHandlerRegistry.INSTANCE;
+        for (String className : registry.getClassNames()) {
+            GestureHandler[] handler = new GestureHandler[1];
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                    handler[0] = registry.create(mContext, className, null));
+            assertNotNull(className, handler[0]);
+            assertEquals(className, handler[0].getClass().getName());
+
+            String value = handler[0].toString();
+            GestureHandlerRegistry.HandlerSpec spec = registry.parse(value);
+            assertEquals(className, spec.getClassName());
+            GestureHandler[] recreated = new GestureHandler[1];
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                    recreated[0] = registry.create(mContext, spec.getClassName(), spec.getConfig()));
+            assertEquals(className, recreated[0].getClass().getName());
+            assertEquals(value, recreated[0].toString());
+        }
+    }
+
+    @Test
+    public void testConfigRoundTrip() throws Exception {
+        ComponentKey target = new ComponentKey(
+                new ComponentName(mContext.getPackageName(), "TestActivity"),
+                Process.myUserHandle());
+        JSONObject config = new JSONObject()
+                .put("appName", "Test")
+                .put("type", "app")
+                .put("target", target.toString());
+        String value = new JSONObject()
+                .put("class", StartAppGestureHandler.class.getName())
+                .put("config", config)
+                .toString();
+
+        GestureHandler handler = GestureController.Companion.createGestureHandler(
+                mContext, value, new BlankGestureHandler(mContext, null));
+        assertEquals(StartAppGestureHandler.class, handler.getClass());
+        assertEquals(target, ((StartAppGestureHandler) handler).getTarget());
+        assertEquals(value, handler.toString());
+    }
+
+    @Test
+    public void testLegacyAliases() {
+        String[] legacy = {
+                "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerDeviceAdmin",
+                "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerAccessibility",
+                "ch.deletescape.lawnchair.gestures.handlers.SleepGestureHandlerRoot"};
+        for (String className : legacy) {
+            assertEquals(SleepGestureHandler.class.getName(),
+                    GestureController.Companion.getClassName(className));
+            assertEquals(SleepGestureHandler.class,
+                    GestureHandlerRegistry.INSTANCE.create(mContext, className, null).getClass());
+        }
+    }
+
+    @Test
+    public void testParsedValuesAreCached() {
+        String value = new BlankGestureHandler(mContext, null).toString();
+        assertSame(GestureHandlerRegistry.INSTANCE.parse(value),
+                GestureHandlerRegistry.INSTANCE.parse(value));
+    }
+
+    @Test
+    public void testUnknownHandlerFallsBack() {
+        BlankGestureHandler fallback = new BlankGestureHandler(mContext, null);
+        assertNull(GestureHandlerRegistry.INSTANCE.create(mContext, "com.example.Unknown", null));
+        assertSame(fallback, GestureController.Companion.createGestureHandler(
+                mContext, "{\"class\":\"com.example.Unknown\"}", fallback));
+    }
+}
@@ -0,0 +1,258 @@
+package ch.deletescape.lawnchair.iconpack;
+
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.android.launcher3.util.Condition;
+import com.android.launcher3.util.Wait;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.deletescape.lawnchair.LawnchairUtilsKt;
+import kotlin.Unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link IconThumbnailLoader} and {@link IconSearchIndex}, using a synthetic icon pack.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class IconThumbnailLoaderTest {
+
+    private static final String TAG = "IconThumbnailLoaderTest";
+
+    private static final int PACK_SIZE = 5000;
+    private static final int VISIBLE_HOLDERS = 24;
+    private static final int THUMBNAIL_SIZE = 48;
+    private static final long TIMEOUT_MS = 5000;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private CountDownLatch mBlocker;
+    private AtomicInteger mDecodes;
+    private List<SyntheticEntry> mPack;
+
+    @Before
+    public void setup() {
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mDecodes = new AtomicInteger();
+        mPack = createPack(PACK_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        if (mBlocker != null) {
+            mBlocker.countDown();
+        }
+        mThread.quitSafely();
+    }
+
+    @Test
+    public void testFlingOnlyKeepsVisibleLoads() {
+        IconThumbnailLoader loader = new IconThumbnailLoader(THUMBNAIL_SIZE, mHandler, 1 << 22);
+        blockWorker();
+
+        // Simulate a fling through the whole pack with a fixed set of recycled holders
+        IconThumbnailLoader.Request[] holders = new IconThumbnailLoader.Request[VISIBLE_HOLDERS];
+        for (int i = 0; i < PACK_SIZE; i++) {
+            int holder = i % VISIBLE_HOLDERS;
+            if (holders[holder] != null) {
+                holders[holder].cancel();
+            }
+            holders[holder] = loader.load(mPack.get(i), bitmap -> Unit.INSTANCE);
+        }
+        assertEquals(VISIBLE_HOLDERS, loader.getQueuedCount());
+
+        mBlocker.countDown();
+        assertTrue(waitFor(() -> loader.getQueuedCount() == 0));
+        assertTrue(waitFor(() -> mDecodes.get() == VISIBLE_HOLDERS));
+
+        // The last visible icons are now cached
+        SyntheticEntry last = mPack.get(PACK_SIZE - 1);
+        assertNotNull(loader.getCached(last));
+        assertNull(loader.load(last, bitmap -> Unit.INSTANCE));
+        assertNull(loader.getCached(mPack.get(0)));
+    }
+
+    @Test
+    public void testPrefetchReplacesPreviousPrefetch() {
+        IconThumbnailLoader loader = new IconThumbnailLoader(THUMBNAIL_SIZE, mHandler, 1 << 22);
+        blockWorker();
+
+        loader.prefetch(new ArrayList<IconPack.Entry>(mPack.subList(0, 30)));
+        loader.prefetch(new ArrayList<IconPack.Entry>(mPack.subList(30, 60)));
+        assertEquals(30, loader.getQueuedCount());
+
+        mBlocker.countDown();
+        assertTrue(waitFor(() -> loader.getQueuedCount() == 0));
+        assertNull(loader.getCached(mPack.get(0)));
+        assertTrue(waitFor(() -> loader.getCached(mPack.get(59)) != null));
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception {
+        int thumbnailBytes = THUMBNAIL_SIZE * THUMBNAIL_SIZE * 4;
+        IconThumbnailLoader loader = new IconThumbnailLoader(THUMBNAIL_SIZE, mHandler,
+                thumbnailBytes * 10);
+        loader.prefetch(new ArrayList<IconPack.Entry>(mPack.subList(0, 20)));
+        assertTrue(waitFor(() -> loader.getQueuedCount() == 0));
+        CountDownLatch done = new CountDownLatch(1);
+        mHandler.post(done::countDown);
+        done.await();
+
+        int cached = 0;
+        for (int i = 0; i < 20; i++) {
+            if (loader.getCached(mPack.get(i)) != null) {
+                cached++;
+            }
+        }
+        assertEquals(10, cached);
+        assertNotNull(loader.getCached(mPack.get(19)));
+    }
+
+    @Test
+    public void testSearch() {
+        Collator collator = Collator.getInstance();
+        collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        collator.setStrength(Collator.TERTIARY);
+        List<String> names = new ArrayList<>();
+        for (SyntheticEntry entry : mPack) {
+            names.add(entry.getDisplayName());
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        IconSearchIndex<String> index = new IconSearchIndex<>(names, collator, name -> name);
+        long buildTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        // The index finds the same names, in the same order, as matching every name
+        String[] queries = {"c", "C", "ca", "cam", "camera", "CAMERA", "cafe", "Café", "CAFÉ",
+                "mús", "música", "a", "1", "12", "s 1", "ra 3", "Weather 99", "xyz", "Maps 5"};
+        for (String query : queries) {
+            List<String> expected = new ArrayList<>();
+            for (String name : names) {
+                if (LawnchairUtilsKt.matches(collator, query, name)) {
+                    expected.add(name);
+                }
+            }
+            assertEquals(query, expected, index.search(query));
+        }
+        assertTrue(index.search("Café").contains("Café 0"));
+        assertTrue(index.search("xyz").isEmpty());
+
+        String[] typed = {"c", "ca", "cam", "came", "camer", "camera", "camer", "came"};
+        int count = 0;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < 20; i++) {
+            for (String query : typed) {
+                index.search(query);
+                count++;
+            }
+        }
+        long queryTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.d(TAG, String.format(Locale.US, "%d icons, index built in %dus, %.1fus per query",
+                names.size(), buildTime / 1000, queryTime / 1000f / count));
+    }
+
+    private static boolean waitFor(Check check) {
+        return Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() {
+                return check.isTrue();
+            }
+        }, TIMEOUT_MS);
+    }
+
+    private void blockWorker() {
+        mBlocker = new CountDownLatch(1);
+        mHandler.post(() -> {
+            try {
+                mBlocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private List<SyntheticEntry> createPack(int size) {
+        String[] words = {"Camera", "Calendar", "Café", "Clock", "Contacts", "Maps", "Música",
+                "Phone", "Settings", "Weather"};
+        Random random = new Random(7);
+        List<SyntheticEntry> pack = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String name = words[i % words.length] + " " + (i / words.length);
+            pack.add(new SyntheticEntry(name, Color.rgb(random.nextInt(256),
+                    random.nextInt(256), random.nextInt(256))));
+        }
+        return pack;
+    }
+
+    private class SyntheticEntry extends IconPack.Entry {
+
+        private final String mName;
+        private final int mColor;
+
+        SyntheticEntry(String name, int color) {
+            mName = name;
+            mColor = color;
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return mName;
+        }
+
+        @NonNull
+        @Override
+        public String getIdentifierName() {
+            return "synthetic_" + mName;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public Drawable drawableForDensity(int density) {
+            mDecodes.incrementAndGet();
+            return new ColorDrawable(mColor);
+        }
+
+        @NonNull
+        @Override
+        public IconPackManager.CustomIconEntry toCustomEntry() {
+            return new IconPackManager.CustomIconEntry("synthetic", getIdentifierName(), null);
+        }
+    }
+
+    private interface Check {
+        boolean isTrue();
+    }
+}
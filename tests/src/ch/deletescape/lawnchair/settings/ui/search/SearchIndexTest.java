@@ -0,0 +1,134 @@
+package ch.deletescape.lawnchair.settings.ui.search;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SearchIndex} and {@link SearchQueryIndex}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class SearchIndexTest {
+
+    private static final String TAG = "SearchIndexTest";
+
+    private Context mContext;
+    private SearchIndex mPrebuilt;
+    private SearchIndex mXml;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            mPrebuilt = new SearchIndex(mContext, true);
+            mXml = new SearchIndex(mContext, false);
+        });
+    }
+
+    @Test
+    public void testPrebuiltIndexMatchesXmlParser() {
+        // Slice views are created lazily, on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> assertEquals(describe(mXml), describe(mPrebuilt)));
+    }
+
+    @Test
+    public void testQueryMatchesLinearFilter() {
+        List<SearchIndex.SettingsEntry> entries = mPrebuilt.getEntries();
+        SearchQueryIndex<SearchIndex.SettingsEntry> index =
+                new SearchQueryIndex<>(entries, SearchIndex.SettingsEntry::getTitle);
+
+        for (String query : createQueries(entries)) {
+            HashSet<SearchIndex.SettingsEntry> expected = new HashSet<>();
+            for (SearchIndex.SettingsEntry entry : entries) {
+                if (entry.getTitle().toLowerCase().contains(query.toLowerCase())) {
+                    expected.add(entry);
+                }
+            }
+            List<SearchIndex.SettingsEntry> actual = index.search(query);
+            assertEquals(query, expected.size(), actual.size());
+            assertEquals(query, expected, new HashSet<>(actual));
+        }
+    }
+
+    @Test
+    public void testRanking() {
+        List<String> titles = new ArrayList<>();
+        titles.add("Show icon labels");
+        titles.add("Icon pack");
+        titles.add("Lexicon");
+        SearchQueryIndex<String> index = new SearchQueryIndex<>(titles, s -> s);
+
+        List<String> results = index.search("icon");
+        assertEquals(3, results.size());
+        assertEquals("Icon pack", results.get(0));
+        assertEquals("Show icon labels", results.get(1));
+        assertEquals("Lexicon", results.get(2));
+    }
+
+    @Test
+    public void testQueryLatency() {
+        List<SearchIndex.SettingsEntry> entries = mPrebuilt.getEntries();
+        long start = SystemClock.elapsedRealtimeNanos();
+        SearchQueryIndex<SearchIndex.SettingsEntry> index =
+                new SearchQueryIndex<>(entries, SearchIndex.SettingsEntry::getTitle);
+        long buildTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        // Simulate typing every title character by character
+        int queries = 0;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (SearchIndex.SettingsEntry entry : entries) {
+            String title = entry.getTitle();
+            for (int i = 1; i <= title.length(); i++) {
+                assertTrue(index.search(title.substring(0, i)).contains(entry));
+                queries++;
+            }
+        }
+        long queryTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.d(TAG, String.format(Locale.US, "%d entries, index built in %dus, "
+                        + "%d queries, %.1fus per query", entries.size(), buildTime / 1000,
+                queries, queryTime / 1000f / queries));
+    }
+
+    private static List<String> createQueries(List<SearchIndex.SettingsEntry> entries) {
+        List<String> queries = new ArrayList<>();
+        for (SearchIndex.SettingsEntry entry : entries) {
+            String title = entry.getTitle();
+            for (int length = 1; length <= 4; length++) {
+                for (int i = 0; i + length <= title.length(); i += 3) {
+                    queries.add(title.substring(i, i + length));
+                }
+            }
+        }
+        queries.add("zzzz");
+        queries.add("ICON");
+        return queries;
+    }
+
+    private static List<String> describe(SearchIndex index) {
+        List<String> result = new ArrayList<>();
+        for (SearchIndex.SettingsEntry entry : index.getEntries()) {
+            result.add(entry.getKey() + "|" + entry.getTitle() + "|" + entry.getSummary()
+                    + "|" + entry.getIconRes() + "|" + entry.getBreadcrumbs()
+                    + "|" + (entry.getSliceView() != null));
+        }
+        return result;
+    }
+}
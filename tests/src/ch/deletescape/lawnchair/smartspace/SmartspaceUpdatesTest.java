@@ -0,0 +1,185 @@
+package ch.deletescape.lawnchair.smartspace;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.deletescape.lawnchair.LawnchairApp;
+import ch.deletescape.lawnchair.LawnchairUtilsKt;
+import ch.deletescape.lawnchair.smartspace.LawnchairSmartspaceController.CardData;
+import ch.deletescape.lawnchair.smartspace.LawnchairSmartspaceController.Line;
+import ch.deletescape.lawnchair.smartspace.LawnchairSmartspaceController.NotificationClickListener;
+import kotlin.Unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that smartspace cards are computed off the main thread and only dispatched on changes.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class SmartspaceUpdatesTest {
+
+    private Context mContext;
+    private LawnchairSmartspaceController mController;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> mController =
+                ((LawnchairApp) mContext.getApplicationContext()).getSmartspace());
+    }
+
+    @Test
+    public void testNotificationBurstDoesNotUpdateUnchangedCard() throws Exception {
+        FakeNotificationSource source = new FakeNotificationSource();
+        AtomicInteger cardUpdates = new AtomicInteger();
+        NotificationUnreadProvider[] provider = new NotificationUnreadProvider[1];
+        runOnMainSync(() -> {
+            provider[0] = new NotificationUnreadProvider(mController, source);
+            provider[0].setCardUpdateListener((p, card) -> {
+                cardUpdates.incrementAndGet();
+                return Unit.INSTANCE;
+            });
+            provider[0].startListening();
+        });
+        assertEquals(1, source.listeners.size());
+
+        runOnMainSync(() -> {
+            for (int i = 0; i < 100; i++) {
+                source.notifyChanged();
+            }
+        });
+        waitForWorker();
+        runOnMainSync(() -> { });
+        assertEquals(0, cardUpdates.get());
+
+        runOnMainSync(() -> provider[0].stopListening());
+        assertEquals(0, source.listeners.size());
+    }
+
+    @Test
+    public void testProviderSuppressesEqualCards() {
+        AtomicInteger cardUpdates = new AtomicInteger();
+        LawnchairSmartspaceController.DataProvider provider =
+                new LawnchairSmartspaceController.DataProvider(mController) { };
+        provider.setCardUpdateListener((p, card) -> {
+            cardUpdates.incrementAndGet();
+            return Unit.INSTANCE;
+        });
+
+        Bitmap icon = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+        provider.updateData(null, createCard(icon, "title", createClickListener("key")));
+        provider.updateData(null, createCard(icon, "title", createClickListener("key")));
+        assertEquals(1, cardUpdates.get());
+
+        provider.updateData(null, createCard(icon, "other", createClickListener("key")));
+        assertEquals(2, cardUpdates.get());
+        provider.updateData(null, createCard(icon, "other", createClickListener("other-key")));
+        assertEquals(3, cardUpdates.get());
+
+        // Forced updates are always dispatched
+        provider.forceUpdate();
+        assertEquals(4, cardUpdates.get());
+    }
+
+    @Test
+    public void testControllerSuppressesUnchangedData() {
+        AtomicInteger updates = new AtomicInteger();
+        LawnchairSmartspaceController.Listener listener = (weather, card) ->
+                updates.incrementAndGet();
+        runOnMainSync(() -> {
+            mController.addListener(listener);
+            for (int i = 0; i < 10; i++) {
+                mController.forceUpdate();
+            }
+            mController.removeListener(listener);
+        });
+        assertEquals(1, updates.get());
+    }
+
+    @Test
+    public void testWeatherIconsAreCached() {
+        WeatherIconProvider provider = new WeatherIconProvider(mContext);
+        assertSame(provider.getIcon("01d"), provider.getIcon("01d"));
+        assertSame(provider.getIcon("01d"), new WeatherIconProvider(mContext).getIcon("01d"));
+        assertSame(provider.getIcon("unknown"), provider.getIcon(WeatherIconProvider.CONDITION_UNKNOWN));
+        assertNotEquals(provider.getIcon("01d"), provider.getIcon("01n"));
+    }
+
+    private static CardData createCard(Bitmap icon, String title, View.OnClickListener listener) {
+        return new CardData(icon, Collections.singletonList(new Line(title)), listener, false);
+    }
+
+    private NotificationClickListener createClickListener(String tag) {
+        PendingIntent intent = PendingIntent.getActivity(mContext, 0,
+                new Intent(Intent.ACTION_MAIN).setPackage(mContext.getPackageName()), 0);
+        Notification notification = new Notification.Builder(mContext)
+                .setContentIntent(intent)
+                .build();
+        StatusBarNotification sbn = new StatusBarNotification(mContext.getPackageName(),
+                mContext.getPackageName(), 1, tag, Process.myUid(), 0, 0, notification,
+                Process.myUserHandle(), 0);
+        return new NotificationClickListener(sbn);
+    }
+
+    private static void runOnMainSync(Runnable r) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(r);
+    }
+
+    private static void waitForWorker() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        LawnchairUtilsKt.getUiWorkerHandler().post(latch::countDown);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class FakeNotificationSource implements NotificationSource {
+
+        final List<NotificationsManager.OnChangeListener> listeners = new ArrayList<>();
+
+        @NonNull
+        @Override
+        public List<StatusBarNotification> getNotifications() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void addListener(@NonNull NotificationsManager.OnChangeListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeListener(@NonNull NotificationsManager.OnChangeListener listener) {
+            listeners.remove(listener);
+        }
+
+        void notifyChanged() {
+            for (NotificationsManager.OnChangeListener listener : listeners) {
+                listener.onNotificationsChanged();
+            }
+        }
+    }
+}
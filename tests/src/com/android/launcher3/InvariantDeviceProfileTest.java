@@ -0,0 +1,137 @@
+package com.android.launcher3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the cached resolution of {@link InvariantDeviceProfile}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class InvariantDeviceProfileTest {
+
+    // Display sizes in dp, covering small phones, phones, tall phones and tablets
+    private static final float[][] DISPLAY_SIZES = {
+            {255, 300}, {296, 491.33f}, {320, 480}, {335, 567}, {359, 567}, {360, 640},
+            {392.73f, 738.18f}, {411.43f, 683.43f}, {412, 845}, {480, 800}, {527, 720},
+            {600, 960}, {720, 1280}, {800, 1280}, {1024, 1366}
+    };
+
+    private Context mContext;
+    private InvariantDeviceProfile mProfile;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mProfile = new InvariantDeviceProfile();
+        InvariantDeviceProfile.clearResolution(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        InvariantDeviceProfile.clearResolution(mContext);
+    }
+
+    @Test
+    public void testCachedResolutionEqualsComputed() {
+        SharedPreferences prefs = Utilities.getDevicePrefs(mContext);
+        for (float[] size : DISPLAY_SIZES) {
+            String key = DeviceProfileResolution.getKey(mContext, size[0], size[1]);
+            DeviceProfileResolution computed =
+                    mProfile.computeResolution(mContext, key, size[0], size[1]);
+            InvariantDeviceProfile.clearResolution(mContext);
+
+            // Memoized for the process
+            DeviceProfileResolution resolved = mProfile.resolve(mContext, size[0], size[1]);
+            assertSame(resolved, mProfile.resolve(mContext, size[0], size[1]));
+
+            // Read back from the prefs after a process restart
+            InvariantDeviceProfile.clearMemoizedResolution();
+            String stored = prefs.getString(InvariantDeviceProfile.KEY_RESOLUTION, null);
+            assertNotNull(stored);
+            DeviceProfileResolution restored = mProfile.resolve(mContext, size[0], size[1]);
+            assertNotSame(resolved, restored);
+            assertEquals(computed, restored);
+        }
+    }
+
+    @Test
+    public void testCachedProfileEqualsFresh() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            InvariantDeviceProfile fresh = new InvariantDeviceProfile(mContext);
+            assertNotNull(Utilities.getDevicePrefs(mContext)
+                    .getString(InvariantDeviceProfile.KEY_RESOLUTION, null));
+
+            InvariantDeviceProfile.clearMemoizedResolution();
+            InvariantDeviceProfile cached = new InvariantDeviceProfile(mContext);
+            assertEquals(fresh.numRows, cached.numRows);
+            assertEquals(fresh.numColumns, cached.numColumns);
+            assertEquals(fresh.numFolderRows, cached.numFolderRows);
+            assertEquals(fresh.numFolderColumns, cached.numFolderColumns);
+            assertEquals(fresh.numHotseatIcons, cached.numHotseatIcons);
+            assertEquals(fresh.defaultLayoutId, cached.defaultLayoutId);
+            assertEquals(fresh.iconSize, cached.iconSize, 0);
+            assertEquals(fresh.landscapeIconSize, cached.landscapeIconSize, 0);
+            assertEquals(fresh.iconTextSize, cached.iconTextSize, 0);
+            assertEquals(fresh.iconBitmapSize, cached.iconBitmapSize);
+
+            for (boolean landscape : new boolean[] {false, true}) {
+                DeviceProfile freshDp = landscape ? fresh.landscapeProfile : fresh.portraitProfile;
+                DeviceProfile cachedDp =
+                        landscape ? cached.landscapeProfile : cached.portraitProfile;
+                assertEquals(freshDp.iconSizePx, cachedDp.iconSizePx);
+                assertEquals(freshDp.iconTextSizePx, cachedDp.iconTextSizePx);
+                assertEquals(freshDp.cellWidthPx, cachedDp.cellWidthPx);
+                assertEquals(freshDp.cellHeightPx, cachedDp.cellHeightPx);
+                assertEquals(freshDp.hotseatBarSizePx, cachedDp.hotseatBarSizePx);
+                assertEquals(freshDp.hotseatIconSizePx, cachedDp.hotseatIconSizePx);
+                assertEquals(freshDp.folderCellWidthPx, cachedDp.folderCellWidthPx);
+            }
+        });
+    }
+
+    @Test
+    public void testResolutionNotReusedForOtherSizes() {
+        DeviceProfileResolution small = mProfile.resolve(mContext, 320, 480);
+        DeviceProfileResolution large = mProfile.resolve(mContext, 800, 1280);
+        assertNotSame(small, large);
+        assertEquals(large.key, DeviceProfileResolution.getKey(mContext, 800, 1280));
+
+        assertNull(DeviceProfileResolution.parse(small.key, large.serialize()));
+        assertNull(DeviceProfileResolution.parse(small.key, "{invalid"));
+        assertNull(DeviceProfileResolution.parse(small.key, null));
+    }
+
+    @Test
+    public void testMultiWindowProfilesNotShared() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            DeviceProfile dp = LauncherAppState.getIDP(mContext).portraitProfile;
+            Point size = new Point(dp.availableWidthPx, dp.availableHeightPx / 2);
+            DeviceProfile first = dp.getMultiWindowProfile(mContext, new Point(size));
+            DeviceProfile second = dp.getMultiWindowProfile(mContext, new Point(size));
+            assertNotSame(first, second);
+            assertEquals(size.y, first.availableHeightPx);
+
+            // Insets applied by one caller, eg. recents, don't affect the other profiles
+            Rect insets = new Rect(second.getInsets());
+            first.updateInsets(new Rect(0, 100, 0, 100));
+            assertEquals(insets, second.getInsets());
+        });
+    }
+}
@@ -0,0 +1,219 @@
+package com.android.launcher3;
+
+import static com.android.launcher3.util.MainThreadUtils.runOnMainSync;
+import static com.android.launcher3.util.MainThreadUtils.waitForFrame;
+import static com.android.systemui.shared.system.RemoteAnimationTargetCompat.ACTIVITY_TYPE_HOME;
+import static com.android.systemui.shared.system.RemoteAnimationTargetCompat.ACTIVITY_TYPE_STANDARD;
+import static com.android.systemui.shared.system.RemoteAnimationTargetCompat.MODE_CLOSING;
+import static com.android.systemui.shared.system.RemoteAnimationTargetCompat.MODE_OPENING;
+
+import static org.junit.Assert.assertEquals;
+
+import android.animation.Animator;
+import android.animation.AnimatorSet;
+import android.animation.ValueAnimator;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.SurfaceControl;
+import android.view.SurfaceSession;
+import android.view.View;
+
+import com.android.launcher3.dragndrop.DragLayer;
+import com.android.launcher3.util.rule.LauncherActivityRule;
+import com.android.quickstep.util.ClipAnimationHelper;
+import com.android.quickstep.util.RemoteAnimationTargetSet;
+import com.android.quickstep.util.TransformedRect;
+import com.android.systemui.shared.system.RemoteAnimationTargetCompat;
+import com.android.systemui.shared.system.SurfaceControlCompat;
+import com.android.systemui.shared.system.SyncRtSurfaceTransactionApplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests that the per-frame transforms of remote app animations don't allocate
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class RemoteAnimationAllocationTest {
+
+    private static final int WARM_UP_FRAMES = 5;
+    private static final int FRAMES = 20;
+
+    @Rule public LauncherActivityRule mActivityMonitor = new LauncherActivityRule();
+
+    private Launcher mLauncher;
+    private SurfaceSession mSession;
+    private SurfaceControl[] mSurfaces;
+    private RemoteAnimationTargetCompat[] mTargets;
+
+    @Before
+    public void setup() {
+        mActivityMonitor.startLauncher();
+        mLauncher = mActivityMonitor.getActivity();
+
+        DeviceProfile dp = mLauncher.getDeviceProfile();
+        mSession = new SurfaceSession();
+        mSurfaces = new SurfaceControl[] {
+                createSurface(dp),
+                createSurface(dp)
+        };
+        mTargets = new RemoteAnimationTargetCompat[] {
+                createTarget(1, MODE_OPENING, ACTIVITY_TYPE_STANDARD, mSurfaces[0], dp),
+                createTarget(2, MODE_CLOSING, ACTIVITY_TYPE_HOME, mSurfaces[1], dp)
+        };
+    }
+
+    @After
+    public void tearDown() {
+        // Let the transactions scheduled by the last frame be applied first
+        waitForFrame();
+        for (SurfaceControl surface : mSurfaces) {
+            surface.release();
+        }
+        mSession.kill();
+    }
+
+    @Test
+    public void testClipAnimationFramesDontAllocate() {
+        ClipAnimationHelper helper = new ClipAnimationHelper();
+        RemoteAnimationTargetSet targetSet = new RemoteAnimationTargetSet(mTargets, MODE_OPENING);
+        SyncRtSurfaceTransactionApplier applier = createApplier();
+        runOnMainSync(() -> {
+            DeviceProfile dp = mLauncher.getDeviceProfile();
+            helper.updateSource(new Rect(0, 0, dp.widthPx, dp.heightPx), mTargets[0]);
+            TransformedRect targetRect = new TransformedRect();
+            targetRect.rect.set(dp.widthPx / 4, dp.heightPx / 4, dp.widthPx / 2, dp.heightPx / 2);
+            helper.updateTargetRect(targetRect);
+            helper.prepareAnimation(true /* isOpening */);
+        });
+
+        assertFramesDontAllocate(applier,
+                progress -> helper.applyTransform(targetSet, progress, applier));
+    }
+
+    @Test
+    public void testClosingWindowFramesDontAllocate() {
+        LauncherAppTransitionManagerImpl manager =
+                (LauncherAppTransitionManagerImpl) mLauncher.getAppTransitionManager();
+        ValueAnimator[] animator = new ValueAnimator[1];
+        runOnMainSync(() -> animator[0] =
+                findWindowAnimator(manager.getClosingWindowAnimators(mTargets)));
+
+        assertFramesDontAllocate(null, animator[0]::setCurrentFraction);
+    }
+
+    @Test
+    public void testOpeningWindowFramesDontAllocate() {
+        LauncherAppTransitionManagerImpl manager =
+                (LauncherAppTransitionManagerImpl) mLauncher.getAppTransitionManager();
+        DeviceProfile dp = mLauncher.getDeviceProfile();
+        Rect windowTargetBounds = new Rect(0, 0, dp.widthPx, dp.heightPx);
+
+        // The window animator follows the floating view created for the launching view
+        View[] view = new View[1];
+        runOnMainSync(() -> {
+            view[0] = new View(mLauncher);
+            mLauncher.getDragLayer().addView(view[0],
+                    new DragLayer.LayoutParams(dp.iconSizePx, dp.iconSizePx));
+        });
+        waitForFrame();
+
+        AnimatorSet iconAnimator = new AnimatorSet();
+        ValueAnimator[] animator = new ValueAnimator[1];
+        runOnMainSync(() -> {
+            manager.playIconAnimators(iconAnimator, view[0], windowTargetBounds);
+            animator[0] = manager.getOpeningWindowAnimators(view[0], mTargets,
+                    windowTargetBounds, false /* reversed */);
+        });
+
+        try {
+            assertFramesDontAllocate(null, animator[0]::setCurrentFraction);
+        } finally {
+            runOnMainSync(() -> {
+                // Ending the icon animation removes the floating view again
+                iconAnimator.end();
+                mLauncher.getDragLayer().removeView(view[0]);
+            });
+        }
+    }
+
+    private void assertFramesDontAllocate(SyncRtSurfaceTransactionApplier applier, Frame frame) {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            float progress = (float) i / FRAMES;
+            runOnMainSync(() -> frame.apply(progress));
+            waitForFrame();
+        }
+        int allocatedFrames = applier != null ? applier.getAllocatedFrameCount() : 0;
+
+        for (int i = WARM_UP_FRAMES; i < FRAMES; i++) {
+            float progress = (float) i / FRAMES;
+            int[] allocations = new int[1];
+            runOnMainSync(() -> {
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                frame.apply(progress);
+                Debug.stopAllocCounting();
+                allocations[0] = Debug.getThreadAllocCount();
+            });
+            assertEquals("Allocations in frame " + i, 0, allocations[0]);
+            waitForFrame();
+        }
+
+        if (applier != null) {
+            // The frames applied on the RenderThread are reused as well
+            assertEquals(allocatedFrames, applier.getAllocatedFrameCount());
+        }
+    }
+
+    /**
+     * Returns the animator transforming the windows, which is wrapped in a set by some of the
+     * transitions.
+     */
+    private static ValueAnimator findWindowAnimator(Animator animator) {
+        if (animator instanceof AnimatorSet) {
+            for (Animator child : ((AnimatorSet) animator).getChildAnimations()) {
+                ValueAnimator windowAnimator = findWindowAnimator(child);
+                if (windowAnimator != null) {
+                    return windowAnimator;
+                }
+            }
+            return null;
+        }
+        return animator instanceof ValueAnimator ? (ValueAnimator) animator : null;
+    }
+
+    private SyncRtSurfaceTransactionApplier createApplier() {
+        SyncRtSurfaceTransactionApplier[] applier = new SyncRtSurfaceTransactionApplier[1];
+        runOnMainSync(() -> applier[0] =
+                new SyncRtSurfaceTransactionApplier(mLauncher.getDragLayer()));
+        return applier[0];
+    }
+
+    /**
+     * Returns a surface standing in for the window of a target. It is never shown on screen.
+     */
+    private SurfaceControl createSurface(DeviceProfile dp) {
+        return new SurfaceControl.Builder(mSession)
+                .setName("RemoteAnimationAllocationTest")
+                .setSize(dp.widthPx, dp.heightPx)
+                .build();
+    }
+
+    private static RemoteAnimationTargetCompat createTarget(int taskId, int mode,
+            int activityType, SurfaceControl surface, DeviceProfile dp) {
+        return new RemoteAnimationTargetCompat(taskId, mode, new SurfaceControlCompat(surface),
+                new Point(), new Rect(0, 0, dp.widthPx, dp.heightPx), new Rect(dp.getInsets()),
+                activityType, false /* isNotInRecents */);
+    }
+
+    private interface Frame {
+        void apply(float progress);
+    }
+}
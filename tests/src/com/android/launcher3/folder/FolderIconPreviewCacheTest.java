@@ -0,0 +1,172 @@
+package com.android.launcher3.folder;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import com.android.launcher3.FolderInfo;
+import com.android.launcher3.Launcher;
+import com.android.launcher3.LauncherSettings;
+import com.android.launcher3.R;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.util.rule.LauncherActivityRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FolderIconPreviewCache}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class FolderIconPreviewCacheTest {
+
+    private static final int[] COLORS = {Color.RED, Color.GREEN, Color.BLUE};
+
+    @Rule public LauncherActivityRule mActivityMonitor = new LauncherActivityRule();
+
+    private FolderIcon mIcon;
+    private FolderIconPreviewCache mCache;
+
+    @Before
+    public void setup() {
+        mActivityMonitor.startLauncher();
+        runOnMainSync(() -> {
+            Launcher launcher = mActivityMonitor.getActivity();
+            FolderInfo info = new FolderInfo();
+            info.title = "Folder";
+            for (int i = 0; i < COLORS.length; i++) {
+                info.add(createItem(i), false);
+            }
+            mIcon = FolderIcon.fromXml(R.layout.folder_icon, launcher, launcher.getDragLayer(), info);
+            layout(launcher.getDeviceProfile().cellWidthPx, launcher.getDeviceProfile().cellHeightPx);
+            mCache = mIcon.getPreviewCache();
+        });
+    }
+
+    @Test
+    public void testCachedAndLiveDrawingAreIdentical() {
+        runOnMainSync(() -> {
+            // Draw once so that the drawing params are computed
+            drawIcon();
+
+            Bitmap live = createBitmap();
+            mIcon.drawPreview(new Canvas(live));
+            mCache.invalidate();
+            Bitmap cached = createBitmap();
+            mCache.draw(new Canvas(cached), mIcon, mIcon.mBackground.getDrawingState());
+
+            assertTrue(mCache.isValid());
+            assertTrue(live.sameAs(cached));
+        });
+    }
+
+    @Test
+    public void testStaticIconIsOnlyRenderedOnce() {
+        runOnMainSync(() -> {
+            for (int i = 0; i < 20; i++) {
+                drawIcon();
+            }
+            assertEquals(1, mCache.getRenderCount());
+        });
+    }
+
+    @Test
+    public void testContentChangesInvalidate() {
+        runOnMainSync(() -> {
+            drawIcon();
+            mIcon.onItemsChanged(false);
+            assertFalse(mCache.isValid());
+            drawIcon();
+            assertEquals(2, mCache.getRenderCount());
+
+            Drawable previewDrawable = mIcon.getPreviewItems().get(0).getCompoundDrawables()[1];
+            mIcon.invalidateDrawable(previewDrawable);
+            assertFalse(mCache.isValid());
+            drawIcon();
+            assertEquals(3, mCache.getRenderCount());
+
+            mIcon.getPreviewItemManager().hidePreviewItem(0, true);
+            assertFalse(mCache.isValid());
+            mIcon.getPreviewItemManager().hidePreviewItem(0, false);
+        });
+    }
+
+    @Test
+    public void testSizeAndThemeChangesInvalidate() {
+        runOnMainSync(() -> {
+            drawIcon();
+            layout(mIcon.getWidth() + 10, mIcon.getHeight() + 10);
+            drawIcon();
+            assertEquals(2, mCache.getRenderCount());
+
+            // The background color is part of the drawing state
+            mIcon.mBackground.setStartOpacity(0.5f);
+            drawIcon();
+            assertEquals(3, mCache.getRenderCount());
+
+            mIcon.setBackgroundVisible(false);
+            assertFalse(mCache.isValid());
+            mIcon.setBackgroundVisible(true);
+            drawIcon();
+            assertEquals(4, mCache.getRenderCount());
+        });
+    }
+
+    @Test
+    public void testAnimationsAreDrawnLive() {
+        runOnMainSync(() -> {
+            drawIcon();
+            mIcon.mAnimating = true;
+            drawIcon();
+            assertFalse(mCache.isValid());
+            mIcon.mAnimating = false;
+            drawIcon();
+            assertEquals(2, mCache.getRenderCount());
+        });
+    }
+
+    private void layout(int width, int height) {
+        mIcon.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        mIcon.layout(0, 0, width, height);
+    }
+
+    private void drawIcon() {
+        mIcon.draw(new Canvas(createBitmap()));
+    }
+
+    private Bitmap createBitmap() {
+        return Bitmap.createBitmap(mIcon.getWidth(), mIcon.getHeight(), Bitmap.Config.ARGB_8888);
+    }
+
+    private static ShortcutInfo createItem(int index) {
+        ShortcutInfo item = new ShortcutInfo();
+        item.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        item.title = "Item " + index;
+        item.intent = new Intent(Intent.ACTION_MAIN)
+                .setComponent(new ComponentName("com.example", "Activity" + index));
+        item.rank = index;
+        item.iconBitmap = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888);
+        item.iconBitmap.eraseColor(COLORS[index]);
+        item.iconColor = COLORS[index];
+        return item;
+    }
+
+    private static void runOnMainSync(Runnable r) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(r);
+    }
+}
@@ -0,0 +1,108 @@
+package com.android.launcher3.graphics;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.util.Themes;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the colors derived in {@link BitmapInfo}, which have to match {@link IconPalette}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BitmapInfoTest {
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void testDerivedColorsMatchIconPalette() {
+        int accent = Themes.getColorAccent(mContext);
+        for (int color : createColorSweep()) {
+            BitmapInfo info = new BitmapInfo();
+            info.color = color;
+            info.ensureDerivedColors();
+
+            String message = Integer.toHexString(color);
+            assertEquals(message, IconPalette.getMutedColor(mContext, color, 0.54f),
+                    info.badgeColor);
+            assertEquals(message, IconPalette.getPreloadProgressColor(mContext, color),
+                    info.preloadColor != Color.TRANSPARENT ? info.preloadColor : accent);
+            assertEquals(message, IconPalette.resolveContrastColor(mContext, color, Color.WHITE),
+                    info.contrastColor);
+        }
+    }
+
+    @Test
+    public void testDerivedColorsAreApplied() {
+        for (int color : createColorSweep()) {
+            BitmapInfo info = new BitmapInfo();
+            info.color = color;
+
+            AppInfo app = new AppInfo();
+            info.applyTo(app);
+            assertTrue(app.hasDerivedColors());
+            assertEquals(info.badgeColor, app.badgeColor);
+            assertEquals(info.preloadColor, app.preloadColor);
+            assertEquals(info.contrastColor, app.contrastColor);
+
+            AppInfo copy = new AppInfo(app);
+            assertEquals(app.badgeColor, copy.badgeColor);
+            assertEquals(app.preloadColor, copy.preloadColor);
+            assertEquals(app.contrastColor, copy.contrastColor);
+        }
+    }
+
+    @Test
+    public void testStoredColorsAreKeptUntilColorChanges() {
+        BitmapInfo info = new BitmapInfo();
+        info.color = Color.RED;
+        // Values read from the cache are used as is
+        info.setDerivedColors(1, 2, 3);
+        info.ensureDerivedColors();
+        assertEquals(1, info.badgeColor);
+
+        BitmapInfo target = new BitmapInfo();
+        info.applyTo(target);
+        target.ensureDerivedColors();
+        assertEquals(1, target.badgeColor);
+
+        info.color = Color.BLUE;
+        info.ensureDerivedColors();
+        assertEquals(IconPalette.getBadgeColor(Color.BLUE), info.badgeColor);
+    }
+
+    private static List<Integer> createColorSweep() {
+        List<Integer> colors = new ArrayList<>();
+        float[] saturations = {0f, 0.1f, 0.19f, 0.21f, 0.5f, 1f};
+        float[] values = {0.05f, 0.3f, 0.59f, 0.61f, 0.9f, 1f};
+        for (int hue = 0; hue < 360; hue += 10) {
+            for (float saturation : saturations) {
+                for (float value : values) {
+                    colors.add(Color.HSVToColor(new float[] {hue, saturation, value}));
+                }
+            }
+        }
+        colors.add(Color.BLACK);
+        colors.add(Color.WHITE);
+        return colors;
+    }
+}
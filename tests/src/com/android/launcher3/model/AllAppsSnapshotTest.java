@@ -0,0 +1,179 @@
+package com.android.launcher3.model;
+
+import android.content.ComponentName;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.ItemInfoWithIcon;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.FlagOp;
+import com.android.launcher3.util.ItemInfoMatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AllAppsSnapshot}
+ */
+@RunWith(AndroidJUnit4.class)
+public class AllAppsSnapshotTest extends BaseModelUpdateTaskTestCase {
+
+    private static final String NEW_LABEL = "new-label";
+    private static final int FLAG = ItemInfoWithIcon.FLAG_DISABLED_SUSPENDED;
+
+    @Before
+    public void initData() throws Exception {
+        initializeData("cache_data_updated_task_data");
+    }
+
+    @Test
+    public void testSnapshotPublishedAfterTask() throws Exception {
+        assertNull(allAppsList.getSnapshot());
+        allAppsList.publishSnapshot();
+        AllAppsSnapshot first = allAppsList.getSnapshot();
+        assertEquals(4, first.size());
+
+        iconCache.addCache(ComponentName.unflattenFromString("app1/class1"), NEW_LABEL);
+        executeTaskForTest(new CacheDataUpdatedTask(CacheDataUpdatedTask.OP_CACHE_UPDATE,
+                myUser, new HashSet<>(Arrays.asList("app1"))));
+
+        AllAppsSnapshot second = allAppsList.getSnapshot();
+        assertTrue(second.version > first.version);
+        ComponentKey updated = key("app1/class1");
+        ComponentKey unchanged = key("app2/class1");
+        assertNotSame(first.get(updated), second.get(updated));
+        assertEquals(NEW_LABEL, second.get(updated).title);
+        assertSame(first.get(unchanged), second.get(unchanged));
+
+        // The previous snapshot is not affected by the update
+        assertTrue(!NEW_LABEL.equals(first.get(updated).title));
+    }
+
+    @Test
+    public void testListenersOnlyNotifiedOnChanges() {
+        AtomicInteger notified = new AtomicInteger();
+        allAppsList.addSnapshotListener(snapshot -> notified.incrementAndGet());
+        allAppsList.publishSnapshot();
+        AllAppsSnapshot snapshot = allAppsList.getSnapshot();
+        allAppsList.publishSnapshot();
+        assertSame(snapshot, allAppsList.getSnapshot());
+        assertEquals(1, notified.get());
+
+        allAppsList.removePackage("app2", myUser);
+        allAppsList.publishSnapshot();
+        assertEquals(2, notified.get());
+        assertEquals(2, allAppsList.getSnapshot().size());
+        assertEquals(4, snapshot.size());
+    }
+
+    @Test
+    public void testSnapshotConsistentUnderConcurrentUpdates() throws Exception {
+        allAppsList.publishSnapshot();
+        final HashSet<String> packages = new HashSet<>(Arrays.asList("app1", "app2"));
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        // Acts as the worker thread, changing all apps at once in each published batch
+        Thread writer = new Thread(() -> {
+            boolean flagged = false;
+            for (int i = 0; i < 2000; i++) {
+                flagged = !flagged;
+                allAppsList.updateDisabledFlags(ItemInfoMatcher.ofPackages(packages, myUser),
+                        flagged ? FlagOp.addFlag(FLAG) : FlagOp.removeFlag(FLAG));
+                if (i % 3 == 0) {
+                    allAppsList.removePackage("app2", myUser);
+                } else if (allAppsList.size() == 2) {
+                    allAppsList.add(newApp("app2/class1", flagged), null);
+                    allAppsList.add(newApp("app2/class2", flagged), null);
+                }
+                allAppsList.publishSnapshot();
+            }
+            done.set(true);
+        });
+
+        int readerCount = 3;
+        CountDownLatch readersDone = new CountDownLatch(readerCount);
+        for (int r = 0; r < readerCount; r++) {
+            new Thread(() -> {
+                try {
+                    int lastVersion = 0;
+                    while (!done.get() && failure.get() == null) {
+                        AllAppsSnapshot snapshot = allAppsList.getSnapshot();
+                        if (snapshot.version < lastVersion) {
+                            failure.set("Version went back from " + lastVersion);
+                        }
+                        lastVersion = snapshot.version;
+                        List<Integer> flags = checkConsistent(snapshot, failure);
+                        Thread.yield();
+                        // The snapshot doesn't change while newer ones are published
+                        if (!flags.equals(readFlags(snapshot))) {
+                            failure.set("Snapshot " + snapshot.version + " was modified");
+                        }
+                    }
+                } finally {
+                    readersDone.countDown();
+                }
+            }).start();
+        }
+
+        writer.start();
+        writer.join();
+        assertTrue(readersDone.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get(), failure.get());
+    }
+
+    private static List<Integer> checkConsistent(AllAppsSnapshot snapshot,
+            AtomicReference<String> failure) {
+        List<Integer> flags = readFlags(snapshot);
+        int size = snapshot.size();
+        if (size != 2 && size != 4) {
+            failure.set("Partial package in snapshot " + snapshot.version + ": " + size);
+        }
+        for (int flag : flags) {
+            if ((flag & FLAG) != (flags.get(0) & FLAG)) {
+                failure.set("Partial update in snapshot " + snapshot.version);
+            }
+        }
+        return flags;
+    }
+
+    private static List<Integer> readFlags(AllAppsSnapshot snapshot) {
+        List<Integer> flags = new ArrayList<>();
+        for (AppInfo info : snapshot.getApps()) {
+            flags.add(info.runtimeStatusFlags);
+        }
+        return flags;
+    }
+
+    private AppInfo newApp(String component, boolean flagged) {
+        AppInfo info = new AppInfo();
+        info.componentName = ComponentName.unflattenFromString(component);
+        info.intent = AppInfo.makeLaunchIntent(info.componentName);
+        info.user = myUser;
+        if (flagged) {
+            info.runtimeStatusFlags |= FLAG;
+        }
+        return info;
+    }
+
+    private ComponentKey key(String component) {
+        return new ComponentKey(ComponentName.unflattenFromString(component), myUser);
+    }
+}
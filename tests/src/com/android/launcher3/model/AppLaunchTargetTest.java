@@ -0,0 +1,231 @@
+package com.android.launcher3.model;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.IconCache;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherProvider.DatabaseHelper;
+import com.android.launcher3.LauncherSettings.Favorites;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link AppLaunchTarget}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppLaunchTargetTest {
+
+    private static final String TAG = "AppLaunchTargetTest";
+
+    private static final String BENCHMARK_DB_FILE = "app_launch_target_test.db";
+    private static final int BENCHMARK_APPS = 300;
+    private static final int BENCHMARK_SHORTCUTS = 20;
+
+    // The columns read by the loader cursor, without the app targets
+    private static final String[] PARSED_COLUMNS = new String[] {
+            Favorites._ID, Favorites.TITLE, Favorites.INTENT, Favorites.CONTAINER,
+            Favorites.SCREEN, Favorites.CELLX, Favorites.CELLY, Favorites.ITEM_TYPE,
+            Favorites.ICON_PACKAGE, Favorites.ICON_RESOURCE, Favorites.ICON,
+            Favorites.CUSTOM_ICON, Favorites.RESTORED, Favorites.PROFILE_ID
+    };
+
+    private static final ComponentName[] APPS = new ComponentName[] {
+            new ComponentName("com.example", "com.example.Main"),
+            new ComponentName("com.example", "com.other.Main"),
+            new ComponentName("com.example", "com.example.Main$Inner"),
+            new ComponentName("com.example_1", "Main"),
+    };
+
+    @Test
+    public void testToUri_matchesLaunchIntent() {
+        for (ComponentName cn : APPS) {
+            assertEquals(AppInfo.makeLaunchIntent(cn).toUri(0), AppLaunchTarget.toUri(cn));
+        }
+    }
+
+    @Test
+    public void testParse_launchIntents() {
+        for (ComponentName cn : APPS) {
+            assertEquals(cn, AppLaunchTarget.parse(AppInfo.makeLaunchIntent(cn).toUri(0)));
+        }
+    }
+
+    @Test
+    public void testParse_otherIntents() {
+        ComponentName cn = APPS[0];
+        assertNull(AppLaunchTarget.parse(null));
+        assertNull(AppLaunchTarget.parse(""));
+        assertNull(AppLaunchTarget.parse(AppInfo.makeLaunchIntent(cn)
+                .putExtra("key", "value").toUri(0)));
+        assertNull(AppLaunchTarget.parse(AppInfo.makeLaunchIntent(cn)
+                .setPackage(cn.getPackageName()).toUri(0)));
+        assertNull(AppLaunchTarget.parse(new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER).setComponent(cn).toUri(0)));
+        assertNull(AppLaunchTarget.parse(new Intent(Intent.ACTION_VIEW)
+                .setPackage(cn.getPackageName()).toUri(0)));
+    }
+
+    @Test
+    public void testGetIntent_sameAsParsed() throws URISyntaxException {
+        for (ComponentName cn : APPS) {
+            String uri = AppLaunchTarget.toUri(cn);
+            Intent intent = AppLaunchTarget.getIntent(uri, cn.getPackageName(), cn.getClassName());
+            assertNotNull(intent);
+            assertEquals(uri, intent.toUri(0));
+            Intent parsed = Intent.parseUri(uri, 0);
+            assertTrue(parsed.filterEquals(intent));
+            assertEquals(parsed.getFlags(), intent.getFlags());
+        }
+    }
+
+    @Test
+    public void testGetIntent_staleTarget() {
+        String uri = AppLaunchTarget.toUri(APPS[0]);
+        assertNull(AppLaunchTarget.getIntent(uri, null, null));
+        assertNull(AppLaunchTarget.getIntent(uri, APPS[1].getPackageName(),
+                APPS[1].getClassName()));
+    }
+
+    @Test
+    public void testAddTargetColumns() {
+        ContentValues values = new ContentValues();
+        AppLaunchTarget.addTargetColumns(values);
+        assertEquals(0, values.size());
+
+        values.put(Favorites.INTENT, AppLaunchTarget.toUri(APPS[0]));
+        AppLaunchTarget.addTargetColumns(values);
+        assertEquals(APPS[0].getPackageName(), values.getAsString(Favorites.TARGET_PACKAGE));
+        assertEquals(APPS[0].getClassName(), values.getAsString(Favorites.TARGET_CLASS));
+
+        // Changing to any other intent clears the target
+        values.put(Favorites.INTENT, new Intent(Intent.ACTION_VIEW).toUri(0));
+        AppLaunchTarget.addTargetColumns(values);
+        assertTrue(values.containsKey(Favorites.TARGET_PACKAGE));
+        assertNull(values.getAsString(Favorites.TARGET_PACKAGE));
+        assertNull(values.getAsString(Favorites.TARGET_CLASS));
+    }
+
+    @Test
+    @MediumTest
+    public void testParseIntentBenchmark() {
+        // A large workspace worth of app shortcuts, and some items which need to be parsed
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(BENCHMARK_DB_FILE);
+        DatabaseHelper helper = new DatabaseHelper(context, null, BENCHMARK_DB_FILE) {
+            @Override
+            public void onOpen(SQLiteDatabase db) { }
+        };
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < BENCHMARK_APPS; i++) {
+                insert(db, i, Favorites.ITEM_TYPE_APPLICATION, AppLaunchTarget.toUri(
+                        new ComponentName("com.example.app" + i, "com.example.Main" + i)));
+            }
+            for (int i = 0; i < BENCHMARK_SHORTCUTS; i++) {
+                insert(db, BENCHMARK_APPS + i, Favorites.ITEM_TYPE_SHORTCUT,
+                        new Intent(Intent.ACTION_VIEW).setComponent(APPS[0])
+                                .putExtra("index", i).toUri(0));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        LauncherAppState app = mock(LauncherAppState.class);
+        when(app.getContext()).thenReturn(context);
+        when(app.getIconCache()).thenReturn(mock(IconCache.class));
+        when(app.getInvariantDeviceProfile()).thenReturn(new InvariantDeviceProfile());
+
+        try {
+            // Loading items without their target parses every intent
+            long start = System.nanoTime();
+            List<Intent> parsed = new ArrayList<>();
+            int parseCount = loadIntents(app, db, PARSED_COLUMNS, parsed);
+            long parsedTime = System.nanoTime() - start;
+            assertEquals(BENCHMARK_APPS + BENCHMARK_SHORTCUTS, parseCount);
+
+            start = System.nanoTime();
+            List<Intent> loaded = new ArrayList<>();
+            parseCount = loadIntents(app, db, null, loaded);
+            long loadedTime = System.nanoTime() - start;
+            assertEquals(BENCHMARK_SHORTCUTS, parseCount);
+
+            assertEquals(parsed.size(), loaded.size());
+            for (int i = 0; i < parsed.size(); i++) {
+                assertEquals(parsed.get(i).toUri(0), loaded.get(i).toUri(0));
+            }
+
+            Log.d(TAG, "Loading " + parsed.size() + " intents: parsed " + parsedTime / 1000
+                    + "us, with targets " + loadedTime / 1000 + "us");
+        } finally {
+            helper.close();
+            context.deleteDatabase(BENCHMARK_DB_FILE);
+        }
+    }
+
+    /**
+     * Loads the intents of all items through {@link LoaderCursor#parseIntent} and returns the
+     * number of intents which had to be parsed.
+     */
+    private static int loadIntents(LauncherAppState app, SQLiteDatabase db, String[] columns,
+            List<Intent> out) {
+        try (CountingLoaderCursor c = new CountingLoaderCursor(db.query(Favorites.TABLE_NAME,
+                columns, null, null, null, null, Favorites._ID), app)) {
+            while (c.moveToNext()) {
+                out.add(c.parseIntent());
+            }
+            return c.parseCount;
+        }
+    }
+
+    private static void insert(SQLiteDatabase db, long id, int itemType, String intent) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites._ID, id);
+        values.put(Favorites.ITEM_TYPE, itemType);
+        values.put(Favorites.INTENT, intent);
+        // Same as the provider does for every insert
+        AppLaunchTarget.addTargetColumns(values);
+        db.insert(Favorites.TABLE_NAME, null, values);
+    }
+
+    private static class CountingLoaderCursor extends LoaderCursor {
+
+        int parseCount;
+
+        CountingLoaderCursor(Cursor c, LauncherAppState app) {
+            super(c, app);
+        }
+
+        @Override
+        Intent parseUri(String uri) throws URISyntaxException {
+            parseCount++;
+            return super.parseUri(uri);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.android.launcher3.model;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import ch.deletescape.lawnchair.adaptive.IconShape;
+import ch.deletescape.lawnchair.adaptive.IconShapeManager;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.BitmapInfo;
+import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.model.IconBlobCache.IconRenderer;
+import com.android.launcher3.model.IconBlobCache.LauncherIconRenderer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.android.launcher3.model.IconBlobCache.TYPE_CUSTOM_ICON;
+import static com.android.launcher3.model.IconBlobCache.TYPE_ICON;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link IconBlobCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class IconBlobCacheTest {
+
+    private static final String CONFIG = IconBlobCache.getIconConfig(192, 480, "circle");
+
+    private Context mContext;
+    private CountingRenderer mRenderer;
+    private IconBlobCache mCache;
+
+    private byte[] mRedIcon;
+    private byte[] mBlueIcon;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mRenderer = new CountingRenderer(new LauncherIconRenderer(mContext));
+        mCache = new IconBlobCache(mRenderer, Utilities.THREAD_POOL_EXECUTOR);
+
+        mRedIcon = createBlob(Color.RED);
+        mBlueIcon = createBlob(Color.BLUE);
+    }
+
+    @Test
+    public void testRenderedIconMatchesLauncherIcons() {
+        mCache.startLoad(CONFIG);
+        BitmapInfo[] loaded = new BitmapInfo[1];
+        mCache.loadIcon(1, TYPE_ICON, mRedIcon, icon -> loaded[0] = icon);
+        mCache.finishLoad();
+        assertNotNull(loaded[0]);
+
+        BitmapInfo expected;
+        try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
+            expected = li.createIconBitmap(
+                    BitmapFactory.decodeByteArray(mRedIcon, 0, mRedIcon.length));
+        }
+        assertTrue(expected.icon.sameAs(loaded[0].icon));
+        assertEquals(expected.color, loaded[0].color);
+
+        // Cached icons are the same as the rendered ones
+        mCache.startLoad(CONFIG);
+        assertSame(loaded[0], mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+        assertSame(loaded[0], mCache.getIcon(1, TYPE_ICON, mRedIcon));
+        assertEquals(1, mRenderer.count.get());
+    }
+
+    @Test
+    public void testReloadSkipsRendering() {
+        mCache.startLoad(CONFIG);
+        mCache.getIcon(1, TYPE_ICON, mRedIcon);
+        mCache.getIcon(1, TYPE_CUSTOM_ICON, mBlueIcon);
+        mCache.getIcon(2, TYPE_ICON, mRedIcon);
+        mCache.finishLoad();
+        assertEquals(3, mRenderer.count.get());
+
+        mCache.startLoad(CONFIG);
+        assertNotNull(mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+        assertNotNull(mCache.getCachedIcon(1, TYPE_CUSTOM_ICON, mBlueIcon));
+        assertNotNull(mCache.getCachedIcon(2, TYPE_ICON, mRedIcon));
+        mCache.finishLoad();
+        assertEquals(3, mRenderer.count.get());
+    }
+
+    @Test
+    public void testChangedBlobRenderedAgain() {
+        mCache.startLoad(CONFIG);
+        BitmapInfo red = mCache.getIcon(1, TYPE_ICON, mRedIcon);
+        mCache.finishLoad();
+
+        mCache.startLoad(CONFIG);
+        assertNull(mCache.getCachedIcon(1, TYPE_ICON, mBlueIcon));
+        BitmapInfo blue = mCache.getIcon(1, TYPE_ICON, mBlueIcon);
+        assertEquals(2, mRenderer.count.get());
+        assertFalse(red.icon.sameAs(blue.icon));
+    }
+
+    @Test
+    public void testShapeChangeInvalidates() {
+        mCache.startLoad(CONFIG);
+        mCache.getIcon(1, TYPE_ICON, mRedIcon);
+        mCache.finishLoad();
+
+        mCache.startLoad(IconBlobCache.getIconConfig(192, 480, "square"));
+        assertNull(mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+    }
+
+    @Test
+    public void testShapeManagerChangeInvalidates() {
+        InvariantDeviceProfile idp = LauncherAppState.getIDP(mContext);
+        IconShapeManager[] shapeManager = new IconShapeManager[1];
+        IconShape[] originalShape = new IconShape[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            shapeManager[0] = IconShapeManager.Companion.getInstance(mContext);
+            originalShape[0] = shapeManager[0].getIconShape();
+        });
+        IconShape otherShape = IconShape.Circle.INSTANCE.toString().equals(
+                originalShape[0].toString()) ? IconShape.Square.INSTANCE : IconShape.Circle.INSTANCE;
+
+        try {
+            String config = IconBlobCache.getIconConfig(mContext, idp);
+            mCache.startLoad(config);
+            mCache.getIcon(1, TYPE_ICON, mRedIcon);
+            mCache.finishLoad();
+            assertEquals(config, IconBlobCache.getIconConfig(mContext, idp));
+
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                    () -> shapeManager[0].setIconShape(otherShape));
+            String changedConfig = IconBlobCache.getIconConfig(mContext, idp);
+            assertNotEquals(config, changedConfig);
+
+            mCache.startLoad(changedConfig);
+            assertNull(mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+        } finally {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                    () -> shapeManager[0].setIconShape(originalShape[0]));
+        }
+    }
+
+    @Test
+    public void testDensityChangeInvalidates() {
+        mCache.startLoad(CONFIG);
+        mCache.getIcon(1, TYPE_ICON, mRedIcon);
+        mCache.finishLoad();
+
+        mCache.startLoad(IconBlobCache.getIconConfig(192, 320, "circle"));
+        assertNull(mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+
+        mCache.startLoad(IconBlobCache.getIconConfig(144, 320, "circle"));
+        assertNull(mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+    }
+
+    @Test
+    public void testRemovedRowsDropped() {
+        mCache.startLoad(CONFIG);
+        mCache.getIcon(1, TYPE_ICON, mRedIcon);
+        mCache.getIcon(2, TYPE_ICON, mBlueIcon);
+        mCache.finishLoad();
+        assertEquals(2, mCache.size());
+
+        mCache.startLoad(CONFIG);
+        mCache.getCachedIcon(2, TYPE_ICON, mBlueIcon);
+        mCache.finishLoad();
+        assertEquals(1, mCache.size());
+        assertNull(mCache.getCachedIcon(1, TYPE_ICON, mRedIcon));
+    }
+
+    @Test
+    public void testInvalidBlobNotCached() {
+        mCache.startLoad(CONFIG);
+        BitmapInfo[] loaded = new BitmapInfo[] { new BitmapInfo() };
+        mCache.loadIcon(1, TYPE_ICON, new byte[] { 1, 2, 3 }, icon -> loaded[0] = icon);
+        mCache.finishLoad();
+        assertNull(loaded[0]);
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void testMissesRenderedInParallel() {
+        int count = 4;
+        // Each render waits for all others to start, which only finishes if they run in parallel
+        CountDownLatch started = new CountDownLatch(count);
+        IconRenderer renderer = data -> {
+            started.countDown();
+            try {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return mRenderer.render(data);
+        };
+        IconBlobCache cache = new IconBlobCache(renderer, Executors.newFixedThreadPool(count));
+
+        cache.startLoad(CONFIG);
+        AtomicInteger loaded = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            cache.loadIcon(i, TYPE_ICON, mRedIcon, icon -> {
+                assertNotNull(icon);
+                loaded.incrementAndGet();
+            });
+        }
+        // Icons are only delivered once the load finishes
+        assertEquals(0, loaded.get());
+        cache.finishLoad();
+        assertEquals(count, loaded.get());
+    }
+
+    private static byte[] createBlob(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return Utilities.flattenBitmap(bitmap);
+    }
+
+    private static class CountingRenderer implements IconRenderer {
+
+        final AtomicInteger count = new AtomicInteger();
+        private final IconRenderer mRenderer;
+
+        CountingRenderer(IconRenderer renderer) {
+            mRenderer = renderer;
+        }
+
+        @Override
+        public BitmapInfo render(byte[] data) {
+            count.incrementAndGet();
+            return mRenderer.render(data);
+        }
+    }
+}
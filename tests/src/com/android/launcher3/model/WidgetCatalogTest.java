@@ -0,0 +1,269 @@
+package com.android.launcher3.model;
+
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppWidgetProviderInfo;
+import com.android.launcher3.util.PackageUserKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link WidgetCatalog}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class WidgetCatalogTest {
+
+    private static final String PREFS = "widget_catalog_test";
+
+    private SharedPreferences mPrefs;
+    private FakeSource mSource;
+    private WidgetCatalog mCatalog;
+
+    @Before
+    public void setup() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mPrefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        mSource = new FakeSource();
+        mCatalog = new WidgetCatalog(mSource, mPrefs);
+
+        mSource.install("app1", "1", "Clock", "Weather");
+        mSource.install("app2", "1", "Notes");
+    }
+
+    @Test
+    public void testFullUpdate_reusesUnchangedPackages() {
+        List<WidgetItem> first = updateAll();
+        assertEquals(3, mSource.labelLoads);
+
+        List<WidgetItem> second = updateAll();
+        assertEquals(3, mSource.labelLoads);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testInstall() {
+        updateAll();
+        mSource.install("app3", "1", "Music");
+        List<WidgetItem> items = update("app3");
+        assertLabels(items, "Music");
+        assertEquals(4, mSource.labelLoads);
+
+        assertLabels(updateAll(), "Clock", "Weather", "Notes", "Music");
+        assertEquals(4, mSource.labelLoads);
+    }
+
+    @Test
+    public void testUpdate() {
+        updateAll();
+        mSource.install("app1", "2", "Clock", "Weather", "Calendar");
+        assertLabels(update("app1"), "Clock", "Weather", "Calendar");
+        assertEquals(6, mSource.labelLoads);
+
+        // Labels change with the package
+        mSource.install("app2", "2", "Notes 2");
+        assertLabels(updateAll(), "Clock", "Weather", "Calendar", "Notes 2");
+        assertEquals(7, mSource.labelLoads);
+    }
+
+    @Test
+    public void testRemove() {
+        updateAll();
+        assertTrue(mPrefs.contains("app2"));
+        mSource.uninstall("app2");
+        assertLabels(update("app2"));
+        assertFalse(mPrefs.contains("app2"));
+        assertLabels(updateAll(), "Clock", "Weather");
+
+        // Packages without widgets are dropped on full updates
+        mSource.install("app1", "2");
+        assertLabels(updateAll());
+        assertFalse(mPrefs.contains("app1"));
+    }
+
+    @Test
+    public void testWidgetsChangedWithoutUpdate() {
+        updateAll();
+        mSource.install("app1", "1", "Clock");
+        assertLabels(update("app1"), "Clock");
+    }
+
+    @Test
+    public void testRestart_readsStoredLabels() {
+        updateAll();
+        WidgetCatalog restarted = new WidgetCatalog(mSource, mPrefs);
+        mSource.labelLoads = 0;
+        assertLabels(restarted.update(mSource.getProviders(null), null),
+                "Clock", "Weather", "Notes");
+        assertEquals(0, mSource.labelLoads);
+
+        // Updated packages are loaded again
+        mSource.install("app2", "2", "Notes 2");
+        restarted = new WidgetCatalog(mSource, mPrefs);
+        assertLabels(restarted.update(mSource.getProviders(null), null),
+                "Clock", "Weather", "Notes 2");
+        assertEquals(1, mSource.labelLoads);
+    }
+
+    @Test
+    public void testConfigChange_loadsLabelsAgain() {
+        updateAll();
+        mSource.config = "fr";
+        mSource.labelLoads = 0;
+        updateAll();
+        assertEquals(3, mSource.labelLoads);
+
+        // Stored labels are for the new config
+        mSource.labelLoads = 0;
+        new WidgetCatalog(mSource, mPrefs).update(mSource.getProviders(null), null);
+        assertEquals(0, mSource.labelLoads);
+    }
+
+    @Test
+    public void testUncachedPackage_alwaysLoaded() {
+        mSource.install("app3", null, "Music");
+        updateAll();
+        int loads = mSource.labelLoads;
+        assertLabels(updateAll(), "Clock", "Weather", "Notes", "Music");
+        assertEquals(loads + 1, mSource.labelLoads);
+        assertFalse(mPrefs.contains("app3"));
+    }
+
+    private List<WidgetItem> updateAll() {
+        List<WidgetItem> items = mCatalog.update(mSource.getProviders(null), null);
+        assertConsistent(items, null);
+        return items;
+    }
+
+    private List<WidgetItem> update(String packageName) {
+        PackageUserKey key = new PackageUserKey(packageName, Process.myUserHandle());
+        List<WidgetItem> items = mCatalog.update(mSource.getProviders(packageName), key);
+        assertConsistent(items, packageName);
+        return items;
+    }
+
+    /**
+     * Checks that {@param items} are the widgets currently provided by the source.
+     */
+    private void assertConsistent(List<WidgetItem> items, @Nullable String packageName) {
+        List<AppWidgetProviderInfo> providers = mSource.getProviders(packageName);
+        assertEquals(providers.size(), items.size());
+        HashSet<ComponentName> components = new HashSet<>();
+        for (WidgetItem item : items) {
+            components.add(item.componentName);
+            assertEquals(mSource.labels.get(item.componentName), item.label);
+        }
+        for (AppWidgetProviderInfo info : providers) {
+            assertTrue(components.contains(info.provider));
+        }
+    }
+
+    private static void assertLabels(List<WidgetItem> items, String... labels) {
+        HashSet<String> expected = new HashSet<>();
+        for (String label : labels) {
+            expected.add(label);
+        }
+        HashSet<String> actual = new HashSet<>();
+        for (WidgetItem item : items) {
+            actual.add(item.label);
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static class FakeSource implements WidgetCatalog.Source {
+
+        final InvariantDeviceProfile idp = new InvariantDeviceProfile();
+        final HashMap<String, String> versions = new HashMap<>();
+        final HashMap<String, List<AppWidgetProviderInfo>> providers = new HashMap<>();
+        final HashMap<ComponentName, String> labels = new HashMap<>();
+        String config = "en";
+        int labelLoads;
+
+        void install(String packageName, @Nullable String version, String... widgetLabels) {
+            versions.put(packageName, version);
+            ArrayList<AppWidgetProviderInfo> list = new ArrayList<>();
+            for (String label : widgetLabels) {
+                FakeProvider info = new FakeProvider(
+                        new ComponentName(packageName, packageName + "." + label.replace(' ', '_')));
+                labels.put(info.provider, label);
+                list.add(info);
+            }
+            providers.put(packageName, list);
+        }
+
+        void uninstall(String packageName) {
+            versions.remove(packageName);
+            providers.remove(packageName);
+        }
+
+        List<AppWidgetProviderInfo> getProviders(@Nullable String packageName) {
+            ArrayList<AppWidgetProviderInfo> result = new ArrayList<>();
+            for (Map.Entry<String, List<AppWidgetProviderInfo>> entry : providers.entrySet()) {
+                if (packageName == null || packageName.equals(entry.getKey())) {
+                    result.addAll(entry.getValue());
+                }
+            }
+            return result;
+        }
+
+        @Nullable
+        @Override
+        public String getPackageVersion(String packageName) {
+            return versions.get(packageName);
+        }
+
+        @Override
+        public String getConfig() {
+            return config;
+        }
+
+        @Override
+        public WidgetItem createWidgetItem(AppWidgetProviderInfo info, @Nullable String label) {
+            if (label == null) {
+                labelLoads++;
+                label = labels.get(info.provider);
+            }
+            return new WidgetItem((LauncherAppWidgetProviderInfo) info, label, idp);
+        }
+    }
+
+    private static class FakeProvider extends LauncherAppWidgetProviderInfo {
+
+        FakeProvider(ComponentName cn) {
+            provider = cn;
+            providerInfo = new ActivityInfo();
+            providerInfo.packageName = cn.getPackageName();
+            providerInfo.name = cn.getClassName();
+            providerInfo.applicationInfo = new ApplicationInfo();
+            providerInfo.applicationInfo.uid = Process.myUid();
+        }
+    }
+}
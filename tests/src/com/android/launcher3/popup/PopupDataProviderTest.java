@@ -0,0 +1,181 @@
+package com.android.launcher3.popup;
+
+import android.app.Notification;
+import android.content.ComponentName;
+import android.os.Process;
+import android.service.notification.StatusBarNotification;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.Launcher;
+import com.android.launcher3.notification.NotificationKeyData;
+import com.android.launcher3.util.PackageUserKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the badge updates of {@link PopupDataProvider}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PopupDataProviderTest {
+
+    private static final PackageUserKey APP1 =
+            new PackageUserKey("com.example.app1", Process.myUserHandle());
+    private static final PackageUserKey APP2 =
+            new PackageUserKey("com.example.app2", Process.myUserHandle());
+    private static final PackageUserKey APP3 =
+            new PackageUserKey("com.example.app3", Process.myUserHandle());
+
+    private Launcher mLauncher;
+    private ManualFrameScheduler mScheduler;
+    private PopupDataProvider mProvider;
+    private int mNextId;
+
+    @Before
+    public void setup() {
+        mLauncher = mock(Launcher.class);
+        mScheduler = new ManualFrameScheduler();
+        mProvider = new PopupDataProvider(mLauncher, mScheduler);
+    }
+
+    @Test
+    public void testBurst_singleRefreshPerFrame() {
+        // A group chat posting a burst of messages, while another app posts and cancels one
+        List<StatusBarNotification> chat = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            chat.add(post(APP1));
+        }
+        StatusBarNotification other = post(APP2);
+        remove(other);
+        verify(mLauncher, never()).updateIconBadges(any());
+        assertEquals(1, mScheduler.callbacks.size());
+
+        mScheduler.doFrame();
+        assertEquals(new HashSet<>(Arrays.asList(APP1, APP2)), verifyBadgeUpdates(1).get(0));
+        assertEquals(50, getNotificationCount(APP1));
+        assertEquals(0, getNotificationCount(APP2));
+
+        // Removing the burst is refreshed once as well
+        for (StatusBarNotification sbn : chat) {
+            remove(sbn);
+        }
+        mScheduler.doFrame();
+        assertEquals(Collections.singleton(APP1), verifyBadgeUpdates(2).get(1));
+        assertEquals(0, getNotificationCount(APP1));
+    }
+
+    @Test
+    public void testUnchangedBadgesNotRefreshed() {
+        StatusBarNotification sbn = post(APP1);
+        mScheduler.doFrame();
+        verifyBadgeUpdates(1);
+
+        // Updating a notification doesn't change the badge
+        mProvider.onNotificationPosted(APP1, NotificationKeyData.fromNotification(sbn), false);
+        remove(post(APP2, true /* shouldBeFilteredOut */));
+        assertEquals(0, mScheduler.callbacks.size());
+        verifyBadgeUpdates(1);
+    }
+
+    @Test
+    public void testFullRefresh_onlyChangedBadges() {
+        StatusBarNotification app1 = post(APP1);
+        StatusBarNotification app2 = post(APP2);
+        mScheduler.doFrame();
+        verifyBadgeUpdates(1);
+
+        // APP1 is unchanged, APP2 is removed and APP3 is added
+        mProvider.onNotificationFullRefresh(Arrays.asList(app1, createNotification(APP3)));
+        assertEquals(1, mScheduler.callbacks.size());
+        mScheduler.doFrame();
+        assertEquals(new HashSet<>(Arrays.asList(APP2, APP3)), verifyBadgeUpdates(2).get(1));
+        assertEquals(1, getNotificationCount(APP1));
+        assertEquals(0, getNotificationCount(APP2));
+        assertEquals(1, getNotificationCount(APP3));
+
+        // Refreshing the same notifications doesn't refresh any badge
+        mProvider.onNotificationFullRefresh(Arrays.asList(app1, createNotification(APP3)));
+        assertEquals(0, mScheduler.callbacks.size());
+        verifyBadgeUpdates(2);
+    }
+
+    /**
+     * Checks that the badges were refreshed {@param count} times, and returns the package/users
+     * of each refresh.
+     */
+    private List<Set> verifyBadgeUpdates(int count) {
+        ArgumentCaptor<Set> captor = ArgumentCaptor.forClass(Set.class);
+        verify(mLauncher, times(count)).updateIconBadges(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private int getNotificationCount(PackageUserKey key) {
+        AppInfo app = new AppInfo();
+        app.componentName = new ComponentName(key.mPackageName, "Main");
+        app.intent = AppInfo.makeLaunchIntent(app.componentName);
+        app.user = key.mUser;
+        return mProvider.getNotificationKeysForItem(app).size();
+    }
+
+    private StatusBarNotification post(PackageUserKey key) {
+        return post(key, false);
+    }
+
+    private StatusBarNotification post(PackageUserKey key, boolean shouldBeFilteredOut) {
+        StatusBarNotification sbn = createNotification(key);
+        mProvider.onNotificationPosted(key, NotificationKeyData.fromNotification(sbn),
+                shouldBeFilteredOut);
+        return sbn;
+    }
+
+    private void remove(StatusBarNotification sbn) {
+        mProvider.onNotificationRemoved(PackageUserKey.fromNotification(sbn),
+                NotificationKeyData.fromNotification(sbn));
+    }
+
+    private StatusBarNotification createNotification(PackageUserKey key) {
+        int id = mNextId++;
+        Notification notification = new Notification.Builder(
+                InstrumentationRegistry.getTargetContext()).build();
+        return new StatusBarNotification(key.mPackageName, key.mPackageName, id, null,
+                Process.myUid(), 0, 0, notification, key.mUser, 0);
+    }
+
+    private static class ManualFrameScheduler implements BadgeUpdateBatcher.FrameScheduler {
+
+        final ArrayList<Runnable> callbacks = new ArrayList<>();
+
+        @Override
+        public void postFrameCallback(Runnable callback) {
+            callbacks.add(callback);
+        }
+
+        void doFrame() {
+            ArrayList<Runnable> frame = new ArrayList<>(callbacks);
+            callbacks.clear();
+            for (Runnable callback : frame) {
+                callback.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.android.launcher3.popup;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.LauncherSettings;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.graphics.BitmapInfo;
+import com.android.launcher3.popup.ShortcutPrefetcher.PrefetchedShortcuts;
+import com.android.launcher3.popup.ShortcutPrefetcher.ShortcutSource;
+import com.android.launcher3.shortcuts.ShortcutInfoCompat;
+import com.android.launcher3.util.Condition;
+import com.android.launcher3.util.Wait;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ShortcutPrefetcher}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ShortcutPrefetcherTest {
+
+    private static final ComponentName ACTIVITY = new ComponentName("com.example", "Main");
+    private static final List<String> IDS = Arrays.asList("a", "b", "c");
+    private static final long TIMEOUT_MS = 5000;
+
+    private Context mContext;
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+    private FakeSource mSource;
+    private ShortcutPrefetcher mPrefetcher;
+    private ShortcutInfo mItem;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mWorkerThread = new HandlerThread("ShortcutPrefetcherTest");
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mSource = new FakeSource();
+        mPrefetcher = new ShortcutPrefetcher(mSource, mWorkerThread.getLooper());
+
+        mItem = new ShortcutInfo();
+        mItem.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        mItem.intent = new Intent(Intent.ACTION_MAIN).setComponent(ACTIVITY);
+        mItem.user = Process.myUserHandle();
+    }
+
+    @After
+    public void tearDown() {
+        mSource.release();
+        mWorkerThread.quitSafely();
+    }
+
+    @Test
+    public void testPrefetchedShortcutsUsedByPopup() {
+        mPrefetcher.prefetch(mItem, IDS);
+        waitForWorker();
+        assertEquals(1, mSource.queries.get());
+        assertEquals(IDS.size(), mSource.icons.get());
+
+        // Opening the popup neither queries nor renders again
+        PrefetchedShortcuts shortcuts = load(IDS);
+        List<ShortcutInfoCompat> loaded = shortcuts.getShortcuts();
+        assertEquals(IDS.size(), loaded.size());
+        for (ShortcutInfoCompat shortcut : loaded) {
+            ShortcutInfo si = shortcuts.createShortcutInfo(shortcut, mContext);
+            assertSame(mSource.bitmap, si.iconBitmap);
+        }
+        assertEquals(1, mSource.queries.get());
+        assertEquals(IDS.size(), mSource.icons.get());
+
+        // A second long-press reuses them as well
+        mPrefetcher.prefetch(mItem, IDS);
+        load(IDS);
+        assertEquals(1, mSource.queries.get());
+    }
+
+    @Test
+    public void testTapCancelsPendingPrefetch() {
+        // Keep the worker busy so that the prefetch doesn't start
+        CountDownLatch busy = new CountDownLatch(1);
+        mWorkerHandler.post(() -> await(busy));
+        mPrefetcher.prefetch(mItem, IDS);
+        mPrefetcher.cancel(mItem);
+        busy.countDown();
+        waitForWorker();
+        assertEquals(0, mSource.queries.get());
+
+        load(IDS);
+        assertEquals(1, mSource.queries.get());
+    }
+
+    @Test
+    public void testDragCancelsRunningPrefetch() throws InterruptedException {
+        mSource.block();
+        mPrefetcher.prefetch(mItem, IDS);
+        assertTrue(mSource.queryStarted.await(5, TimeUnit.SECONDS));
+        mPrefetcher.cancel(mItem);
+        mSource.release();
+        waitForWorker();
+        // The icons of the cancelled shortcuts are never rendered
+        assertEquals(1, mSource.queries.get());
+        assertEquals(0, mSource.icons.get());
+
+        assertEquals(IDS.size(), load(IDS).getShortcuts().size());
+        assertEquals(2, mSource.queries.get());
+    }
+
+    @Test
+    public void testLoadedShortcutsNotCancelled() {
+        mPrefetcher.prefetch(mItem, IDS);
+        waitForWorker();
+        mPrefetcher.cancel(mItem);
+        load(IDS);
+        assertEquals(1, mSource.queries.get());
+    }
+
+    @Test
+    public void testChangedShortcutsLoadedAgain() {
+        load(IDS);
+        load(IDS.subList(0, 2));
+        assertEquals(2, mSource.queries.get());
+
+        mPrefetcher.clear();
+        load(IDS.subList(0, 2));
+        assertEquals(3, mSource.queries.get());
+    }
+
+    @Test
+    public void testExpiredShortcutsReleased() {
+        mPrefetcher = new ShortcutPrefetcher(mSource, mWorkerThread.getLooper(), 100);
+        mPrefetcher.prefetch(mItem, IDS);
+        waitForWorker();
+        assertEquals(1, mPrefetcher.getCachedCount());
+
+        // The shortcuts are dropped without the package being touched again
+        assertTrue(Wait.atMost(new Condition() {
+            @Override
+            public boolean isTrue() {
+                return mPrefetcher.getCachedCount() == 0;
+            }
+        }, TIMEOUT_MS, 20));
+        load(IDS);
+        assertEquals(2, mSource.queries.get());
+    }
+
+    private PrefetchedShortcuts load(List<String> ids) {
+        PrefetchedShortcuts[] result = new PrefetchedShortcuts[1];
+        runOnWorker(() -> result[0] = mPrefetcher.load(ACTIVITY, ACTIVITY.getPackageName(),
+                ids, Process.myUserHandle()));
+        return result[0];
+    }
+
+    private void waitForWorker() {
+        runOnWorker(() -> { });
+    }
+
+    private void runOnWorker(Runnable r) {
+        CountDownLatch latch = new CountDownLatch(1);
+        mWorkerHandler.post(() -> {
+            r.run();
+            latch.countDown();
+        });
+        await(latch);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class FakeSource implements ShortcutSource {
+
+        final AtomicInteger queries = new AtomicInteger();
+        final AtomicInteger icons = new AtomicInteger();
+        final Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        final CountDownLatch queryStarted = new CountDownLatch(1);
+        private CountDownLatch mBlock;
+
+        void block() {
+            mBlock = new CountDownLatch(1);
+        }
+
+        void release() {
+            if (mBlock != null) {
+                mBlock.countDown();
+            }
+        }
+
+        @Override
+        public List<ShortcutInfoCompat> queryForShortcutsContainer(ComponentName activity,
+                String packageName, List<String> ids, UserHandle user) {
+            queries.incrementAndGet();
+            queryStarted.countDown();
+            if (mBlock != null) {
+                await(mBlock);
+            }
+            List<ShortcutInfoCompat> shortcuts = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                shortcuts.add(new FakeShortcut(ids.get(i), i));
+            }
+            return shortcuts;
+        }
+
+        @Override
+        public BitmapInfo createShortcutIcon(ShortcutInfoCompat shortcut) {
+            icons.incrementAndGet();
+            BitmapInfo info = new BitmapInfo();
+            info.icon = bitmap;
+            return info;
+        }
+    }
+
+    private static class FakeShortcut extends ShortcutInfoCompat {
+
+        private final String mId;
+        private final int mRank;
+
+        FakeShortcut(String id, int rank) {
+            super(null);
+            mId = id;
+            mRank = rank;
+        }
+
+        @Override
+        public Intent makeIntent() {
+            return new Intent(Intent.ACTION_MAIN).setComponent(ACTIVITY)
+                    .putExtra(EXTRA_SHORTCUT_ID, mId);
+        }
+
+        @Override
+        public String getPackage() {
+            return ACTIVITY.getPackageName();
+        }
+
+        @Override
+        public String getId() {
+            return mId;
+        }
+
+        @Override
+        public CharSequence getShortLabel() {
+            return mId;
+        }
+
+        @Override
+        public CharSequence getLongLabel() {
+            return mId;
+        }
+
+        @Override
+        public ComponentName getActivity() {
+            return ACTIVITY;
+        }
+
+        @Override
+        public UserHandle getUserHandle() {
+            return Process.myUserHandle();
+        }
+
+        @Override
+        public boolean isDeclaredInManifest() {
+            return true;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isDynamic() {
+            return false;
+        }
+
+        @Override
+        public int getRank() {
+            return mRank;
+        }
+
+        @Override
+        public CharSequence getDisabledMessage() {
+            return null;
+        }
+    }
+}
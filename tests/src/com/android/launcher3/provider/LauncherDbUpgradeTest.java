@@ -0,0 +1,157 @@
+package com.android.launcher3.provider;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherProvider.DatabaseHelper;
+import com.android.launcher3.LauncherSettings.Favorites;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the upgrade of existing dbs in {@link DatabaseHelper}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class LauncherDbUpgradeTest {
+
+    private static final String DB_FILE = "upgrade_test.db";
+
+    // The favorites table of version 31
+    private static final String FAVORITES_V31 = "CREATE TABLE favorites (" +
+            "_id INTEGER PRIMARY KEY, title TEXT, intent TEXT, container INTEGER, " +
+            "screen INTEGER, cellX INTEGER, cellY INTEGER, spanX INTEGER, spanY INTEGER, " +
+            "itemType INTEGER, appWidgetId INTEGER NOT NULL DEFAULT -1, iconPackage TEXT, " +
+            "iconResource TEXT, icon BLOB, customIcon BLOB, customIconEntry TEXT, " +
+            "titleAlias TEXT, swipeUpAction TEXT, appWidgetProvider TEXT, " +
+            "modified INTEGER NOT NULL DEFAULT 0, restored INTEGER NOT NULL DEFAULT 0, " +
+            "profileId INTEGER DEFAULT 0, rank INTEGER NOT NULL DEFAULT 0, " +
+            "options INTEGER NOT NULL DEFAULT 0);";
+
+    private static final ComponentName APP = new ComponentName("com.example", "com.example.Main");
+    private static final ComponentName INNER_APP =
+            new ComponentName("com.example", "com.example.Main$Inner");
+
+    private Context mContext;
+    private File mDbFile;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mDbFile = mContext.getDatabasePath(DB_FILE);
+        mDbFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mDbFile.delete();
+    }
+
+    @Test
+    public void testUpgradeFrom31_addsAppTargets() {
+        SQLiteOpenHelper fixture = new FixtureOpenHelper(31);
+        SQLiteDatabase db = fixture.getWritableDatabase();
+        insert(db, 1, Favorites.ITEM_TYPE_APPLICATION, AppInfo.makeLaunchIntent(APP).toUri(0));
+        insert(db, 2, Favorites.ITEM_TYPE_APPLICATION,
+                AppInfo.makeLaunchIntent(INNER_APP).toUri(0));
+        // Legacy shortcut with extras
+        insert(db, 3, Favorites.ITEM_TYPE_SHORTCUT, new Intent(Intent.ACTION_VIEW)
+                .setComponent(APP).putExtra("key", "value").toUri(0));
+        // App shortcut without the launch flags, as added by old layouts
+        insert(db, 4, Favorites.ITEM_TYPE_APPLICATION, new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER).setComponent(APP).toUri(0));
+        // Folder
+        insert(db, 5, Favorites.ITEM_TYPE_FOLDER, null);
+        fixture.close();
+
+        DatabaseHelper helper = new DatabaseHelper(mContext, null, DB_FILE) {
+            @Override
+            public void onOpen(SQLiteDatabase db) { }
+        };
+        db = helper.getWritableDatabase();
+        assertEquals(LauncherProvider.SCHEMA_VERSION, db.getVersion());
+
+        try (Cursor c = db.query(Favorites.TABLE_NAME, null, null, null, null, null,
+                Favorites._ID)) {
+            int packageIndex = c.getColumnIndex(Favorites.TARGET_PACKAGE);
+            int classIndex = c.getColumnIndex(Favorites.TARGET_CLASS);
+            assertNotEquals(-1, packageIndex);
+            assertNotEquals(-1, classIndex);
+            assertEquals(5, c.getCount());
+
+            c.moveToNext();
+            assertEquals(APP.getPackageName(), c.getString(packageIndex));
+            assertEquals(APP.getClassName(), c.getString(classIndex));
+
+            c.moveToNext();
+            assertEquals(INNER_APP.getPackageName(), c.getString(packageIndex));
+            assertEquals(INNER_APP.getClassName(), c.getString(classIndex));
+
+            // Other items keep being parsed
+            for (int i = 0; i < 3; i++) {
+                c.moveToNext();
+                assertNull(c.getString(packageIndex));
+                assertNull(c.getString(classIndex));
+            }
+        }
+        helper.close();
+    }
+
+    @Test
+    public void testCreate_hasAppTargets() {
+        DatabaseHelper helper = new DatabaseHelper(mContext, null, DB_FILE) {
+            @Override
+            public void onOpen(SQLiteDatabase db) { }
+        };
+        try (Cursor c = helper.getWritableDatabase().query(Favorites.TABLE_NAME,
+                null, null, null, null, null, null)) {
+            assertNotEquals(-1, c.getColumnIndex(Favorites.TARGET_PACKAGE));
+            assertNotEquals(-1, c.getColumnIndex(Favorites.TARGET_CLASS));
+        }
+        helper.close();
+    }
+
+    private static void insert(SQLiteDatabase db, long id, int itemType, String intent) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites._ID, id);
+        values.put(Favorites.ITEM_TYPE, itemType);
+        values.put(Favorites.INTENT, intent);
+        db.insert(Favorites.TABLE_NAME, null, values);
+    }
+
+    private class FixtureOpenHelper extends SQLiteOpenHelper {
+
+        FixtureOpenHelper(int version) {
+            super(mContext, DB_FILE, null, version);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL(FAVORITES_V31);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            throw new RuntimeException("Fixture is always created");
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.android.launcher3.shortcuts;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.Xml;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link ManifestShortcutCache}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ManifestShortcutCacheTest {
+
+    private static final String TAG = "ManifestShortcutCacheTest";
+
+    private static final String PACKAGE = "android";
+    private static final String MAIN = "com.example.mail.Main";
+    private static final String SETTINGS = "com.example.mail.Settings";
+    private static final String ALIAS = "com.example.mail.Alias";
+
+    private static final String MANIFEST = ""
+            + "<manifest xmlns:android='http://schemas.android.com/apk/res/android'"
+            + "        package='com.example.mail'>"
+            + "  <application>"
+            + "    <activity android:name='" + MAIN + "'>"
+            + "      <intent-filter><action android:name='android.intent.action.MAIN'/></intent-filter>"
+            + "      <meta-data android:name='android.app.shortcuts'"
+            + "          android:resource='@xml/shortcuts'/>"
+            + "    </activity>"
+            + "    <activity android:name='" + SETTINGS + "'>"
+            + "      <meta-data android:name='other' android:resource='@xml/other'/>"
+            + "    </activity>"
+            + "    <activity-alias android:name='" + ALIAS + "' android:targetActivity='" + MAIN + "'>"
+            + "      <meta-data android:name='android.app.shortcuts'"
+            + "          android:resource='@xml/alias_shortcuts'/>"
+            + "    </activity-alias>"
+            + "    <service android:name='com.example.mail.Sync'/>"
+            + "  </application>"
+            + "</manifest>";
+
+    private static final String SHORTCUTS = ""
+            + "<shortcuts xmlns:android='http://schemas.android.com/apk/res/android'>"
+            + "  <shortcut android:shortcutId='compose' android:enabled='true'"
+            + "      android:icon='@android:drawable/ic_menu_add'"
+            + "      android:shortcutShortLabel='@" + android.R.string.ok + "'"
+            + "      android:shortcutLongLabel='@" + android.R.string.cancel + "'"
+            + "      android:shortcutDisabledMessage='@" + android.R.string.no + "'>"
+            + "    <intent android:action='android.intent.action.VIEW'"
+            + "        android:targetPackage='com.example.mail'"
+            + "        android:targetClass='com.example.mail.Compose'"
+            + "        android:data='mailto:'>"
+            + "      <extra android:name='draft' android:value='true'/>"
+            + "      <extra android:name='incomplete'/>"
+            + "    </intent>"
+            + "    <categories android:name='android.shortcut.conversation'/>"
+            + "  </shortcut>"
+            + "  <shortcut android:shortcutId='search' android:enabled='FALSE'"
+            + "      android:icon='@" + android.R.drawable.ic_menu_search + "'"
+            + "      android:shortcutShortLabel='@" + android.R.string.search_go + "'>"
+            + "    <intent android:action='android.intent.action.SEARCH'/>"
+            + "  </shortcut>"
+            + "  <shortcut android:shortcutShortLabel='@" + android.R.string.ok + "'>"
+            + "    <intent android:action='android.intent.action.VIEW'/>"
+            + "  </shortcut>"
+            + "  <shortcut android:shortcutId='invalid' android:shortcutShortLabel='@string/ok'>"
+            + "    <intent android:action='android.intent.action.VIEW'/>"
+            + "  </shortcut>"
+            + "  <shortcut android:shortcutId='two_intents'>"
+            + "    <intent android:action='android.intent.action.VIEW'>"
+            + "      <extra android:name='first' android:value='1'/>"
+            + "    </intent>"
+            + "    <intent android:action='android.intent.action.EDIT' android:data='content://x'/>"
+            + "  </shortcut>"
+            + "  <shortcut android:shortcutId='no_intent'/>"
+            + "</shortcuts>";
+
+    private Context mContext;
+    private SharedPreferences mPrefs;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mPrefs = mContext.getSharedPreferences(TAG, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @After
+    public void tearDown() {
+        mPrefs.edit().clear().commit();
+    }
+
+    @Test
+    public void testManifestParsingMatchesLegacyParser() throws Exception {
+        Map<String, String> resources = ManifestShortcutCache.parseManifest(parse(MANIFEST));
+        for (String activity : new String[] {MAIN, SETTINGS, ALIAS, "com.example.Unknown"}) {
+            assertEquals(activity, LegacyParser.findResource(parse(MANIFEST), activity),
+                    resources.get(activity));
+        }
+    }
+
+    @Test
+    public void testShortcutParsingMatchesLegacyParser() throws Exception {
+        Resources res = Resources.getSystem();
+        ComponentName activity = new ComponentName(PACKAGE, MAIN);
+        List<LegacyParser.Shortcut> expected = LegacyParser.parse(res, parse(SHORTCUTS));
+        List<ManifestShortcut> parsed =
+                ManifestShortcutCache.parseShortcuts(parse(SHORTCUTS), res, PACKAGE);
+        assertEquals(4, expected.size());
+        assertEquals(expected.size(), parsed.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            LegacyParser.Shortcut legacy = expected.get(i);
+            // Shortcuts are the same after being stored
+            ManifestShortcut stored = ManifestShortcut.fromJson(parsed.get(i).toJson());
+            assertEquals(parsed.get(i).toJson().toString(), stored.toJson().toString());
+            ShortcutInfoCompatBackport info =
+                    new ShortcutInfoCompatBackport(mContext, res, PACKAGE, activity, stored);
+
+            assertEquals(legacy.id, info.getId());
+            assertEquals(legacy.enabled, info.isEnabled());
+            assertEquals(legacy.icon, stored.iconResId);
+            assertEquals(legacy.shortLabel, info.getShortLabel());
+            assertEquals(legacy.longLabel, info.getLongLabel());
+            assertEquals(legacy.disabledMessage, info.getDisabledMessage());
+            assertEquals(legacy.intent.toUri(0), info.makeIntent().toUri(0));
+        }
+    }
+
+    @Test
+    public void testShortcutsCachedPerPackageVersion() throws JSONException {
+        CountingCache cache = new CountingCache(mContext, mPrefs);
+        ComponentName main = new ComponentName(mContext.getPackageName(), MAIN);
+        List<ManifestShortcut> shortcuts = cache.getShortcuts(main);
+        assertEquals(1, shortcuts.size());
+        assertEquals(Collections.emptyList(),
+                cache.getShortcuts(new ComponentName(mContext.getPackageName(), SETTINGS)));
+        assertEquals(1, cache.loadCount);
+
+        // Restored from disk after a restart
+        CountingCache restarted = new CountingCache(mContext, mPrefs);
+        assertEquals(shortcuts.get(0).toJson().toString(),
+                restarted.getShortcuts(main).get(0).toJson().toString());
+        assertEquals(0, restarted.loadCount);
+
+        // Shortcuts stored for a different version of the package are parsed again
+        restarted.clearMemoryCache();
+        mPrefs.edit().putString(mContext.getPackageName(),
+                "{\"version\":\"1:0\",\"activities\":{}}").commit();
+        assertEquals(1, restarted.getShortcuts(main).size());
+        assertEquals(1, restarted.loadCount);
+
+        // Packages which are not installed are dropped
+        ComponentName removed = new ComponentName("com.example.removed", MAIN);
+        mPrefs.edit().putString(removed.getPackageName(), "{}").commit();
+        assertEquals(Collections.emptyList(), restarted.getShortcuts(removed));
+        assertFalse(mPrefs.contains(removed.getPackageName()));
+    }
+
+    @Test
+    public void testWarmLookupDoesNotParse() {
+        CountingCache cache = new CountingCache(mContext, mPrefs);
+        ComponentName activity = new ComponentName(mContext.getPackageName(), MAIN);
+        int iterations = 20;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cache.remove(mContext.getPackageName());
+            cache.getShortcuts(activity);
+        }
+        long cold = (System.nanoTime() - start) / iterations;
+        assertEquals(iterations, cache.loadCount);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cache.getShortcuts(activity);
+        }
+        long warm = (System.nanoTime() - start) / iterations;
+
+        assertEquals(iterations, cache.loadCount);
+
+        Log.d(TAG, "Cold lookup: " + cold / 1000 + "us, warm lookup: " + warm / 1000 + "us");
+    }
+
+    private static XmlPullParser parse(String xml) throws XmlPullParserException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(xml));
+        return parser;
+    }
+
+    private static class CountingCache extends ManifestShortcutCache {
+
+        int loadCount;
+
+        CountingCache(Context context, SharedPreferences prefs) {
+            super(context, prefs);
+        }
+
+        @Override
+        Map<String, List<ManifestShortcut>> loadPackage(String packageName) {
+            loadCount++;
+            try {
+                HashMap<String, List<ManifestShortcut>> activities = new HashMap<>();
+                activities.put(MAIN, ManifestShortcutCache.parseShortcuts(parse(SHORTCUTS),
+                        Resources.getSystem(), PACKAGE).subList(0, 1));
+                return activities;
+            } catch (XmlPullParserException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * The parsing done by {@link DeepShortcutManagerBackport} before shortcuts were cached.
+     */
+    private static class LegacyParser {
+
+        static String findResource(XmlPullParser parseXml, String searchActivity)
+                throws XmlPullParserException, IOException {
+            String resource = null;
+            String currActivity = "";
+            Map<String, String> parsedData = new HashMap<>();
+            int eventType;
+            while ((eventType = parseXml.nextToken()) != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    String name = parseXml.getName();
+                    if ("activity".equals(name) || "activity-alias".equals(name)) {
+                        parsedData.clear();
+                        for (int i = 0; i < parseXml.getAttributeCount(); i++) {
+                            parsedData.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
+                        }
+                        if (parsedData.containsKey("name")) {
+                            currActivity = parsedData.get("name");
+                        }
+                    } else if (name.equals("meta-data") && currActivity.equals(searchActivity)) {
+                        parsedData.clear();
+                        for (int i = 0; i < parseXml.getAttributeCount(); i++) {
+                            parsedData.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
+                        }
+                        if (parsedData.containsKey("name") &&
+                                parsedData.get("name").equals("android.app.shortcuts") &&
+                                parsedData.containsKey("resource")) {
+                            resource = parsedData.get("resource");
+                        }
+                    }
+                }
+            }
+            return resource;
+        }
+
+        static List<Shortcut> parse(Resources resources, XmlPullParser parseXml)
+                throws XmlPullParserException, IOException {
+            List<Shortcut> shortcuts = new ArrayList<>();
+            int eventType;
+            while ((eventType = parseXml.nextToken()) != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG && parseXml.getName().equals("shortcut")) {
+                    try {
+                        Shortcut shortcut = new Shortcut(resources, parseXml);
+                        if (shortcut.id != null) {
+                            shortcuts.add(shortcut);
+                        }
+                    } catch (Exception e) {
+                        // Skipped like before
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        static class Shortcut {
+            final String id;
+            final boolean enabled;
+            final int icon;
+            final String shortLabel;
+            final String longLabel;
+            final String disabledMessage;
+            final Intent intent;
+
+            Shortcut(Resources resources, XmlPullParser parseXml)
+                    throws XmlPullParserException, IOException {
+                HashMap<String, String> xmlData = new HashMap<>();
+                for (int i = 0; i < parseXml.getAttributeCount(); i++) {
+                    xmlData.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
+                }
+
+                id = xmlData.get("shortcutId");
+
+                enabled = !xmlData.containsKey("enabled") || xmlData.get("enabled").toLowerCase().equals("true");
+
+                if (xmlData.containsKey("icon")) {
+                    String icon = xmlData.get("icon");
+                    int resId = resources.getIdentifier(icon, null, PACKAGE);
+                    this.icon = resId == 0
+                            ? Integer.parseInt(icon.substring(1))
+                            : resId;
+                } else {
+                    icon = 0;
+                }
+
+                shortLabel = xmlData.containsKey("shortcutShortLabel") ?
+                        resources.getString(Integer.valueOf(xmlData.get("shortcutShortLabel").substring(1))) :
+                        "";
+
+                longLabel = xmlData.containsKey("shortcutLongLabel") ?
+                        resources.getString(Integer.valueOf(xmlData.get("shortcutLongLabel").substring(1))) :
+                        shortLabel;
+
+                disabledMessage = xmlData.containsKey("shortcutDisabledMessage") ?
+                        resources.getString(Integer.valueOf(xmlData.get("shortcutDisabledMessage").substring(1))) :
+                        "";
+
+                HashMap<String, String> xmlDataIntent = new HashMap<>();
+                HashMap<String, String> xmlDataExtras = new HashMap<>();
+                HashMap<String, String> extras = new HashMap<>();
+                int startDepth = parseXml.getDepth();
+                do {
+                    if (parseXml.nextToken() == XmlPullParser.START_TAG) {
+                        String xmlName = parseXml.getName();
+                        if (xmlName.equals("intent")) {
+                            xmlDataIntent.clear();
+                            extras.clear();
+                            for (int i = 0; i < parseXml.getAttributeCount(); i++) {
+                                xmlDataIntent.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
+                            }
+                        } else if (xmlName.equals("extra")) {
+                            xmlDataExtras.clear();
+                            for (int i = 0; i < parseXml.getAttributeCount(); i++) {
+                                xmlDataExtras.put(parseXml.getAttributeName(i), parseXml.getAttributeValue(i));
+                            }
+                            if (xmlDataExtras.containsKey("name") && xmlDataExtras.containsKey("value")) {
+                                extras.put(xmlDataExtras.get("name"), xmlDataExtras.get("value"));
+                            }
+                        }
+                    }
+                } while (parseXml.getDepth() > startDepth);
+
+                String action = xmlDataIntent.containsKey("action") ?
+                        xmlDataIntent.get("action") :
+                        Intent.ACTION_MAIN;
+
+                boolean useTargetPackage = xmlDataIntent.containsKey("targetPackage");
+                String targetPackage = useTargetPackage ?
+                        xmlDataIntent.get("targetPackage") :
+                        PACKAGE;
+
+                intent = new Intent(action)
+                        .setPackage(targetPackage)
+                        .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_TASK_ON_HOME)
+                        .putExtra(ShortcutInfoCompat.EXTRA_SHORTCUT_ID, id);
+
+                if (xmlDataIntent.containsKey("targetClass")) {
+                    intent.setComponent(new ComponentName(targetPackage, xmlDataIntent.get("targetClass")));
+                }
+
+                if (xmlDataIntent.containsKey("data")) {
+                    intent.setData(Uri.parse(xmlDataIntent.get("data")));
+                }
+
+                for (Map.Entry<String, String> entry : extras.entrySet()) {
+                    intent.putExtra(entry.getKey(), entry.getValue());
+                }
+
+                intent.putExtra("shortcut_backport_use_package", useTargetPackage);
+            }
+        }
+    }
+}
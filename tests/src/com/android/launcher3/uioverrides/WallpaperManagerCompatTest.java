@@ -0,0 +1,182 @@
+package com.android.launcher3.uioverrides;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Pair;
+
+import com.android.launcher3.uioverrides.WallpaperManagerCompat.ColorExtractionService;
+import com.android.launcher3.uioverrides.WallpaperManagerCompat.WallpaperSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the stored color extraction of {@link WallpaperManagerCompat}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class WallpaperManagerCompatTest {
+
+    private static final int SIZE = 112;
+
+    @Test
+    public void testUnchangedWallpaperIsNotExtracted() {
+        FakeSource source = new FakeSource(1, 42, createSolid(Color.WHITE));
+        String value = ColorExtractionService.extractColors(source, "");
+        assertEquals(1, source.loadCount);
+
+        Pair<Integer, WallpaperColorsCompat> parsed = WallpaperManagerCompat.parseValue(value);
+        assertEquals(1, parsed.first.intValue());
+        assertNotNull(parsed.second);
+
+        // Same id and content, the stored value is served as is
+        assertEquals(value, ColorExtractionService.extractColors(source, value));
+        assertEquals(1, source.loadCount);
+    }
+
+    @Test
+    public void testChangedWallpaperIsExtracted() {
+        FakeSource source = new FakeSource(1, 42, createSolid(Color.WHITE));
+        String value = ColorExtractionService.extractColors(source, "");
+
+        // The content changed without a new id, eg when the same image is set again after an edit
+        source.contentHash = 43;
+        source.bitmap = createSolid(Color.BLACK);
+        String changed = ColorExtractionService.extractColors(source, value);
+        assertEquals(2, source.loadCount);
+        assertNotEquals(value, changed);
+
+        // Values stored by an older version are never reused
+        ColorExtractionService.extractColors(source, "1,1");
+        assertEquals(3, source.loadCount);
+    }
+
+    @Test
+    public void testSameContentWithNewIdReusesColors() {
+        FakeSource source = new FakeSource(1, 42, createSolid(Color.WHITE));
+        String value = ColorExtractionService.extractColors(source, "");
+
+        // Setting the same image again assigns a new id
+        source.wallpaperId = 2;
+        String reused = ColorExtractionService.extractColors(source, value);
+        assertEquals(1, source.loadCount);
+
+        // The new id is stored with the same colors
+        Pair<Integer, WallpaperColorsCompat> stored = WallpaperManagerCompat.parseValue(value);
+        Pair<Integer, WallpaperColorsCompat> parsed = WallpaperManagerCompat.parseValue(reused);
+        assertEquals(2, parsed.first.intValue());
+        assertEquals(stored.second.getPrimaryColor(), parsed.second.getPrimaryColor());
+        assertEquals(stored.second.getColorHints(), parsed.second.getColorHints());
+        assertEquals(reused, ColorExtractionService.extractColors(source, reused));
+        assertEquals(1, source.loadCount);
+    }
+
+    @Test
+    public void testUnknownContentIsAlwaysExtracted() {
+        FakeSource source = new FakeSource(1, 0, createSolid(Color.WHITE));
+        String value = ColorExtractionService.extractColors(source, "");
+        ColorExtractionService.extractColors(source, value);
+        assertEquals(2, source.loadCount);
+    }
+
+    @Test
+    public void testWallpaperWithoutPreview() {
+        FakeSource source = new FakeSource(1, 42, null);
+        String value = ColorExtractionService.extractColors(source, "");
+        assertNull(WallpaperManagerCompat.parseValue(value).second);
+        assertEquals(value, ColorExtractionService.extractColors(source, value));
+
+        source.wallpaperId = 2;
+        String reused = ColorExtractionService.extractColors(source, value);
+        assertEquals(2, WallpaperManagerCompat.parseValue(reused).first.intValue());
+        assertNull(WallpaperManagerCompat.parseValue(reused).second);
+        assertEquals(1, source.loadCount);
+    }
+
+    @Test
+    public void testSampledHintsMatchFullPass() {
+        Bitmap[] bitmaps = {
+                createSolid(Color.WHITE),
+                createSolid(Color.BLACK),
+                createSolid(Color.GRAY),
+                createGradient(Color.WHITE, Color.LTGRAY),
+                createGradient(Color.BLACK, Color.DKGRAY),
+                createDarkSpot(SIZE / 3),
+                createDarkSpot(SIZE / 20),
+        };
+        for (Bitmap bitmap : bitmaps) {
+            assertEquals(ColorExtractionService.calculateDarkHints(bitmap, 1),
+                    ColorExtractionService.calculateDarkHints(bitmap));
+        }
+        assertEquals(WallpaperColorsCompat.HINT_SUPPORTS_DARK_TEXT,
+                ColorExtractionService.calculateDarkHints(bitmaps[0]));
+        assertEquals(WallpaperColorsCompat.HINT_SUPPORTS_DARK_THEME,
+                ColorExtractionService.calculateDarkHints(bitmaps[1]));
+        assertEquals(0, ColorExtractionService.calculateDarkHints(bitmaps[5]));
+    }
+
+    private static Bitmap createSolid(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+
+    private static Bitmap createGradient(int startColor, int endColor) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, SIZE, SIZE, startColor, endColor,
+                Shader.TileMode.CLAMP));
+        new Canvas(bitmap).drawPaint(paint);
+        return bitmap;
+    }
+
+    private static Bitmap createDarkSpot(int spotSize) {
+        Bitmap bitmap = createSolid(Color.WHITE);
+        Paint paint = new Paint();
+        paint.setColor(Color.BLACK);
+        int start = (SIZE - spotSize) / 2;
+        new Canvas(bitmap).drawRect(start, start, start + spotSize, start + spotSize, paint);
+        return bitmap;
+    }
+
+    private static class FakeSource implements WallpaperSource {
+
+        int wallpaperId;
+        long contentHash;
+        Bitmap bitmap;
+        int loadCount;
+
+        FakeSource(int wallpaperId, long contentHash, Bitmap bitmap) {
+            this.wallpaperId = wallpaperId;
+            this.contentHash = contentHash;
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public int getWallpaperId() {
+            return wallpaperId;
+        }
+
+        @Override
+        public long getContentHash() {
+            return contentHash;
+        }
+
+        @Override
+        public Bitmap loadBitmap(int maxArea) {
+            loadCount++;
+            return bitmap;
+        }
+    }
+}
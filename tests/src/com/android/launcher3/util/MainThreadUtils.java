@@ -0,0 +1,35 @@
+package com.android.launcher3.util;
+
+import android.support.test.InstrumentationRegistry;
+import android.view.Choreographer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A utility class for running code on the main thread and waiting for frames from tests.
+ */
+public class MainThreadUtils {
+
+    private static final long FRAME_TIMEOUT_SECONDS = 5;
+
+    public static void runOnMainSync(Runnable r) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(r);
+    }
+
+    /**
+     * Waits until the next frame was drawn and the callbacks it posted have run.
+     */
+    public static void waitForFrame() {
+        CountDownLatch latch = new CountDownLatch(1);
+        runOnMainSync(() -> Choreographer.getInstance().postFrameCallback(t -> latch.countDown()));
+        try {
+            assertTrue(latch.await(FRAME_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        runOnMainSync(() -> { });
+    }
+}
@@ -0,0 +1,149 @@
+package com.android.launcher3.util;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link PerfMetrics} and {@link Histogram}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PerfMetricsTest {
+
+    private static final double MAX_RELATIVE_ERROR = 1.0 / (2 * Histogram.SUB_BUCKETS);
+
+    @Test
+    public void testBucketsCoverValues() {
+        for (long value = 0; value < 1 << 16; value++) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(Histogram.bucketLowerBound(index) <= value);
+            assertTrue(index == Histogram.BUCKET_COUNT - 1
+                    || Histogram.bucketLowerBound(index + 1) > value);
+        }
+        assertEquals(Histogram.BUCKET_COUNT - 1,
+                Histogram.bucketIndex(Histogram.MAX_TRACKED_VALUE));
+    }
+
+    @Test
+    public void testHistogramAccuracy() {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        Histogram histogram = new Histogram();
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.abs(random.nextGaussian() * 50000) + 100;
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(sum, histogram.getSum());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (int percentile : new int[] {10, 50, 90, 99}) {
+            long expected = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+            long actual = histogram.getPercentile(percentile);
+            assertTrue("p" + percentile + " expected " + expected + " got " + actual,
+                    Math.abs(actual - expected) <= expected * MAX_RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final PerfMetrics metrics = new PerfMetrics();
+        final int threadCount = 8;
+        final int samplesPerThread = 5000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < samplesPerThread; i++) {
+                    metrics.record("Section", (i + 1) * 1000L);
+                    metrics.increment("Counter");
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram histogram = metrics.getHistogram("Section", null);
+        assertNotNull(histogram);
+        assertEquals(threadCount * samplesPerThread, histogram.getCount());
+        assertEquals(samplesPerThread, histogram.getMax());
+        assertEquals(threadCount * samplesPerThread, metrics.getCounter("Counter"));
+    }
+
+    @Test
+    public void testSectionsAndPartitions() {
+        PerfMetrics metrics = new PerfMetrics();
+        metrics.partitionSection("Loader", "step 1");
+        metrics.endSection("Loader");
+        assertNull(metrics.getHistogram("Loader", "step 1"));
+
+        metrics.beginSection("Loader");
+        metrics.partitionSection("Loader", "step 1");
+        metrics.partitionSection("Loader", "step 2");
+        metrics.endSection("Loader");
+        // Ending twice does not record another sample
+        metrics.endSection("Loader");
+
+        assertEquals(1, metrics.getHistogram("Loader", null).getCount());
+        assertEquals(1, metrics.getHistogram("Loader", "step 1").getCount());
+        assertEquals(1, metrics.getHistogram("Loader", "step 2").getCount());
+    }
+
+    @Test
+    public void testPartitionsAreBounded() {
+        PerfMetrics metrics = new PerfMetrics();
+        metrics.beginSection("Dynamic");
+        for (int i = 0; i < 100; i++) {
+            metrics.partitionSection("Dynamic", "partition " + i);
+        }
+        assertNull(metrics.getHistogram("Dynamic", "partition 99"));
+        assertTrue(metrics.getDroppedCount() > 0);
+    }
+
+    @Test
+    public void testDumpFormat() {
+        PerfMetrics metrics = new PerfMetrics();
+        metrics.record("Bind", 2_500_000);
+        metrics.record("Empty", 0);
+        metrics.reset();
+        metrics.record("Bind", 2_500_000);
+        metrics.increment("IconPackApply");
+
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        metrics.dump("#", writer);
+        writer.flush();
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("#PerfMetrics:", lines[0]);
+        assertTrue(lines[1], lines[1].matches(
+                "#  Bind n=1 mean=2\\.5ms p50=[0-9.]+ms p90=[0-9.]+ms p99=[0-9.]+ms max=2\\.5ms"));
+        assertEquals("#  IconPackApply count=1", lines[2]);
+    }
+}
@@ -0,0 +1,170 @@
+package com.android.launcher3.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link SQLiteCacheHelper}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class SQLiteCacheHelperTest {
+
+    private static final String TAG = "SQLiteCacheHelperTest";
+
+    private static final String SINGLE_DB = "test_cache_single.db";
+    private static final String BATCH_DB = "test_cache_batch.db";
+
+    private static final String TABLE_NAME = "icons";
+    private static final String COLUMN_COMPONENT = "componentName";
+    private static final String COLUMN_USER = "profileId";
+    private static final String COLUMN_ICON = "icon";
+    private static final String COLUMN_LABEL = "label";
+
+    private static final int ROW_COUNT = 2000;
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        deleteDbs();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDbs();
+    }
+
+    private void deleteDbs() {
+        mContext.deleteDatabase(SINGLE_DB);
+        mContext.deleteDatabase(BATCH_DB);
+    }
+
+    @Test
+    public void testBatchMatchesSingleInserts() {
+        List<ContentValues> rows = createRows(ROW_COUNT);
+        // Replace some of the rows to verify conflict handling is preserved
+        rows.addAll(createRows(ROW_COUNT / 4));
+
+        TestCacheDb single = new TestCacheDb(mContext, SINGLE_DB);
+        long singleStart = SystemClock.elapsedRealtime();
+        for (ContentValues values : rows) {
+            single.insertOrReplace(values);
+        }
+        long singleTime = SystemClock.elapsedRealtime() - singleStart;
+
+        TestCacheDb batch = new TestCacheDb(mContext, BATCH_DB);
+        long batchStart = SystemClock.elapsedRealtime();
+        batch.insertOrReplace(rows);
+        long batchTime = SystemClock.elapsedRealtime() - batchStart;
+
+        Log.d(TAG, "Inserted " + rows.size() + " rows, single: " + singleTime
+                + "ms, batched: " + batchTime + "ms");
+        assertDbEquals(single, batch);
+    }
+
+    @Test
+    public void testBatchBufferMatchesSingleInserts() {
+        List<ContentValues> rows = createRows(SQLiteCacheHelper.MAX_BATCH_SIZE * 3 + 7);
+
+        TestCacheDb single = new TestCacheDb(mContext, SINGLE_DB);
+        for (ContentValues values : rows) {
+            single.insertOrReplace(values);
+        }
+
+        TestCacheDb batchDb = new TestCacheDb(mContext, BATCH_DB);
+        SQLiteCacheHelper.Batch batch = batchDb.newBatch();
+        for (ContentValues values : rows) {
+            batch.insertOrReplace(values);
+        }
+        // Full batches are written eagerly, the remainder only on commit
+        assertEquals(SQLiteCacheHelper.MAX_BATCH_SIZE * 3, count(batchDb));
+        batch.commit();
+
+        assertDbEquals(single, batchDb);
+    }
+
+    private static List<ContentValues> createRows(int count) {
+        Random random = new Random(count);
+        ArrayList<ContentValues> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] icon = new byte[512];
+            random.nextBytes(icon);
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_COMPONENT, "com.example.app" + i + "/.Activity");
+            values.put(COLUMN_USER, i % 2);
+            values.put(COLUMN_ICON, icon);
+            values.put(COLUMN_LABEL, "App " + random.nextInt());
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private static int count(TestCacheDb db) {
+        try (Cursor c = db.query(new String[] {COLUMN_COMPONENT}, null, null)) {
+            return c.getCount();
+        }
+    }
+
+    private static void assertDbEquals(TestCacheDb expected, TestCacheDb actual) {
+        TreeMap<String, String> expectedRows = readRows(expected);
+        TreeMap<String, String> actualRows = readRows(actual);
+        assertEquals(expectedRows.size(), actualRows.size());
+        assertEquals(expectedRows, actualRows);
+    }
+
+    /**
+     * Reads all the rows keyed by their primary key, as the helper does not expose ordering.
+     */
+    private static TreeMap<String, String> readRows(TestCacheDb db) {
+        TreeMap<String, String> rows = new TreeMap<>();
+        String[] columns = {COLUMN_COMPONENT, COLUMN_USER, COLUMN_ICON, COLUMN_LABEL};
+        try (Cursor c = db.query(columns, null, null)) {
+            while (c.moveToNext()) {
+                rows.put(c.getString(0) + "#" + c.getLong(1),
+                        Arrays.toString(c.getBlob(2)) + c.getString(3));
+            }
+        }
+        return rows;
+    }
+
+    private static class TestCacheDb extends SQLiteCacheHelper {
+
+        TestCacheDb(Context context, String name) {
+            super(context, name, 1, TABLE_NAME);
+        }
+
+        @Override
+        protected void onCreateTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                    COLUMN_COMPONENT + " TEXT NOT NULL, " +
+                    COLUMN_USER + " INTEGER NOT NULL, " +
+                    COLUMN_ICON + " BLOB, " +
+                    COLUMN_LABEL + " TEXT, " +
+                    "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") " +
+                    ");");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.android.launcher3.util;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Stack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link VacantAreaFinder}, comparing it against the cell-by-cell search it replaces.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class VacantAreaFinderTest {
+
+    private static final String TAG = "VacantAreaFinderTest";
+
+    private static final int LEFT = 12;
+    private static final int TOP = 30;
+    private static final int CELL_WIDTH = 140;
+    private static final int CELL_HEIGHT = 170;
+
+    @Test
+    public void testMatchesReferenceOnRandomGrids() {
+        Random random = new Random(1234);
+        int[] expected = new int[2];
+        int[] expectedSpan = new int[2];
+        int[] actual = new int[2];
+        int[] actualSpan = new int[2];
+
+        for (int iteration = 0; iteration < 300; iteration++) {
+            int countX = 3 + random.nextInt(6);
+            int countY = 3 + random.nextInt(6);
+            GridOccupancy grid = new GridOccupancy(countX, countY);
+            float density = random.nextFloat();
+            for (int x = 0; x < countX; x++) {
+                for (int y = 0; y < countY; y++) {
+                    if (random.nextFloat() < density) {
+                        grid.markCells(x, y, 1, 1, true);
+                    }
+                }
+            }
+            VacantAreaFinder finder = new VacantAreaFinder(grid);
+            finder.setCellGeometry(LEFT, TOP, CELL_WIDTH, CELL_HEIGHT);
+
+            for (int query = 0; query < 40; query++) {
+                int pixelX = random.nextInt(LEFT * 2 + countX * CELL_WIDTH);
+                int pixelY = random.nextInt(TOP * 2 + countY * CELL_HEIGHT);
+                int spanX = 1 + random.nextInt(Math.min(4, countX));
+                int spanY = 1 + random.nextInt(Math.min(4, countY));
+                int minSpanX = 1 + random.nextInt(spanX);
+                int minSpanY = 1 + random.nextInt(spanY);
+                boolean ignoreOccupied = random.nextBoolean();
+
+                Arrays.fill(expectedSpan, -2);
+                Arrays.fill(actualSpan, -2);
+                referenceFindNearestArea(grid.cells, countX, countY, pixelX, pixelY,
+                        minSpanX, minSpanY, spanX, spanY, ignoreOccupied, expected, expectedSpan);
+                finder.findNearestArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY,
+                        ignoreOccupied, actual, actualSpan);
+
+                String message = "iteration " + iteration + ", query " + query;
+                assertArrayEquals(message, expected, actual);
+                assertArrayEquals(message, expectedSpan, actualSpan);
+            }
+        }
+    }
+
+    @Test
+    public void testSummaryFollowsOccupancyChanges() {
+        GridOccupancy grid = new GridOccupancy(5, 5);
+        VacantAreaFinder finder = new VacantAreaFinder(grid);
+        assertEquals(true, finder.isRegionVacant(0, 0, 5, 5));
+
+        grid.markCells(2, 2, 1, 1, true);
+        assertEquals(false, finder.isRegionVacant(0, 0, 5, 5));
+        assertEquals(true, finder.isRegionVacant(3, 0, 2, 5));
+
+        GridOccupancy other = new GridOccupancy(5, 5);
+        other.copyTo(grid);
+        assertEquals(true, finder.isRegionVacant(0, 0, 5, 5));
+
+        // Direct writes are only picked up after an explicit invalidation
+        grid.cells[4][4] = true;
+        finder.invalidate();
+        assertEquals(false, finder.isRegionVacant(0, 0, 5, 5));
+        assertEquals(false, finder.isRegionVacant(4, 0, 2, 1));
+    }
+
+    @Test
+    public void testDragOverCost() {
+        int countX = 8;
+        int countY = 8;
+        GridOccupancy grid = new GridOccupancy(countX, countY);
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            grid.markCells(random.nextInt(countX), random.nextInt(countY), 1, 1, true);
+        }
+        VacantAreaFinder finder = new VacantAreaFinder(grid);
+        finder.setCellGeometry(LEFT, TOP, CELL_WIDTH, CELL_HEIGHT);
+
+        int events = 5000;
+        int[] result = new int[2];
+        int[] resultSpan = new int[2];
+        int[] pixels = new int[events * 2];
+        for (int i = 0; i < events; i++) {
+            pixels[i * 2] = random.nextInt(countX * CELL_WIDTH);
+            pixels[i * 2 + 1] = random.nextInt(countY * CELL_HEIGHT);
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < events; i++) {
+            referenceFindNearestArea(grid.cells, countX, countY, pixels[i * 2], pixels[i * 2 + 1],
+                    2, 2, 4, 3, true, result, resultSpan);
+        }
+        long referenceTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < events; i++) {
+            finder.findNearestArea(pixels[i * 2], pixels[i * 2 + 1], 2, 2, 4, 3, true,
+                    result, resultSpan);
+        }
+        long finderTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.d(TAG, String.format(Locale.US, "%dx%d grid, %.2fus per event (was %.2fus)",
+                countX, countY, finderTime / 1000f / events, referenceTime / 1000f / events));
+    }
+
+    /**
+     * The search previously done by CellLayout, checking each span cell by cell.
+     */
+    private static int[] referenceFindNearestArea(boolean[][] occupied, int countX, int countY,
+            int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX, int spanY,
+            boolean ignoreOccupied, int[] result, int[] resultSpan) {
+        pixelX -= CELL_WIDTH * (spanX - 1) / 2f;
+        pixelY -= CELL_HEIGHT * (spanY - 1) / 2f;
+
+        final int[] bestXY = result != null ? result : new int[2];
+        double bestDistance = Double.MAX_VALUE;
+        final Rect bestRect = new Rect(-1, -1, -1, -1);
+        final Stack<Rect> validRegions = new Stack<>();
+
+        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
+                spanX < minSpanX || spanY < minSpanY) {
+            return bestXY;
+        }
+
+        for (int y = 0; y < countY - (minSpanY - 1); y++) {
+            inner:
+            for (int x = 0; x < countX - (minSpanX - 1); x++) {
+                int ySize = -1;
+                int xSize = -1;
+                if (ignoreOccupied) {
+                    for (int i = 0; i < minSpanX; i++) {
+                        for (int j = 0; j < minSpanY; j++) {
+                            if (occupied[x + i][y + j]) {
+                                continue inner;
+                            }
+                        }
+                    }
+                    xSize = minSpanX;
+                    ySize = minSpanY;
+
+                    boolean incX = true;
+                    boolean hitMaxX = xSize >= spanX;
+                    boolean hitMaxY = ySize >= spanY;
+                    while (!(hitMaxX && hitMaxY)) {
+                        if (incX && !hitMaxX) {
+                            for (int j = 0; j < ySize; j++) {
+                                if (x + xSize > countX -1 || occupied[x + xSize][y + j]) {
+                                    hitMaxX = true;
+                                }
+                            }
+                            if (!hitMaxX) {
+                                xSize++;
+                            }
+                        } else if (!hitMaxY) {
+                            for (int i = 0; i < xSize; i++) {
+                                if (y + ySize > countY - 1 || occupied[x + i][y + ySize]) {
+                                    hitMaxY = true;
+                                }
+                            }
+                            if (!hitMaxY) {
+                                ySize++;
+                            }
+                        }
+                        hitMaxX |= xSize >= spanX;
+                        hitMaxY |= ySize >= spanY;
+                        incX = !incX;
+                    }
+                }
+                int centerX = LEFT + x * CELL_WIDTH + CELL_WIDTH / 2;
+                int centerY = TOP + y * CELL_HEIGHT + CELL_HEIGHT / 2;
+
+                Rect currentRect = new Rect(x, y, x + xSize, y + ySize);
+                boolean contained = false;
+                for (Rect r : validRegions) {
+                    if (r.contains(currentRect)) {
+                        contained = true;
+                        break;
+                    }
+                }
+                validRegions.push(currentRect);
+                double distance = Math.hypot(centerX - pixelX,  centerY - pixelY);
+
+                if ((distance <= bestDistance && !contained) ||
+                        currentRect.contains(bestRect)) {
+                    bestDistance = distance;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                    if (resultSpan != null) {
+                        resultSpan[0] = xSize;
+                        resultSpan[1] = ySize;
+                    }
+                    bestRect.set(currentRect);
+                }
+            }
+        }
+
+        if (bestDistance == Double.MAX_VALUE) {
+            bestXY[0] = -1;
+            bestXY[1] = -1;
+        }
+        return bestXY;
+    }
+}
@@ -0,0 +1,141 @@
+package com.android.quickstep;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.LauncherActivityInfo;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.LruCache;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.IconCache;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherModel;
+import com.android.launcher3.compat.LauncherAppsCompat;
+import com.android.launcher3.graphics.BitmapInfo;
+import com.android.launcher3.graphics.DrawableFactory;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+import com.android.systemui.shared.recents.model.TaskKeyLruCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the task icons {@link NormalizedIconLoader} shares with the launcher {@link IconCache}
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class NormalizedIconLoaderTest {
+
+    private Context mContext;
+    private IconCache mIconCache;
+    private CountingIconLoader mLoader;
+    private LauncherActivityInfo mActivityInfo;
+    private AppInfo mAppInfo;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mIconCache = LauncherAppState.getInstance(mContext).getIconCache();
+        mLoader = new CountingIconLoader(mContext);
+
+        List<LauncherActivityInfo> activities = LauncherAppsCompat.getInstance(mContext)
+                .getActivityList(null, Process.myUserHandle());
+        assertFalse(activities.isEmpty());
+        mActivityInfo = activities.get(0);
+        mAppInfo = new AppInfo(mContext, mActivityInfo, Process.myUserHandle());
+    }
+
+    @Test
+    public void testCacheHitsAvoidRendering() {
+        loadIconInModel();
+
+        Drawable icon = mLoader.createNewIconForTask(createKey(),
+                new ActivityManager.TaskDescription(), false);
+        assertNotNull(icon);
+        assertEquals(0, mLoader.renderCount);
+
+        // Apps which are not in the model are still rendered
+        mIconCache.remove(mActivityInfo.getComponentName(), Process.myUserHandle());
+        assertNotNull(mLoader.createNewIconForTask(createKey(),
+                new ActivityManager.TaskDescription(), false));
+        assertEquals(1, mLoader.renderCount);
+    }
+
+    @Test
+    public void testIconsMatchWorkspace() {
+        loadIconInModel();
+
+        Drawable taskIcon = mLoader.createNewIconForTask(createKey(),
+                new ActivityManager.TaskDescription(), false);
+        Drawable workspaceIcon = DrawableFactory.get(mContext).newIcon(mAppInfo);
+        assertTrue(draw(workspaceIcon).sameAs(draw(taskIcon)));
+
+        // The task icon shares the bitmap of the cache entry
+        BitmapInfo cached = mIconCache.getCachedIcon(mActivityInfo.getComponentName(),
+                Process.myUserHandle());
+        assertTrue(cached.icon == mAppInfo.iconBitmap);
+    }
+
+    private void loadIconInModel() {
+        CountDownLatch latch = new CountDownLatch(1);
+        new Handler(LauncherModel.getWorkerLooper()).post(() -> {
+            mIconCache.getTitleAndIcon(mAppInfo, mActivityInfo, false);
+            latch.countDown();
+        });
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private TaskKey createKey() {
+        ComponentName cn = mActivityInfo.getComponentName();
+        return new TaskKey(1, 0, new Intent(Intent.ACTION_MAIN).setComponent(cn), cn,
+                UserHandle.myUserId(), System.currentTimeMillis());
+    }
+
+    private static Bitmap draw(Drawable drawable) {
+        Bitmap bitmap = Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, 96, 96);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private static class CountingIconLoader extends NormalizedIconLoader {
+
+        int renderCount;
+
+        CountingIconLoader(Context context) {
+            super(context, new TaskKeyLruCache<>(8), new LruCache<ComponentName, ActivityInfo>(8));
+        }
+
+        @Override
+        protected synchronized BitmapInfo getBitmapInfo(Drawable drawable, int userId,
+                int primaryColor, boolean isInstantApp) {
+            renderCount++;
+            return super.getBitmapInfo(drawable, userId, primaryColor, isInstantApp);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.android.systemui.shared.recents.model;
+
+import static android.app.WindowConfiguration.WINDOWING_MODE_FULLSCREEN;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.systemui.shared.recents.model.RecentsTaskLoadPlan.PreloadOptions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the incremental preloading of {@link RecentsTaskLoadPlan}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RecentsTaskLoadPlanTest {
+
+    private Context mContext;
+    private CountingLoader mLoader;
+    private FakeSource mSource;
+    private PreloadOptions mOpts;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mLoader = new CountingLoader(mContext);
+        mSource = new FakeSource();
+        mOpts = new PreloadOptions();
+        mOpts.loadTitles = false;
+    }
+
+    @Test
+    public void testUnchangedTasksAreReused() {
+        mSource.setTasks(task(3, 300), task(2, 200), task(1, 100));
+        RecentsTaskLoadPlan first = preload(null, -1);
+        assertEquals(3, first.getLoadedTaskCount());
+        assertEquals(3, mLoader.iconLoads);
+
+        mLoader.iconLoads = 0;
+        RecentsTaskLoadPlan second = preload(first, -1);
+        assertEquals(0, second.getLoadedTaskCount());
+        assertEquals(0, mLoader.iconLoads);
+        assertTaskIds(second, 1, 2, 3);
+        for (int i = 0; i < 3; i++) {
+            assertSame(first.getTaskStack().getTasks().get(i),
+                    second.getTaskStack().getTasks().get(i));
+        }
+    }
+
+    @Test
+    public void testOnlyChangedTasksAreReloaded() {
+        mSource.setTasks(task(3, 300), task(2, 200), task(1, 100));
+        RecentsTaskLoadPlan first = preload(null, -1);
+        Task task1 = first.getTaskStack().findTaskWithId(1);
+        Task task2 = first.getTaskStack().findTaskWithId(2);
+
+        // Task 1 was moved to the front, task 3 was removed and task 4 was added
+        mLoader.iconLoads = 0;
+        mSource.setTasks(task(1, 500), task(4, 400), task(2, 200));
+        RecentsTaskLoadPlan second = preload(first, -1);
+
+        assertTaskIds(second, 2, 4, 1);
+        assertEquals(2, second.getLoadedTaskCount());
+        assertEquals(2, mLoader.iconLoads);
+        assertSame(task2, second.getTaskStack().findTaskWithId(2));
+        Task movedTask = second.getTaskStack().findTaskWithId(1);
+        assertNotSame(task1, movedTask);
+        assertEquals(500, movedTask.key.lastActiveTime);
+    }
+
+    @Test
+    public void testLaunchTargetAndOptionsChangesReload() {
+        mSource.setTasks(task(2, 200), task(1, 100));
+        RecentsTaskLoadPlan first = preload(null, 2);
+        assertEquals(true, first.getTaskStack().findTaskWithId(2).isLaunchTarget);
+
+        RecentsTaskLoadPlan second = preload(first, 1);
+        assertEquals(2, second.getLoadedTaskCount());
+        assertEquals(true, second.getTaskStack().findTaskWithId(1).isLaunchTarget);
+        assertEquals(false, second.getTaskStack().findTaskWithId(2).isLaunchTarget);
+
+        mOpts.loadTitles = true;
+        RecentsTaskLoadPlan third = preload(second, 1);
+        assertEquals(2, third.getLoadedTaskCount());
+    }
+
+    @Test
+    public void testChangedTaskDescriptionReloads() {
+        ActivityManager.RecentTaskInfo task1 = task(1, 100);
+        task1.taskDescription = new ActivityManager.TaskDescription("Inbox", null, Color.BLUE);
+        ActivityManager.RecentTaskInfo task2 = task(2, 200);
+        task2.taskDescription = new ActivityManager.TaskDescription("Chat", null, Color.RED);
+        mSource.setTasks(task2, task1);
+        RecentsTaskLoadPlan first = preload(null, -1);
+
+        // Task 1 sets a new title, task 2 sends an equal description again
+        ActivityManager.RecentTaskInfo updated1 = task(1, 100);
+        updated1.taskDescription =
+                new ActivityManager.TaskDescription("Inbox (3)", null, Color.BLUE);
+        ActivityManager.RecentTaskInfo updated2 = task(2, 200);
+        updated2.taskDescription = new ActivityManager.TaskDescription("Chat", null, Color.RED);
+        mSource.setTasks(updated2, updated1);
+        RecentsTaskLoadPlan second = preload(first, -1);
+        assertEquals(1, second.getLoadedTaskCount());
+        assertSame(first.getTaskStack().findTaskWithId(2),
+                second.getTaskStack().findTaskWithId(2));
+        assertEquals("Inbox (3)",
+                second.getTaskStack().findTaskWithId(1).taskDescription.getLabel());
+
+        // The primary color changes as well
+        ActivityManager.RecentTaskInfo recolored1 = task(1, 100);
+        recolored1.taskDescription =
+                new ActivityManager.TaskDescription("Inbox (3)", null, Color.GREEN);
+        mSource.setTasks(updated2, recolored1);
+        RecentsTaskLoadPlan third = preload(second, -1);
+        assertEquals(1, third.getLoadedTaskCount());
+        assertEquals(Color.GREEN, third.getTaskStack().findTaskWithId(1).colorPrimary);
+    }
+
+    @Test
+    public void testRemovedPackagesAreDropped() {
+        mSource.setTasks(task(2, 200), task(1, 100));
+        RecentsTaskLoadPlan first = preload(null, -1);
+
+        mLoader.removedComponent = component(1);
+        RecentsTaskLoadPlan second = preload(first, -1);
+        assertTaskIds(second, 2);
+        assertEquals(0, second.getLoadedTaskCount());
+    }
+
+    private RecentsTaskLoadPlan preload(RecentsTaskLoadPlan previousPlan, int runningTaskId) {
+        RecentsTaskLoadPlan plan = new RecentsTaskLoadPlan(mContext, mSource);
+        plan.preloadPlan(mOpts, mLoader, runningTaskId, UserHandle.myUserId(), previousPlan);
+        return plan;
+    }
+
+    private static void assertTaskIds(RecentsTaskLoadPlan plan, int... ids) {
+        ArrayList<Task> tasks = plan.getTaskStack().getTasks();
+        assertEquals(ids.length, tasks.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], tasks.get(i).key.id);
+        }
+    }
+
+    private static ComponentName component(int id) {
+        return new ComponentName("com.example", "Activity" + id);
+    }
+
+    private static ActivityManager.RecentTaskInfo task(int id, long lastActiveTime) {
+        ActivityManager.RecentTaskInfo info = new ActivityManager.RecentTaskInfo();
+        info.id = id;
+        info.persistentId = id;
+        info.lastActiveTime = lastActiveTime;
+        info.userId = UserHandle.myUserId();
+        info.realActivity = component(id);
+        info.topActivity = component(id);
+        info.baseIntent = new Intent(Intent.ACTION_MAIN).setComponent(component(id));
+        info.configuration.windowConfiguration.setWindowingMode(WINDOWING_MODE_FULLSCREEN);
+        return info;
+    }
+
+    /**
+     * Fake for the recent tasks returned by {@link
+     * com.android.systemui.shared.system.ActivityManagerWrapper}, most recent first.
+     */
+    private static class FakeSource implements RecentsTaskLoadPlan.RecentTasksSource {
+
+        private List<ActivityManager.RecentTaskInfo> mTasks = new ArrayList<>();
+
+        void setTasks(ActivityManager.RecentTaskInfo... tasks) {
+            mTasks = Arrays.asList(tasks);
+        }
+
+        @Override
+        public List<ActivityManager.RecentTaskInfo> getRecentTasks(int numTasks, int userId) {
+            return new ArrayList<>(mTasks);
+        }
+    }
+
+    private static class CountingLoader extends RecentsTaskLoader {
+
+        int iconLoads;
+        ComponentName removedComponent;
+
+        CountingLoader(Context context) {
+            super(context, 1, 1, 0);
+        }
+
+        @Override
+        ActivityInfo getAndUpdateActivityInfo(Task.TaskKey taskKey) {
+            if (taskKey.sourceComponent.equals(removedComponent)) {
+                return null;
+            }
+            ActivityInfo info = new ActivityInfo();
+            info.packageName = taskKey.sourceComponent.getPackageName();
+            info.name = taskKey.sourceComponent.getClassName();
+            info.applicationInfo = new ApplicationInfo();
+            return info;
+        }
+
+        @Override
+        Drawable getAndUpdateActivityIcon(Task.TaskKey taskKey,
+                ActivityManager.TaskDescription td, boolean loadIfNotCached) {
+            iconLoads++;
+            return null;
+        }
+
+        @Override
+        String getAndUpdateActivityTitle(Task.TaskKey taskKey,
+                ActivityManager.TaskDescription td) {
+            return "Task " + taskKey.id;
+        }
+
+        @Override
+        String getAndUpdateContentDescription(Task.TaskKey taskKey,
+                ActivityManager.TaskDescription td) {
+            return "Task " + taskKey.id;
+        }
+
+        @Override
+        synchronized ThumbnailData getAndUpdateThumbnail(Task.TaskKey taskKey,
+                boolean loadIfNotCached, boolean storeInCache) {
+            return null;
+        }
+    }
+}